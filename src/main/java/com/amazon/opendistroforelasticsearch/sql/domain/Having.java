@@ -19,12 +19,14 @@ import com.alibaba.druid.sql.ast.SQLExpr;
 import com.alibaba.druid.sql.ast.statement.SQLSelectGroupByClause;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
 import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import com.amazon.opendistroforelasticsearch.sql.parser.WhereParser;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +44,7 @@ public class Having {
 
     private static final String BUCKET_SELECTOR_NAME = "bucket_filter";
     private static final String PARAMS = "params.";
+    private static final String VALUE_PARAM_PREFIX = "having_value_";
     private static final String AND = " && ";
     private static final String OR = " || ";
 
@@ -70,6 +73,14 @@ public class Having {
         this(groupByExpr == null ? null : groupByExpr.getHaving(), parser);
     }
 
+    /**
+     * Is there any condition in HAVING clause
+     * @return  true if no HAVING clause
+     */
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
     /**
      * Add Bucket Selector Aggregation under group by aggregation with sibling of aggregation of fields in SELECT.
      * ES makes sure that all sibling runs before bucket selector aggregation.
@@ -110,8 +121,14 @@ public class Having {
         return context;
     }
 
+    /**
+     * Literals are passed in as script params rather than inlined in source code, so that HAVING clauses of
+     * same shape share one compiled script regardless of the values.
+     */
     private Script explainConditions() throws SqlParseException {
-        return new Script(doExplain(conditions));
+        Map<String, Object> params = new LinkedHashMap<>();
+        String code = doExplain(conditions, params);
+        return new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, code, params);
     }
 
     /**
@@ -132,10 +149,11 @@ public class Having {
      *       c) connector=? means it doesn't matter for first condition in the list
      *
      * @param wheres             conditions
+     * @param params             script params collecting literal values
      * @return                   painless script string
      * @throws SqlParseException unknown type of expression other than identifier and value
      */
-    private String doExplain(List<Where> wheres) throws SqlParseException {
+    private String doExplain(List<Where> wheres, Map<String, Object> params) throws SqlParseException {
         if (wheres == null || wheres.isEmpty()) {
             return "";
         }
@@ -147,17 +165,17 @@ public class Having {
             }
 
             if (cond instanceof Condition) {
-                script.append(createScript((Condition) cond));
+                script.append(createScript((Condition) cond, params));
             } else {
                 script.append('(').
-                       append(doExplain(cond.getWheres())).
+                       append(doExplain(cond.getWheres(), params)).
                        append(')');
             }
         }
         return script.toString();
     }
 
-    private String createScript(Condition cond) throws SqlParseException {
+    private String createScript(Condition cond, Map<String, Object> params) throws SqlParseException {
         String name = cond.getName();
         Object value = cond.getValue();
         switch (cond.getOpear()) {
@@ -168,32 +186,34 @@ public class Having {
             case LTE:
             case IS:
             case ISN:
-                return expr(name, cond.getOpertatorSymbol(), value);
+                return expr(name, cond.getOpertatorSymbol(), value, params);
             case N:
-                return expr(name, "!=", value);
+                return expr(name, "!=", value, params);
             case BETWEEN: {
                 Object[] values = (Object[]) value;
-                return expr(name, ">=", values[0]) + AND + expr(name, "<=", values[1]);
+                return expr(name, ">=", values[0], params) + AND + expr(name, "<=", values[1], params);
             }
             case NBETWEEN: {
                 Object[] values = (Object[]) value;
-                return expr(name, "<", values[0]) + OR + expr(name, ">", values[1]);
+                return expr(name, "<", values[0], params) + OR + expr(name, ">", values[1], params);
             }
             case IN:
                 return Arrays.stream((Object[]) value).
-                              map(val -> expr(name, "==", val)).
+                              map(val -> expr(name, "==", val, params)).
                               collect(joining(OR));
             case NIN:
                 return Arrays.stream((Object[]) value).
-                              map(val -> expr(name, "!=", val)).
+                              map(val -> expr(name, "!=", val, params)).
                               collect(joining(AND));
             default:
                 throw new SqlParseException("Unsupported operation in HAVING clause: " + cond.getOpear());
         }
     }
 
-    private String expr(String name, String operator, Object value) {
-        return String.join(" ", PARAMS + name, operator, value.toString());
+    private String expr(String name, String operator, Object value, Map<String, Object> params) {
+        String paramName = VALUE_PARAM_PREFIX + params.size();
+        params.put(paramName, value);
+        return String.join(" ", PARAMS + name, operator, PARAMS + paramName);
     }
 
 }
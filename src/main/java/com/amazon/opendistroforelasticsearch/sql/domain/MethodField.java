@@ -18,6 +18,7 @@ package com.amazon.opendistroforelasticsearch.sql.domain;
 import com.amazon.opendistroforelasticsearch.sql.utils.Util;
 import com.amazon.opendistroforelasticsearch.sql.parser.NestedType;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,7 @@ import java.util.Map;
 public class MethodField extends Field {
 	private List<KVValue> params = null;
 	private String option;
+	private Map<String, Object> scriptParams = Collections.emptyMap();
 
 	public MethodField(String name, List<KVValue> params, String option, String alias) {
 		super(name, alias);
@@ -76,6 +78,17 @@ public class MethodField extends Field {
 		this.option = option;
 	}
 
+    /**
+     * Params passed to the script generated for this field, ex. literals taken out of painless source.
+     */
+    public Map<String, Object> getScriptParams() {
+        return scriptParams;
+    }
+
+    public void setScriptParams(Map<String, Object> scriptParams) {
+        this.scriptParams = scriptParams;
+    }
+
     @Override
     public boolean isNested() {
         Map<String, Object> paramsAsMap = this.getParamsAsMap();
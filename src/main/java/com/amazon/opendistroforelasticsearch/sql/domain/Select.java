@@ -38,6 +38,8 @@ public class Select extends Query {
 	private List<Order> orderBys = new ArrayList<>();
 	private int offset;
 	private int rowCount = 200;
+    /** Whether row count is given by LIMIT explicitly rather than the default */
+    private boolean rowCountSpecified = false;
     private boolean containsSubQueries;
     private List<SubQueryExpression> subQueries;
 	public boolean isQuery = false;
@@ -58,6 +60,7 @@ public class Select extends Query {
 
 	public void setRowCount(int rowCount) {
 		this.rowCount = rowCount;
+		this.rowCountSpecified = true;
 	}
 
 	public void addGroupBy(Field field) {
@@ -95,6 +98,10 @@ public class Select extends Query {
 		return rowCount;
 	}
 
+    public boolean isRowCountSpecified() {
+        return rowCountSpecified;
+    }
+
 	public void addOrderBy(String nestedPath, String name, String type) {
 		if ("_score".equals(name)) {
 			isQuery = true;
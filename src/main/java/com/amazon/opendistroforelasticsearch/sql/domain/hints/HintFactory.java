@@ -90,6 +90,9 @@ public class HintFactory {
                 return new Hint(HintType.USE_SCROLL, new Object[]{50, 60000});
             }
         }
+        if (hintAsString.startsWith("! USE_DFS")) {
+            return new Hint(HintType.USE_DFS, null);
+        }
         if(hintAsString.startsWith("! IGNORE_UNAVAILABLE")){
             return new Hint(HintType.IGNORE_UNAVAILABLE,null);
         }
@@ -160,6 +163,10 @@ public class HintFactory {
             }
             return new Hint(HintType.MINUS_USE_TERMS_OPTIMIZATION, new Object[]{shouldLowerStringOnTerms});
         }
+        if (hintAsString.startsWith("! COMPOSITE_AGGREGATION")) {
+            Integer[] params = parseParamsAsInts(hintAsString, "! COMPOSITE_AGGREGATION");
+            return new Hint(HintType.COMPOSITE_AGGREGATION, params);
+        }
         if (hintAsString.startsWith("! COLLAPSE")) {
             String collapse = getParamFromHint(hintAsString, "! COLLAPSE");
             return new Hint(HintType.COLLAPSE, new String[]{collapse});
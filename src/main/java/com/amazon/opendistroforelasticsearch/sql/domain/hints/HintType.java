@@ -25,10 +25,12 @@ public enum HintType
     USE_NESTED_LOOPS,
     NL_MULTISEARCH_SIZE,
     USE_SCROLL,
+    USE_DFS,
     IGNORE_UNAVAILABLE,
     DOCS_WITH_AGGREGATION,
     ROUTINGS,
     SHARD_SIZE,
+    COMPOSITE_AGGREGATION,
     HIGHLIGHT,
     MINUS_FETCH_AND_RESULT_LIMITS,
     MINUS_USE_TERMS_OPTIMIZATION,
@@ -15,6 +15,7 @@
 
 package com.amazon.opendistroforelasticsearch.sql.esdomain;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
 import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -46,6 +47,7 @@ public class ESClient {
 
     private void multiSearchRetry(MultiSearchResponse.Item[] responses, MultiSearchRequest multiSearchRequest, List<Integer> indices, int retry) {
 
+        QueryCancellation.checkCancelled("multi-search");
         MultiSearchRequest multiSearchRequestRetry = new MultiSearchRequest();
         for (int i : indices) {
             multiSearchRequestRetry.add(multiSearchRequest.requests().get(i));
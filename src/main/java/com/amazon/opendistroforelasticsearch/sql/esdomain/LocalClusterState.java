@@ -22,22 +22,32 @@ import com.google.common.collect.ImmutableMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.compress.CompressedXContent;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -76,6 +86,16 @@ public class LocalClusterState {
      */
     private final Cache<Tuple<List<String>, List<String>>, IndexMappings> cache;
 
+    /**
+     * Interned field mappings keyed by mapping source content. Indices created from same template, ex. daily logs-*,
+     * have identical mapping which is decoded by sourceAsMap() only once and shared. Content key never goes stale
+     * so weak values are used to release it once no cached IndexMappings references it.
+     */
+    private final Cache<CompressedXContent, FieldMappings> fieldMappingsCache;
+
+    /** Callbacks to invalidate cache derived from mappings outside, ex. parsed query plans */
+    private final List<Runnable> cacheInvalidationCallbacks = new CopyOnWriteArrayList<>();
+
 
     public static synchronized LocalClusterState state() {
         if (INSTANCE == null) {
@@ -98,17 +118,56 @@ public class LocalClusterState {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Metadata in cluster state changed: {}", new IndexMappings(clusterService.state().metaData()));
                 }
-                cache.invalidateAll();
+                invalidateChangedIndices(event);
+                cacheInvalidationCallbacks.forEach(Runnable::run);
             }
         });
     }
 
+    /**
+     * Invalidate cached mappings of indices whose mapping changed or which are deleted. New index and template change
+     * are not relevant because cache key consists of concrete indices that resolved from index expression beforehand.
+     */
+    private void invalidateChangedIndices(ClusterChangedEvent event) {
+        MetaData previous = event.previousState().metaData();
+        MetaData current = event.state().metaData();
+
+        Set<String> changedIndices = new HashSet<>();
+        for (ObjectObjectCursor<String, IndexMetaData> index : previous.indices()) {
+            IndexMetaData currentIndex = current.index(index.key);
+            if (currentIndex != index.value && // Same instance is kept by ES if index metadata is unchanged
+                (currentIndex == null || !currentIndex.getMappings().equals(index.value.getMappings()))) {
+                changedIndices.add(index.key);
+            }
+        }
+
+        if (!changedIndices.isEmpty()) {
+            LOG.debug("Invalidate cached mappings for changed indices: {}", changedIndices);
+            List<Tuple<List<String>, List<String>>> keys = new ArrayList<>();
+            for (Tuple<List<String>, List<String>> key : cache.asMap().keySet()) {
+                if (key.v1().stream().anyMatch(changedIndices::contains)) {
+                    keys.add(key);
+                }
+            }
+            cache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Register callback to run once metadata in cluster state changed.
+     * @param callback  callback that invalidates cache depending on mappings
+     */
+    public void addCacheInvalidationCallback(Runnable callback) {
+        cacheInvalidationCallbacks.add(callback);
+    }
+
     public void setResolver(IndexNameExpressionResolver resolver) {
         this.resolver = resolver;
     }
 
     private LocalClusterState() {
         cache = CacheBuilder.newBuilder().maximumSize(100).build();
+        fieldMappingsCache = CacheBuilder.newBuilder().weakValues().build();
     }
 
     /** Get field mappings by index expressions. All types and fields are included in response. */
@@ -172,10 +231,20 @@ public class LocalClusterState {
                                        Function<String, Predicate<String>> fieldFilter) throws IOException {
         LOG.debug("Cache didn't help. Load and parse mapping in cluster state");
         return new IndexMappings(
-            state.metaData().findMappings(indices, types, fieldFilter)
+            state.metaData().findMappings(indices, types, fieldFilter),
+            this::internFieldMappings
         );
     }
 
+    /** Share FieldMappings among types with identical mapping source to avoid decoding and comparing it repeatedly */
+    private FieldMappings internFieldMappings(MappingMetaData mappingMetaData) {
+        try {
+            return fieldMappingsCache.get(mappingMetaData.source(), () -> new FieldMappings(mappingMetaData));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to parse mapping source: " + mappingMetaData.type(), e);
+        }
+    }
+
     private IndexMappings findMappingsInCache(ClusterState state, String[] indices, String[] types) throws ExecutionException {
         LOG.debug("Looking for mapping in cache: {}", cache.asMap());
         return cache.get(
@@ -259,11 +328,38 @@ public class LocalClusterState {
             this.indexMappings = buildMappings(mappings, TypeMappings::new);
         }
 
+        public IndexMappings(ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings,
+                             Function<MappingMetaData, FieldMappings> fieldMappingsFactory) {
+            this.indexMappings = buildMappings(mappings, typeMappings -> new TypeMappings(typeMappings, fieldMappingsFactory));
+        }
+
         @Override
         public Map<String, TypeMappings> data() {
             return indexMappings;
         }
 
+        /**
+         * Check if field can be fetched by docvalue_fields in all indices and types.
+         *
+         * @param path          full path of field
+         * @param docValueTypes field types accepted
+         * @return              true if field has doc values in every mapping and mapping is not empty
+         */
+        public boolean hasDocValues(String path, Set<String> docValueTypes) {
+            if (isEmpty()) {
+                return false;
+            }
+
+            for (TypeMappings typeMappings : allMappings()) {
+                for (FieldMappings fieldMappings : typeMappings.allMappings()) {
+                    if (!fieldMappings.hasDocValues(path, docValueTypes)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -300,6 +396,11 @@ public class LocalClusterState {
             typeMappings = buildMappings(mappings, FieldMappings::new);
         }
 
+        public TypeMappings(ImmutableOpenMap<String, MappingMetaData> mappings,
+                            Function<MappingMetaData, FieldMappings> fieldMappingsFactory) {
+            typeMappings = buildMappings(mappings, fieldMappingsFactory);
+        }
+
         @Override
         public Map<String, FieldMappings> data() {
             return typeMappings;
@@ -355,12 +456,48 @@ public class LocalClusterState {
     public static class FieldMappings implements Mappings<Map<String, Object>> {
 
         private static final String PROPERTIES = "properties";
+        private static final String FIELDS = "fields";
+        private static final String TYPE = "type";
+        private static final String DOC_VALUES = "doc_values";
+        private static final String NORMALIZER = "normalizer";
+        private static final String IGNORE_ABOVE = "ignore_above";
 
         /** Mapping from field name to its type */
         private final Map<String, Object> fieldMappings;
 
+        /** Column catalog precomputed from mapping: full path of all leaf fields (including multi-fields) to type */
+        private final Map<String, String> fieldTypes;
+
+        /** Path index precomputed from mapping: full path of all fields (including object and nested) to its mapping */
+        private final Map<String, Map<String, Object>> fieldIndex;
+
+        /** Content hash precomputed from mapping so that identical mapping check is mostly a hash comparison */
+        private final int fingerprint;
+
         public FieldMappings(MappingMetaData mappings) {
             fieldMappings = mappings.sourceAsMap();
+
+            Map<String, String> types = new LinkedHashMap<>();
+            Map<String, Map<String, Object>> index = new HashMap<>();
+            flatten("", fieldMappings, types, index);
+            fieldTypes = Collections.unmodifiableMap(types);
+            fieldIndex = Collections.unmodifiableMap(index);
+            fingerprint = fieldMappings.hashCode();
+        }
+
+        public int fingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Get flat column catalog which is equivalent to what GetFieldMappings returns for all fields, ex.
+         * { 'age': 'integer', 'name': 'text', 'name.keyword': 'keyword', 'comment.data': 'text' }.
+         * Object and nested field itself is excluded the same way as GetFieldMappings does.
+         *
+         * @return  mapping from full path of field to its type in original order of mapping
+         */
+        public Map<String, String> fieldTypes() {
+            return fieldTypes;
         }
 
         @Override
@@ -368,19 +505,37 @@ public class LocalClusterState {
             return mapping(path) != null;
         }
 
-        /** Different from default implementation that search mapping for path is required */
+        /** Different from default implementation that full path of field is looked up in flat path index */
         @Override
         public Map<String, Object> mapping(String path) {
-            Map<String, Object> mapping = fieldMappings;
-            for (String name : path.split("\\.")) {
-                if (mapping == null || !mapping.containsKey(PROPERTIES)) {
-                    return null;
-                }
+            return fieldIndex.get(path);
+        }
+
+        /**
+         * Field has doc values if its type is one of the types given, doc values is not disabled and value
+         * is not normalized. Keyword with ignore_above is excluded because value longer than that has no doc values.
+         * Field inside nested field is excluded because its doc values are not in root document.
+         */
+        public boolean hasDocValues(String path, Set<String> docValueTypes) {
+            String type = fieldTypes.get(path);
+            if (type == null || !docValueTypes.contains(type)) {
+                return false;
+            }
+
+            Map<String, Object> mapping = mapping(path);
+            if (mapping != null
+                && ("false".equals(String.valueOf(mapping.get(DOC_VALUES)))
+                    || mapping.containsKey(NORMALIZER) || mapping.containsKey(IGNORE_ABOVE))) {
+                return false;
+            }
 
-                mapping = (Map<String, Object>)
-                    ((Map<String, Object>) mapping.get(PROPERTIES)).get(name);
+            for (int i = path.indexOf('.'); i > 0; i = path.indexOf('.', i + 1)) {
+                Map<String, Object> parent = mapping(path.substring(0, i));
+                if (parent != null && "nested".equals(parent.get(TYPE))) {
+                    return false;
+                }
             }
-            return mapping;
+            return true;
         }
 
         @Override
@@ -394,12 +549,13 @@ public class LocalClusterState {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             FieldMappings that = (FieldMappings) o;
-            return Objects.equals(fieldMappings, that.fieldMappings);
+            // Deep comparison only happens for mappings not interned but with same fingerprint
+            return fingerprint == that.fingerprint && Objects.equals(fieldMappings, that.fieldMappings);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(fieldMappings);
+            return fingerprint;
         }
 
         @Override
@@ -407,6 +563,37 @@ public class LocalClusterState {
             return "FieldMappings" + new JSONObject(fieldMappings).toString(2);
         }
 
+        private static void flatten(String prefix, Map<String, Object> mapping,
+                                    Map<String, String> fieldTypes, Map<String, Map<String, Object>> fieldIndex) {
+            Map<String, Object> properties = (Map<String, Object>) mapping.get(PROPERTIES);
+            if (properties == null) {
+                return;
+            }
+
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                String path = prefix + property.getKey();
+                Map<String, Object> fieldMapping = (Map<String, Object>) property.getValue();
+                fieldIndex.put(path, fieldMapping);
+
+                String type = (String) fieldMapping.get(TYPE);
+                if (type != null && !"object".equals(type) && !"nested".equals(type)) {
+                    fieldTypes.put(path, type);
+                }
+
+                Map<String, Object> multiFields = (Map<String, Object>) fieldMapping.get(FIELDS);
+                if (multiFields != null) {
+                    for (Map.Entry<String, Object> multiField : multiFields.entrySet()) {
+                        String multiFieldType = (String) ((Map<String, Object>) multiField.getValue()).get(TYPE);
+                        if (multiFieldType != null) {
+                            fieldTypes.put(path + "." + multiField.getKey(), multiFieldType);
+                        }
+                    }
+                }
+
+                flatten(path + ".", fieldMapping, fieldTypes, fieldIndex);
+            }
+        }
+
     }
 
     /** Convert ES ImmutableOpenMap<String, T> to JDK Map<String, U> by applying function: U func(T) */
@@ -17,6 +17,7 @@ package com.amazon.opendistroforelasticsearch.sql.executor;
 
 import com.amazon.opendistroforelasticsearch.sql.executor.csv.CSVResultRestExecutor;
 import com.amazon.opendistroforelasticsearch.sql.executor.format.PrettyFormatRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.join.ESJoinQueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQueryAction;
@@ -35,7 +36,7 @@ public class ActionRequestRestExecutorFactory {
      * @param queryAction query action
      * @return          executor
      */
-    public static RestExecutor createExecutor(String format, QueryAction queryAction) {
+    public static AsyncRestExecutor createExecutor(String format, QueryAction queryAction) {
         if (format == null || format.equals("")) {
             return new AsyncRestExecutor(
                 new ElasticDefaultRestExecutor(queryAction),
@@ -44,16 +45,35 @@ public class ActionRequestRestExecutorFactory {
         }
 
         if (format.equalsIgnoreCase("csv")) {
+            allowDocValueProjection(queryAction);
             return new AsyncRestExecutor(new CSVResultRestExecutor());
         }
 
         if (Stream.of("jdbc", "table", "raw").anyMatch(format::equalsIgnoreCase)) {
+            allowDocValueProjection(queryAction);
             return new AsyncRestExecutor(new PrettyFormatRestExecutor(format));
         }
 
         throw new IllegalArgumentException("Failed to create executor due to unknown response format: " + format);
     }
 
+    /**
+     * Create executor for EXPLAIN ANALYZE which runs query plan in profile mode in sql-worker thread pool.
+     *
+     * @param queryAction query action
+     * @return          executor
+     */
+    public static AsyncRestExecutor createAnalyzeExecutor(QueryAction queryAction) {
+        return new AsyncRestExecutor(new ExplainAnalyzeRestExecutor(queryAction));
+    }
+
+    /** Formatted response reads hit fields as well as source, so narrow select is able to skip _source */
+    private static void allowDocValueProjection(QueryAction queryAction) {
+        if (queryAction instanceof DefaultQueryAction) {
+            ((DefaultQueryAction) queryAction).setDocValueProjectionAllowed(true);
+        }
+    }
+
     private static boolean isJoin(QueryAction queryAction) {
         return queryAction instanceof ESJoinQueryAction;
     }
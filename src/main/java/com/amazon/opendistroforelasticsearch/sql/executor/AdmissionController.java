@@ -0,0 +1,300 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.domain.hints.HintType;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.join.ESJoinQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQueryAction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Admission control in front of sql-worker thread pools. Query is classified as light or heavy and each class
+ * has its own thread pool and bounded waiting queue, so that a few heavy joins are not able to starve cheap
+ * single index queries. Waiting queries are queued per user and dispatched round robin among users when
+ * a worker is free. Query beyond the queue bound is rejected immediately with {@link EsRejectedExecutionException}
+ * which is reported as 429 (Too Many Requests).
+ */
+public class AdmissionController {
+
+    /** Row count beyond which single index query is treated as heavy, because it is normally served by scroll */
+    public static final int HEAVY_ROW_COUNT = 10000;
+
+    /** Max percentage of waiting queue of a class that one user is allowed to occupy */
+    public static final int MAX_USER_QUEUE_PERCENT = 50;
+
+    public enum QueryClass {
+        LIGHT(AsyncRestExecutor.SQL_WORKER_THREAD_POOL_NAME, 1, 1000),
+        HEAVY(AsyncRestExecutor.SQL_HEAVY_WORKER_THREAD_POOL_NAME, 4, 100);
+
+        /** Name of thread pool dedicated to this class */
+        private final String threadPoolName;
+
+        /** Number of processors per worker thread */
+        private final int processorsPerThread;
+
+        private final int queueSize;
+
+        QueryClass(String threadPoolName, int processorsPerThread, int queueSize) {
+            this.threadPoolName = threadPoolName;
+            this.processorsPerThread = processorsPerThread;
+            this.queueSize = queueSize;
+        }
+
+        public String threadPoolName() {
+            return threadPoolName;
+        }
+
+        public int threads(int processors) {
+            return Math.max(1, processors / processorsPerThread);
+        }
+
+        public int queueSize() {
+            return queueSize;
+        }
+    }
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /** Singleton instance */
+    private static AdmissionController INSTANCE;
+
+    private final Map<QueryClass, ClassQueue> queues = new EnumMap<>(QueryClass.class);
+
+    public static synchronized AdmissionController controller() {
+        if (INSTANCE == null) {
+            INSTANCE = new AdmissionController(Runtime.getRuntime().availableProcessors());
+        }
+        return INSTANCE;
+    }
+
+    /** Give plugin and testing code a chance to inject an instance sized to the processors configured */
+    public static synchronized void controller(AdmissionController instance) {
+        INSTANCE = instance;
+    }
+
+    public AdmissionController(int processors) {
+        for (QueryClass queryClass : QueryClass.values()) {
+            queues.put(queryClass, new ClassQueue(queryClass.threads(processors), queryClass.queueSize()));
+        }
+    }
+
+    /**
+     * Classify query action. Join, union/minus and large single index query (scroll hint or big LIMIT)
+     * are heavy. Others are light.
+     */
+    public static QueryClass classify(QueryAction queryAction) {
+        if (queryAction instanceof ESJoinQueryAction || queryAction instanceof MultiQueryAction) {
+            return QueryClass.HEAVY;
+        }
+        if (queryAction instanceof DefaultQueryAction && !((DefaultQueryAction) queryAction).isCursorQuery()) {
+            Select select = ((DefaultQueryAction) queryAction).getSelect();
+            boolean isScroll = select.getHints().stream().anyMatch(hint -> hint.getType() == HintType.USE_SCROLL);
+            if (isScroll || select.getRowCount() > HEAVY_ROW_COUNT) {
+                return QueryClass.HEAVY;
+            }
+        }
+        if (queryAction instanceof AggregationQueryAction) {
+            // Composite aggregation without cursor pages through all groups up to LIMIT in a single request
+            AggregationQueryAction aggQueryAction = (AggregationQueryAction) queryAction;
+            if (aggQueryAction.isCompositeQuery() && !aggQueryAction.isCursorQuery()
+                    && ((Select) aggQueryAction.getQueryStatement()).getRowCount() > HEAVY_ROW_COUNT) {
+                return QueryClass.HEAVY;
+            }
+        }
+        return QueryClass.LIGHT;
+    }
+
+    /**
+     * Run the task in thread pool of the query class if a worker is free, otherwise queue it for the user.
+     * Thread context of the caller, ex. authenticated user, is captured now and restored when the task runs.
+     *
+     * @param threadPool    ES thread pool
+     * @param queryClass    class of query
+     * @param user          user who submits the query
+     * @param task          query execution
+     * @param onFailure     called if the task is queued but failed to be dispatched to thread pool later
+     * @throws EsRejectedExecutionException     if waiting queue of the class or the user is full
+     */
+    public void submit(ThreadPool threadPool, QueryClass queryClass, String user,
+                       Runnable task, Consumer<Exception> onFailure) {
+        queues.get(queryClass).submit(threadPool, queryClass, user, task, onFailure);
+    }
+
+    /** Number of queries running in the class */
+    public int running(QueryClass queryClass) {
+        return queues.get(queryClass).running();
+    }
+
+    /** Number of queries waiting in the class */
+    public int waiting(QueryClass queryClass) {
+        return queues.get(queryClass).waiting();
+    }
+
+    /**
+     * Bounded concurrency and per user waiting queues of a query class.
+     */
+    private static class ClassQueue {
+
+        private final int maxRunning;
+        private final int maxWaiting;
+        private final int maxWaitingPerUser;
+
+        private int running;
+        private int waiting;
+
+        /** Waiting tasks by user in round robin order */
+        private final LinkedHashMap<String, Deque<Waiting>> waitingByUser = new LinkedHashMap<>();
+
+        ClassQueue(int maxRunning, int maxWaiting) {
+            this.maxRunning = maxRunning;
+            this.maxWaiting = maxWaiting;
+            this.maxWaitingPerUser = Math.max(1, maxWaiting * MAX_USER_QUEUE_PERCENT / 100);
+        }
+
+        void submit(ThreadPool threadPool, QueryClass queryClass, String user,
+                    Runnable task, Consumer<Exception> onFailure) {
+            Runnable worker = threadPool.getThreadContext().preserveContext(() -> {
+                try {
+                    task.run();
+                } finally {
+                    next(threadPool, queryClass);
+                }
+            });
+
+            synchronized (this) {
+                if (running >= maxRunning) {
+                    enqueue(queryClass, user, new Waiting(worker, onFailure));
+                    return;
+                }
+                running++;
+            }
+
+            try {
+                dispatch(threadPool, queryClass, worker);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+        }
+
+        private void enqueue(QueryClass queryClass, String user, Waiting waitingTask) {
+            Deque<Waiting> userQueue = waitingByUser.get(user);
+            int userWaiting = (userQueue == null) ? 0 : userQueue.size();
+            if (waiting >= maxWaiting || userWaiting >= maxWaitingPerUser) {
+                throw new EsRejectedExecutionException(String.format(
+                    "Too many %s queries running or waiting. Waiting %d (max %d), waiting of current user %d (max %d)",
+                    queryClass.name().toLowerCase(), waiting, maxWaiting, userWaiting, maxWaitingPerUser));
+            }
+            if (userQueue == null) {
+                userQueue = new ArrayDeque<>();
+                waitingByUser.put(user, userQueue);
+            }
+            userQueue.offer(waitingTask);
+            waiting++;
+        }
+
+        /**
+         * Hand worker slot over to next waiting query in round robin order of users, or release the slot.
+         * Waiting query failed to dispatch is reported to its own failure callback because the caller
+         * has returned long before, and the slot is handed over to the one after.
+         */
+        private void next(ThreadPool threadPool, QueryClass queryClass) {
+            while (true) {
+                Waiting waitingTask;
+                synchronized (this) {
+                    waitingTask = pollRoundRobin();
+                    if (waitingTask == null) {
+                        running--;
+                        return;
+                    }
+                }
+
+                try {
+                    dispatch(threadPool, queryClass, waitingTask.worker);
+                    return;
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to dispatch waiting {} query: {}", queryClass, e.getMessage());
+                    notifyFailure(waitingTask, e);
+                }
+            }
+        }
+
+        private void notifyFailure(Waiting waitingTask, Exception e) {
+            try {
+                waitingTask.onFailure.accept(e);
+            } catch (RuntimeException ex) {
+                LOG.warn("Failed to notify failure of waiting query", ex);
+            }
+        }
+
+        private Waiting pollRoundRobin() {
+            Iterator<Map.Entry<String, Deque<Waiting>>> it = waitingByUser.entrySet().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+
+            Map.Entry<String, Deque<Waiting>> first = it.next();
+            Waiting waitingTask = first.getValue().poll();
+            it.remove();
+            if (!first.getValue().isEmpty()) {
+                waitingByUser.put(first.getKey(), first.getValue()); // Move user to the end
+            }
+            waiting--;
+            return waitingTask;
+        }
+
+        private void dispatch(ThreadPool threadPool, QueryClass queryClass, Runnable worker) {
+            threadPool.executor(queryClass.threadPoolName()).execute(worker);
+        }
+
+        synchronized int running() {
+            return running;
+        }
+
+        synchronized int waiting() {
+            return waiting;
+        }
+    }
+
+    /** Queued task along with its callback on failure */
+    private static class Waiting {
+        private final Runnable worker;
+        private final Consumer<Exception> onFailure;
+
+        Waiting(Runnable worker, Consumer<Exception> onFailure) {
+            this.worker = worker;
+            this.onFailure = onFailure;
+        }
+    }
+
+}
@@ -16,19 +16,30 @@
 package com.amazon.opendistroforelasticsearch.sql.executor;
 
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTaskManager;
 import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.transport.Transports;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import static org.elasticsearch.rest.RestStatus.INTERNAL_SERVER_ERROR;
@@ -41,6 +52,12 @@ public class AsyncRestExecutor implements RestExecutor {
     /** Custom thread pool name managed by ES */
     public static final String SQL_WORKER_THREAD_POOL_NAME = "sql-worker";
 
+    /** Custom thread pool name for heavy queries, ex. join, see {@link AdmissionController} */
+    public static final String SQL_HEAVY_WORKER_THREAD_POOL_NAME = "sql-worker-heavy";
+
+    /** Transient header put by security plugin for authenticated user */
+    private static final String SECURITY_USER_TRANSIENT = "_opendistro_security_user";
+
     private static final Logger LOG = LogManager.getLogger();
 
     /** Treat all actions as blocking which means async all actions, ex. execute() in csv executor or pretty format executor */
@@ -76,14 +93,47 @@ public class AsyncRestExecutor implements RestExecutor {
                 LOG.debug("Continue running query action [{}] for executor [{}] in current thread [{}]",
                     name(executor), name(queryAction), Thread.currentThread().getName());
             }
-            executor.execute(client, params, queryAction, channel);
+            runAsTask(queryAction, () -> {
+                executor.execute(client, params, queryAction, channel);
+                return null;
+            });
         }
     }
 
     @Override
     public String execute(Client client, Map<String, String> params, QueryAction queryAction) throws Exception {
         // Result is always required and no easy way to async it here.
-        return executor.execute(client, params, queryAction);
+        return runAsTask(queryAction, () -> executor.execute(client, params, queryAction));
+    }
+
+    /**
+     * Submit query action to run in thread pool in background for asynchronous query API. Query execution checks
+     * cancellation flag given cooperatively and result is delivered to the listener.
+     *
+     * @param client        ES client
+     * @param params        request params
+     * @param queryAction   query action
+     * @param isCancelled   cancellation flag of the query
+     * @param listener      listener for formatted result or failure
+     * @return              future of the task which is not run if cancelled while waiting for admission
+     * @throws EsRejectedExecutionException if rejected by admission control
+     */
+    public Future<?> submit(Client client, Map<String, String> params, QueryAction queryAction,
+                            BooleanSupplier isCancelled, ActionListener<String> listener) {
+        FutureTask<?> task = new FutureTask<>(() -> {
+            try {
+                listener.onResponse(runAsTask(queryAction, isCancelled,
+                                              () -> executor.execute(client, params, queryAction)));
+            } catch (Exception e) {
+                LOG.warn("[MCB] async query got an exception: {}", e.getMessage());
+                listener.onFailure(e);
+            } finally {
+                BackOffRetryStrategy.releaseMem(executor);
+            }
+        }, null);
+
+        admit(client, queryAction, user(client, null), task, listener::onFailure);
+        return task;
     }
 
     private boolean isBlockingAction(QueryAction queryAction) {
@@ -95,13 +145,17 @@ public class AsyncRestExecutor implements RestExecutor {
     }
 
     private void async(Client client, Map<String, String> params, QueryAction queryAction, RestChannel channel) {
-        // Run given task in thread pool asynchronously
-        client.threadPool().schedule(
-            new TimeValue(0L),
-            SQL_WORKER_THREAD_POOL_NAME,
-            () -> {
+        // Run given task in thread pool asynchronously once admitted
+        try {
+            admit(client, queryAction, user(client, channel), () -> {
                 try {
-                    executor.execute(client, params, queryAction, channel);
+                    runAsTask(queryAction, () -> {
+                        executor.execute(client, params, queryAction, channel);
+                        return null;
+                    });
+                } catch (TaskCancelledException e) {
+                    LOG.warn("[MCB] async task got cancelled: {}", e.getMessage());
+                    channel.sendResponse(new BytesRestResponse(RestStatus.BAD_REQUEST, e.getMessage()));
                 } catch (IOException | SqlParseException e) {
                     LOG.warn("[MCB] async task got an IO/SQL exception: {}", e.getMessage());
                     channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
@@ -114,7 +168,83 @@ public class AsyncRestExecutor implements RestExecutor {
                 } finally {
                     BackOffRetryStrategy.releaseMem(executor);
                 }
-            });
+            }, e -> reject(channel, e));
+        } catch (EsRejectedExecutionException e) {
+            reject(channel, e);
+        }
+    }
+
+    /** Report query rejected by admission control, or failed to dispatch after waiting in queue */
+    private void reject(RestChannel channel, Exception e) {
+        LOG.warn("Query rejected by admission control: {}", e.getMessage());
+        SqlStats.stats().recordFailure(e);
+        RestStatus status = (e instanceof EsRejectedExecutionException) ? RestStatus.TOO_MANY_REQUESTS : INTERNAL_SERVER_ERROR;
+        channel.sendResponse(new BytesRestResponse(status, String.valueOf(e.getMessage())));
+    }
+
+    private void admit(Client client, QueryAction queryAction, String user,
+                       Runnable task, Consumer<Exception> onFailure) {
+        AdmissionController.QueryClass queryClass = AdmissionController.classify(queryAction);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Admitting {} query action [{}] of user [{}]", queryClass, name(queryAction), user);
+        }
+        AdmissionController.controller().submit(client.threadPool(), queryClass, user, task, onFailure);
+    }
+
+    /** User for fair queueing, which is authenticated user if security enabled or client host otherwise */
+    private String user(Client client, RestChannel channel) {
+        Object user = client.threadPool().getThreadContext().getTransient(SECURITY_USER_TRANSIENT);
+        if (user != null) {
+            return user.toString();
+        }
+
+        if (channel != null && channel.request().getRemoteAddress() instanceof InetSocketAddress) {
+            return ((InetSocketAddress) channel.request().getRemoteAddress()).getHostString();
+        }
+        return "";
+    }
+
+    /** Run query action in current thread as a task visible and cancellable by tasks API */
+    private <T> T runAsTask(QueryAction queryAction, CheckedSupplier<T, Exception> action) throws Exception {
+        return runAsTask(queryAction, () -> false, action);
+    }
+
+    /**
+     * Run query action as a task along with its profile bound to current thread until execution completes.
+     * Request stats and slow query log are recorded once completed, or once response is sent if the executor
+     * defers completion by {@link QueryCompletion#defer}.
+     */
+    private <T> T runAsTask(QueryAction queryAction, BooleanSupplier isCancelled,
+                            CheckedSupplier<T, Exception> action) throws Exception {
+        long start = System.nanoTime();
+        QueryProfile.bind(queryAction.getProfile());
+        QueryProfile profile = QueryProfile.current();
+        QueryCompletion completion = new QueryCompletion(profile, failure -> {
+            long tookMillis = (queryAction.getProfile() != null) ? profile.getTookMillis()
+                                                                 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            SqlStats.stats().recordRequest(queryAction, tookMillis, failure);
+            profile.finish();
+        });
+
+        Exception failure = null;
+        QueryCompletion.bind(completion);
+        try {
+            return SqlTaskManager.manager().execute(description(queryAction), isCancelled, action);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            QueryCompletion.unbind();
+            if (!completion.isDeferred() || failure != null) {
+                completion.complete(failure);
+            }
+            QueryProfile.unbind();
+        }
+    }
+
+    private String description(QueryAction queryAction) {
+        SqlRequest sqlRequest = queryAction.getSqlRequest();
+        return (sqlRequest == null) ? name(queryAction) : "sql=" + sqlRequest.getSql();
     }
 
     private String name(Object object) {
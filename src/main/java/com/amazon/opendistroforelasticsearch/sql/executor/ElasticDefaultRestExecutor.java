@@ -30,6 +30,7 @@ import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.index.reindex.BulkIndexByScrollResponseContentListener;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.rest.BytesRestResponse;
@@ -55,7 +56,7 @@ public class ElasticDefaultRestExecutor implements RestExecutor {
 
     public ElasticDefaultRestExecutor(QueryAction queryAction) {
         // Put explain() here to make it run in NIO thread
-        try {
+        try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.EXPLAIN)) {
             this.requestBuilder = queryAction.explain();
         } catch (SqlParseException e) {
             throw new IllegalStateException("Failed to explain query action", e);
@@ -78,13 +79,15 @@ public class ElasticDefaultRestExecutor implements RestExecutor {
             executor.run();
             sendDefaultResponse(executor.getHits(), channel);
         } else if (request instanceof SearchRequest) {
-            client.search((SearchRequest) request, new RestStatusToXContentListener<>(channel));
+            client.search((SearchRequest) request, QueryCompletion.defer(new RestStatusToXContentListener<>(channel)));
         } else if (request instanceof DeleteByQueryRequest) {
-            requestBuilder.getBuilder().execute(new BulkIndexByScrollResponseContentListener(channel, Maps.newHashMap()));
+            requestBuilder.getBuilder().execute(QueryCompletion.defer(
+                new BulkIndexByScrollResponseContentListener(channel, Maps.newHashMap())));
         } else if (request instanceof GetIndexRequest) {
-            requestBuilder.getBuilder().execute(new GetIndexRequestRestListener(channel, (GetIndexRequest) request));
+            requestBuilder.getBuilder().execute(QueryCompletion.defer(
+                new GetIndexRequestRestListener(channel, (GetIndexRequest) request)));
         } else if (request instanceof SearchScrollRequest) {
-            client.searchScroll((SearchScrollRequest) request, new RestStatusToXContentListener<>(channel));
+            client.searchScroll((SearchScrollRequest) request, QueryCompletion.defer(new RestStatusToXContentListener<>(channel)));
         } else {
             throw new Exception(String.format("Unsupported ActionRequest provided: %s", request.getClass().getName()));
         }
@@ -15,8 +15,11 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor;
 
+import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.search.SearchHit;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -43,4 +46,43 @@ public class ElasticResultHandler {
         return fieldsMap.get(name);
     }
 
+    /**
+     * Get source of hit as map. If source is not fetched because fields are projected by docvalue_fields,
+     * build the same map from hit fields by putting value to its path, ex. 'a.b' to {'a': {'b': value}}.
+     * Values of multi-valued field are sorted (and deduplicated for keyword) as returned by doc values.
+     */
+    public static Map<String, Object> getSourceOrFieldsAsMap(SearchHit hit) {
+        Map<String, Object> source = hit.getSourceAsMap();
+        if (source != null) {
+            return source;
+        }
+
+        Map<String, Object> doc = new HashMap<>();
+        for (DocumentField field : hit.getFields().values()) {
+            List<Object> values = field.getValues();
+            if (values.isEmpty()) {
+                continue;
+            }
+            putInPath(doc, field.getName(), values.size() == 1 ? values.get(0) : values);
+        }
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putInPath(Map<String, Object> doc, String name, Object value) {
+        String[] path = name.split("\\.");
+        Map<String, Object> currentObject = doc;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object child = currentObject.get(path[i]);
+            if (child == null) {
+                child = new HashMap<String, Object>();
+                currentObject.put(path[i], child);
+            } else if (!(child instanceof Map)) {
+                return; // Multi-field of a selected leaf field, ex. 'city.raw' of 'city', which is absent in source too
+            }
+            currentObject = (Map<String, Object>) child;
+        }
+        currentObject.put(path[path.length - 1], value);
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.SqlElasticRequestBuilder;
+import com.amazon.opendistroforelasticsearch.sql.query.planner.HashJoinQueryPlanRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.Map;
+
+/**
+ * Executor for EXPLAIN ANALYZE which executes the query plan in profile mode and responds with
+ * explanation annotated by runtime statistics of each physical operator.
+ * For now only hash join in new query planner is supported.
+ */
+public class ExplainAnalyzeRestExecutor implements RestExecutor {
+
+    /** Parameter to include ES search profile of each search request */
+    public static final String SEARCH_PROFILE_PARAM = "search_profile";
+
+    /** Request builder of query planner */
+    private final HashJoinQueryPlanRequestBuilder requestBuilder;
+
+    public ExplainAnalyzeRestExecutor(QueryAction queryAction) {
+        // Put explain() here to make it run in NIO thread and fail fast for unsupported query
+        SqlElasticRequestBuilder builder;
+        try {
+            builder = queryAction.explain();
+        } catch (SqlParseException e) {
+            throw new IllegalStateException("Failed to explain query action", e);
+        }
+
+        if (!(builder instanceof HashJoinQueryPlanRequestBuilder)) {
+            throw new IllegalArgumentException(
+                "Explain analyze is only supported for hash join query executed by query planner");
+        }
+        this.requestBuilder = (HashJoinQueryPlanRequestBuilder) builder;
+    }
+
+    @Override
+    public void execute(Client client, Map<String, String> params, QueryAction queryAction,
+                        RestChannel channel) throws Exception {
+        channel.sendResponse(new BytesRestResponse(RestStatus.OK, execute(client, params, queryAction)));
+    }
+
+    @Override
+    public String execute(Client client, Map<String, String> params, QueryAction queryAction) {
+        boolean isSearchProfileEnabled = Boolean.parseBoolean(params.get(SEARCH_PROFILE_PARAM));
+        return requestBuilder.plan().analyze(isSearchProfileEnabled);
+    }
+
+}
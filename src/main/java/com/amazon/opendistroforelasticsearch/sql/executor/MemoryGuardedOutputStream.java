@@ -0,0 +1,77 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response output which reserves memory in the circuit breaker ledger page by page before writing,
+ * so that a large response is rejected before the next page is allocated rather than after the entire
+ * response has been materialized.
+ *
+ * Note that HTTP layer of ES 6.x has no chunked response API for plugins, so the response is still
+ * sent once all pages are written. Cursor pagination is the way to bound size of a single response.
+ */
+public class MemoryGuardedOutputStream extends OutputStream {
+
+    /** Size of each page reserved in memory ledger */
+    public static final int PAGE_SIZE = 1024 * 1024;
+
+    private final BytesStreamOutput output;
+
+    /** Key in memory ledger to release reserved memory once response sent */
+    private final Object executor;
+
+    private long reservedBytes;
+
+    public MemoryGuardedOutputStream(BytesStreamOutput output, Object executor) {
+        this.output = output;
+        this.executor = executor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        reserve(1);
+        output.writeByte((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        reserve(len);
+        output.writeBytes(b, off, len);
+    }
+
+    public long size() {
+        return output.size();
+    }
+
+    private void reserve(int len) {
+        long requiredBytes = output.size() + len;
+        while (reservedBytes < requiredBytes) {
+            if (!BackOffRetryStrategy.isHealthy(PAGE_SIZE, executor)) {
+                throw new IllegalStateException(String.format(
+                    "[%s] Memory could be insufficient when writing response page after %d bytes",
+                    executor.getClass().getSimpleName(), output.size()));
+            }
+            reservedBytes += PAGE_SIZE;
+        }
+    }
+
+}
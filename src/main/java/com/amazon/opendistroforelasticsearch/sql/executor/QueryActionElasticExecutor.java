@@ -15,11 +15,13 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CompositeAggregationExecutor;
 import com.amazon.opendistroforelasticsearch.sql.executor.join.ElasticJoinExecutor;
 import com.amazon.opendistroforelasticsearch.sql.executor.multi.MultiRequestExecutorFactory;
 import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregations;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
@@ -42,20 +44,32 @@ import java.io.IOException;
  */
 public class QueryActionElasticExecutor {
     public static SearchHits executeSearchAction(DefaultQueryAction searchQueryAction) throws SqlParseException {
+        long start = System.nanoTime();
         SqlElasticSearchRequestBuilder builder  =  searchQueryAction.explain();
-        return ((SearchResponse) builder.get()).getHits();
+        QueryProfile.current().lap(QueryProfile.Phase.EXPLAIN, start);
+        return search(builder).getHits();
     }
 
     public static SearchHits executeJoinSearchAction(Client client , ESJoinQueryAction joinQueryAction) throws IOException, SqlParseException {
+        long start = System.nanoTime();
         SqlElasticRequestBuilder joinRequestBuilder = joinQueryAction.explain();
+        QueryProfile.current().lap(QueryProfile.Phase.EXPLAIN, start);
         ElasticJoinExecutor executor = ElasticJoinExecutor.createJoinExecutor(client,joinRequestBuilder);
         executor.run();
         return executor.getHits();
     }
 
     public static Aggregations executeAggregationAction(AggregationQueryAction aggregationQueryAction) throws SqlParseException {
+        if (aggregationQueryAction.isCompositeQuery()) {
+            CompositeAggregationExecutor executor = new CompositeAggregationExecutor(aggregationQueryAction);
+            executor.run();
+            return executor.getAggregations();
+        }
+
+        long start = System.nanoTime();
         SqlElasticSearchRequestBuilder select =  aggregationQueryAction.explain();
-        return ((SearchResponse)select.get()).getAggregations();
+        QueryProfile.current().lap(QueryProfile.Phase.EXPLAIN, start);
+        return search(select).getAggregations();
     }
 
     public static ActionResponse executeShowQueryAction(ShowQueryAction showQueryAction) {
@@ -71,9 +85,13 @@ public class QueryActionElasticExecutor {
     }
 
     public static SearchHits executeMultiQueryAction(Client client, MultiQueryAction queryAction) throws SqlParseException, IOException {
+        long start = System.nanoTime();
         SqlElasticRequestBuilder multiRequestBuilder = queryAction.explain();
+        QueryProfile.current().lap(QueryProfile.Phase.EXPLAIN, start);
         ElasticHitsExecutor executor = MultiRequestExecutorFactory.createExecutor(client, (MultiQueryRequestBuilder) multiRequestBuilder);
-        executor.run();
+        try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.EXECUTE)) {
+            executor.run();
+        }
         return executor.getHits();
     }
 
@@ -95,5 +113,14 @@ public class QueryActionElasticExecutor {
         return null;
     }
 
+    private static SearchResponse search(SqlElasticSearchRequestBuilder builder) {
+        SearchResponse response;
+        try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.EXECUTE)) {
+            response = (SearchResponse) builder.get();
+        }
+        QueryProfile.current().addShardStats(response);
+        return response;
+    }
+
 
 }
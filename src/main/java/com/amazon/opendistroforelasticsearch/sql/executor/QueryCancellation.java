@@ -0,0 +1,63 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Cooperative cancellation of query running in current thread. Query execution is synchronous in a single
+ * sql-worker thread, so the cancellation flag is bound to that thread for the duration of execution and
+ * checked by long running loops, ex. batch prefetching in physical operators.
+ *
+ * Thread interrupt is not used here because it breaks the blocking ES calls required for cleanup,
+ * ex. clearing open scrolls when physical operators get closed.
+ */
+public class QueryCancellation {
+
+    private static final ThreadLocal<BooleanSupplier> CURRENT = new ThreadLocal<>();
+
+    private QueryCancellation() {
+    }
+
+    /**
+     * Bind cancellation flag of the query about to run in current thread.
+     * @param isCancelled   supplier of cancellation flag
+     */
+    public static void register(BooleanSupplier isCancelled) {
+        CURRENT.set(isCancelled);
+    }
+
+    /** Unbind once query execution completes in current thread */
+    public static void unregister() {
+        CURRENT.remove();
+    }
+
+    public static boolean isCancelled() {
+        BooleanSupplier isCancelled = CURRENT.get();
+        return isCancelled != null && isCancelled.getAsBoolean();
+    }
+
+    /**
+     * Exit current execution by exception if query is cancelled.
+     * @param where     description of where the check happens for troubleshooting
+     */
+    public static void checkCancelled(String where) {
+        if (isCancelled()) {
+            throw new IllegalStateException("Query was cancelled during " + where);
+        }
+    }
+
+}
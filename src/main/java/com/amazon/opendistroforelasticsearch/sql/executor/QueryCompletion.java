@@ -0,0 +1,107 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Completion of a query request which records request stats and finishes its profile for slow query log.
+ * It is bound to the thread executing the query and completed once execution returns. An executor that sends
+ * response asynchronously, ex. by dispatching search request with a REST listener, defers completion to the
+ * listener so that the time until response and any failure of the search are accounted for.
+ */
+public class QueryCompletion {
+
+    private static final ThreadLocal<QueryCompletion> CURRENT = new ThreadLocal<>();
+
+    /** Callback with failure or null if succeeded */
+    private final Consumer<Exception> onComplete;
+
+    private final QueryProfile profile;
+
+    private final AtomicBoolean isCompleted = new AtomicBoolean(false);
+
+    private volatile boolean isDeferred;
+
+    public QueryCompletion(QueryProfile profile, Consumer<Exception> onComplete) {
+        this.profile = profile;
+        this.onComplete = onComplete;
+    }
+
+    public static void bind(QueryCompletion completion) {
+        CURRENT.set(completion);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Defer completion of query running in current thread until the listener is notified.
+     *
+     * @param listener  listener which sends the response
+     * @return          listener wrapped, or the listener as is if no query is running in current thread
+     */
+    public static <T> ActionListener<T> defer(ActionListener<T> listener) {
+        QueryCompletion completion = CURRENT.get();
+        if (completion == null) {
+            return listener;
+        }
+        completion.isDeferred = true;
+
+        long start = System.nanoTime();
+        return new ActionListener<T>() {
+            @Override
+            public void onResponse(T response) {
+                completion.profile.lap(QueryProfile.Phase.EXECUTE, start);
+                if (response instanceof SearchResponse) {
+                    completion.profile.addShardStats((SearchResponse) response);
+                }
+                try {
+                    listener.onResponse(response);
+                } finally {
+                    completion.complete(null);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                completion.profile.lap(QueryProfile.Phase.EXECUTE, start);
+                try {
+                    listener.onFailure(e);
+                } finally {
+                    completion.complete(e);
+                }
+            }
+        };
+    }
+
+    public boolean isDeferred() {
+        return isDeferred;
+    }
+
+    /** Complete only once no matter it's deferred or not */
+    public void complete(Exception failure) {
+        if (isCompleted.compareAndSet(false, true)) {
+            onComplete.accept(failure);
+        }
+    }
+
+}
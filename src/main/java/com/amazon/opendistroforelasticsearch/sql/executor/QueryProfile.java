@@ -0,0 +1,188 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.join.MetaSearchResult;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lease.Releasable;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing breakdown of a single query request by phase, along with result size and shard stats, for slow query log.
+ * Profile is created when request arrives and bound to the thread currently working on the query, so that each
+ * phase is able to record its elapsed time without passing the profile around. It is handed over along with
+ * query action once execution is moved to sql-worker thread.
+ *
+ * Profile is not thread-safe, because the query is processed by only one thread at any time.
+ */
+public class QueryProfile {
+
+    /** Phase of query processing. PLAN_CACHE_HIT replaces PARSE and REWRITE if parsed query is found in cache. */
+    public enum Phase {
+        PLAN_CACHE_HIT, PARSE, REWRITE, EXPLAIN, EXECUTE, POST_PROCESS, FORMAT
+    }
+
+    /** Profile that records nothing if no query is being profiled in current thread */
+    private static final QueryProfile NONE = new QueryProfile(null) {
+        @Override
+        public long lap(Phase phase, long startNanos) {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void addShardStats(int total, int successful, int failed, long tookMillis) {
+        }
+    };
+
+    private static final ThreadLocal<QueryProfile> CURRENT = new ThreadLocal<>();
+
+    private final String sql;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+
+    private long rows = -1;
+    private long responseBytes = -1;
+
+    private int totalShards;
+    private int successfulShards;
+    private int failedShards;
+    private long shardTookMillis;
+
+    public QueryProfile(String sql) {
+        this.sql = sql;
+    }
+
+    /** Create profile for the query and bind it to current thread */
+    public static QueryProfile start(String sql) {
+        QueryProfile profile = new QueryProfile(sql);
+        CURRENT.set(profile);
+        return profile;
+    }
+
+    /** Profile bound to current thread, or a no-op profile if none */
+    public static QueryProfile current() {
+        QueryProfile profile = CURRENT.get();
+        return (profile == null) ? NONE : profile;
+    }
+
+    public static void bind(QueryProfile profile) {
+        if (profile == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(profile);
+        }
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Time a phase by try-with-resources block.
+     * @param phase     phase
+     * @return          releasable to stop timing on close
+     */
+    public Releasable time(Phase phase) {
+        long start = System.nanoTime();
+        return () -> lap(phase, start);
+    }
+
+    /**
+     * Add time elapsed since the start time to the phase. Time is accumulated if the phase occurs more than once.
+     * @param phase         phase
+     * @param startNanos    start time in nanos
+     * @return              current time in nanos as start time of next phase
+     */
+    public long lap(Phase phase, long startNanos) {
+        long now = System.nanoTime();
+        phaseNanos.merge(phase, now - startNanos, Long::sum);
+        return now;
+    }
+
+    public void addShardStats(SearchResponse response) {
+        addShardStats(response.getTotalShards(), response.getSuccessfulShards(),
+                      response.getFailedShards(), response.getTook().millis());
+    }
+
+    public void addShardStats(MetaSearchResult metaResults) {
+        addShardStats(metaResults.getTotalNumOfShards(), metaResults.getSuccessfulShards(),
+                      metaResults.getFailedShards(), metaResults.getTookImMilli());
+    }
+
+    public void addShardStats(int total, int successful, int failed, long tookMillis) {
+        totalShards += total;
+        successfulShards += successful;
+        failedShards += failed;
+        shardTookMillis += tookMillis;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public void setResponseBytes(long responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
+    /** Finish profiling and log it if slow */
+    public void finish() {
+        if (this != NONE) {
+            SlowQueryLog.log().onQueryFinished(this);
+        }
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getTookMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public long getPhaseMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos.getOrDefault(phase, 0L));
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    public int getSuccessfulShards() {
+        return successfulShards;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public long getShardTookMillis() {
+        return shardTookMillis;
+    }
+
+}
@@ -0,0 +1,333 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.index.shard.IndexingStats;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of formatted response of aggregation query. Dashboards normally re-run identical aggregation query
+ * every few seconds against slowly changing indices, which is served from this cache without hitting data nodes.
+ *
+ * Cache entry is keyed by the authenticated user, normalized SQL and response format parameters, and tagged with
+ * the generation of target indices known when it's cached. Generation is derived from refresh and indexing counters
+ * in index stats which are polled in background for indices of cached entries, so lookup never waits for a stats
+ * request. Entry is considered stale once any shard refreshed or any document indexed or deleted since then, which
+ * is detected within one poll interval. All entries are invalidated once mapping changes.
+ * Note that relative date math such as now() is only as fresh as the entry TTL.
+ */
+public class ResultCache {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /** Cache is optional and disabled by default */
+    public static final Setting<Boolean> ENABLED_SETTING = Setting.boolSetting(
+        "opendistro.sql.result_cache.enabled", false, Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    /** Thread context transient of authenticated user put by security plugin, including its backend roles */
+    public static final String SECURITY_USER_TRANSIENT = "_opendistro_security_user";
+
+    private static final String SECURITY_SETTING_PREFIX = "opendistro_security.";
+
+    private static final String SECURITY_DISABLED_SETTING = "opendistro_security.disabled";
+
+    /** Maximum size of formatted responses cached in bytes */
+    private static final long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+
+    /** Time to live of entry even if index is not changed */
+    private static final long DEFAULT_EXPIRE_SECONDS = 60;
+
+    /** Interval of polling index stats for generation of indices of cached entries */
+    private static final TimeValue GENERATION_POLL_INTERVAL = TimeValue.timeValueSeconds(1);
+
+    /** Generation of index not polled yet or failed to poll */
+    private static final String UNKNOWN_GENERATION = "";
+
+    /** Singleton instance */
+    private static ResultCache INSTANCE;
+
+    /** Thread-safe LRU cache from query key to formatted response */
+    private final Cache<String, Entry> cache;
+
+    /** Latest generation polled by comma separated index names in query */
+    private final Map<String, String> generations = new ConcurrentHashMap<>();
+
+    /** Number of entries found but stale due to index change */
+    private final AtomicLong staleCount = new AtomicLong();
+
+    private volatile boolean enabled;
+
+    /** Response depends on the user because of document and field level security if security plugin is enabled */
+    private volatile boolean securityEnabled;
+
+    public static synchronized ResultCache cache() {
+        if (INSTANCE == null) {
+            INSTANCE = new ResultCache(DEFAULT_MAX_BYTES, DEFAULT_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void cache(ResultCache instance) {
+        INSTANCE = instance;
+    }
+
+    public ResultCache(long maxBytes, long expireAfterWrite, TimeUnit unit) {
+        cache = CacheBuilder.newBuilder().
+                             maximumWeight(maxBytes).
+                             weigher((String key, Entry entry) -> key.length() + entry.content.length()).
+                             expireAfterWrite(expireAfterWrite, unit).
+                             recordStats().
+                             build();
+    }
+
+    /** Security plugin is enabled if it's configured on the node and not disabled explicitly */
+    public static boolean isSecurityEnabled(Settings settings) {
+        return !settings.getByPrefix(SECURITY_SETTING_PREFIX).isEmpty()
+            && !settings.getAsBoolean(SECURITY_DISABLED_SETTING, false);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidateAll();
+        }
+    }
+
+    public void setSecurityEnabled(boolean securityEnabled) {
+        this.securityEnabled = securityEnabled;
+    }
+
+    /**
+     * Poll generation of indices of cached entries periodically.
+     *
+     * @param client        ES client to fetch index stats
+     * @param threadPool    thread pool to schedule polling
+     */
+    public void start(Client client, ThreadPool threadPool) {
+        threadPool.scheduleWithFixedDelay(() -> {
+            if (enabled && cache.size() > 0) {
+                pollGenerations(client);
+            }
+        }, GENERATION_POLL_INTERVAL, ThreadPool.Names.GENERIC);
+    }
+
+    /**
+     * Build cache key for the query action if cacheable.
+     *
+     * @param client        ES client to read authenticated user from thread context
+     * @param queryAction   query action
+     * @param format        response format
+     * @param params        response format parameters
+     * @return              cache key or null if cache is disabled or query is not cacheable
+     */
+    public Key keyOf(Client client, QueryAction queryAction, String format, Map<String, String> params) {
+        if (!enabled || !(queryAction instanceof AggregationQueryAction)) {
+            return null;
+        }
+
+        SqlRequest sqlRequest = queryAction.getSqlRequest();
+        if (sqlRequest == null || sqlRequest.getSql() == null) {
+            return null;
+        }
+        // Each page of cursor pagination shares the same SQL
+        if (((AggregationQueryAction) queryAction).isCursorQuery()) {
+            return null;
+        }
+
+        String user = "";
+        if (securityEnabled) {
+            Object securityUser = client.threadPool().getThreadContext().getTransient(SECURITY_USER_TRANSIENT);
+            if (securityUser == null) {
+                LOG.debug("Skip result cache because authenticated user is unknown");
+                return null;
+            }
+            user = securityUser.toString();
+        }
+
+        String statement = user + "|" + QueryPlanCache.normalize(sqlRequest.getSql()) + "|" + format + "|"
+            + new TreeMap<>(params);
+        String indices = String.join(",", ((Select) queryAction.getQueryStatement()).getIndexArr());
+        return new Key(statement, indices);
+    }
+
+    /**
+     * Get formatted response cached for the key.
+     *
+     * @param key   cache key
+     * @return      formatted response or null if absent or stale
+     */
+    public BytesReference get(Key key) {
+        Entry entry = cache.getIfPresent(key.statement);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.generation.equals(generationOf(key.indices))) {
+            LOG.debug("Invalidate stale result due to index change: {}", key.statement);
+            staleCount.incrementAndGet();
+            cache.invalidate(key.statement);
+            return null;
+        }
+        return entry.content;
+    }
+
+    /**
+     * Put formatted response. Content is copied because the bytes output of REST channel is recycled.
+     *
+     * @param key       cache key
+     * @param content   formatted response
+     */
+    public void put(Key key, BytesReference content) {
+        cache.put(key.statement, new Entry(key.indices, generationOf(key.indices),
+                                           new BytesArray(BytesRef.deepCopyOf(content.toBytesRef()))));
+    }
+
+    /**
+     * Update generation of indices polled. Entries cached with different generation become stale.
+     *
+     * @param indices       comma separated index names in query
+     * @param generation    generation of the indices
+     */
+    public void updateGeneration(String indices, String generation) {
+        generations.put(indices, generation);
+    }
+
+    public void invalidateAll() {
+        LOG.debug("Invalidate all results in cache");
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /** Hit, miss and eviction counters */
+    public Map<String, Long> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("size", cache.size());
+        counters.put("hit_count", stats.hitCount() - staleCount.get());
+        counters.put("miss_count", stats.missCount() + staleCount.get());
+        counters.put("stale_count", staleCount.get());
+        counters.put("eviction_count", stats.evictionCount());
+        return counters;
+    }
+
+    private String generationOf(String indices) {
+        return generations.getOrDefault(indices, UNKNOWN_GENERATION);
+    }
+
+    /**
+     * Fetch index stats for indices of all cached entries asynchronously as the plugin itself rather than
+     * any user. Generation is forgotten if failed, ex. index deleted, which makes entries of it stale.
+     */
+    private void pollGenerations(Client client) {
+        Set<String> cachedIndices = cache.asMap().values().stream().
+                                          map(entry -> entry.indices).
+                                          collect(Collectors.toSet());
+        generations.keySet().retainAll(cachedIndices);
+
+        ThreadContext threadContext = client.threadPool().getThreadContext();
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            for (String indices : cachedIndices) {
+                client.admin().indices().prepareStats(indices.split(",")).
+                                         clear().setRefresh(true).setIndexing(true).
+                                         execute(ActionListener.wrap(
+                                             response -> updateGeneration(indices, generationOf(response)),
+                                             e -> {
+                                                 LOG.debug("Failed to poll index stats for " + indices, e);
+                                                 generations.remove(indices);
+                                             }
+                                         ));
+            }
+        }
+    }
+
+    /**
+     * Generation of indices which changes whenever any shard copy refreshed or any document indexed/deleted.
+     * Counters are summed up at index level so that the result is independent of order of shard responses.
+     */
+    private String generationOf(IndicesStatsResponse response) {
+        StringBuilder generation = new StringBuilder();
+        for (Map.Entry<String, IndexStats> index : new TreeMap<>(response.getIndices()).entrySet()) {
+            CommonStats stats = index.getValue().getTotal();
+            IndexingStats.Stats indexing = stats.getIndexing().getTotal();
+            generation.append(index.getKey()).
+                       append(':').append(stats.getRefresh().getTotal()).
+                       append('/').append(indexing.getIndexCount()).
+                       append('/').append(indexing.getDeleteCount()).
+                       append(';');
+        }
+        return generation.toString();
+    }
+
+    /**
+     * Cache key which consists of query statement and indices queried.
+     */
+    public static class Key {
+        private final String statement;
+        private final String indices;
+
+        public Key(String statement, String indices) {
+            this.statement = statement;
+            this.indices = indices;
+        }
+    }
+
+    private static class Entry {
+        private final String indices;
+        private final String generation;
+        private final BytesReference content;
+
+        Entry(String indices, String generation, BytesReference content) {
+            this.indices = indices;
+            this.generation = generation;
+            this.content = content;
+        }
+    }
+
+}
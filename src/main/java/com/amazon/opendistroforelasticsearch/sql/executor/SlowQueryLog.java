@@ -0,0 +1,166 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Slow query log which records timing breakdown of query taking longer than the threshold configured.
+ * Each entry carries a fingerprint of the query with literals stripped, so that similar queries with
+ * different literals can be aggregated together by log analysis.
+ */
+public class SlowQueryLog {
+
+    /** Threshold of slow query. Disabled by default with negative value, same as ES slow logs */
+    public static final Setting<TimeValue> THRESHOLD_SETTING = Setting.timeSetting(
+        "opendistro.sql.slowlog.threshold", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+        Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    private static final Logger SLOW_LOG = LogManager.getLogger("opendistro.sql.slowlog");
+
+    /** Consecutive placeholders in IN list or VALUES are collapsed into one */
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\?(\\s*,\\s*\\?)+\\)");
+
+    /** Singleton instance */
+    private static SlowQueryLog INSTANCE;
+
+    private volatile long thresholdMillis = -1;
+
+    public static synchronized SlowQueryLog log() {
+        if (INSTANCE == null) {
+            INSTANCE = new SlowQueryLog();
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void log(SlowQueryLog instance) {
+        INSTANCE = instance;
+    }
+
+    public void setThreshold(TimeValue threshold) {
+        this.thresholdMillis = threshold.millis();
+    }
+
+    public void onQueryFinished(QueryProfile profile) {
+        long tookMillis = profile.getTookMillis();
+        if (thresholdMillis < 0 || tookMillis < thresholdMillis || profile.getSql() == null) {
+            return;
+        }
+
+        String fingerprint = fingerprint(profile.getSql());
+        StringBuilder message = new StringBuilder();
+        message.append("took[").append(TimeValue.timeValueMillis(tookMillis)).append("], ").
+                append("took_millis[").append(tookMillis).append("], ").
+                append("fingerprint_id[").append(Integer.toHexString(fingerprint.hashCode())).append("], ");
+        for (QueryProfile.Phase phase : QueryProfile.Phase.values()) {
+            message.append(phase.name().toLowerCase(Locale.ROOT)).append("_millis[").
+                    append(profile.getPhaseMillis(phase)).append("], ");
+        }
+        message.append("rows[").append(profile.getRows()).append("], ").
+                append("response_bytes[").append(profile.getResponseBytes()).append("], ").
+                append("shards[total=").append(profile.getTotalShards()).
+                append(", successful=").append(profile.getSuccessfulShards()).
+                append(", failed=").append(profile.getFailedShards()).append("], ").
+                append("shard_took_millis[").append(profile.getShardTookMillis()).append("], ").
+                append("fingerprint[").append(fingerprint).append("], ").
+                append("sql[").append(profile.getSql()).append("]");
+        SLOW_LOG.warn(message.toString());
+    }
+
+    /**
+     * Fingerprint of SQL query by replacing string and numeric literals with placeholder and collapsing
+     * whitespaces and placeholder lists. Quoted identifiers by backtick are preserved.
+     *
+     * @param sql   SQL query
+     * @return      fingerprint
+     */
+    public static String fingerprint(String sql) {
+        StringBuilder fingerprint = new StringBuilder(sql.length());
+        boolean lastIsSpace = false;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                lastIsSpace = fingerprint.length() > 0;
+                i++;
+                continue;
+            }
+            if (lastIsSpace) {
+                fingerprint.append(' ');
+                lastIsSpace = false;
+            }
+
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                fingerprint.append('?');
+            } else if (c == '`') {
+                int end = skipQuoted(sql, i, c);
+                fingerprint.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(fingerprint)) {
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                fingerprint.append('?');
+            } else {
+                fingerprint.append(c);
+                i++;
+            }
+        }
+        return PLACEHOLDER_LIST.matcher(fingerprint).replaceAll("(?)");
+    }
+
+    /** Return index right after the closing quote */
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) { // Escaped by doubling quote
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+
+    private static boolean isIdentifierPart(StringBuilder fingerprint) {
+        if (fingerprint.length() == 0) {
+            return false;
+        }
+        char last = fingerprint.charAt(fingerprint.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '-' && isHyphenatedName(fingerprint);
+    }
+
+    /** Hyphen is part of index name, ex. logs-2019, rather than minus if directly following a letter */
+    private static boolean isHyphenatedName(StringBuilder fingerprint) {
+        return fingerprint.length() > 1 && Character.isLetter(fingerprint.charAt(fingerprint.length() - 2));
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.alibaba.druid.sql.ast.statement.SQLUnionOperator;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DeleteQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DescribeQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.ShowQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.join.ESHashJoinQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.join.ESNestedLoopsQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQueryAction;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.tasks.TaskCancelledException;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node level counters of SQL requests for capacity planning: request count and latency histogram by query type
+ * and failure count by cause. Memory and thread pool gauges are collected from their owners when stats requested.
+ */
+public class SqlStats {
+
+    public enum QueryType {
+        SEARCH, AGGREGATION, HASH_JOIN, NESTED_LOOPS_JOIN, UNION, MINUS, DELETE, SHOW, DESCRIBE, OTHER
+    }
+
+    public enum FailureCause {
+        /** Invalid or unsupported query */
+        CLIENT_ERROR,
+
+        /** Rejected by admission control or thread pool */
+        REJECTED,
+
+        /** Cancelled by user */
+        CANCELLED,
+
+        /** Memory circuit break, time out or other resource protection */
+        RESOURCE,
+
+        /** Failure from ES or plugin internal */
+        INTERNAL
+    }
+
+    /** Upper bounds (inclusive) of latency histogram buckets in millis. The last bucket is unbounded. */
+    private static final long[] LATENCY_BUCKETS = {10, 50, 100, 500, 1000, 5000, 10000, 60000};
+
+    /** Singleton instance */
+    private static SqlStats INSTANCE;
+
+    private final Map<QueryType, Latency> latencies = new EnumMap<>(QueryType.class);
+
+    private final Map<FailureCause, AtomicLong> failures = new EnumMap<>(FailureCause.class);
+
+    public static synchronized SqlStats stats() {
+        if (INSTANCE == null) {
+            INSTANCE = new SqlStats();
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void stats(SqlStats instance) {
+        INSTANCE = instance;
+    }
+
+    public SqlStats() {
+        for (QueryType type : QueryType.values()) {
+            latencies.put(type, new Latency());
+        }
+        for (FailureCause cause : FailureCause.values()) {
+            failures.put(cause, new AtomicLong());
+        }
+    }
+
+    /**
+     * Record a request completed, either succeeded or failed.
+     * @param queryAction   query action
+     * @param tookMillis    latency in millis
+     * @param failure       exception if failed, otherwise null
+     */
+    public void recordRequest(QueryAction queryAction, long tookMillis, Exception failure) {
+        Latency latency = latencies.get(typeOf(queryAction));
+        latency.record(tookMillis);
+        if (failure != null) {
+            latency.failed.incrementAndGet();
+            recordFailure(failure);
+        }
+    }
+
+    /** Record failure which happens either before query execution or is reported in response without thrown */
+    public void recordFailure(Exception failure) {
+        failures.get(causeOf(failure)).incrementAndGet();
+    }
+
+    /** Request count and latency histogram by query type, ex. {"search": {"count": 10, ...}} */
+    public Map<String, Object> requests() {
+        Map<String, Object> requests = new LinkedHashMap<>();
+        latencies.forEach((type, latency) -> requests.put(type.name().toLowerCase(), latency.toMap()));
+        return requests;
+    }
+
+    /** Failure count by cause */
+    public Map<String, Long> failures() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        failures.forEach((cause, count) -> counts.put(cause.name().toLowerCase(), count.get()));
+        return counts;
+    }
+
+    public static QueryType typeOf(QueryAction queryAction) {
+        if (queryAction instanceof DefaultQueryAction) {
+            return QueryType.SEARCH;
+        }
+        if (queryAction instanceof AggregationQueryAction) {
+            return QueryType.AGGREGATION;
+        }
+        if (queryAction instanceof ESHashJoinQueryAction) {
+            return QueryType.HASH_JOIN;
+        }
+        if (queryAction instanceof ESNestedLoopsQueryAction) {
+            return QueryType.NESTED_LOOPS_JOIN;
+        }
+        if (queryAction instanceof MultiQueryAction) {
+            SQLUnionOperator operator = ((MultiQueryAction) queryAction).getMultiQuerySelect().getOperation();
+            return operator == SQLUnionOperator.MINUS ? QueryType.MINUS : QueryType.UNION;
+        }
+        if (queryAction instanceof DeleteQueryAction) {
+            return QueryType.DELETE;
+        }
+        if (queryAction instanceof ShowQueryAction) {
+            return QueryType.SHOW;
+        }
+        if (queryAction instanceof DescribeQueryAction) {
+            return QueryType.DESCRIBE;
+        }
+        return QueryType.OTHER;
+    }
+
+    public static FailureCause causeOf(Exception failure) {
+        if (failure instanceof EsRejectedExecutionException) {
+            return FailureCause.REJECTED;
+        }
+        if (failure instanceof TaskCancelledException) {
+            return FailureCause.CANCELLED;
+        }
+        if (failure instanceof SqlParseException || failure instanceof SQLFeatureNotSupportedException
+                || failure instanceof IllegalArgumentException) {
+            return FailureCause.CLIENT_ERROR;
+        }
+        if (failure instanceof IllegalStateException) {
+            return FailureCause.RESOURCE;
+        }
+        return FailureCause.INTERNAL;
+    }
+
+    /**
+     * Lock-free latency histogram with fixed buckets.
+     */
+    private static class Latency {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong sumMillis = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+        void record(long tookMillis) {
+            count.incrementAndGet();
+            sumMillis.addAndGet(tookMillis);
+            buckets.incrementAndGet(bucketOf(tookMillis));
+        }
+
+        private int bucketOf(long tookMillis) {
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                if (tookMillis <= LATENCY_BUCKETS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BUCKETS.length;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                histogram.put("le_" + LATENCY_BUCKETS[i], buckets.get(i));
+            }
+            histogram.put("le_inf", buckets.get(LATENCY_BUCKETS.length));
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", count.get());
+            result.put("failed", failed.get());
+            result.put("latency_sum_millis", sumMillis.get());
+            result.put("latency_histogram_millis", histogram);
+            return result;
+        }
+    }
+
+}
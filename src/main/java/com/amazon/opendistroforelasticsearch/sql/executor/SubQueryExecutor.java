@@ -0,0 +1,306 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.parser.SubQueryExpression;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.google.common.collect.ImmutableSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Executor for sub-queries in WHERE, ex. IN (SELECT ...). All sub-queries of a query, including those on both sides
+ * of JOIN or UNION, are executed concurrently in rounds: each round sends next page request of all unfinished
+ * sub-queries before waiting for any response. Only returned field is fetched by docvalue if possible and all
+ * matches are paged through by scroll up to the max results configured rather than silently truncated.
+ * <p>
+ * Distinct values returned are inlined into a single terms query of outer query for IN sub-query. Both memory and
+ * request size on coordinating node are bounded by {@link #MAX_RESULTS_SETTING}, which is checked against total hits
+ * estimated on first page before collecting any more values.
+ * <p>
+ * Alternative strategies chosen by estimated cardinality are not used on purpose:
+ * <ol>
+ *  <li>Terms lookup: the document of values stored is fetched by ES with the identity of querying user, so it has
+ *  to live in an index readable and writable by every SQL user, which leaks values filtered by document level
+ *  security of one user to the others.</li>
+ *  <li>Semi-join by hash join in physical planner: the planner only executes JOIN of two tables with inner or
+ *  left join semantics, emitting one combined row per match. IN sub-query may appear anywhere in WHERE (under OR
+ *  or NOT), and outer query may be aggregation, DELETE or part of JOIN and UNION, all of which are executed by ES
+ *  rather than coordinating node. Rewriting only the simple case would change ordering, paging and duplicate
+ *  semantics of outer query depending on sub-query size, and the hash table of outer rows would still grow on
+ *  coordinating node.</li>
+ * </ol>
+ */
+public class SubQueryExecutor {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final int DEFAULT_MAX_RESULTS = 65536;
+
+    /** Max number of results a sub-query without LIMIT can return. Default to max terms count of terms query. */
+    public static final Setting<Integer> MAX_RESULTS_SETTING = Setting.intSetting(
+        "opendistro.sql.subquery.max_results", DEFAULT_MAX_RESULTS, 1,
+        Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    /** Page size of each scroll request */
+    private static final int PAGE_SIZE = 10000;
+
+    private static final TimeValue KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    /** Field types that have doc values enabled by default */
+    private static final Set<String> DOC_VALUE_TYPES = ImmutableSet.of(
+        "keyword", "long", "integer", "short", "byte", "double", "float", "half_float", "scaled_float",
+        "boolean", "ip", "date"
+    );
+
+    private static final String ID_FIELD = "_id";
+
+    /** Singleton instance */
+    private static SubQueryExecutor INSTANCE;
+
+    private volatile int maxResults = DEFAULT_MAX_RESULTS;
+
+    public static synchronized SubQueryExecutor executor() {
+        if (INSTANCE == null) {
+            INSTANCE = new SubQueryExecutor();
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void executor(SubQueryExecutor instance) {
+        INSTANCE = instance;
+    }
+
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Execute sub-queries concurrently and fill values returned into each sub-query expression.
+     * @param client        client connection
+     * @param subQueries    sub-queries
+     */
+    public void execute(Client client, List<SubQueryExpression> subQueries) throws SqlParseException {
+        List<SubQueryFetch> fetches = new ArrayList<>();
+        try {
+            for (SubQueryExpression subQuery : subQueries) {
+                fetches.add(new SubQueryFetch(client, subQuery, maxResults));
+            }
+
+            List<SubQueryFetch> running = fetches;
+            while (!running.isEmpty()) {
+                QueryCancellation.checkCancelled("sub-query execution");
+
+                List<ActionFuture<SearchResponse>> responses = new ArrayList<>();
+                for (SubQueryFetch fetch : running) {
+                    responses.add(fetch.fetchNextPage());
+                }
+
+                List<SubQueryFetch> unfinished = new ArrayList<>();
+                for (int i = 0; i < running.size(); i++) {
+                    if (running.get(i).onResponse(responses.get(i).actionGet())) {
+                        unfinished.add(running.get(i));
+                    }
+                }
+                running = unfinished;
+            }
+        } catch (ElasticsearchException e) {
+            throw new SqlParseException("could not execute SubQuery: " + e.getMessage());
+        } finally {
+            fetches.forEach(SubQueryFetch::close);
+        }
+
+        for (SubQueryFetch fetch : fetches) {
+            fetch.subQuery.setValues(fetch.values.toArray());
+        }
+    }
+
+    /**
+     * Fetch state of a single sub-query.
+     */
+    private static class SubQueryFetch {
+
+        private final Client client;
+
+        private final SubQueryExpression subQuery;
+
+        private final String returnField;
+
+        private final boolean isDocValue;
+
+        private final SearchRequestBuilder request;
+
+        /** Number of hits expected to return */
+        private final int limit;
+
+        /** Throw exception if more hits than limit because limit is not specified by LIMIT */
+        private final boolean isLimitExceededError;
+
+        /** Number of hits to skip by OFFSET which is not allowed in scroll context */
+        private int toSkip;
+
+        private int hitCount;
+
+        /** Distinct values in order of occurrence */
+        private final Set<Object> values = new LinkedHashSet<>();
+
+        private String scrollId;
+
+        SubQueryFetch(Client client, SubQueryExpression subQuery, int maxResults) throws SqlParseException {
+            Select select = subQuery.getSelect();
+            if (select.isAgg) {
+                throw new SqlParseException("on sub queries only support queries that return Hits and not aggregations");
+            }
+
+            this.client = client;
+            this.subQuery = subQuery;
+            this.returnField = subQuery.getReturnField();
+            this.isDocValue = !ID_FIELD.equals(returnField) && hasDocValues(select, returnField);
+            this.isLimitExceededError = !select.isRowCountSpecified() || select.getRowCount() > maxResults;
+            this.limit = select.isRowCountSpecified() ? Math.min(select.getRowCount(), maxResults) : maxResults;
+            this.toSkip = select.getOffset();
+
+            DefaultQueryAction queryAction = new DefaultQueryAction(client, select);
+            queryAction.explain();
+            this.request = queryAction.getRequestBuilder();
+            prepareRequest(select);
+        }
+
+        private void prepareRequest(Select select) {
+            if (ID_FIELD.equals(returnField)) {
+                request.setFetchSource(false);
+            } else if (isDocValue) {
+                request.setFetchSource(false).addDocValueField(returnField, "use_field_mapping");
+            } else {
+                request.setFetchSource(new String[]{ returnField }, null);
+            }
+
+            if (!select.isOrderdSelect()) {
+                request.addSort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC);
+            }
+
+            // One more hit to find out if limit exceeded
+            int size = (int) Math.min(PAGE_SIZE, (long) toSkip + limit + 1);
+            request.setSearchType(SearchType.QUERY_THEN_FETCH).
+                    setFrom(0).
+                    setSize(size).
+                    setScroll(KEEP_ALIVE);
+        }
+
+        ActionFuture<SearchResponse> fetchNextPage() {
+            if (scrollId == null) {
+                return request.execute();
+            }
+            return client.prepareSearchScroll(scrollId).setScroll(KEEP_ALIVE).execute();
+        }
+
+        /**
+         * Collect values from response.
+         * @return  true if more pages to fetch
+         */
+        boolean onResponse(SearchResponse response) throws SqlParseException {
+            if (scrollId == null) {
+                checkEstimatedCardinality(response.getHits().getTotalHits());
+            }
+            scrollId = response.getScrollId();
+            SearchHit[] hits = response.getHits().getHits();
+            for (SearchHit hit : hits) {
+                if (toSkip > 0) {
+                    toSkip--;
+                    continue;
+                }
+
+                if (hitCount == limit) {
+                    if (isLimitExceededError) {
+                        throw limitExceeded();
+                    }
+                    return false;
+                }
+                hitCount++;
+                collectValues(hit);
+            }
+            return hits.length > 0 && (hitCount < limit || isLimitExceededError);
+        }
+
+        /** Fail fast on first page rather than scrolling through max results before finding out it's exceeded */
+        private void checkEstimatedCardinality(long totalHits) throws SqlParseException {
+            if (isLimitExceededError && totalHits - toSkip > limit) {
+                throw limitExceeded();
+            }
+        }
+
+        private SqlParseException limitExceeded() {
+            return new SqlParseException(String.format(
+                "Sub query returns more than %d results. Please add LIMIT to sub query or increase %s",
+                limit, MAX_RESULTS_SETTING.getKey()));
+        }
+
+        private void collectValues(SearchHit hit) {
+            if (ID_FIELD.equals(returnField)) {
+                values.add(hit.getId());
+            } else if (isDocValue) {
+                DocumentField field = hit.field(returnField);
+                if (field != null) {
+                    values.addAll(field.getValues());
+                }
+            } else {
+                Object value = ElasticResultHandler.getFieldValue(hit, returnField);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+        }
+
+        void close() {
+            if (scrollId != null) {
+                client.prepareClearScroll().addScrollId(scrollId).execute(); // No need to wait for the response
+                scrollId = null;
+            }
+        }
+
+        /** Doc values can be used only if field in all indices is of type that has doc values enabled */
+        private static boolean hasDocValues(Select select, String field) {
+            try {
+                return LocalClusterState.state().getFieldMappings(select.getIndexArr()).hasDocValues(field, DOC_VALUE_TYPES);
+            } catch (RuntimeException e) {
+                LOG.debug("Failed to read mapping of sub-query field [" + field + "] and fall back to source", e);
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.async;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.UUIDs;
+
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+/**
+ * Query submitted asynchronously. Its result is kept in {@link AsyncQueryStore} until fetched or expired.
+ */
+public class AsyncQuery implements ActionListener<String> {
+
+    public enum Status {
+        RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final String sql;
+
+    /** Response format which determines content type of result */
+    private final String format;
+
+    /** Authenticated user who submitted the query, null if security is not enabled */
+    private final String user;
+
+    private final long startTime;
+
+    private volatile Status status = Status.RUNNING;
+    private volatile long endTime;
+    private volatile String result;
+    private volatile String error;
+
+    /** Future of the task in sql-worker thread pool */
+    private volatile Future<?> future;
+
+    /** Store to update once query completes */
+    private final AsyncQueryStore store;
+
+    public AsyncQuery(String sql, String format, String user, AsyncQueryStore store) {
+        this.id = UUIDs.randomBase64UUID();
+        this.sql = sql;
+        this.format = format;
+        this.user = user;
+        this.startTime = System.currentTimeMillis();
+        this.store = store;
+    }
+
+    public void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    @Override
+    public void onResponse(String result) {
+        complete(Status.SUCCEEDED, result, null);
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        complete(Status.FAILED, null, String.valueOf(e.getMessage()));
+    }
+
+    /**
+     * Cancel the query. Execution running already exits at next cancellation check point
+     * and query waiting in thread pool queue is removed without running.
+     */
+    public synchronized void cancel() {
+        if (status == Status.RUNNING) {
+            status = Status.CANCELLED;
+            endTime = System.currentTimeMillis();
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return status == Status.CANCELLED;
+    }
+
+    private void complete(Status newStatus, String newResult, String newError) {
+        synchronized (this) {
+            if (status != Status.RUNNING) { // Cancelled already, discard result
+                return;
+            }
+            result = newResult;
+            error = newError;
+            endTime = System.currentTimeMillis();
+            status = newStatus;
+        }
+        store.update(this);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /** Only the user who submitted the query is allowed to access it */
+    public boolean isOwnedBy(String user) {
+        return Objects.equals(this.user, user);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Elapsed time in millis until now if still running */
+    public long getElapsedTime() {
+        return (status == Status.RUNNING ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /** Weight in cache which is approximately number of chars held */
+    int weight() {
+        return 1 + sql.length() + (result == null ? 0 : result.length());
+    }
+
+}
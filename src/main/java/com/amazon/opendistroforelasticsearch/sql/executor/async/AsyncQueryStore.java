@@ -0,0 +1,99 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.async;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded store of asynchronous queries and their results. Total size is bounded by weight (approximately the
+ * number of chars of SQL and result held), and queries are expired if not accessed for a while.
+ * Any running query evicted from the store is cancelled because no one is able to fetch its result anymore.
+ * Query is only visible to the user who submitted it, because its result may be filtered by document or
+ * field level security of that user.
+ */
+public class AsyncQueryStore {
+
+    /** Default max weight, roughly 100M chars of result held */
+    public static final long DEFAULT_MAX_WEIGHT = 100 * 1024 * 1024;
+
+    /** Default time to keep query since last access */
+    public static final long DEFAULT_EXPIRE_MINUTES = 30;
+
+    /** Singleton instance */
+    private static AsyncQueryStore INSTANCE;
+
+    private final Cache<String, AsyncQuery> queries;
+
+    public static synchronized AsyncQueryStore store() {
+        if (INSTANCE == null) {
+            INSTANCE = new AsyncQueryStore(DEFAULT_MAX_WEIGHT, DEFAULT_EXPIRE_MINUTES, TimeUnit.MINUTES);
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject a store with different bound */
+    public static synchronized void store(AsyncQueryStore instance) {
+        INSTANCE = instance;
+    }
+
+    public AsyncQueryStore(long maxWeight, long expireAfterAccess, TimeUnit unit) {
+        queries = CacheBuilder.newBuilder().
+                               maximumWeight(maxWeight).
+                               weigher((String id, AsyncQuery query) -> query.weight()).
+                               expireAfterAccess(expireAfterAccess, unit).
+                               removalListener((RemovalListener<String, AsyncQuery>) notification ->
+                                   notification.getValue().cancel()).
+                               build();
+    }
+
+    /** Create a new query and put it into store. The query is supposed to be submitted for execution by caller. */
+    public AsyncQuery create(String sql, String format, String user) {
+        AsyncQuery query = new AsyncQuery(sql, format, user, this);
+        queries.put(query.getId(), query);
+        return query;
+    }
+
+    /** Get query by ID, null if not exist, expired or submitted by another user */
+    public AsyncQuery get(String id, String user) {
+        AsyncQuery query = queries.getIfPresent(id);
+        return (query != null && query.isOwnedBy(user)) ? query : null;
+    }
+
+    /** Cancel query if running and remove it from store. Return null if not exist or submitted by another user. */
+    public AsyncQuery remove(String id, String user) {
+        AsyncQuery query = get(id, user);
+        if (query != null) {
+            queries.invalidate(id);
+        }
+        return query;
+    }
+
+    /** Put the query again once completed so that its weight is re-calculated with result included */
+    void update(AsyncQuery query) {
+        if (queries.getIfPresent(query.getId()) == query) {
+            queries.put(query.getId(), query);
+        }
+    }
+
+    public long size() {
+        return queries.size();
+    }
+
+}
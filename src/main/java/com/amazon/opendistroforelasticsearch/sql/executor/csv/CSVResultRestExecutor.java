@@ -15,16 +15,27 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor.csv;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.MemoryGuardedOutputStream;
 import com.amazon.opendistroforelasticsearch.sql.executor.QueryActionElasticExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
 import com.amazon.opendistroforelasticsearch.sql.executor.RestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CompositeAggregationExecutor;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
 import com.google.common.base.Joiner;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestStatus;
 import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -34,6 +45,13 @@ public class CSVResultRestExecutor implements RestExecutor {
 
     @Override
     public void execute(Client client, Map<String, String> params, QueryAction queryAction, RestChannel channel) throws Exception {
+        ResultCache.Key cacheKey = ResultCache.cache().keyOf(client, queryAction, "csv", params);
+        BytesReference cached = (cacheKey == null) ? null : ResultCache.cache().get(cacheKey);
+        if (cached != null) {
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, BytesRestResponse.TEXT_CONTENT_TYPE, cached));
+            return;
+        }
+
         Object queryResult = QueryActionElasticExecutor.executeAnyAction(client, queryAction);
 
         boolean flat = getBooleanOrDefault(params,"flat",false);
@@ -44,19 +62,30 @@ public class CSVResultRestExecutor implements RestExecutor {
         boolean includeScore = getBooleanOrDefault(params,"_score",false);
         boolean includeType = getBooleanOrDefault(params,"_type",false);
         boolean includeId = getBooleanOrDefault(params,"_id",false);
-        CSVResult result  = new CSVResultsExtractor(includeScore,includeType,includeId).extractResults(queryResult,flat,separator);
+        QueryProfile profile = QueryProfile.current();
+        CSVResult result;
+        try (Releasable ignored = profile.time(QueryProfile.Phase.POST_PROCESS)) {
+            result = extractor(queryAction, includeScore, includeType, includeId).extractResults(queryResult, flat, separator);
+        }
         String newLine = "\n";
         if(params.containsKey("newLine")){
          newLine = params.get("newLine");
         }
-        String csvString = buildString(separator, result, newLine);
-        BytesRestResponse bytesRestResponse = new BytesRestResponse(RestStatus.OK, csvString);
 
-        if (!BackOffRetryStrategy.isHealthy(2 * bytesRestResponse.content().length(), this)) {
-            throw new IllegalStateException("[CSVResultRestExecutor] Memory could be insufficient when sendResponse().");
+        // Write lines one by one into paged bytes output of channel rather than joining them into a String first,
+        // and check memory before each page is written
+        BytesStreamOutput output = channel.bytesOutput();
+        try (Releasable ignored = profile.time(QueryProfile.Phase.FORMAT)) {
+            writeTo(new MemoryGuardedOutputStream(output, this), separator, result, newLine);
         }
+        profile.setRows(result.getLines().size());
+        profile.setResponseBytes(output.size());
 
-        channel.sendResponse(bytesRestResponse);
+        if (cacheKey != null) {
+            ResultCache.cache().put(cacheKey, output.bytes());
+        }
+
+        channel.sendResponse(new BytesRestResponse(RestStatus.OK, BytesRestResponse.TEXT_CONTENT_TYPE, output.bytes()));
     }
 
     @Override
@@ -71,7 +100,7 @@ public class CSVResultRestExecutor implements RestExecutor {
         boolean includeScore = getBooleanOrDefault(params,"_score",false);
         boolean includeType = getBooleanOrDefault(params,"_type",false);
         boolean includeId = getBooleanOrDefault(params,"_id",false);
-        CSVResult result  = new CSVResultsExtractor(includeScore,includeType,includeId).extractResults(queryResult,flat,separator);
+        CSVResult result  = extractor(queryAction, includeScore, includeType, includeId).extractResults(queryResult, flat, separator);
         String newLine = "\n";
         if(params.containsKey("newLine")){
             newLine = params.get("newLine");
@@ -80,6 +109,16 @@ public class CSVResultRestExecutor implements RestExecutor {
         return csvString;
     }
 
+    /** Extractor with columns of composite GROUP BY mapped back to SELECT order */
+    private CSVResultsExtractor extractor(QueryAction queryAction, boolean includeScore,
+                                          boolean includeType, boolean includeId) {
+        List<String> keyColumns = null;
+        if (CompositeAggregationExecutor.isCompositeQuery(queryAction)) {
+            keyColumns = ((AggregationQueryAction) queryAction).compositeKeyColumns();
+        }
+        return new CSVResultsExtractor(includeScore, includeType, includeId, keyColumns);
+    }
+
     private boolean getBooleanOrDefault(Map<String, String> params, String param, boolean defaultValue) {
         boolean flat = defaultValue;
         if(params.containsKey(param)){
@@ -88,6 +127,23 @@ public class CSVResultRestExecutor implements RestExecutor {
         return flat;
     }
 
+    private void writeTo(OutputStream output, String separator, CSVResult result, String newLine) throws IOException {
+        byte[] newLineBytes = newLine.getBytes(StandardCharsets.UTF_8);
+        output.write(Joiner.on(separator).join(result.getHeaders()).getBytes(StandardCharsets.UTF_8));
+        output.write(newLineBytes);
+
+        List<String> lines = result.getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                if (i % 10000 == 0 && !BackOffRetryStrategy.isHealthy()) {
+                    throw new IllegalStateException("[CSVResultRestExecutor] Memory circuit break when writing lines");
+                }
+                output.write(newLineBytes);
+            }
+            output.write(lines.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     private String buildString(String separator, CSVResult result, String newLine) {
         StringBuilder csv = new StringBuilder();
         csv.append(Joiner.on(separator).join(result.getHeaders()));
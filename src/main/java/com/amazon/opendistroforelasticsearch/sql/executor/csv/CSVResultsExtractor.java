@@ -23,12 +23,14 @@ import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
 import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
 import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.metrics.geobounds.GeoBounds;
 import org.elasticsearch.search.aggregations.metrics.percentiles.Percentiles;
 import org.elasticsearch.search.aggregations.metrics.stats.Stats;
 import org.elasticsearch.search.aggregations.metrics.stats.extended.ExtendedStats;
 import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import com.amazon.opendistroforelasticsearch.sql.executor.ElasticResultHandler;
 import com.amazon.opendistroforelasticsearch.sql.utils.Util;
 
 import java.util.*;
@@ -41,11 +43,21 @@ public class CSVResultsExtractor {
     private final boolean includeScore;
     private final boolean indcludeId;
     private int currentLineIndex;
+
+    /** Columns of composite bucket key in SELECT order, null to keep key order in bucket */
+    private final List<String> compositeKeyColumns;
+
     public CSVResultsExtractor(boolean includeScore, boolean includeType, boolean includeId) {
+        this(includeScore, includeType, includeId, null);
+    }
+
+    public CSVResultsExtractor(boolean includeScore, boolean includeType, boolean includeId,
+                               List<String> compositeKeyColumns) {
         this.includeScore = includeScore;
         this.includeType = includeType;
         this.indcludeId = includeId;
         this.currentLineIndex = 0;
+        this.compositeKeyColumns = compositeKeyColumns;
     }
 
     public CSVResult extractResults(Object queryResult, boolean flat, String separator) throws CsvExtractorException {
@@ -84,6 +96,10 @@ public class CSVResultsExtractor {
         }
         //aggregations with size one only supported when not metrics.
         List<Aggregation> aggregationList = aggregations.asList();
+        if(!aggregationList.isEmpty() && aggregationList.get(0) instanceof CompositeAggregation){
+            handleCompositeAggregations(aggregationList, headers, lines);
+            return;
+        }
         if(aggregationList.size() > 1){
             throw new CsvExtractorException("currently support only one aggregation at same level (Except for numeric metrics)");
         }
@@ -141,6 +157,30 @@ public class CSVResultsExtractor {
 
     }
 
+    /**
+     * Each composite aggregation is a page of buckets and each bucket is a line
+     * with values of all GROUP BY fields in its key.
+     */
+    private void handleCompositeAggregations(List<Aggregation> pages, List<String> headers, List<List<String>> lines) throws CsvExtractorException {
+        boolean firstLine = true;
+        for (Aggregation page : pages) {
+            for (CompositeAggregation.Bucket bucket : ((CompositeAggregation) page).getBuckets()) {
+                Collection<String> keyColumns = (compositeKeyColumns == null) ? bucket.getKey().keySet() : compositeKeyColumns;
+                if (firstLine) {
+                    firstLine = false;
+                    headers.addAll(keyColumns);
+                } else {
+                    currentLineIndex++;
+                    lines.add(new ArrayList<>());
+                }
+                for (String column : keyColumns) {
+                    lines.get(currentLineIndex).add(String.valueOf(bucket.getKey().get(column)));
+                }
+                handleAggregations(bucket.getAggregations(), headers, lines);
+            }
+        }
+    }
+
     private void handleGeoBoundsAggregation(List<String> headers, List<List<String>> lines, GeoBounds geoBoundsAggregation) {
         String geoBoundAggName = geoBoundsAggregation.getName();
         headers.add(geoBoundAggName+".topLeft.lon");
@@ -268,9 +308,13 @@ public class CSVResultsExtractor {
         Set<String> csvHeaders = new HashSet<>();
         for(SearchHit hit : hits){
             Map<String, Object> doc = hit.getSourceAsMap();
-            Map<String, DocumentField> fields = hit.getFields();
-            for(DocumentField searchHitField : fields.values()){
-                doc.put(searchHitField.getName(),searchHitField.getValue());
+            if (doc != null) {
+                Map<String, DocumentField> fields = hit.getFields();
+                for(DocumentField searchHitField : fields.values()){
+                    doc.put(searchHitField.getName(),searchHitField.getValue());
+                }
+            } else {
+                doc = ElasticResultHandler.getSourceOrFieldsAsMap(hit); // Fields projected by doc values
             }
             mergeHeaders(csvHeaders, doc, flat);
             if(this.indcludeId){
@@ -0,0 +1,129 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.cursor;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.SqlElasticSearchRequestBuilder;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executor for GROUP BY by composite aggregation. Buckets are paged through by after key so that all groups
+ * are exact and only one page of buckets is built on shards at a time. For cursor pagination in jdbc format,
+ * only one page is fetched per request with after key returned in cursor. Otherwise pages are fetched until
+ * LIMIT reached and returned together as aggregations of all pages.
+ */
+public class CompositeAggregationExecutor {
+
+    private final AggregationQueryAction queryAction;
+
+    /** Composite aggregation of each page fetched */
+    private Aggregations aggregations;
+
+    /** Encoded cursor for next page, null if current page is the last one or cursor not requested */
+    private String cursor;
+
+    public CompositeAggregationExecutor(AggregationQueryAction queryAction) {
+        this.queryAction = queryAction;
+    }
+
+    public static boolean isCompositeQuery(QueryAction queryAction) {
+        return queryAction instanceof AggregationQueryAction && ((AggregationQueryAction) queryAction).isCompositeQuery();
+    }
+
+    public static boolean isCursorQuery(QueryAction queryAction) {
+        return isCompositeQuery(queryAction) && ((AggregationQueryAction) queryAction).isCursorQuery();
+    }
+
+    public void run() throws SqlParseException {
+        long start = System.nanoTime();
+        SqlElasticSearchRequestBuilder request = queryAction.explain();
+        QueryProfile.current().lap(QueryProfile.Phase.EXPLAIN, start);
+        CompositeAggregationBuilder compositeAgg = queryAction.getCompositeAggregation();
+
+        boolean isCursor = queryAction.isCursorQuery();
+        SqlRequest sqlRequest = queryAction.getSqlRequest();
+        Select select = (Select) queryAction.getQueryStatement();
+        int pageSize = queryAction.compositePageSize();
+        int remaining;
+        String sql;
+        if (isCursor && sqlRequest.cursor() != null) {
+            Cursor previous = Cursor.decode(sqlRequest.cursor());
+            remaining = previous.getRemaining();
+            sql = previous.getSql();
+        } else {
+            remaining = (select.isRowCountSpecified() || !isCursor) ? select.getRowCount() : Cursor.NO_LIMIT;
+            sql = (sqlRequest == null) ? null : sqlRequest.getSql();
+        }
+
+        List<CompositeAggregation> pages = new ArrayList<>();
+        Map<String, Object> afterKey;
+        boolean hasMore;
+        do {
+            QueryCancellation.checkCancelled("composite aggregation");
+            int size = (remaining == Cursor.NO_LIMIT) ? pageSize : Math.min(pageSize, remaining);
+            compositeAgg.size(size);
+
+            CompositeAggregation page = search(request).getAggregations().get(AggregationQueryAction.COMPOSITE_AGG_NAME);
+            pages.add(page);
+            if (remaining != Cursor.NO_LIMIT) {
+                remaining -= page.getBuckets().size();
+            }
+
+            afterKey = page.afterKey();
+            hasMore = afterKey != null && page.getBuckets().size() == size && remaining != 0;
+            if (hasMore) {
+                compositeAgg.aggregateAfter(afterKey);
+            }
+        } while (hasMore && !isCursor);
+
+        aggregations = new Aggregations(pages);
+        if (isCursor && hasMore) {
+            cursor = new Cursor(sql, afterKey, pageSize, remaining).encode();
+        }
+    }
+
+    public Aggregations getAggregations() {
+        return aggregations;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    private SearchResponse search(SqlElasticSearchRequestBuilder request) {
+        SearchResponse response;
+        try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.EXECUTE)) {
+            response = (SearchResponse) request.get();
+        }
+        QueryProfile.current().addShardStats(response);
+        return response;
+    }
+
+}
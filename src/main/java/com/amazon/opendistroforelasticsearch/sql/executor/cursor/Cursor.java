@@ -0,0 +1,163 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.cursor;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opaque cursor returned to client in jdbc response for fetching next page of a scroll-backed query.
+ * Original SQL is kept in cursor so that next page can be resolved to same schema without server side state
+ * other than the scroll context itself. For GROUP BY paged by composite aggregation, after key of last bucket
+ * is kept instead of scroll ID and thus no server side state at all.
+ */
+public class Cursor {
+
+    /** Default time to keep scroll context alive between two page requests */
+    public static final TimeValue DEFAULT_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    /** No limit on total number of rows returned across all pages */
+    public static final int NO_LIMIT = -1;
+
+    private static final String SQL = "q";
+    private static final String SCROLL_ID = "s";
+    private static final String KEEP_ALIVE = "k";
+    private static final String FETCH_SIZE = "f";
+    private static final String REMAINING = "r";
+    private static final String AFTER_KEY = "a";
+
+    private final String sql;
+    private final String scrollId;
+    private final TimeValue keepAlive;
+
+    /** After key of composite aggregation if GROUP BY query, otherwise null */
+    private final Map<String, Object> afterKey;
+    private final int fetchSize;
+
+    /** Number of rows left to return if LIMIT is specified, otherwise NO_LIMIT */
+    private final int remaining;
+
+    public Cursor(String sql, String scrollId, TimeValue keepAlive, int fetchSize, int remaining) {
+        this(sql, scrollId, keepAlive, null, fetchSize, remaining);
+    }
+
+    public Cursor(String sql, Map<String, Object> afterKey, int fetchSize, int remaining) {
+        this(sql, null, null, afterKey, fetchSize, remaining);
+    }
+
+    private Cursor(String sql, String scrollId, TimeValue keepAlive, Map<String, Object> afterKey,
+                   int fetchSize, int remaining) {
+        this.sql = sql;
+        this.scrollId = scrollId;
+        this.keepAlive = keepAlive;
+        this.afterKey = afterKey;
+        this.fetchSize = fetchSize;
+        this.remaining = remaining;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getScrollId() {
+        return scrollId;
+    }
+
+    public TimeValue getKeepAlive() {
+        return keepAlive;
+    }
+
+    public Map<String, Object> getAfterKey() {
+        return afterKey;
+    }
+
+    public boolean isCompositeAggregation() {
+        return afterKey != null;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public boolean hasLimit() {
+        return remaining != NO_LIMIT;
+    }
+
+    public String encode() {
+        JSONObject json = new JSONObject();
+        json.put(SQL, sql);
+        if (isCompositeAggregation()) {
+            json.put(AFTER_KEY, new JSONObject(afterKey));
+        } else {
+            json.put(SCROLL_ID, scrollId);
+            json.put(KEEP_ALIVE, keepAlive.millis());
+        }
+        json.put(FETCH_SIZE, fetchSize);
+        json.put(REMAINING, remaining);
+        return Base64.getUrlEncoder().encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String cursor) {
+        try {
+            JSONObject json = new JSONObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (json.has(AFTER_KEY)) {
+                return new Cursor(
+                    json.getString(SQL),
+                    decodeAfterKey(json.getJSONObject(AFTER_KEY)),
+                    json.getInt(FETCH_SIZE),
+                    json.getInt(REMAINING)
+                );
+            }
+            return new Cursor(
+                json.getString(SQL),
+                json.getString(SCROLL_ID),
+                TimeValue.timeValueMillis(json.getLong(KEEP_ALIVE)),
+                json.getInt(FETCH_SIZE),
+                json.getInt(REMAINING)
+            );
+        } catch (IllegalArgumentException | JSONException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /** Big numbers parsed by JSON library are not supported by transport stream, so convert them to long or double */
+    private static Map<String, Object> decodeAfterKey(JSONObject json) {
+        Map<String, Object> afterKey = new LinkedHashMap<>();
+        for (String key : json.keySet()) {
+            Object value = json.get(key);
+            if (value instanceof BigInteger) {
+                value = ((BigInteger) value).longValue();
+            } else if (value instanceof BigDecimal) {
+                value = ((BigDecimal) value).doubleValue();
+            }
+            afterKey.put(key, value);
+        }
+        return afterKey;
+    }
+
+}
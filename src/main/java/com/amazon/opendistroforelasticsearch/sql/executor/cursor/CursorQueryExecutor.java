@@ -0,0 +1,137 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.cursor;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import java.util.Arrays;
+
+/**
+ * Executor for scroll-backed cursor pagination. It executes the first page (fetch size given) or next page
+ * (cursor given), trims the page by LIMIT remaining if any and builds the cursor for the page after.
+ * Scroll context is cleared once the last page is reached.
+ */
+public class CursorQueryExecutor {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final Client client;
+    private final DefaultQueryAction queryAction;
+
+    /** Hits of current page */
+    private SearchHits hits;
+
+    /** Encoded cursor for next page, null if current page is the last one */
+    private String cursor;
+
+    public CursorQueryExecutor(Client client, DefaultQueryAction queryAction) {
+        this.client = client;
+        this.queryAction = queryAction;
+    }
+
+    public static boolean isCursorQuery(QueryAction queryAction) {
+        return queryAction instanceof DefaultQueryAction && ((DefaultQueryAction) queryAction).isCursorQuery();
+    }
+
+    public void run() throws SqlParseException {
+        SearchResponse response = (SearchResponse) queryAction.explain().get();
+        SqlRequest request = queryAction.getSqlRequest();
+
+        String sql;
+        TimeValue keepAlive;
+        int fetchSize;
+        int remaining;
+        if (request.cursor() != null) {
+            Cursor previous = Cursor.decode(request.cursor());
+            sql = previous.getSql();
+            keepAlive = previous.getKeepAlive();
+            fetchSize = previous.getFetchSize();
+            remaining = previous.getRemaining();
+        } else {
+            Select select = (Select) queryAction.getQueryStatement();
+            sql = request.getSql();
+            keepAlive = Cursor.DEFAULT_KEEP_ALIVE;
+            fetchSize = request.fetchSize();
+            remaining = select.isRowCountSpecified() ? select.getRowCount() : Cursor.NO_LIMIT;
+        }
+
+        SearchHits allHits = response.getHits();
+        SearchHit[] page = allHits.getHits();
+        if (remaining != Cursor.NO_LIMIT) {
+            if (page.length > remaining) {
+                page = Arrays.copyOf(page, remaining);
+            }
+            remaining -= page.length;
+        }
+        hits = new SearchHits(page, allHits.getTotalHits(), allHits.getMaxScore());
+
+        boolean isLastPage = page.length == 0 || page.length < fetchSize || remaining == 0;
+        if (isLastPage) {
+            clearScroll(response.getScrollId());
+        } else {
+            cursor = new Cursor(sql, response.getScrollId(), keepAlive, fetchSize, remaining).encode();
+        }
+    }
+
+    /**
+     * Free scroll context behind the cursor. Composite aggregation cursor holds nothing on server side
+     * but the after key, so there is nothing to free and it always succeeds.
+     *
+     * @param client    client
+     * @param cursor    decoded cursor
+     * @param listener  listener for clear scroll response
+     */
+    public static void close(Client client, Cursor cursor, ActionListener<ClearScrollResponse> listener) {
+        if (cursor.getScrollId() == null) {
+            listener.onResponse(new ClearScrollResponse(true, 0));
+            return;
+        }
+        client.prepareClearScroll().addScrollId(cursor.getScrollId()).execute(listener);
+    }
+
+    public SearchHits getHits() {
+        return hits;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+
+        client.prepareClearScroll().addScrollId(scrollId).execute(ActionListener.wrap(
+            response -> LOG.debug("Cleared scroll context after last page: {}", response.isSucceeded()),
+            e -> LOG.warn("Failed to clear scroll context after last page", e)
+        ));
+    }
+
+}
@@ -15,10 +15,20 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor.format;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.MemoryGuardedOutputStream;
 import com.amazon.opendistroforelasticsearch.sql.executor.QueryActionElasticExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
 import com.amazon.opendistroforelasticsearch.sql.executor.RestExecutor;
-import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CompositeAggregationExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CursorQueryExecutor;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestStatus;
@@ -35,41 +45,76 @@ public class PrettyFormatRestExecutor implements RestExecutor {
     }
 
     /**
-     * Execute the QueryAction and return the REST response using the channel.
+     * Execute the QueryAction and write the REST response row by row into bytes output of the channel
+     * which is paged and recycled, rather than building the entire response as a String first.
+     * Memory is checked before each page of response is written.
      */
     @Override
-    public void execute(Client client, Map<String, String> params, QueryAction queryAction, RestChannel channel) {
-        String formattedResponse = execute(client, params, queryAction);
-        BytesRestResponse bytesRestResponse;
-        if (format.equals("jdbc")) {
-            bytesRestResponse = new BytesRestResponse(RestStatus.OK,
-                    "application/json; charset=UTF-8",
-                    formattedResponse);
-        } else {
-            bytesRestResponse = new BytesRestResponse(RestStatus.OK, formattedResponse);
+    public void execute(Client client, Map<String, String> params, QueryAction queryAction, RestChannel channel)
+            throws Exception {
+        String contentType = format.equals("jdbc") ? "application/json; charset=UTF-8"
+                                                   : BytesRestResponse.TEXT_CONTENT_TYPE;
+
+        ResultCache.Key cacheKey = ResultCache.cache().keyOf(client, queryAction, format, params);
+        BytesReference cached = (cacheKey == null) ? null : ResultCache.cache().get(cacheKey);
+        if (cached != null) {
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, contentType, cached));
+            return;
         }
 
-        if (!BackOffRetryStrategy.isHealthy(2 * bytesRestResponse.content().length(), this)) {
-            throw new IllegalStateException("[PrettyFormatRestExecutor] Memory could be insufficient when sendResponse().");
+        Protocol protocol = buildProtocol(client, queryAction);
+
+        BytesStreamOutput output = channel.bytesOutput();
+        QueryProfile profile = QueryProfile.current();
+        try (Releasable ignored = profile.time(QueryProfile.Phase.FORMAT)) {
+            protocol.format(new MemoryGuardedOutputStream(output, this));
         }
+        profile.setResponseBytes(output.size());
 
-        channel.sendResponse(bytesRestResponse);
+        if (cacheKey != null && protocol.getStatus() == Protocol.OK_STATUS) {
+            ResultCache.cache().put(cacheKey, output.bytes());
+        }
+        channel.sendResponse(new BytesRestResponse(RestStatus.OK, contentType, output.bytes()));
     }
 
     @Override
     public String execute(Client client, Map<String, String> params, QueryAction queryAction) {
+        return buildProtocol(client, queryAction).format();
+    }
+
+    private Protocol buildProtocol(Client client, QueryAction queryAction) {
         Protocol protocol;
 
         try {
-            Object queryResult = QueryActionElasticExecutor.executeAnyAction(client, queryAction);
-            protocol = new Protocol(client, queryAction.getQueryStatement(), queryResult, format);
+            if (format.equals("jdbc") && CursorQueryExecutor.isCursorQuery(queryAction)) {
+                CursorQueryExecutor executor = new CursorQueryExecutor(client, (DefaultQueryAction) queryAction);
+                executor.run();
+                try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.POST_PROCESS)) {
+                    protocol = new Protocol(client, queryAction.getQueryStatement(), executor.getHits(), format);
+                }
+                protocol.setCursor(executor.getCursor());
+            } else if (format.equals("jdbc") && CompositeAggregationExecutor.isCursorQuery(queryAction)) {
+                CompositeAggregationExecutor executor = new CompositeAggregationExecutor((AggregationQueryAction) queryAction);
+                executor.run();
+                try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.POST_PROCESS)) {
+                    protocol = new Protocol(client, queryAction.getQueryStatement(), executor.getAggregations(), format);
+                }
+                protocol.setCursor(executor.getCursor());
+            } else {
+                Object queryResult = QueryActionElasticExecutor.executeAnyAction(client, queryAction);
+                try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.POST_PROCESS)) {
+                    protocol = new Protocol(client, queryAction.getQueryStatement(), queryResult, format);
+                }
+            }
+            QueryProfile.current().setRows(protocol.getResultSet().getDataRows().getSize());
         } catch (Exception e) {
             // TODO Might require some refactoring, Exceptions that happen in RestSqAction code before invoking execution
             // TODO are being caught in RestController (line 242) and being sent as a bytesRestResponse
             // ex. "SELECT * FROM WHERE balance > 30000", results in ParserException and ErrorMessage is never made
+            SqlStats.stats().recordFailure(e);
             protocol = new Protocol(e);
         }
 
-        return protocol.format();
+        return protocol;
     }
 }
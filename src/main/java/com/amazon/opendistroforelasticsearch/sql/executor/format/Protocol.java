@@ -15,15 +15,20 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor.format;
 
+import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
 import org.elasticsearch.client.Client;
 import com.amazon.opendistroforelasticsearch.sql.executor.format.DataRows.Row;
 import com.amazon.opendistroforelasticsearch.sql.executor.format.Schema.Column;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import com.amazon.opendistroforelasticsearch.sql.domain.IndexStatement;
 import com.amazon.opendistroforelasticsearch.sql.domain.Query;
 import com.amazon.opendistroforelasticsearch.sql.domain.QueryStatement;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -40,6 +45,7 @@ public class Protocol {
     private long total;
     private ResultSet resultSet;
     private ErrorMessage error;
+    private String cursor;
 
     public Protocol(Client client, QueryStatement query, Object queryResult, String formatType) {
         this.formatType = formatType;
@@ -78,53 +84,99 @@ public class Protocol {
 
     public int getStatus() { return status; }
 
+    public String getCursor() { return cursor; }
+
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
     public ResultSet getResultSet() { return resultSet; }
 
     public String format() {
+        BytesStreamOutput output = new BytesStreamOutput();
+        try {
+            format(output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to format response", e);
+        }
+        return output.bytes().utf8ToString();
+    }
+
+    /**
+     * Write formatted response to output stream row by row rather than building the whole response as a String.
+     * Used with channel's paged bytes output so peak memory is a single encoded copy of response only.
+     *
+     * @param output    output stream to write to
+     * @throws IOException  exception thrown by output stream
+     */
+    public void format(OutputStream output) throws IOException {
         if (status == OK_STATUS) {
             switch (formatType) {
                 case "jdbc":
-                    return outputInJdbcFormat();
+                    outputInJdbcFormat(output);
+                    break;
                 case "table":
-                    return outputInTableFormat();
+                    outputInTableFormat(output);
+                    break;
                 case "raw":
-                    return outputInRawFormat();
+                    outputInRawFormat(output);
+                    break;
                 default:
                     throw new UnsupportedOperationException(
                             String.format("The following format is not supported: %s", formatType));
             }
+        } else {
+            output.write(error.toString().getBytes(StandardCharsets.UTF_8));
         }
-
-        return error.toString();
     }
 
-    private String outputInJdbcFormat() {
-        JSONObject formattedOutput = new JSONObject();
+    private void outputInJdbcFormat(OutputStream output) throws IOException {
+        // Builder is flushed rather than closed to avoid closing (releasing) the output stream owned by caller
+        XContentBuilder builder = XContentFactory.jsonBuilder(output).prettyPrint();
+        builder.startObject();
+        builder.field("status", status);
+        builder.field("size", size);
+        builder.field("total", total);
+
+        builder.startArray("schema");
+        for (Column column : resultSet.getSchema()) {
+            schemaEntry(builder, column.getName(), column.getAlias(), column.getType());
+        }
+        builder.endArray();
 
-        formattedOutput.put("status", status);
-        formattedOutput.put("size", size);
-        formattedOutput.put("total", total);
+        builder.startArray("datarows");
+        int i = 0;
+        for (Row row : resultSet.getDataRows()) {
+            checkMemory(i++);
+            dataEntry(builder, row, resultSet.getSchema());
+        }
+        builder.endArray();
 
-        formattedOutput.put("schema", getSchemaAsJson());
-        formattedOutput.put("datarows", getDataRowsAsJson());
+        if (cursor != null) {
+            builder.field("cursor", cursor);
+        }
 
-        return formattedOutput.toString(2);
+        builder.endObject();
+        builder.flush();
     }
 
-    private String outputInRawFormat() {
+    private void outputInRawFormat(OutputStream output) throws IOException {
         Schema schema = resultSet.getSchema();
         DataRows dataRows = resultSet.getDataRows();
 
-        StringBuilder formattedOutput = new StringBuilder();
+        int i = 0;
         for (Row row : dataRows) {
-            formattedOutput.append(rawEntry(row, schema)).append("\n");
+            checkMemory(i++);
+            output.write(rawEntry(row, schema).getBytes(StandardCharsets.UTF_8));
+            output.write('\n');
         }
+    }
 
-        return formattedOutput.toString();
+    private void outputInTableFormat(OutputStream output) {
     }
 
-    private String outputInTableFormat() {
-        return null;
+    private void checkMemory(int rowIndex) {
+        if (rowIndex % 10000 == 0 && rowIndex > 0 && !BackOffRetryStrategy.isHealthy()) {
+            throw new IllegalStateException("Memory circuit break when writing formatted response");
+        }
     }
 
     private String rawEntry(Row row, Schema schema) {
@@ -135,44 +187,19 @@ public class Protocol {
                 .collect(Collectors.joining("|"));
     }
 
-    private JSONArray getSchemaAsJson() {
-        Schema schema = resultSet.getSchema();
-        JSONArray schemaJson = new JSONArray();
-
-        for (Column column : schema) {
-            schemaJson.put(schemaEntry(column.getName(), column.getAlias(), column.getType()));
-        }
-
-        return schemaJson;
-    }
-
-    private JSONObject schemaEntry(String name, String alias, String type) {
-        JSONObject entry = new JSONObject();
-        entry.put("name", name);
-        if (alias != null) { entry.put("alias", alias); }
-        entry.put("type", type);
-
-        return entry;
-    }
-
-    private JSONArray getDataRowsAsJson() {
-        Schema schema = resultSet.getSchema();
-        DataRows dataRows = resultSet.getDataRows();
-        JSONArray dataRowsJson = new JSONArray();
-
-        for (Row row : dataRows) {
-            dataRowsJson.put(dataEntry(row, schema));
-        }
-
-        return dataRowsJson;
+    private void schemaEntry(XContentBuilder builder, String name, String alias, String type) throws IOException {
+        builder.startObject();
+        builder.field("name", name);
+        if (alias != null) { builder.field("alias", alias); }
+        builder.field("type", type);
+        builder.endObject();
     }
 
-    private JSONArray dataEntry(Row dataRow, Schema schema) {
-        JSONArray entry = new JSONArray();
+    private void dataEntry(XContentBuilder builder, Row dataRow, Schema schema) throws IOException {
+        builder.startArray();
         for (Column column : schema) {
-            String columnName = column.getName();
-            entry.put(dataRow.getDataOrDefault(columnName, JSONObject.NULL));
+            builder.value(dataRow.getDataOrDefault(column.getName(), null));
         }
-        return entry;
+        builder.endArray();
     }
 }
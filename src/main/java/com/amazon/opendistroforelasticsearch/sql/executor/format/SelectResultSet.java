@@ -15,14 +15,14 @@
 
 package com.amazon.opendistroforelasticsearch.sql.executor.format;
 
-import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsRequest;
-import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
 import com.amazon.opendistroforelasticsearch.sql.domain.Field;
@@ -31,16 +31,20 @@ import com.amazon.opendistroforelasticsearch.sql.domain.MethodField;
 import com.amazon.opendistroforelasticsearch.sql.domain.Query;
 import com.amazon.opendistroforelasticsearch.sql.domain.Select;
 import com.amazon.opendistroforelasticsearch.sql.domain.TableOnJoinSelect;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.IndexMappings;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.TypeMappings;
+import com.amazon.opendistroforelasticsearch.sql.executor.ElasticResultHandler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import static org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse.FieldMappingMetaData;
+import java.util.stream.Collectors;
 
 public class SelectResultSet extends ResultSet {
 
@@ -83,7 +87,7 @@ public class SelectResultSet extends ResultSet {
 
 
     /**
-     * Makes a request to local node to receive meta data information and maps each field specified in SELECT to its
+     * Looks up column catalog of index in local cluster state cache and maps each field specified in SELECT to its
      * type in the index mapping
      */
     private void loadFromEsState(Query query) {
@@ -94,22 +98,13 @@ public class SelectResultSet extends ResultSet {
         if (fieldNames.length == 0)
             selectAll = true;
 
-        GetFieldMappingsRequest request = new GetFieldMappingsRequest()
-                .indices(indexName)
-                .types(emptyArrayIfNull(typeName))
-                .fields(selectAllFieldsIfEmpty(fieldNames))
-                .local(true);
-        GetFieldMappingsResponse response = client.admin().indices()
-                .getFieldMappings(request)
-                .actionGet();
-
-        Map<String, Map<String, Map<String, FieldMappingMetaData>>> mappings = response.mappings();
+        IndexMappings mappings = LocalClusterState.state().getFieldMappings(new String[]{indexName});
         if (mappings.isEmpty()) {
             throw new IllegalArgumentException(String.format("Index type %s does not exist", query.getFrom()));
         }
 
         // Assumption is all indices share the same mapping which is validated in TermFieldRewriter.
-        Map<String, Map<String, FieldMappingMetaData>> indexMappings = mappings.values().iterator().next();
+        TypeMappings indexMappings = mappings.firstMapping();
 
         /*
          * There are three cases regarding type name to consider:
@@ -117,14 +112,12 @@ public class SelectResultSet extends ResultSet {
          * 2. If the incorrect type name was given then the response is null
          * 3. If no type name is given, the indexMapping is searched for a typeMapping
          */
-        Map<String, FieldMappingMetaData> typeMappings = new HashMap<>();
-        if (indexMappings.containsKey(typeName)) {
-            typeMappings = indexMappings.get(typeName);
-        } else {
-            // Assuming ES version 6.x, there can be only one type per index so this for loop should grab the only type
-            for (String type : indexMappings.keySet()) {
-                typeMappings = indexMappings.get(type);
-            }
+        Map<String, String> typeMappings = new HashMap<>();
+        if (indexMappings.has(typeName)) {
+            typeMappings = indexMappings.mapping(typeName).fieldTypes();
+        } else if (typeName == null && !indexMappings.isEmpty()) {
+            // Assuming ES version 6.x, there can be only one type per index so grab the only type
+            typeMappings = indexMappings.firstMapping().fieldTypes();
         }
 
         this.indexName = this.indexName == null ? indexName : (this.indexName + "|" + indexName);
@@ -183,7 +176,10 @@ public class SelectResultSet extends ResultSet {
         Select select = (Select) query;
         List<Field> fields;
         if (queryResult instanceof Aggregations) {
-            fields = select.getGroupBys().isEmpty() ? new ArrayList<>() : select.getGroupBys().get(0);
+            fields = select.getGroupBys().isEmpty() ? new ArrayList<>() : new ArrayList<>(select.getGroupBys().get(0));
+            if (hasCompositeAggregations(((Aggregations) queryResult).asList())) {
+                fields = groupKeysInSelectOrder(fields, select.getFields());
+            }
             for (Field field : select.getFields()) {
                 if (field instanceof MethodField) {
                     fields.add(field);
@@ -200,6 +196,20 @@ public class SelectResultSet extends ResultSet {
         return fields;
     }
 
+    /**
+     * Sort GROUP BY fields of composite aggregation by position in SELECT, because the sources in bucket key are
+     * sorted by ORDER BY first. GROUP BY fields absent in SELECT follow in GROUP BY order.
+     */
+    private List<Field> groupKeysInSelectOrder(List<Field> groupBy, List<Field> selectFields) {
+        List<String> selectNames = selectFields.stream().map(Field::getName).collect(Collectors.toList());
+        List<Field> sorted = new ArrayList<>(groupBy);
+        sorted.sort(Comparator.comparingInt(field -> {
+            int index = selectNames.indexOf(field.getName());
+            return (index < 0) ? Integer.MAX_VALUE : index;
+        }));
+        return sorted;
+    }
+
     private String[] fetchFieldsAsArray(Query query) {
         List<Field> fields = fetchFields(query);
         return fields.stream()
@@ -224,20 +234,6 @@ public class SelectResultSet extends ResultSet {
         return fieldMap;
     }
 
-    private String[] selectAllFieldsIfEmpty(String[] fields) {
-        if (isSelectAll())
-            return new String[] {"*"};
-
-        return fields;
-    }
-
-    private String[] emptyArrayIfNull(String typeName) {
-        if (typeName != null)
-            return new String[] {typeName};
-        else
-            return Strings.EMPTY_ARRAY;
-    }
-
     private Schema.Type fetchMethodReturnType(Field field) {
         switch (field.getName().toLowerCase()) {
             case "count":
@@ -262,11 +258,15 @@ public class SelectResultSet extends ResultSet {
      * If an alias was given for a field, that will be used to identify the field in Column, otherwise the field name
      * will be used.
      */
-    private List<Schema.Column> populateColumns(Query query, String[] fieldNames, Map<String, FieldMappingMetaData> typeMappings) {
+    private List<Schema.Column> populateColumns(Query query, String[] fieldNames, Map<String, String> typeMappings) {
         List<String> fields;
 
-        if (isSelectAll() || containsWildcard(query)) {
+        if (isSelectAll()) {
             fields = new ArrayList<>(typeMappings.keySet());
+        } else if (containsWildcard(query)) {
+            fields = typeMappings.keySet().stream().
+                                  filter(field -> Regex.simpleMatch(fieldNames, field)).
+                                  collect(Collectors.toList());
         } else {
             fields = Arrays.asList(fieldNames);
         }
@@ -310,13 +310,11 @@ public class SelectResultSet extends ResultSet {
              */
             if (typeMappings.containsKey(field) && !field.startsWith("_")) {
                 if (!isSelectAll() || !field.endsWith(".keyword")) {
-                    FieldMappingMetaData metaData = typeMappings.get(field);
-
                     // Ignore nested fields during SELECT *, expectation is that user will SELECT them specifically
                     // TODO isPropertyType() logic should be changed to check for nested more effectively
                     if (isSelectAll() && isPropertyType(field)) { continue; }
 
-                    String type = getTypeFromMetaData(field, metaData).toUpperCase();
+                    String type = typeMappings.get(field).toUpperCase();
 
                     /*
                      * Three cases regarding Type:
@@ -364,30 +362,6 @@ public class SelectResultSet extends ResultSet {
         return lastDot > -1 && !fieldName.substring(lastDot + 1).equals("keyword");
     }
 
-    /** Used to retrieve the type of fields from metaData map structures for both regular and nested fields */
-    @SuppressWarnings("unchecked")
-    private String getTypeFromMetaData(String fieldName, FieldMappingMetaData metaData) {
-        Map<String, Object> source = metaData.sourceAsMap();
-        String[] fieldPath = fieldName.split("\\.");
-
-        /*
-         * When field is not nested the metaData source is fieldName -> type
-         * When it is nested or contains "." in general (ex. fieldName.nestedName) the source is nestedName -> type
-         */
-        Map<String, Object> fieldMapping;
-        if (fieldPath.length < 2) {
-            fieldMapping = (Map<String, Object>) source.get(fieldName);
-        } else {
-            fieldMapping = (Map<String, Object>) source.get(fieldPath[1]);
-        }
-
-        for (int i = 2; i < fieldPath.length; i++) {
-            fieldMapping = (Map<String, Object>) fieldMapping.get(fieldPath[i]);
-        }
-
-        return (String) fieldMapping.get("type");
-    }
-
     /***********************************************************
           Logic for loading Rows to be stored in DataRows
      ***********************************************************/
@@ -422,7 +396,7 @@ public class SelectResultSet extends ResultSet {
         List<DataRows.Row> rows = new ArrayList<>();
         Set<String> newKeys = new HashSet<>(head);
         for (SearchHit hit : searchHits) {
-            Map<String, Object> rowSource = hit.getSourceAsMap();
+            Map<String, Object> rowSource = ElasticResultHandler.getSourceOrFieldsAsMap(hit);
             List<DataRows.Row> result = new ArrayList<>();
             result.add(new DataRows.Row(rowSource));
 
@@ -441,7 +415,16 @@ public class SelectResultSet extends ResultSet {
     private List<DataRows.Row> populateRows(Aggregations aggregations) {
         List<DataRows.Row> rows = new ArrayList<>();
         List<Aggregation> aggs = aggregations.asList();
-        if (hasTermAggregations(aggs)) {
+        if (hasCompositeAggregations(aggs)) {
+            // Each composite aggregation is a page of buckets in order
+            for (Aggregation page : aggs) {
+                for (CompositeAggregation.Bucket bucket : ((CompositeAggregation) page).getBuckets()) {
+                    rows.add(new DataRows.Row(
+                        addNumericAggregation(bucket.getAggregations().asList(), new HashMap<>(bucket.getKey()))
+                    ));
+                }
+            }
+        } else if (hasTermAggregations(aggs)) {
             Terms terms = (Terms) aggs.get(0);
             String field = terms.getName();
 
@@ -496,6 +479,14 @@ public class SelectResultSet extends ResultSet {
         return !aggs.isEmpty() && aggs.get(0) instanceof Terms;
     }
 
+    /**
+     * hasCompositeAggregations() checks if GROUP BY is executed by composite aggregation in which case each bucket
+     * is a row with all GROUP BY fields in its key rather than a path of nested Terms aggregations.
+     */
+    private boolean hasCompositeAggregations(List<Aggregation> aggs) {
+        return !aggs.isEmpty() && aggs.get(0) instanceof CompositeAggregation;
+    }
+
     /**
      * Adds the contents of Aggregation (specifically the NumericMetricsAggregation.SingleValue instance) from
      * bucket.aggregations into the data map
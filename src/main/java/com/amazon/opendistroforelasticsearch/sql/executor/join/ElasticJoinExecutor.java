@@ -16,6 +16,7 @@
 package com.amazon.opendistroforelasticsearch.sql.executor.join;
 
 import com.amazon.opendistroforelasticsearch.sql.executor.ElasticHitsExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
 import com.amazon.opendistroforelasticsearch.sql.query.join.HashJoinElasticRequestBuilder;
 import com.amazon.opendistroforelasticsearch.sql.query.join.JoinRequestBuilder;
 import com.amazon.opendistroforelasticsearch.sql.query.join.NestedLoopsElasticRequestBuilder;
@@ -25,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -73,9 +75,14 @@ public abstract class ElasticJoinExecutor implements ElasticHitsExecutor {
         XContentBuilder builder = null;
         long len;
         try {
-            builder = ElasticUtils.hitsAsStringResultZeroCopy(results, metaResults, this);
+            QueryProfile profile = QueryProfile.current();
+            try (Releasable ignored = profile.time(QueryProfile.Phase.FORMAT)) {
+                builder = ElasticUtils.hitsAsStringResultZeroCopy(results, metaResults, this);
+            }
             BytesRestResponse bytesRestResponse = new BytesRestResponse(RestStatus.OK, builder);
             len = bytesRestResponse.content().length();
+            profile.setRows(results.size());
+            profile.setResponseBytes(len);
             channel.sendResponse(bytesRestResponse);
         }
         catch (IOException e) {
@@ -93,9 +100,12 @@ public abstract class ElasticJoinExecutor implements ElasticHitsExecutor {
 
     public void run() throws IOException, SqlParseException {
         long timeBefore = System.currentTimeMillis();
-        results = innerRun();
+        try (Releasable ignored = QueryProfile.current().time(QueryProfile.Phase.EXECUTE)) {
+            results = innerRun();
+        }
         long joinTimeInMilli = System.currentTimeMillis() - timeBefore;
         this.metaResults.setTookImMilli(joinTimeInMilli);
+        QueryProfile.current().addShardStats(metaResults);
     }
 
 
@@ -16,6 +16,7 @@
 package com.amazon.opendistroforelasticsearch.sql.executor.join;
 
 import com.alibaba.druid.sql.ast.statement.SQLJoinTableSource;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
@@ -194,6 +195,7 @@ public class HashJoinElasticExecutor extends ElasticJoinExecutor {
             }
             if (!finishedScrolling) {
                 if (secondTableHits.length > 0 && (hintLimit == null || fetchedSoFarFromSecondTable >= hintLimit)) {
+                    QueryCancellation.checkCancelled("hash join scrolling");
                     searchResponse = client.prepareSearchScroll(searchResponse.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
                 } else break;
             } else {
@@ -261,6 +263,7 @@ public class HashJoinElasticExecutor extends ElasticJoinExecutor {
                 System.out.println("too many results for first table, stoping at:" + curentNumOfResults);
                 break;
             }
+            QueryCancellation.checkCancelled("hash join scrolling");
             scrollResp = client.prepareSearchScroll(scrollResp.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
             hits = scrollResp.getHits().getHits();
         }
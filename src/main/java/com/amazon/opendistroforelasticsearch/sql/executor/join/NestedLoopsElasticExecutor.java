@@ -16,6 +16,7 @@
 package com.amazon.opendistroforelasticsearch.sql.executor.join;
 
 import com.alibaba.druid.sql.ast.statement.SQLJoinTableSource;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
 import com.amazon.opendistroforelasticsearch.sql.esdomain.ESClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -103,6 +104,7 @@ public class NestedLoopsElasticExecutor extends ElasticJoinExecutor {
                     if (!BackOffRetryStrategy.isHealthy()) {
                         throw new IllegalStateException("Memory circuit is broken");
                     }
+                    QueryCancellation.checkCancelled("nested loops scrolling");
                     firstTableResponse = client.prepareSearchScroll(firstTableResponse.getScrollId()).setScroll(new TimeValue(600000)).get();
                 }
                 else finishedWithFirstTable = true;
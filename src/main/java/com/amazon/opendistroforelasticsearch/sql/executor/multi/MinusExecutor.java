@@ -16,6 +16,7 @@
 package com.amazon.opendistroforelasticsearch.sql.executor.multi;
 
 import com.amazon.opendistroforelasticsearch.sql.executor.ElasticHitsExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
 import com.amazon.opendistroforelasticsearch.sql.executor.join.ElasticUtils;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
@@ -186,6 +187,7 @@ public class MinusExecutor implements ElasticHitsExecutor {
             if(totalDocsFetchedFromFirstTable > this.maxDocsToFetchOnFirstTable){
                 break;
             }
+            QueryCancellation.checkCancelled("minus scrolling");
             scrollResp = client.prepareSearchScroll(scrollResp.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
             hits = scrollResp.getHits().getHits();
         }
@@ -204,6 +206,7 @@ public class MinusExecutor implements ElasticHitsExecutor {
             if(totalDocsFetchedFromSecondTable > this.maxDocsToFetchOnSecondTable){
                 break;
             }
+            QueryCancellation.checkCancelled("minus scrolling");
             scrollResp = client.prepareSearchScroll(scrollResp.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
             hits = scrollResp.getHits().getHits();
         }
@@ -300,6 +303,7 @@ public class MinusExecutor implements ElasticHitsExecutor {
                 if(totalDocsFetchedFromSecondTable > this.maxDocsToFetchOnSecondTable){
                     break;
                 }
+                QueryCancellation.checkCancelled("minus scrolling");
                 responseForSecondTable = client.prepareSearchScroll(responseForSecondTable.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
                 secondQueryHits = responseForSecondTable.getHits().getHits();
             }
@@ -309,6 +313,7 @@ public class MinusExecutor implements ElasticHitsExecutor {
                 break;
             }
 
+            QueryCancellation.checkCancelled("minus scrolling");
             scrollResp = client.prepareSearchScroll(scrollResp.getScrollId()).setScroll(new TimeValue(600000)).execute().actionGet();
             hits = scrollResp.getHits().getHits();
         }
@@ -0,0 +1,49 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.task;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.tasks.TaskId;
+
+/**
+ * Client which makes every request issued by a query execution running as {@link SqlTask} the child
+ * of that task, so that in-flight searches and scrolls are cancelled once the SQL task is cancelled.
+ */
+public class SqlTaskClient extends FilterClient {
+
+    public SqlTaskClient(Client in) {
+        super(in);
+    }
+
+    @Override
+    protected <Request extends ActionRequest,
+               Response extends ActionResponse,
+               RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+    void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+        TaskId parentTaskId = SqlTaskManager.manager().currentTaskId();
+        if (parentTaskId != null && !request.getParentTask().isSet()) {
+            request.setParentTask(parentTaskId);
+        }
+        super.doExecute(action, request, listener);
+    }
+
+}
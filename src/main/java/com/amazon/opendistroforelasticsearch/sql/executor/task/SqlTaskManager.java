@@ -0,0 +1,179 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.executor.task;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskAwareRequest;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.tasks.TaskManager;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registers each SQL query execution as a cancellable task in ES task manager. The task is listed by
+ * GET _tasks?actions=*opendistro/sql* and cancelled by POST _tasks/{task_id}/_cancel. Its cancellation flag
+ * is bound to the executing thread by {@link QueryCancellation} and checked cooperatively by long running
+ * loops such as scrolling in join executors and batch prefetching in physical operators.
+ *
+ * The task is also bound to the executing thread, so that search and scroll requests issued by
+ * {@link SqlTaskClient} in that thread are registered as its children and cancelled along with it.
+ */
+public class SqlTaskManager {
+
+    /** Task type and action name shown in tasks API */
+    public static final String TASK_TYPE = "transport";
+    public static final String ACTION_NAME = "indices:data/read/opendistro/sql";
+
+    private static SqlTaskManager INSTANCE;
+
+    /** Task of query execution running in current thread */
+    private static final ThreadLocal<SqlTask> CURRENT_TASK = new ThreadLocal<>();
+
+    /** ES task manager which is available once transport service is created */
+    private volatile TaskManager taskManager;
+
+    /** Local node ID which is available once transport service is started */
+    private volatile Supplier<String> localNodeId;
+
+    public static synchronized SqlTaskManager manager() {
+        if (INSTANCE == null) {
+            INSTANCE = new SqlTaskManager();
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void manager(SqlTaskManager instance) {
+        INSTANCE = instance;
+    }
+
+    public void setTaskManager(TaskManager taskManager) {
+        this.taskManager = taskManager;
+    }
+
+    public void setLocalNodeId(Supplier<String> localNodeId) {
+        this.localNodeId = localNodeId;
+    }
+
+    /**
+     * ID of task of query execution running in current thread as parent of the requests it issues.
+     * @return  task ID or null if current thread is not running any query as task
+     */
+    public TaskId currentTaskId() {
+        SqlTask task = CURRENT_TASK.get();
+        Supplier<String> nodeId = localNodeId;
+        if (task == null || nodeId == null) {
+            return null;
+        }
+        return new TaskId(nodeId.get(), task.getId());
+    }
+
+    /**
+     * Run query execution in current thread as a registered task.
+     *
+     * @param description   task description, normally the SQL query
+     * @param action        query execution
+     * @return              result of execution
+     */
+    public <T> T execute(String description, CheckedSupplier<T, Exception> action) throws Exception {
+        return execute(description, () -> false, action);
+    }
+
+    /**
+     * Run query execution in current thread as a registered task which is cancelled either by tasks API
+     * or the additional cancellation flag given, ex. from asynchronous query API.
+     *
+     * @param description   task description, normally the SQL query
+     * @param isCancelled   additional cancellation flag
+     * @param action        query execution
+     * @return              result of execution
+     */
+    public <T> T execute(String description, BooleanSupplier isCancelled,
+                         CheckedSupplier<T, Exception> action) throws Exception {
+        SqlTask task = register(description);
+        BooleanSupplier isTaskCancelled = (task == null) ? isCancelled :
+                                          () -> task.isCancelled() || isCancelled.getAsBoolean();
+
+        QueryCancellation.register(isTaskCancelled);
+        if (task != null) {
+            CURRENT_TASK.set(task);
+        }
+        try {
+            return action.get();
+        } catch (Exception e) {
+            if (isTaskCancelled.getAsBoolean()) {
+                throw new TaskCancelledException("Query was cancelled: " + description);
+            }
+            throw e;
+        } finally {
+            QueryCancellation.unregister();
+            if (task != null) {
+                CURRENT_TASK.remove();
+                taskManager.unregister(task);
+            }
+        }
+    }
+
+    /** Register new task, or return null if task manager is not available yet */
+    private SqlTask register(String description) {
+        TaskManager manager = taskManager;
+        if (manager == null) {
+            return null;
+        }
+        return (SqlTask) manager.register(TASK_TYPE, ACTION_NAME, new SqlTaskRequest(description));
+    }
+
+    /**
+     * Request counterpart for task manager to create task instance. There is no transport request
+     * because SQL query is executed locally on the coordinating node.
+     */
+    private static class SqlTaskRequest implements TaskAwareRequest {
+
+        private final String description;
+
+        private TaskId parentTaskId = TaskId.EMPTY_TASK_ID;
+
+        SqlTaskRequest(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public void setParentTask(TaskId taskId) {
+            this.parentTaskId = taskId;
+        }
+
+        @Override
+        public TaskId getParentTask() {
+            return parentTaskId;
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+            return new SqlTask(id, type, action, description, parentTaskId, headers);
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+    }
+
+}
@@ -17,11 +17,14 @@ package com.amazon.opendistroforelasticsearch.sql.parser;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
 import com.alibaba.druid.sql.ast.expr.SQLCaseExpr;
+import com.alibaba.druid.sql.ast.expr.SQLCharExpr;
 import com.alibaba.druid.sql.ast.expr.SQLNullExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
 import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
 import com.amazon.opendistroforelasticsearch.sql.domain.Where;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
 import com.google.common.base.Joiner;
+import com.amazon.opendistroforelasticsearch.sql.utils.SQLFunctions;
 import com.amazon.opendistroforelasticsearch.sql.utils.Util;
 
 import java.util.ArrayList;
@@ -54,9 +57,9 @@ public class CaseWhenParser {
                 scriptCode = scriptCode.substring(3);
             }
             if (result.size() == 0) {
-                result.add("if(" + scriptCode + ")" + "{" + Util.getScriptValueWithQuote(item.getValueExpr(), "'") + "}");
+                result.add("if(" + scriptCode + ")" + "{" + scriptValue(item.getValueExpr()) + "}");
             } else {
-                result.add("else if(" + scriptCode + ")" + "{" + Util.getScriptValueWithQuote(item.getValueExpr(), "'") + "}");
+                result.add("else if(" + scriptCode + ")" + "{" + scriptValue(item.getValueExpr()) + "}");
             }
 
         }
@@ -64,7 +67,7 @@ public class CaseWhenParser {
         if (elseExpr == null) {
             result.add("else { null }");
         } else {
-            result.add("else {" + Util.getScriptValueWithQuote(elseExpr, "'") + "}");
+            result.add("else {" + scriptValue(elseExpr) + "}");
         }
 
 
@@ -90,15 +93,15 @@ public class CaseWhenParser {
                 codes.add("(" + ((ScriptFilter) condition.getValue()).getScript() + ")");
             } else if (condition.getOpear() == Condition.OPEAR.BETWEEN) {
                 Object[] objs = (Object[]) condition.getValue();
-                codes.add("(" + "doc['" + condition.getName() + "'].value >= " + objs[0] + " && doc['"
-                        + condition.getName() + "'].value <=" + objs[1] + ")");
+                codes.add("(" + "doc['" + condition.getName() + "'].value >= " + SQLFunctions.literal(objs[0]) + " && doc['"
+                        + condition.getName() + "'].value <=" + SQLFunctions.literal(objs[1]) + ")");
             } else {
                 SQLExpr nameExpr = condition.getNameExpr();
                 SQLExpr valueExpr = condition.getValueExpr();
                 if(valueExpr instanceof SQLNullExpr) {
                     codes.add("(" + "doc['" + nameExpr.toString() + "']" + ".empty)");
                 } else {
-                    codes.add("(" + Util.getScriptValueWithQuote(nameExpr, "'") + condition.getOpertatorSymbol() + Util.getScriptValueWithQuote(valueExpr, "'") + ")");
+                    codes.add("(" + Util.getScriptValueWithQuote(nameExpr, "'") + condition.getOpertatorSymbol() + scriptValue(valueExpr) + ")");
                 }
             }
         } else {
@@ -111,4 +114,16 @@ public class CaseWhenParser {
         }
     }
 
+    /**
+     * Pass literal as script param so that queries only different in literals share the same compiled script.
+     */
+    private Object scriptValue(SQLExpr expr) throws SqlParseException {
+        if (expr instanceof SQLCharExpr) {
+            return SQLFunctions.literal(((SQLCharExpr) expr).getText());
+        } else if (expr instanceof SQLNumericLiteralExpr) {
+            return SQLFunctions.literal(((SQLNumericLiteralExpr) expr).getNumber());
+        }
+        return Util.getScriptValueWithQuote(expr, "'");
+    }
+
 }
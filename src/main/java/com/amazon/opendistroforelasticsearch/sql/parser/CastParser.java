@@ -48,7 +48,7 @@ public class CastParser {
 
         String dataType = castExpr.getDataType().getName().toUpperCase();
         String fileName = String.format("doc['%s'].value",Util.expr2Object(castExpr.getExpr()));
-        String name = SQLFunctions.randomize("field");
+        String name = SQLFunctions.generateName("field");
 
         try {
             if (DataType.valueOf(dataType) == DataType.INT) {
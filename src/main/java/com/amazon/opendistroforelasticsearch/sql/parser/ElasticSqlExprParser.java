@@ -28,12 +28,17 @@ import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 import com.alibaba.druid.sql.parser.*;
 import com.alibaba.druid.util.JdbcConstants;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by Eliran on 18/8/2015.
  */
 public class ElasticSqlExprParser extends SQLExprParser {
+
+    /** Max number of operands in a chain of AND or OR to be parsed into left-deep tree */
+    public static final int BALANCED_CHAIN_THRESHOLD = 1024;
+
     public ElasticSqlExprParser(Lexer lexer) {
         super(lexer);
         this.aggregateFunctions = AGGREGATE_FUNCTIONS;
@@ -706,24 +711,64 @@ public class ElasticSqlExprParser extends SQLExprParser {
     }
 
     public SQLExpr orRest(SQLExpr expr) {
-
+        List<SQLExpr> operands = new ArrayList<>();
+        operands.add(expr);
         for (; ; ) {
             if (lexer.token() == Token.OR || lexer.token() == Token.BARBAR) {
                 lexer.nextToken();
-                SQLExpr rightExp = and();
-
-                expr = new SQLBinaryOpExpr(expr, SQLBinaryOperator.BooleanOr, rightExp, JdbcConstants.MYSQL);
+                operands.add(and());
             } else if (lexer.token() == Token.XOR) {
                 lexer.nextToken();
                 SQLExpr rightExp = and();
 
-                expr = new SQLBinaryOpExpr(expr, SQLBinaryOperator.BooleanXor, rightExp, JdbcConstants.MYSQL);
+                SQLExpr leftExp = chain(operands, SQLBinaryOperator.BooleanOr);
+                operands.clear();
+                operands.add(new SQLBinaryOpExpr(leftExp, SQLBinaryOperator.BooleanXor, rightExp, JdbcConstants.MYSQL));
             } else {
                 break;
             }
         }
 
-        return expr;
+        return chain(operands, SQLBinaryOperator.BooleanOr);
+    }
+
+    @Override
+    public SQLExpr andRest(SQLExpr expr) {
+        List<SQLExpr> operands = new ArrayList<>();
+        operands.add(expr);
+        while (lexer.token() == Token.AND || lexer.token() == Token.AMPAMP) {
+            lexer.nextToken();
+            operands.add(relational());
+        }
+        return chain(operands, SQLBinaryOperator.BooleanAnd);
+    }
+
+    /**
+     * Chain operands by the operator. Short chain is left-deep as usual. Long chain, ex. thousands of OR
+     * generated by tool, is built as balanced tree so that Druid visitors which recurse on both sides
+     * are not able to overflow the stack.
+     */
+    private SQLExpr chain(List<SQLExpr> operands, SQLBinaryOperator operator) {
+        if (operands.size() <= BALANCED_CHAIN_THRESHOLD) {
+            SQLExpr expr = operands.get(0);
+            for (int i = 1; i < operands.size(); i++) {
+                expr = new SQLBinaryOpExpr(expr, operator, operands.get(i), JdbcConstants.MYSQL);
+            }
+            return expr;
+        }
+
+        List<SQLExpr> level = operands;
+        while (level.size() > 1) {
+            List<SQLExpr> nextLevel = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                nextLevel.add(new SQLBinaryOpExpr(level.get(i), operator, level.get(i + 1), JdbcConstants.MYSQL));
+            }
+            if (level.size() % 2 == 1) {
+                nextLevel.add(level.get(level.size() - 1));
+            }
+            level = nextLevel;
+        }
+        return level.get(0);
     }
 
     public SQLExpr additiveRest(SQLExpr expr) {
@@ -74,7 +74,9 @@ public class FieldMaker {
             List<KVValue> methodParameters = new ArrayList<>();
             methodParameters.add(new KVValue(alias));
             methodParameters.add(new KVValue(scriptCode));
-            return new MethodField("script", methodParameters, null, alias);
+            MethodField methodField = new MethodField("script", methodParameters, null, alias);
+            methodField.setScriptParams(SQLFunctions.scriptParams());
+            return methodField;
         }else if (expr instanceof SQLCastExpr) {
             SQLCastExpr castExpr = (SQLCastExpr) expr;
             if (alias == null) {
@@ -163,7 +165,7 @@ public class FieldMaker {
 
         String scriptFieldAlias;
         if (first && (alias == null || alias.equals(""))) {
-            scriptFieldAlias = SQLFunctions.randomize("field");
+            scriptFieldAlias = SQLFunctions.generateName("field");
         } else {
             scriptFieldAlias = alias;
         }
@@ -281,7 +283,7 @@ public class FieldMaker {
         //just check we can find the function
         if (SQLFunctions.isBuiltInFunction(finalMethodName)) {
             if (alias == null && first) {
-                alias = SQLFunctions.randomize("field");
+                alias = SQLFunctions.generateName("field");
             }
             //should check if field and first .
             Tuple<String, String> newFunctions = SQLFunctions.function(finalMethodName.toLowerCase(), paramers,
@@ -308,6 +310,10 @@ public class FieldMaker {
             paramers.addAll(tempParamers);
         }
 
-        return new MethodField(finalMethodName, paramers, option == null ? null : option.name(), alias);
+        MethodField methodField = new MethodField(finalMethodName, paramers, option == null ? null : option.name(), alias);
+        if (first) {
+            methodField.setScriptParams(SQLFunctions.scriptParams());
+        }
+        return methodField;
     }
 }
@@ -18,6 +18,7 @@ package com.amazon.opendistroforelasticsearch.sql.parser;
 import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
 import com.amazon.opendistroforelasticsearch.sql.domain.KVValue;
 import com.amazon.opendistroforelasticsearch.sql.domain.MethodField;
+import com.amazon.opendistroforelasticsearch.sql.domain.Placeholder;
 import com.amazon.opendistroforelasticsearch.sql.domain.Select;
 import com.amazon.opendistroforelasticsearch.sql.domain.Where;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
@@ -47,17 +48,25 @@ import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 
 import com.amazon.opendistroforelasticsearch.sql.utils.SQLFunctions;
 import com.amazon.opendistroforelasticsearch.sql.utils.Util;
+import org.elasticsearch.script.ScriptType;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by allwefantasy on 9/2/16.
  */
 public class WhereParser {
 
+    /** Min number of literals in IN list to be translated into terms query. Same as default max clause count. */
+    public static final int IN_TERMS_THRESHOLD = 1024;
+
     private MySqlSelectQueryBlock query;
     private SQLDeleteStatement delete;
     private SQLExpr where;
@@ -109,8 +118,9 @@ public class WhereParser {
 
         if (expr instanceof SQLBinaryOpExpr && !isCond((SQLBinaryOpExpr) expr)) {
             SQLBinaryOpExpr bExpr = (SQLBinaryOpExpr) expr;
-            routeCond(bExpr, bExpr.getLeft(), where);
-            routeCond(bExpr, bExpr.getRight(), where);
+            for (SQLExpr operand : flattenOperands(bExpr)) {
+                routeCond(bExpr, operand, where);
+            }
         } else if (expr instanceof SQLNotExpr) {
             parseWhere(((SQLNotExpr) expr).getExpr(), where);
             negateWhere(where);
@@ -119,6 +129,43 @@ public class WhereParser {
         }
     }
 
+    /**
+     * Flatten chain of the same logical operator, ex. a OR b OR c ..., into its operands from left to right.
+     * This is done by explicit stack rather than recursion so that very long chain generated by tool
+     * doesn't overflow the stack and each operand is routed to the same Where as before.
+     */
+    private List<SQLExpr> flattenOperands(SQLBinaryOpExpr bExpr) {
+        List<SQLExpr> operands = new ArrayList<>();
+        Deque<SQLExpr> stack = new ArrayDeque<>();
+        stack.push(bExpr.getRight());
+        stack.push(bExpr.getLeft());
+        while (!stack.isEmpty()) {
+            SQLExpr sub = stack.pop();
+            if (isSameLogicalOperator(bExpr, sub)) {
+                SQLBinaryOpExpr binarySub = (SQLBinaryOpExpr) sub;
+                stack.push(binarySub.getRight());
+                stack.push(binarySub.getLeft());
+            } else {
+                operands.add(sub);
+            }
+        }
+        return operands;
+    }
+
+    private boolean isSameLogicalOperator(SQLBinaryOpExpr bExpr, SQLExpr sub) {
+        if (!(sub instanceof SQLBinaryOpExpr)) {
+            return false;
+        }
+        SQLBinaryOpExpr binarySub = (SQLBinaryOpExpr) sub;
+        return binarySub.getOperator() == bExpr.getOperator()
+                && !isCond(binarySub)
+                && !isLiteral(binarySub.getLeft()) && !isLiteral(binarySub.getRight());
+    }
+
+    private boolean isLiteral(SQLExpr expr) {
+        return expr instanceof SQLNumericLiteralExpr || expr instanceof SQLCharExpr;
+    }
+
     private void negateWhere(Where where) throws SqlParseException {
         for (Where sub : where.getWheres()) {
             if (sub instanceof Condition) {
@@ -284,14 +331,10 @@ public class WhereParser {
                 else if (isChildren)
                     condition = new Condition(Where.CONN.valueOf(opear), soExpr.getLeft().toString(), soExpr.getLeft(), soExpr.getOperator().name, parseValue(soExpr.getRight()), soExpr.getRight(), childrenType);
                 else {
-                    SQLMethodInvokeExpr sqlMethodInvokeExpr = parseSQLBinaryOpExprWhoIsConditionInWhere(soExpr);
-                    if (sqlMethodInvokeExpr == null) {
+                    ScriptFilter scriptFilter = parseSQLBinaryOpExprWhoIsConditionInWhere(soExpr);
+                    if (scriptFilter == null) {
                         condition = new Condition(Where.CONN.valueOf(opear), soExpr.getLeft().toString(), soExpr.getLeft(), soExpr.getOperator().name, parseValue(soExpr.getRight()), soExpr.getRight(), null);
                     } else {
-                        ScriptFilter scriptFilter = new ScriptFilter();
-                        if (!scriptFilter.tryParseFromMethodExpr(sqlMethodInvokeExpr)) {
-                            throw new SqlParseException("could not parse script filter");
-                        }
                         condition = new Condition(Where.CONN.valueOf(opear), null, soExpr.getLeft(), "SCRIPT", scriptFilter, soExpr.getRight());
 
                     }
@@ -326,6 +369,10 @@ public class WhereParser {
                 condition = new Condition(Where.CONN.valueOf(opear), leftSide, null, siExpr.isNot() ? "NOT IN" : "IN", parseValue(siExpr.getTargetList()), null, nestedType);
             else if (isChildren)
                 condition = new Condition(Where.CONN.valueOf(opear), leftSide, null, siExpr.isNot() ? "NOT IN" : "IN", parseValue(siExpr.getTargetList()), null, childrenType);
+            else if (isLargeLiteralList(siExpr.getTargetList()))
+                condition = new Condition(Where.CONN.valueOf(opear), leftSide, null,
+                        siExpr.isNot() ? Condition.OPEAR.NIN_TERMS : Condition.OPEAR.IN_TERMS,
+                        parseDistinctValue(siExpr.getTargetList()), null);
             else
                 condition = new Condition(Where.CONN.valueOf(opear), leftSide, null, siExpr.isNot() ? "NOT IN" : "IN", parseValue(siExpr.getTargetList()), null);
 
@@ -488,7 +535,11 @@ public class WhereParser {
         return methodField;
     }
 
-    private SQLMethodInvokeExpr parseSQLBinaryOpExprWhoIsConditionInWhere(SQLBinaryOpExpr soExpr) throws SqlParseException {
+    /**
+     * Translate comparison with built-in function on either side into script filter. Literals on the other side
+     * are passed in as script params, so that the same comparison with different values shares one compiled script.
+     */
+    private ScriptFilter parseSQLBinaryOpExprWhoIsConditionInWhere(SQLBinaryOpExpr soExpr) throws SqlParseException {
 
         if (!(soExpr.getLeft() instanceof SQLMethodInvokeExpr ||
                 soExpr.getRight() instanceof SQLMethodInvokeExpr)) {
@@ -507,24 +558,8 @@ public class WhereParser {
             }
         }
 
-
-        MethodField leftMethod = new MethodField(null, Lists.newArrayList(new KVValue("", Util.expr2Object(soExpr.getLeft(), "'"))), null, null);
-        MethodField rightMethod = new MethodField(null, Lists.newArrayList(new KVValue("", Util.expr2Object(soExpr.getRight(), "'"))), null, null);
-
-        if (soExpr.getLeft() instanceof SQLIdentifierExpr || soExpr.getLeft() instanceof SQLPropertyExpr) {
-            leftMethod = new MethodField(null, Lists.newArrayList(new KVValue("", "doc['" + Util.expr2Object(soExpr.getLeft(), "'") + "'].value")), null, null);
-        }
-
-        if (soExpr.getRight() instanceof SQLIdentifierExpr || soExpr.getRight() instanceof SQLPropertyExpr) {
-            rightMethod = new MethodField(null, Lists.newArrayList(new KVValue("", "doc['" + Util.expr2Object(soExpr.getRight(), "'") + "'].value")), null, null);
-        }
-
-        if (soExpr.getLeft() instanceof SQLMethodInvokeExpr) {
-            leftMethod = parseSQLMethodInvokeExprWithFunctionInWhere((SQLMethodInvokeExpr) soExpr.getLeft());
-        }
-        if (soExpr.getRight() instanceof SQLMethodInvokeExpr) {
-            rightMethod = parseSQLMethodInvokeExprWithFunctionInWhere((SQLMethodInvokeExpr) soExpr.getRight());
-        }
+        MethodField leftMethod = parseScriptOperand(soExpr.getLeft());
+        MethodField rightMethod = parseScriptOperand(soExpr.getRight());
 
         String v1 = leftMethod.getParams().get(0).value.toString();
         String v1Dec = leftMethod.getParams().size() == 2 ? leftMethod.getParams().get(1).value.toString() + ";" : "";
@@ -541,10 +576,23 @@ public class WhereParser {
 
         String finalStr = v1Dec + v2Dec + v1 + " " + operator + " " + v2;
 
-        SQLMethodInvokeExpr scriptMethod = new SQLMethodInvokeExpr("script", null);
-        scriptMethod.addParameter(new SQLCharExpr(finalStr));
-        return scriptMethod;
+        return new ScriptFilter(finalStr, SQLFunctions.scriptParams(), ScriptType.INLINE);
+    }
 
+    private MethodField parseScriptOperand(SQLExpr expr) throws SqlParseException {
+        if (expr instanceof SQLMethodInvokeExpr) {
+            return parseSQLMethodInvokeExprWithFunctionInWhere((SQLMethodInvokeExpr) expr);
+        }
+
+        Object value;
+        if (expr instanceof SQLIdentifierExpr || expr instanceof SQLPropertyExpr) {
+            value = "doc['" + Util.expr2Object(expr, "'") + "'].value";
+        } else if (expr instanceof SQLNumericLiteralExpr || expr instanceof SQLCharExpr) {
+            value = SQLFunctions.literal(Util.expr2Object(expr));
+        } else {
+            value = Util.expr2Object(expr, "'");
+        }
+        return new MethodField(null, Lists.newArrayList(new KVValue("", value)), null, null);
     }
 
     private Object[] getMethodValuesWithSubQueries(SQLMethodInvokeExpr method) throws SqlParseException {
@@ -571,6 +619,31 @@ public class WhereParser {
         return value;
     }
 
+    /**
+     * IN list with more literals than max clause count of bool query is not able to be translated into
+     * term query per value. Build a single terms query for it instead.
+     */
+    private boolean isLargeLiteralList(List<SQLExpr> targetList) {
+        if (targetList.size() < IN_TERMS_THRESHOLD) {
+            return false;
+        }
+        for (SQLExpr target : targetList) {
+            if (!isLiteral(target)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Parse literal values with duplicates removed in order of occurrence */
+    private Object[] parseDistinctValue(List<SQLExpr> targetList) throws SqlParseException {
+        Set<Object> values = new LinkedHashSet<>(targetList.size() * 2);
+        for (SQLExpr target : targetList) {
+            values.add(parseValue(target));
+        }
+        return values.toArray();
+    }
+
     private Object parseValue(SQLExpr expr) throws SqlParseException {
         if (expr instanceof SQLNumericLiteralExpr) {
             Number number = ((SQLNumericLiteralExpr) expr).getNumber();
@@ -591,6 +664,8 @@ public class WhereParser {
             return expr;
         } else if (expr instanceof SQLPropertyExpr) {
             return expr;
+        } else if (expr instanceof SQLVariantRefExpr && "?".equals(((SQLVariantRefExpr) expr).getName())) {
+            return new Placeholder();
         } else {
             throw new SqlParseException(
                     String.format("Failed to parse SqlExpression of type %s. expression value: %s", expr.getClass(), expr)
@@ -18,13 +18,20 @@ package com.amazon.opendistroforelasticsearch.sql.plugin;
 import com.alibaba.druid.sql.parser.ParserException;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
 import com.amazon.opendistroforelasticsearch.sql.executor.ActionRequestRestExecutorFactory;
+import com.amazon.opendistroforelasticsearch.sql.executor.ExplainAnalyzeRestExecutor;
 import com.amazon.opendistroforelasticsearch.sql.executor.RestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CursorQueryExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats;
 import com.amazon.opendistroforelasticsearch.sql.executor.format.ErrorMessage;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTaskClient;
 import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
 import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
 import com.amazon.opendistroforelasticsearch.sql.request.SqlRequestFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.IndexNotFoundException;
@@ -33,6 +40,7 @@ import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.RestStatusToXContentListener;
 
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.Arrays;
@@ -51,6 +59,7 @@ public class RestSqlAction extends BaseRestHandler {
     /** API endpoint path */
     public static final String QUERY_API_ENDPOINT = "/_opendistro/_sql";
     public static final String EXPLAIN_API_ENDPOINT = QUERY_API_ENDPOINT + "/_explain";
+    public static final String CURSOR_CLOSE_ENDPOINT = QUERY_API_ENDPOINT + "/close";
 
     public RestSqlAction(Settings settings, RestController restController) {
         super(settings);
@@ -58,6 +67,7 @@ public class RestSqlAction extends BaseRestHandler {
         restController.registerHandler(RestRequest.Method.GET, QUERY_API_ENDPOINT, this);
         restController.registerHandler(RestRequest.Method.POST, EXPLAIN_API_ENDPOINT, this);
         restController.registerHandler(RestRequest.Method.GET, EXPLAIN_API_ENDPOINT, this);
+        restController.registerHandler(RestRequest.Method.POST, CURSOR_CLOSE_ENDPOINT, this);
     }
 
     @Override
@@ -68,11 +78,25 @@ public class RestSqlAction extends BaseRestHandler {
     @Override
     protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
         try {
+            if (request.path().endsWith("/close")) {
+                return closeCursor(request, client);
+            }
+
             final SqlRequest sqlRequest = SqlRequestFactory.getSqlRequest(request);
-            final QueryAction queryAction = new SearchDao(client).explain(sqlRequest.getSql());
+            checkCursorFormat(sqlRequest, request.param("format"));
+            final QueryProfile profile = QueryProfile.start(sqlRequest.getSql());
+            final Client taskClient = new SqlTaskClient(client);
+            final QueryAction queryAction = new SearchDao(taskClient).explain(sqlRequest);
             queryAction.setSqlRequest(sqlRequest);
+            queryAction.setProfile(profile);
 
-            if (request.path().endsWith("/_explain")) {
+            if (request.path().endsWith("/_explain") && request.paramAsBoolean("analyze", false)) {
+                RestExecutor restExecutor = ActionRequestRestExecutorFactory.createAnalyzeExecutor(queryAction);
+                Map<String, String> analyzeParams = new HashMap<>();
+                analyzeParams.put(ExplainAnalyzeRestExecutor.SEARCH_PROFILE_PARAM,
+                    String.valueOf(request.paramAsBoolean(ExplainAnalyzeRestExecutor.SEARCH_PROFILE_PARAM, false)));
+                return channel -> restExecutor.execute(taskClient, analyzeParams, queryAction, channel);
+            } else if (request.path().endsWith("/_explain")) {
                 final String jsonExplanation = queryAction.explain().explain();
                 return sendResponse(jsonExplanation, OK);
             } else {
@@ -85,11 +109,14 @@ public class RestSqlAction extends BaseRestHandler {
                         additionalParams.put(paramName, request.param(paramName));
                     }
                 }
-                return channel -> restExecutor.execute(client, additionalParams, queryAction, channel);
+                return channel -> restExecutor.execute(taskClient, additionalParams, queryAction, channel);
             }
         } catch (Exception e) {
             LOG.error("Failed during Query Action.", e);
+            SqlStats.stats().recordFailure(e);
             return reportError(e, isClientError(e) ? BAD_REQUEST : SERVICE_UNAVAILABLE);
+        } finally {
+            QueryProfile.unbind(); // Bound again by executor running the query
         }
     }
 
@@ -100,6 +127,26 @@ public class RestSqlAction extends BaseRestHandler {
         return responseParams;
     }
 
+    private void checkCursorFormat(SqlRequest sqlRequest, String format) {
+        boolean isCursorRequested = sqlRequest.fetchSize() > 0 || sqlRequest.cursor() != null;
+        if (isCursorRequested && !"jdbc".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Cursor pagination is only supported for jdbc format");
+        }
+    }
+
+    /**
+     * Free scroll context behind the cursor if client doesn't want to fetch remaining pages.
+     */
+    private RestChannelConsumer closeCursor(RestRequest request, NodeClient client) {
+        SqlRequest sqlRequest = SqlRequestFactory.getSqlRequest(request);
+        if (sqlRequest.cursor() == null) {
+            throw new IllegalArgumentException("Cannot find cursor in request payload");
+        }
+
+        Cursor cursor = Cursor.decode(sqlRequest.cursor());
+        return channel -> CursorQueryExecutor.close(client, cursor, new RestStatusToXContentListener<>(channel));
+    }
+
     private boolean isClientError(Exception e) {
         return e instanceof NullPointerException | // NPE is hard to differentiate but more likely caused by bad query
                e instanceof SqlParseException |
@@ -0,0 +1,223 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.plugin;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.ActionRequestRestExecutorFactory;
+import com.amazon.opendistroforelasticsearch.sql.executor.AsyncRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats;
+import com.amazon.opendistroforelasticsearch.sql.executor.async.AsyncQuery;
+import com.amazon.opendistroforelasticsearch.sql.executor.async.AsyncQueryStore;
+import com.amazon.opendistroforelasticsearch.sql.executor.format.ErrorMessage;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTaskClient;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequestFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
+import static org.elasticsearch.rest.RestStatus.CONFLICT;
+import static org.elasticsearch.rest.RestStatus.INTERNAL_SERVER_ERROR;
+import static org.elasticsearch.rest.RestStatus.NOT_FOUND;
+import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.RestStatus.TOO_MANY_REQUESTS;
+
+/**
+ * Asynchronous query API which allows client to submit a long running query, then poll its status,
+ * fetch its result or cancel it rather than waiting synchronously on the HTTP connection.
+ *
+ *  POST   /_opendistro/_sql/_async              submit query, same payload and params as query API
+ *  GET    /_opendistro/_sql/_async/{id}         poll status
+ *  GET    /_opendistro/_sql/_async/{id}/result  fetch result once succeeded
+ *  DELETE /_opendistro/_sql/_async/{id}         cancel query and discard result
+ *
+ * Query is only accessible by the user who submitted it. Any other user gets 404 as if it doesn't exist.
+ */
+public class RestSqlAsyncAction extends BaseRestHandler {
+
+    private static final Logger LOG = LogManager.getLogger(RestSqlAsyncAction.class);
+
+    /** API endpoint path */
+    public static final String ASYNC_API_ENDPOINT = RestSqlAction.QUERY_API_ENDPOINT + "/_async";
+    public static final String ASYNC_QUERY_ENDPOINT = ASYNC_API_ENDPOINT + "/{id}";
+    public static final String ASYNC_RESULT_ENDPOINT = ASYNC_QUERY_ENDPOINT + "/result";
+
+    /** Params passed on to executor the same way as query API */
+    private static final List<String> EXECUTOR_PARAMS =
+        Arrays.asList("flat", "separator", "_score", "_type", "_id", "newLine");
+
+    public RestSqlAsyncAction(Settings settings, RestController restController) {
+        super(settings);
+        restController.registerHandler(RestRequest.Method.POST, ASYNC_API_ENDPOINT, this);
+        restController.registerHandler(RestRequest.Method.GET, ASYNC_QUERY_ENDPOINT, this);
+        restController.registerHandler(RestRequest.Method.GET, ASYNC_RESULT_ENDPOINT, this);
+        restController.registerHandler(RestRequest.Method.DELETE, ASYNC_QUERY_ENDPOINT, this);
+    }
+
+    @Override
+    public String getName() {
+        return "sql_async_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        try {
+            switch (request.method()) {
+                case POST:
+                    return submit(request, client);
+                case DELETE:
+                    return cancel(request.param("id"), user(client));
+                default:
+                    if (request.path().endsWith("/result")) {
+                        return fetch(request.param("id"), user(client));
+                    }
+                    return poll(request.param("id"), user(client));
+            }
+        } catch (EsRejectedExecutionException e) {
+            LOG.warn("Async query rejected by thread pool", e);
+            SqlStats.stats().recordFailure(e);
+            return reportError(e, TOO_MANY_REQUESTS);
+        } catch (Exception e) {
+            LOG.error("Failed during async query action.", e);
+            SqlStats.stats().recordFailure(e);
+            return reportError(e, BAD_REQUEST);
+        }
+    }
+
+    @Override
+    protected Set<String> responseParams() {
+        Set<String> responseParams = new HashSet<>(super.responseParams());
+        responseParams.add("sql");
+        responseParams.add("format");
+        responseParams.addAll(EXECUTOR_PARAMS);
+        return responseParams;
+    }
+
+    private RestChannelConsumer submit(RestRequest request, NodeClient nodeClient) throws Exception {
+        Client client = new SqlTaskClient(nodeClient);
+        SqlRequest sqlRequest = SqlRequestFactory.getSqlRequest(request);
+        QueryProfile profile = QueryProfile.start(sqlRequest.getSql());
+        QueryAction queryAction;
+        try {
+            queryAction = new SearchDao(client).explain(sqlRequest);
+        } finally {
+            QueryProfile.unbind();
+        }
+        queryAction.setSqlRequest(sqlRequest);
+        queryAction.setProfile(profile);
+
+        String format = request.param("format");
+        Map<String, String> params = new HashMap<>();
+        for (String paramName : EXECUTOR_PARAMS) {
+            if (request.hasParam(paramName)) {
+                params.put(paramName, request.param(paramName));
+            }
+        }
+
+        AsyncRestExecutor executor = ActionRequestRestExecutorFactory.createExecutor(format, queryAction);
+        AsyncQuery query = AsyncQueryStore.store().create(sqlRequest.getSql(), format, user(nodeClient));
+        try {
+            query.setFuture(executor.submit(client, params, queryAction, query::isCancelled, query));
+        } catch (EsRejectedExecutionException e) {
+            AsyncQueryStore.store().remove(query.getId(), query.getUser());
+            throw e;
+        }
+        return channel -> channel.sendResponse(new BytesRestResponse(OK, status(channel.newBuilder(), query)));
+    }
+
+    private RestChannelConsumer poll(String id, String user) {
+        AsyncQuery query = AsyncQueryStore.store().get(id, user);
+        if (query == null) {
+            return notFound(id);
+        }
+        return channel -> channel.sendResponse(new BytesRestResponse(OK, status(channel.newBuilder(), query)));
+    }
+
+    private RestChannelConsumer fetch(String id, String user) {
+        AsyncQuery query = AsyncQueryStore.store().get(id, user);
+        if (query == null) {
+            return notFound(id);
+        }
+
+        switch (query.getStatus()) {
+            case SUCCEEDED:
+                String contentType = "jdbc".equalsIgnoreCase(query.getFormat()) || query.getFormat() == null
+                    ? "application/json; charset=UTF-8" : BytesRestResponse.TEXT_CONTENT_TYPE;
+                return channel -> channel.sendResponse(new BytesRestResponse(OK, contentType, query.getResult()));
+            case FAILED:
+                return channel -> channel.sendResponse(
+                    new BytesRestResponse(INTERNAL_SERVER_ERROR, status(channel.newBuilder(), query)));
+            default:
+                return channel -> channel.sendResponse(
+                    new BytesRestResponse(CONFLICT, status(channel.newBuilder(), query)));
+        }
+    }
+
+    private RestChannelConsumer cancel(String id, String user) {
+        AsyncQuery query = AsyncQueryStore.store().remove(id, user);
+        if (query == null) {
+            return notFound(id);
+        }
+        return channel -> channel.sendResponse(new BytesRestResponse(OK, status(channel.newBuilder(), query)));
+    }
+
+    /** Authenticated user put in thread context by security plugin, null if security is not enabled */
+    private String user(NodeClient client) {
+        Object user = client.threadPool().getThreadContext().getTransient(ResultCache.SECURITY_USER_TRANSIENT);
+        return (user == null) ? null : user.toString();
+    }
+
+    private XContentBuilder status(XContentBuilder builder, AsyncQuery query) throws IOException {
+        builder.startObject();
+        builder.field("id", query.getId());
+        builder.field("status", query.getStatus().name());
+        builder.field("elapsed_millis", query.getElapsedTime());
+        if (query.getError() != null) {
+            builder.field("error", query.getError());
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private RestChannelConsumer notFound(String id) {
+        return reportError(new IllegalArgumentException("Async query not found or expired: " + id), NOT_FOUND);
+    }
+
+    private RestChannelConsumer reportError(Exception e, RestStatus status) {
+        String message = new ErrorMessage(e, status.getStatus()).toString();
+        return channel -> channel.sendResponse(new BytesRestResponse(status, message));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.plugin;
+
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.SqlStatsAction;
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.SqlStatsRequest;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions.NodesResponseRestListener;
+
+/**
+ * Stats API which reports counters of SQL plugin on every node: request count and latency histogram by query type,
+ * failure count by cause, memory circuit breaker, sql-worker thread pools and admission control queues and
+ * result cache. The response contains stats of each node under "nodes" keyed by node id, and the counters
+ * summed up across all nodes under "total".
+ */
+public class RestSqlStatsAction extends BaseRestHandler {
+
+    /** API endpoint path */
+    public static final String STATS_API_ENDPOINT = RestSqlAction.QUERY_API_ENDPOINT + "/stats";
+
+    public RestSqlStatsAction(Settings settings, RestController restController) {
+        super(settings);
+        restController.registerHandler(RestRequest.Method.GET, STATS_API_ENDPOINT, this);
+    }
+
+    @Override
+    public String getName() {
+        return "sql_stats_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) {
+        return channel -> client.execute(SqlStatsAction.INSTANCE, new SqlStatsRequest(),
+                                         new NodesResponseRestListener<>(channel));
+    }
+
+}
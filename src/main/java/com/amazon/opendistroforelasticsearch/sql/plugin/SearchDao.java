@@ -22,6 +22,8 @@ import java.util.Set;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
 import com.amazon.opendistroforelasticsearch.sql.query.ESActionFactory;
 import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.request.PreparedStatementRequest;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
 import org.elasticsearch.client.Client;
 
 
@@ -59,6 +61,19 @@ public class SearchDao {
 		return ESActionFactory.create(client, sql);
 	}
 
+    /**
+     * Prepare action for SQL request and bind parameters if it's a prepared statement
+     * @param sqlRequest SQL request to execute.
+     * @return ES request
+     * @throws SqlParseException
+     */
+    public QueryAction explain(SqlRequest sqlRequest) throws SqlParseException, SQLFeatureNotSupportedException {
+        if (sqlRequest instanceof PreparedStatementRequest) {
+            return ESActionFactory.create(client, (PreparedStatementRequest) sqlRequest);
+        }
+        return explain(sqlRequest.getSql());
+    }
+
 
 
 }
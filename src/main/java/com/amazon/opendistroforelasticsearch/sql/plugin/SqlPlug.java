@@ -15,15 +15,25 @@
 
 package com.amazon.opendistroforelasticsearch.sql.plugin;
 
-import com.amazon.opendistroforelasticsearch.sql.executor.AsyncRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.AdmissionController;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.executor.SlowQueryLog;
+import com.amazon.opendistroforelasticsearch.sql.executor.SubQueryExecutor;
 import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.SqlStatsAction;
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.TransportSqlStatsAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
@@ -40,7 +50,9 @@ import org.elasticsearch.threadpool.FixedExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Supplier;
@@ -63,26 +75,61 @@ public class SqlPlug extends Plugin implements ActionPlugin {
 	@Override
 	public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings, IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter, IndexNameExpressionResolver indexNameExpressionResolver, Supplier<DiscoveryNodes> nodesInCluster) {
 	    LocalClusterState.state().setResolver(indexNameExpressionResolver);
-		return Collections.singletonList(new RestSqlAction(settings, restController));
+		return Arrays.asList(
+				new RestSqlAction(settings, restController),
+				new RestSqlAsyncAction(settings, restController),
+				new RestSqlStatsAction(settings, restController));
 	}
 
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Collections.singletonList(new ActionHandler<>(SqlStatsAction.INSTANCE, TransportSqlStatsAction.class));
+    }
+
     @Override
     public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool, ResourceWatcherService resourceWatcherService, ScriptService scriptService, NamedXContentRegistry xContentRegistry, Environment environment, NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry) {
 	    LocalClusterState.state().setClusterService(clusterService);
+	    LocalClusterState.state().addCacheInvalidationCallback(QueryPlanCache.cache()::invalidateAll);
+	    LocalClusterState.state().addCacheInvalidationCallback(ResultCache.cache()::invalidateAll);
+	    ResultCache.cache().setEnabled(ResultCache.ENABLED_SETTING.get(clusterService.getSettings()));
+	    clusterService.getClusterSettings().addSettingsUpdateConsumer(ResultCache.ENABLED_SETTING, ResultCache.cache()::setEnabled);
+	    ResultCache.cache().setSecurityEnabled(ResultCache.isSecurityEnabled(clusterService.getSettings()));
+	    ResultCache.cache().start(client, threadPool);
+	    SlowQueryLog.log().setThreshold(SlowQueryLog.THRESHOLD_SETTING.get(clusterService.getSettings()));
+	    clusterService.getClusterSettings().addSettingsUpdateConsumer(SlowQueryLog.THRESHOLD_SETTING, SlowQueryLog.log()::setThreshold);
+	    SubQueryExecutor.executor().setMaxResults(SubQueryExecutor.MAX_RESULTS_SETTING.get(clusterService.getSettings()));
+	    clusterService.getClusterSettings().addSettingsUpdateConsumer(SubQueryExecutor.MAX_RESULTS_SETTING, SubQueryExecutor.executor()::setMaxResults);
 	    return super.createComponents(client, clusterService, threadPool, resourceWatcherService, scriptService, xContentRegistry, environment, nodeEnvironment, namedWriteableRegistry);
     }
 
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Arrays.asList(ResultCache.ENABLED_SETTING, SlowQueryLog.THRESHOLD_SETTING, SubQueryExecutor.MAX_RESULTS_SETTING);
+    }
+
+    @Override
+    public Collection<Class<? extends LifecycleComponent>> getGuiceServiceClasses() {
+        return Collections.singletonList(SqlTaskService.class);
+    }
+
 	@Override
 	public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
-        return Collections.singletonList(
-			new FixedExecutorBuilder(
-			    settings,
-                AsyncRestExecutor.SQL_WORKER_THREAD_POOL_NAME,
-                EsExecutors.numberOfProcessors(settings),
-                1000,
-                null
-            )
-        );
+        int processors = EsExecutors.numberOfProcessors(settings);
+        AdmissionController.controller(new AdmissionController(processors));
+
+        List<ExecutorBuilder<?>> executorBuilders = new ArrayList<>();
+        for (AdmissionController.QueryClass queryClass : AdmissionController.QueryClass.values()) {
+            executorBuilders.add(
+                new FixedExecutorBuilder(
+                    settings,
+                    queryClass.threadPoolName(),
+                    queryClass.threads(processors),
+                    queryClass.queueSize(),
+                    null
+                )
+            );
+        }
+        return executorBuilders;
 	}
 
 }
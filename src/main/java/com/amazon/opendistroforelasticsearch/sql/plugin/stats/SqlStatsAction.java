@@ -0,0 +1,44 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.plugin.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Transport action which collects SQL plugin stats from every node in the cluster.
+ */
+public class SqlStatsAction extends Action<SqlStatsRequest, SqlStatsResponse, SqlStatsRequestBuilder> {
+
+    public static final SqlStatsAction INSTANCE = new SqlStatsAction();
+
+    public static final String NAME = "cluster:monitor/opendistro/sql/stats";
+
+    private SqlStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public SqlStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new SqlStatsRequestBuilder(client, this);
+    }
+
+    @Override
+    public SqlStatsResponse newResponse() {
+        return new SqlStatsResponse();
+    }
+
+}
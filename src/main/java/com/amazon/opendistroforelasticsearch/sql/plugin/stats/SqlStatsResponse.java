@@ -0,0 +1,96 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.plugin.stats;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL stats of all nodes responded. Besides stats of each node keyed by node id, the counters are summed up
+ * into a cluster-wide total.
+ */
+public class SqlStatsResponse extends BaseNodesResponse<SqlStatsNodeResponse> implements ToXContentFragment {
+
+    public SqlStatsResponse() {
+    }
+
+    public SqlStatsResponse(ClusterName clusterName,
+                            List<SqlStatsNodeResponse> nodes,
+                            List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<SqlStatsNodeResponse> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(SqlStatsNodeResponse::readNodeResponse);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<SqlStatsNodeResponse> nodes) throws IOException {
+        out.writeStreamableList(nodes);
+    }
+
+    /** Sum up the stats of all nodes */
+    public Map<String, Object> total() {
+        Map<String, Object> total = new LinkedHashMap<>();
+        for (SqlStatsNodeResponse node : getNodes()) {
+            sum(total, node.getStats());
+        }
+        return total;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("total", total());
+        builder.startObject("nodes");
+        for (SqlStatsNodeResponse node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            builder.field("name", node.getNode().getName());
+            for (Map.Entry<String, Object> entry : node.getStats().entrySet()) {
+                builder.field(entry.getKey(), entry.getValue());
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void sum(Map<String, Object> total, Map<String, Object> stats) {
+        for (Map.Entry<String, Object> entry : stats.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                Map<String, Object> subTotal =
+                    (Map<String, Object>) total.computeIfAbsent(entry.getKey(), key -> new LinkedHashMap<>());
+                sum(subTotal, (Map<String, Object>) value);
+            } else if (value instanceof Number) {
+                total.merge(entry.getKey(), ((Number) value).longValue(),
+                    (sum, count) -> ((Number) sum).longValue() + ((Number) count).longValue());
+            }
+        }
+    }
+
+}
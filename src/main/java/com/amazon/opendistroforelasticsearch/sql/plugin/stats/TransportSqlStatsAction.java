@@ -0,0 +1,112 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.plugin.stats;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.AdmissionController;
+import com.amazon.opendistroforelasticsearch.sql.executor.AdmissionController.QueryClass;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats;
+import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fan out stats request to all nodes and collect the local SQL stats on each of them: request count and latency
+ * histogram by query type, failure count by cause, memory circuit breaker, sql-worker thread pools
+ * and admission control queues and result cache.
+ */
+public class TransportSqlStatsAction extends TransportNodesAction<SqlStatsRequest, SqlStatsResponse,
+                                                                  SqlStatsNodeRequest, SqlStatsNodeResponse> {
+
+    @Inject
+    public TransportSqlStatsAction(Settings settings,
+                                   ThreadPool threadPool,
+                                   ClusterService clusterService,
+                                   TransportService transportService,
+                                   ActionFilters actionFilters,
+                                   IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, SqlStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+              indexNameExpressionResolver, SqlStatsRequest::new, SqlStatsNodeRequest::new,
+              ThreadPool.Names.MANAGEMENT, SqlStatsNodeResponse.class);
+    }
+
+    @Override
+    protected SqlStatsResponse newResponse(SqlStatsRequest request,
+                                           List<SqlStatsNodeResponse> responses,
+                                           List<FailedNodeException> failures) {
+        return new SqlStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected SqlStatsNodeRequest newNodeRequest(String nodeId, SqlStatsRequest request) {
+        return new SqlStatsNodeRequest(nodeId);
+    }
+
+    @Override
+    protected SqlStatsNodeResponse newNodeResponse() {
+        return new SqlStatsNodeResponse();
+    }
+
+    @Override
+    protected SqlStatsNodeResponse nodeOperation(SqlStatsNodeRequest request) {
+        return new SqlStatsNodeResponse(clusterService.localNode(), collectStats());
+    }
+
+    private Map<String, Object> collectStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", SqlStats.stats().requests());
+        stats.put("failures", SqlStats.stats().failures());
+
+        Map<String, Object> breaker = new LinkedHashMap<>();
+        breaker.put("back_off_sleep_count", BackOffRetryStrategy.getBackOffSleepCount());
+        breaker.put("circuit_break_count", BackOffRetryStrategy.getCircuitBreakCount());
+        breaker.put("reserved_memory_bytes", BackOffRetryStrategy.getReservedMemory());
+        stats.put("memory_circuit_breaker", breaker);
+
+        Map<String, Object> threadPools = new LinkedHashMap<>();
+        for (ThreadPoolStats.Stats poolStats : threadPool.stats()) {
+            for (QueryClass queryClass : QueryClass.values()) {
+                if (queryClass.threadPoolName().equals(poolStats.getName())) {
+                    Map<String, Object> pool = new LinkedHashMap<>();
+                    pool.put("threads", poolStats.getThreads());
+                    pool.put("active", poolStats.getActive());
+                    pool.put("queue", poolStats.getQueue());
+                    pool.put("rejected", poolStats.getRejected());
+                    pool.put("completed", poolStats.getCompleted());
+                    pool.put("admission_running", AdmissionController.controller().running(queryClass));
+                    pool.put("admission_waiting", AdmissionController.controller().waiting(queryClass));
+                    threadPools.put(poolStats.getName(), pool);
+                }
+            }
+        }
+        stats.put("thread_pools", threadPools);
+        stats.put("result_cache", ResultCache.cache().stats());
+        return stats;
+    }
+
+}
@@ -25,6 +25,7 @@ import com.amazon.opendistroforelasticsearch.sql.domain.Where;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.Hint;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.HintType;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
 import com.amazon.opendistroforelasticsearch.sql.query.maker.AggMaker;
 import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
 import com.google.common.collect.Lists;
@@ -37,29 +38,143 @@ import org.elasticsearch.join.aggregations.JoinAggregationBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
 import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.nested.ReverseNestedAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Transform SQL query to Elasticsearch aggregations query
  */
 public class AggregationQueryAction extends QueryAction {
 
+    /** Name of composite aggregation for GROUP BY paged by after key */
+    public static final String COMPOSITE_AGG_NAME = "composite_buckets";
+
+    /** Page size of composite aggregation if not specified in hint */
+    private static final int DEFAULT_COMPOSITE_PAGE_SIZE = 1000;
+
     private final Select select;
     private AggMaker aggMaker = new AggMaker();
     private SearchRequestBuilder request;
+    private CompositeAggregationBuilder compositeAgg;
 
     public AggregationQueryAction(Client client, Select select) {
         super(client, select);
         this.select = select;
     }
 
+    /**
+     * Is GROUP BY executed by composite aggregation paged by after key rather than nested terms aggregations,
+     * either requested by COMPOSITE_AGGREGATION hint or by cursor pagination in jdbc format.
+     */
+    public boolean isCompositeQuery() {
+        return (getCompositeHint() != null || isCursorQuery()) && isCompositeApplicable();
+    }
+
+    /**
+     * Is cursor pagination requested, either for first page with fetch size or next page with cursor.
+     */
+    public boolean isCursorQuery() {
+        return sqlRequest != null && (sqlRequest.fetchSize() > 0 || sqlRequest.cursor() != null);
+    }
+
+    /**
+     * Composite aggregation in the request built by explain(), null if not composite query.
+     */
+    public CompositeAggregationBuilder getCompositeAggregation() {
+        return compositeAgg;
+    }
+
+    /**
+     * Keys of composite bucket in order of columns in SELECT. Sources are sorted by ORDER BY first for paging
+     * so key order in bucket may differ from that of the columns. GROUP BY fields absent in SELECT follow
+     * in GROUP BY order.
+     */
+    public List<String> compositeKeyColumns() {
+        Set<String> groupKeys = new LinkedHashSet<>();
+        for (Field field : select.getGroupBys().get(0)) {
+            groupKeys.add(field.getName());
+        }
+
+        Set<String> columns = new LinkedHashSet<>();
+        for (Field field : select.getFields()) {
+            if (groupKeys.contains(field.getName())) {
+                columns.add(field.getName());
+            }
+        }
+        columns.addAll(groupKeys);
+        return new ArrayList<>(columns);
+    }
+
+    /**
+     * Page size of composite aggregation: fetch size for cursor, otherwise the size in hint or default.
+     */
+    public int compositePageSize() {
+        if (sqlRequest != null && sqlRequest.cursor() != null) {
+            return Cursor.decode(sqlRequest.cursor()).getFetchSize();
+        }
+        if (sqlRequest != null && sqlRequest.fetchSize() > 0) {
+            return sqlRequest.fetchSize();
+        }
+
+        Hint hint = getCompositeHint();
+        if (hint != null && hint.getParams() != null && hint.getParams().length > 0) {
+            return (Integer) hint.getParams()[0];
+        }
+        return DEFAULT_COMPOSITE_PAGE_SIZE;
+    }
+
+    private Hint getCompositeHint() {
+        for (Hint hint : select.getHints()) {
+            if (hint.getType() == HintType.COMPOSITE_AGGREGATION) {
+                return hint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Composite aggregation only applies to a single GROUP BY on plain fields without HAVING
+     * and with ORDER BY on group keys only, because buckets are sorted by key for paging.
+     */
+    private boolean isCompositeApplicable() {
+        if (select.getGroupBys().size() != 1
+                || (select.getHaving() != null && !select.getHaving().isEmpty())) {
+            return false;
+        }
+
+        Set<String> groupKeys = new HashSet<>();
+        for (Field field : select.getGroupBys().get(0)) {
+            if (field instanceof MethodField || field.isNested() || field.isChildren()) {
+                return false;
+            }
+            groupKeys.add(field.getName());
+        }
+        for (Field field : select.getFields()) {
+            if (field instanceof MethodField && field.getName().equals("script")) {
+                return false;
+            }
+        }
+        for (Order order : select.getOrderBys()) {
+            if (!groupKeys.contains(order.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public SqlElasticSearchRequestBuilder explain() throws SqlParseException {
         this.request = new SearchRequestBuilder(client, SearchAction.INSTANCE);
@@ -67,9 +182,16 @@ public class AggregationQueryAction extends QueryAction {
         setIndicesAndTypes();
 
         setWhere(select.getWhere());
+        if (isCompositeQuery()) {
+            explainComposite();
+            return buildRequest();
+        }
+
         AggregationBuilder lastAgg = null;
 
-        for (List<Field> groupBy : select.getGroupBys()) {
+        for (List<Field> groupByFields : select.getGroupBys()) {
+            // Copy because filter after nested or children field is removed below and select may be reused
+            List<Field> groupBy = new ArrayList<>(groupByFields);
             if (!groupBy.isEmpty()) {
                 Field field = groupBy.get(0);
 
@@ -204,7 +326,43 @@ public class AggregationQueryAction extends QueryAction {
         }
 
         setLimitFromHint(this.select.getHints());
+        return buildRequest();
+    }
+
+    /**
+     * Group by composite aggregation with sources sorted by ORDER BY first and then the rest of GROUP BY fields.
+     * Aggregation functions are added to each bucket as usual. Hits are not returned because all pages share
+     * the same request except for after key.
+     */
+    private void explainComposite() throws SqlParseException {
+        List<Field> groupBy = select.getGroupBys().get(0);
+        Map<String, CompositeValuesSourceBuilder<?>> sources = new LinkedHashMap<>();
+        for (Order order : select.getOrderBys()) {
+            sources.put(order.getName(), new TermsValuesSourceBuilder(order.getName()).
+                field(order.getName()).order(SortOrder.valueOf(order.getType())));
+        }
+        for (Field field : groupBy) {
+            if (!sources.containsKey(field.getName())) {
+                sources.put(field.getName(), new TermsValuesSourceBuilder(field.getName()).field(field.getName()));
+            }
+        }
+
+        int pageSize = compositePageSize();
+        if (select.isRowCountSpecified()) {
+            pageSize = Math.min(pageSize, select.getRowCount());
+        }
+        compositeAgg = new CompositeAggregationBuilder(COMPOSITE_AGG_NAME, new ArrayList<>(sources.values())).
+            size(pageSize);
+        if (sqlRequest != null && sqlRequest.cursor() != null) {
+            compositeAgg.aggregateAfter(Cursor.decode(sqlRequest.cursor()).getAfterKey());
+        }
+
+        request.addAggregation(compositeAgg);
+        explanFields(request, select.getFields(), compositeAgg);
+        request.setSize(0);
+    }
 
+    private SqlElasticSearchRequestBuilder buildRequest() throws SqlParseException {
         request.setSearchType(SearchType.DEFAULT);
         updateRequestWithIndexAndRoutingOptions(select, request);
         updateRequestWithHighlight(select, request);
@@ -387,7 +545,7 @@ public class AggregationQueryAction extends QueryAction {
     private void setWhere(Where where) throws SqlParseException {
         BoolQueryBuilder boolQuery = null;
         if (where != null) {
-            boolQuery = QueryMaker.explain(where, this.select.isQuery);
+            boolQuery = QueryMaker.explain(bindParameters(where), this.select.isQuery);
         }
         // Used to prevent NullPointerException in old tests as they do not set sqlRequest in QueryAction
         if (sqlRequest != null) {
@@ -23,9 +23,15 @@ import com.amazon.opendistroforelasticsearch.sql.domain.Select;
 import com.amazon.opendistroforelasticsearch.sql.domain.Where;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.Hint;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.HintType;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.IndexMappings;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
 import com.amazon.opendistroforelasticsearch.sql.rewriter.nestedfield.NestedFieldProjection;
 import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
+import com.google.common.collect.ImmutableSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.elasticsearch.action.search.*;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
@@ -37,18 +43,32 @@ import org.elasticsearch.search.sort.NestedSortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
 
 /**
  * Transform SQL query to standard Elasticsearch search query
  */
 public class DefaultQueryAction extends QueryAction {
 
+    private static final Logger LOG = LogManager.getLogger();
+
+    /**
+     * Field types whose doc values are rendered the same as original value in _source.
+     * Date is excluded because its doc value is formatted by mapping rather than returned as indexed.
+     * Float is excluded because its doc value is widened to double, ex. 0.1 is returned as 0.10000000149011612.
+     */
+    private static final Set<String> DOC_VALUE_PROJECTION_TYPES = ImmutableSet.of(
+        "keyword", "long", "integer", "short", "byte", "double", "boolean", "ip"
+    );
+
     private final Select select;
     private SearchRequestBuilder request;
 
+    /** Is it allowed to fetch selected fields by docvalue_fields instead of _source */
+    private boolean isDocValueProjectionAllowed;
+
     public DefaultQueryAction(Client client, Select select) {
         super(client, select);
         this.select = select;
@@ -58,6 +78,40 @@ public class DefaultQueryAction extends QueryAction {
         this.request = request;
     }
 
+    public Select getSelect() {
+        return select;
+    }
+
+    /**
+     * Allow fetching selected fields by docvalue_fields if caller reads values from both source and fields of hit.
+     * This is disabled by default because internal executors and raw ES response rely on _source.
+     * <p>
+     * Note that values of a multi-valued field are returned sorted by doc values rather than in the order of
+     * array in _source, and duplicate values of keyword field are removed. Mapping has no way to tell if a field
+     * holds array, so this applies to any field projected by doc values.
+     */
+    public void setDocValueProjectionAllowed(boolean isDocValueProjectionAllowed) {
+        this.isDocValueProjectionAllowed = isDocValueProjectionAllowed;
+    }
+
+    /**
+     * Is scroll-backed cursor pagination requested, either for first page with fetch size or next page with cursor.
+     * Offset is not allowed in scroll context so such query is executed in normal way.
+     */
+    public boolean isCursorQuery() {
+        return isCursorPageRequest()
+            || (sqlRequest != null && sqlRequest.fetchSize() > 0 && select.getOffset() == 0);
+    }
+
+    private boolean isCursorPageRequest() {
+        return sqlRequest != null && sqlRequest.cursor() != null;
+    }
+
+    private int cursorPageSize() {
+        int fetchSize = sqlRequest.fetchSize();
+        return select.isRowCountSpecified() ? Math.min(fetchSize, select.getRowCount()) : fetchSize;
+    }
+
     @Override
     public SqlElasticSearchRequestBuilder explain() throws SqlParseException {
         Hint scrollHint = null;
@@ -70,6 +124,10 @@ public class DefaultQueryAction extends QueryAction {
         if (scrollHint != null && scrollHint.getParams()[0] instanceof String) {
             return new SqlElasticSearchRequestBuilder(new SearchScrollRequestBuilder(client, SearchScrollAction.INSTANCE, (String) scrollHint.getParams()[0]).setScroll(new TimeValue((Integer) scrollHint.getParams()[1])));
         }
+        if (isCursorPageRequest()) {
+            Cursor cursor = Cursor.decode(sqlRequest.cursor());
+            return new SqlElasticSearchRequestBuilder(new SearchScrollRequestBuilder(client, SearchScrollAction.INSTANCE, cursor.getScrollId()).setScroll(cursor.getKeepAlive()));
+        }
 
         this.request = new SearchRequestBuilder(client, SearchAction.INSTANCE);
         setIndicesAndTypes();
@@ -84,8 +142,12 @@ public class DefaultQueryAction extends QueryAction {
             if (!select.isOrderdSelect())
                 request.addSort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC);
             request.setSize((Integer) scrollHint.getParams()[0]).setScroll(new TimeValue((Integer) scrollHint.getParams()[1]));
+        } else if (isCursorQuery()) {
+            if (!select.isOrderdSelect())
+                request.addSort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC);
+            request.setSize(cursorPageSize()).setScroll(Cursor.DEFAULT_KEEP_ALIVE);
         } else {
-            request.setSearchType(SearchType.DFS_QUERY_THEN_FETCH);
+            request.setSearchType(isDfsRequired() ? SearchType.DFS_QUERY_THEN_FETCH : SearchType.QUERY_THEN_FETCH);
         }
         updateRequestWithIndexAndRoutingOptions(select, request);
         updateRequestWithHighlight(select, request);
@@ -97,6 +159,16 @@ public class DefaultQueryAction extends QueryAction {
         return sqlElasticRequestBuilder;
     }
 
+    /**
+     * DFS phase is an extra round over all shards to collect term statistics for accurate relevance score.
+     * It pays off only if hits are sorted by score of WHERE in query context, because WHERE is in filter
+     * context otherwise and all hits have constant score. USE_DFS hint forces DFS for any query.
+     */
+    private boolean isDfsRequired() {
+        boolean isDfsHint = select.getHints().stream().anyMatch(hint -> hint.getType() == HintType.USE_DFS);
+        return isDfsHint || (select.isQuery && select.getWhere() != null);
+    }
+
     /**
      * Set indices and types to the search request.
      */
@@ -141,16 +213,45 @@ public class DefaultQueryAction extends QueryAction {
                 }
             }
 
-            request.setFetchSource(includeFields.toArray(new String[includeFields.size()]), excludeFields.toArray(new String[excludeFields.size()]));
+            if (isDocValueProjection(fields, includeFields, excludeFields)) {
+                request.setFetchSource(false);
+                includeFields.stream().distinct().forEach(field -> request.addDocValueField(field, "use_field_mapping"));
+            } else {
+                request.setFetchSource(includeFields.toArray(new String[includeFields.size()]), excludeFields.toArray(new String[excludeFields.size()]));
+            }
+        }
+    }
+
+    /**
+     * Decompressing and parsing _source is avoidable if only plain fields are selected and all of them have
+     * doc values in all indices. Any function, script, nested field or unknown field falls back to source filtering.
+     */
+    private boolean isDocValueProjection(List<Field> fields, List<String> includeFields, List<String> excludeFields) {
+        if (!isDocValueProjectionAllowed || includeFields.isEmpty() || !excludeFields.isEmpty()) {
+            return false;
+        }
+
+        for (Field field : fields) {
+            if (field.getClass() != Field.class || field.isNested()) {
+                return false;
+            }
+        }
+
+        try {
+            IndexMappings indexMappings = LocalClusterState.state().getFieldMappings(select.getIndexArr());
+            return includeFields.stream().allMatch(field -> indexMappings.hasDocValues(field, DOC_VALUE_PROJECTION_TYPES));
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to read mapping of selected fields and fall back to source filtering", e);
+            return false;
         }
     }
 
     private void handleScriptField(MethodField method) throws SqlParseException {
         List<KVValue> params = method.getParams();
         if (params.size() == 2) {
-            request.addScriptField(params.get(0).value.toString(), new Script(params.get(1).value.toString()));
+            request.addScriptField(params.get(0).value.toString(), new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, params.get(1).value.toString(), method.getScriptParams()));
         } else if (params.size() == 3) {
-            request.addScriptField(params.get(0).value.toString(), new Script(ScriptType.INLINE, params.get(1).value.toString(), params.get(2).value.toString(), Collections.emptyMap()));
+            request.addScriptField(params.get(0).value.toString(), new Script(ScriptType.INLINE, params.get(1).value.toString(), params.get(2).value.toString(), method.getScriptParams()));
         } else {
             throw new SqlParseException("scripted_field only allows script(name,script) or script(name,lang,script)");
         }
@@ -166,7 +267,7 @@ public class DefaultQueryAction extends QueryAction {
     private void setWhere(Where where) throws SqlParseException {
         BoolQueryBuilder boolQuery = null;
         if (where != null) {
-            boolQuery = QueryMaker.explain(where, this.select.isQuery);
+            boolQuery = QueryMaker.explain(bindParameters(where), this.select.isQuery);
         }
         // Used to prevent NullPointerException in old tests as they do not set sqlRequest in QueryAction
         if (sqlRequest != null) {
@@ -31,17 +31,20 @@ import com.amazon.opendistroforelasticsearch.sql.rewriter.nestedfield.NestedFiel
 import com.amazon.opendistroforelasticsearch.sql.query.join.ESJoinQueryActionFactory;
 import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQueryAction;
 import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQuerySelect;
+import com.amazon.opendistroforelasticsearch.sql.request.PreparedStatementRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.elasticsearch.client.Client;
-import com.amazon.opendistroforelasticsearch.sql.executor.ElasticResultHandler;
-import com.amazon.opendistroforelasticsearch.sql.executor.QueryActionElasticExecutor;
-import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHits;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile.Phase;
+import com.amazon.opendistroforelasticsearch.sql.executor.SubQueryExecutor;
 import com.amazon.opendistroforelasticsearch.sql.domain.IndexStatement;
 import com.amazon.opendistroforelasticsearch.sql.rewriter.matchtoterm.TermFieldRewriter;
 import com.amazon.opendistroforelasticsearch.sql.parser.ElasticLexer;
 import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
 import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
 import com.amazon.opendistroforelasticsearch.sql.parser.SubQueryExpression;
+import com.amazon.opendistroforelasticsearch.sql.utils.SQLFunctions;
 
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
@@ -52,6 +55,8 @@ import com.amazon.opendistroforelasticsearch.sql.rewriter.matchtoterm.TermFieldR
 
 public class ESActionFactory {
 
+    private static final Logger LOG = LogManager.getLogger();
+
     /**
      * Create the compatible Query object
      * based on the SQL query.
@@ -64,26 +69,44 @@ public class ESActionFactory {
         String firstWord = sql.substring(0, sql.indexOf(' '));
         switch (firstWord.toUpperCase()) {
             case "SELECT":
+                QueryProfile profile = QueryProfile.current();
+                long start = System.nanoTime();
+                SQLFunctions.resetScriptContext();
+                Select cachedSelect = QueryPlanCache.cache().get(sql);
+                if (cachedSelect != null) {
+                    profile.lap(Phase.PLAN_CACHE_HIT, start);
+                    return handleSelect(client, cachedSelect);
+                }
+
                 SQLQueryExpr sqlExpr = (SQLQueryExpr) toSqlExpr(sql);
+                start = profile.lap(Phase.PARSE, start);
                 sqlExpr.accept(new NestedFieldRewriter());
                 if(isMulti(sqlExpr)){
                     sqlExpr.accept(new TermFieldRewriter(client, TermRewriterFilter.MULTI_QUERY));
+                    start = profile.lap(Phase.REWRITE, start);
                     MultiQuerySelect multiSelect = new SqlParser().parseMultiSelect((SQLUnionQuery) sqlExpr.getSubQuery().getQuery());
-                    handleSubQueries(client,multiSelect.getFirstSelect());
-                    handleSubQueries(client,multiSelect.getSecondSelect());
+                    start = profile.lap(Phase.PARSE, start);
+                    handleSubQueries(client, multiSelect.getFirstSelect(), multiSelect.getSecondSelect());
+                    profile.lap(Phase.REWRITE, start);
                     return new MultiQueryAction(client, multiSelect);
                 }
                 else if(isJoin(sqlExpr,sql)){
                     sqlExpr.accept(new TermFieldRewriter(client, TermRewriterFilter.JOIN));
+                    start = profile.lap(Phase.REWRITE, start);
                     JoinSelect joinSelect = new SqlParser().parseJoinSelect(sqlExpr);
-                    handleSubQueries(client, joinSelect.getFirstTable());
-                    handleSubQueries(client, joinSelect.getSecondTable());
+                    start = profile.lap(Phase.PARSE, start);
+                    handleSubQueries(client, joinSelect.getFirstTable(), joinSelect.getSecondTable());
+                    profile.lap(Phase.REWRITE, start);
                     return ESJoinQueryActionFactory.createJoinAction(client, joinSelect);
                 }
                 else {
                     sqlExpr.accept(new TermFieldRewriter(client));
+                    start = profile.lap(Phase.REWRITE, start);
                     Select select = new SqlParser().parseSelect(sqlExpr);
+                    start = profile.lap(Phase.PARSE, start);
                     handleSubQueries(client, select);
+                    profile.lap(Phase.REWRITE, start);
+                    QueryPlanCache.cache().put(sql, select);
                     return handleSelect(client, select);
                 }
             case "DELETE":
@@ -102,40 +125,73 @@ public class ESActionFactory {
         }
     }
 
-    private static boolean isMulti(SQLQueryExpr sqlExpr) {
-        return sqlExpr.getSubQuery().getQuery() instanceof SQLUnionQuery;
-    }
-
-    private static void handleSubQueries(Client client, Select select) throws SqlParseException {
-        if (select.containsSubQueries())
-        {
-            for(SubQueryExpression subQueryExpression : select.getSubQueries()){
-                QueryAction queryAction = handleSelect(client, subQueryExpression.getSelect());
-                executeAndFillSubQuery(client , subQueryExpression,queryAction);
+    /**
+     * Create the compatible Query object for prepared statement. Template is parsed and cached only once
+     * and parameter values are bound to placeholders in WHERE at explain time. Fall back to parse SQL with
+     * parameters substituted if template is not a single SELECT or any placeholder is not condition value.
+     *
+     * @param request prepared statement request
+     * @return Query object.
+     */
+    public static QueryAction create(Client client, PreparedStatementRequest request) throws SqlParseException, SQLFeatureNotSupportedException {
+        String template = request.getPreparedStatement();
+        long start = System.nanoTime();
+        SQLFunctions.resetScriptContext();
+        Select select = QueryPlanCache.cache().getTemplate(template);
+        if (select != null) {
+            QueryProfile.current().lap(Phase.PLAN_CACHE_HIT, start);
+        } else {
+            select = parseTemplate(client, template);
+            if (select != null) {
+                QueryPlanCache.cache().putTemplate(template, select);
             }
         }
+
+        if (select == null || ParameterBinder.count(select.getWhere()) != request.getParameters().size()) {
+            LOG.debug("Unable to bind parameters to template, parse SQL with parameters substituted: {}", template);
+            return create(client, request.getSql());
+        }
+        return handleSelect(client, select);
     }
 
-    private static void executeAndFillSubQuery(Client client , SubQueryExpression subQueryExpression,QueryAction queryAction) throws SqlParseException {
-        List<Object> values = new ArrayList<>();
-        Object queryResult;
+    private static Select parseTemplate(Client client, String template) {
         try {
-            queryResult = QueryActionElasticExecutor.executeAnyAction(client,queryAction);
+            String sql = template.replaceAll("\n", " ").trim();
+            if (!sql.toUpperCase().startsWith("SELECT")) {
+                return null;
+            }
+
+            SQLFunctions.resetScriptContext();
+            SQLQueryExpr sqlExpr = (SQLQueryExpr) toSqlExpr(sql);
+            if (isMulti(sqlExpr) || isJoin(sqlExpr, sql)) {
+                return null;
+            }
+            sqlExpr.accept(new NestedFieldRewriter());
+            sqlExpr.accept(new TermFieldRewriter(client));
+            Select select = new SqlParser().parseSelect(sqlExpr);
+            return select.containsSubQueries() ? null : select;
         } catch (Exception e) {
-            throw new SqlParseException("could not execute SubQuery: " +  e.getMessage());
+            LOG.debug("Failed to parse prepared statement template: " + template, e);
+            return null;
         }
+    }
 
-        String returnField = subQueryExpression.getReturnField();
-        if(queryResult instanceof SearchHits) {
-            SearchHits hits = (SearchHits) queryResult;
-            for (SearchHit hit : hits) {
-                values.add(ElasticResultHandler.getFieldValue(hit,returnField));
+    private static boolean isMulti(SQLQueryExpr sqlExpr) {
+        return sqlExpr.getSubQuery().getQuery() instanceof SQLUnionQuery;
+    }
+
+    /** Execute sub-queries in all selects concurrently and fill their values */
+    private static void handleSubQueries(Client client, Select... selects) throws SqlParseException {
+        List<SubQueryExpression> subQueries = new ArrayList<>();
+        for (Select select : selects) {
+            if (select.containsSubQueries()) {
+                subQueries.addAll(select.getSubQueries());
             }
         }
-        else {
-            throw new SqlParseException("on sub queries only support queries that return Hits and not aggregations");
+
+        if (!subQueries.isEmpty()) {
+            SubQueryExecutor.executor().execute(client, subQueries);
         }
-        subQueryExpression.setValues(values.toArray());
     }
 
     private static QueryAction handleSelect(Client client, Select select) {
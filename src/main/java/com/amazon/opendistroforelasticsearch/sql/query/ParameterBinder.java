@@ -0,0 +1,134 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
+import com.amazon.opendistroforelasticsearch.sql.domain.Placeholder;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bind parameter values of prepared statement to placeholders in WHERE parsed from the template.
+ *
+ * Placeholders are visited in the same order as they appear in SQL text, because WhereParser
+ * parses conditions from left to right. Where tree of the template is shared across requests,
+ * so it's never modified and a bound copy is returned instead.
+ */
+public class ParameterBinder {
+
+    private ParameterBinder() {
+    }
+
+    /**
+     * Count placeholders in WHERE.
+     *
+     * @param where     where parsed from template
+     * @return          number of placeholders
+     */
+    public static int count(Where where) {
+        if (where == null) {
+            return 0;
+        }
+        if (where instanceof Condition) {
+            return countValue(((Condition) where).getValue());
+        }
+
+        int count = 0;
+        for (Where subWhere : where.getWheres()) {
+            count += count(subWhere);
+        }
+        return count;
+    }
+
+    /**
+     * Bind parameter values to placeholders in WHERE.
+     *
+     * @param where     where parsed from template
+     * @param values    parameter values in order
+     * @return          the same where if no placeholder or a copy with values bound
+     * @throws SqlParseException    number of parameters mismatch with placeholders
+     */
+    public static Where bind(Where where, List<Object> values) throws SqlParseException {
+        int count = count(where);
+        if (count == 0) {
+            return where;
+        }
+        if (count != values.size()) {
+            throw new SqlParseException(String.format(
+                "Placeholder count %d is different from parameter number %d", count, values.size()));
+        }
+        return bind(where, values.iterator());
+    }
+
+    private static int countValue(Object value) {
+        if (value instanceof Placeholder) {
+            return 1;
+        }
+        if (value instanceof Where) {
+            return count((Where) value);
+        }
+        if (value instanceof Object[]) {
+            int count = 0;
+            for (Object element : (Object[]) value) {
+                count += countValue(element);
+            }
+            return count;
+        }
+        return 0;
+    }
+
+    private static Where bind(Where where, Iterator<Object> values) throws SqlParseException {
+        if (where instanceof Condition) {
+            Condition cond = (Condition) where;
+            Condition bound = new Condition(cond.getConn(), cond.getName(), cond.getNameExpr(), cond.getOpear(),
+                                            bindValue(cond.getValue(), values), cond.getValueExpr(),
+                                            cond.getRelationshipType());
+            bound.setNested(cond.isNested());
+            bound.setNestedPath(cond.getNestedPath());
+            bound.setChildren(cond.isChildren());
+            bound.setChildType(cond.getChildType());
+            return bound;
+        }
+
+        Where bound = new Where(where.getConn());
+        for (Where subWhere : where.getWheres()) {
+            bound.addWhere(bind(subWhere, values));
+        }
+        return bound;
+    }
+
+    private static Object bindValue(Object value, Iterator<Object> values) throws SqlParseException {
+        if (value instanceof Placeholder) {
+            return values.next();
+        }
+        if (value instanceof Where && count((Where) value) > 0) {
+            return bind((Where) value, values);
+        }
+        if (value instanceof Object[] && countValue(value) > 0) {
+            Object[] array = (Object[]) value;
+            Object[] bound = new Object[array.length];
+            for (int i = 0; i < array.length; i++) {
+                bound[i] = bindValue(array[i], values);
+            }
+            return bound;
+        }
+        return value;
+    }
+
+}
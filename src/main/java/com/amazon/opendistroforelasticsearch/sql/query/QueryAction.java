@@ -17,9 +17,11 @@ package com.amazon.opendistroforelasticsearch.sql.query;
 
 import com.amazon.opendistroforelasticsearch.sql.domain.Query;
 import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.Hint;
 import com.amazon.opendistroforelasticsearch.sql.domain.hints.HintType;
 import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
 import com.fasterxml.jackson.core.JsonFactory;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.support.IndicesOptions;
@@ -30,11 +32,14 @@ import org.elasticsearch.common.xcontent.json.JsonXContentParser;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.collapse.CollapseBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import com.amazon.opendistroforelasticsearch.sql.request.PreparedStatementRequest;
 import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
 import com.amazon.opendistroforelasticsearch.sql.domain.QueryStatement;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -46,6 +51,7 @@ public abstract class QueryAction {
 	protected Query query;
 	protected Client client;
 	protected SqlRequest sqlRequest;
+	protected QueryProfile profile;
 
 	public QueryAction(Client client, Query query) {
 		this.client = client;
@@ -58,6 +64,26 @@ public abstract class QueryAction {
 
     public void setSqlRequest(SqlRequest sqlRequest) { this.sqlRequest = sqlRequest; }
 
+    public SqlRequest getSqlRequest() { return sqlRequest; }
+
+    public void setProfile(QueryProfile profile) { this.profile = profile; }
+
+    public QueryProfile getProfile() { return profile; }
+
+    /**
+     * Bind parameter values of prepared statement to placeholders in WHERE parsed from its template.
+     * @param where     where clause which may contain placeholders
+     * @return          where with all placeholders bound
+     * @throws SqlParseException    parameter number mismatch with placeholders
+     */
+    protected Where bindParameters(Where where) throws SqlParseException {
+        List<Object> values = Collections.emptyList();
+        if (sqlRequest instanceof PreparedStatementRequest) {
+            values = ((PreparedStatementRequest) sqlRequest).getParameterValues();
+        }
+        return ParameterBinder.bind(where, values);
+    }
+
     protected void updateRequestWithCollapse(Select select, SearchRequestBuilder request) throws SqlParseException {
         JsonFactory jsonFactory = new JsonFactory();
         for (Hint hint : select.getHints()) {
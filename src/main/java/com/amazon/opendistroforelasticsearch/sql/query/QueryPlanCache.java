@@ -0,0 +1,163 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cache of parsed and rewritten Select keyed by normalized SQL text to save the cost of
+ * parsing, nested field rewriting and term field rewriting for repeated queries.
+ *
+ * Only Select without sub-query is cached because its domain object is read only after parsing.
+ * Join and multi-query domain objects are modified during execution (ex. connected where in nested loops join
+ * and MINUS), and sub-query values are filled in by each execution. So they are always parsed from scratch.
+ *
+ * Prepared statement templates with placeholders are cached separately from plain SQL, so that a template
+ * and a plain SQL query never share a key nor evict each other.
+ *
+ * Note that rewriting depends on index mappings, so cache has to be invalidated once metadata changed.
+ */
+public class QueryPlanCache {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /** Maximum number of distinct statements cached */
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** Singleton instance */
+    private static QueryPlanCache INSTANCE;
+
+    /** Thread-safe cache from normalized SQL to parsed Select */
+    private final Cache<String, Select> cache;
+
+    /** Thread-safe cache from normalized prepared statement template to parsed Select */
+    private final Cache<String, Select> templates;
+
+
+    public static synchronized QueryPlanCache cache() {
+        if (INSTANCE == null) {
+            INSTANCE = new QueryPlanCache(DEFAULT_MAX_SIZE);
+        }
+        return INSTANCE;
+    }
+
+    /** Give testing code a chance to inject mock object */
+    public static synchronized void cache(QueryPlanCache instance) {
+        INSTANCE = instance;
+    }
+
+    public QueryPlanCache(int maxSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        templates = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Get parsed Select for the SQL query.
+     *
+     * @param sql   SQL query
+     * @return      parsed Select or null if absent
+     */
+    public Select get(String sql) {
+        return cache.getIfPresent(normalize(sql));
+    }
+
+    /**
+     * Put parsed Select for the SQL query if it's safe to be shared across requests.
+     *
+     * @param sql       SQL query
+     * @param select    parsed and rewritten Select
+     */
+    public void put(String sql, Select select) {
+        if (select.containsSubQueries()) {
+            return;
+        }
+        cache.put(normalize(sql), select);
+    }
+
+    /**
+     * Get parsed Select for the prepared statement template.
+     *
+     * @param template  prepared statement template with placeholders
+     * @return          parsed Select or null if absent
+     */
+    public Select getTemplate(String template) {
+        return templates.getIfPresent(normalize(template));
+    }
+
+    /**
+     * Put parsed Select for the prepared statement template.
+     *
+     * @param template  prepared statement template with placeholders
+     * @param select    parsed and rewritten Select with placeholders unbound
+     */
+    public void putTemplate(String template, Select select) {
+        if (select.containsSubQueries()) {
+            return;
+        }
+        templates.put(normalize(template), select);
+    }
+
+    public void invalidateAll() {
+        LOG.debug("Invalidate all parsed query plans in cache");
+        cache.invalidateAll();
+        templates.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size() + templates.size();
+    }
+
+    /**
+     * Normalize SQL by trimming and collapsing consecutive whitespaces outside quoted string or identifier.
+     * Case is preserved because index name, field name and literal are all case sensitive.
+     *
+     * @param sql   SQL query
+     * @return      normalized SQL
+     */
+    public static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean lastIsSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && i + 1 < sql.length()) {
+                    normalized.append(sql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                lastIsSpace = normalized.length() > 0;
+            } else {
+                if (lastIsSpace) {
+                    normalized.append(' ');
+                    lastIsSpace = false;
+                }
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+}
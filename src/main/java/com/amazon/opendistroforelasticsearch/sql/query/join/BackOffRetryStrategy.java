@@ -51,6 +51,11 @@ public class BackOffRetryStrategy {
 
     private final static Object obj = new Object();
 
+    /** Counters for stats API */
+    private static final AtomicLong backOffSleepCount = new AtomicLong(0L);
+
+    private static final AtomicLong circuitBreakCount = new AtomicLong(0L);
+
     private BackOffRetryStrategy() {
 
     }
@@ -75,11 +80,11 @@ public class BackOffRetryStrategy {
             LOG.warn("[MCB1] Memory monitor is unhealthy now, back off retrying: {} attempt, thread id = {}", i, Thread.currentThread().getId());
             if (ThreadLocalRandom.current().nextBoolean()) {
                 LOG.warn("[MCB1] Directly abort on idx {}.", i);
-                return false;
+                return circuitBreak();
             }
             backOffSleep(intervals[i]);
         }
-        return isMemoryHealthy();
+        return isMemoryHealthy() || circuitBreak();
     }
 
     private static boolean isMemoryHealthy(long allocateMemory, int idx, Object key) {
@@ -126,14 +131,34 @@ public class BackOffRetryStrategy {
             LOG.warn("[MCB] Memory monitor is unhealthy now, back off retrying: {} attempt, executor = {}, thread id = {}", i, key, Thread.currentThread().getId());
             if (ThreadLocalRandom.current().nextBoolean()) {
                 LOG.warn("[MCB] Directly abort on idx {}, executor is {}.", i, key);
-                return false;
+                return circuitBreak();
             }
             backOffSleep(intervals[i]);
         }
-        return isMemoryHealthy(allocateMemory, MAXRETRIES, key);
+        return isMemoryHealthy(allocateMemory, MAXRETRIES, key) || circuitBreak();
+    }
+
+    /** Count circuit break and return false as unhealthy */
+    private static boolean circuitBreak() {
+        circuitBreakCount.incrementAndGet();
+        return false;
+    }
+
+    public static long getBackOffSleepCount() {
+        return backOffSleepCount.get();
+    }
+
+    public static long getCircuitBreakCount() {
+        return circuitBreakCount.get();
+    }
+
+    /** Memory reserved in ledger by executors currently running */
+    public static long getReservedMemory() {
+        return mem.get();
     }
 
     public static void backOffSleep(long interval) {
+        backOffSleepCount.incrementAndGet();
         try {
             long millis = randomize(interval);
 
@@ -75,7 +75,7 @@ public class AggMaker {
 
         if (field instanceof MethodField && field.getName().equals("script")) {
             MethodField methodField = (MethodField) field;
-            TermsAggregationBuilder termsBuilder = AggregationBuilders.terms(methodField.getAlias()).script(new Script(methodField.getParams().get(1).value.toString()));
+            TermsAggregationBuilder termsBuilder = AggregationBuilders.terms(methodField.getAlias()).script(script(methodField, methodField.getParams().get(1).value.toString()));
             groupMap.put(methodField.getAlias(), new KVValue("KEY", termsBuilder));
             return termsBuilder;
         }
@@ -175,13 +175,13 @@ public class AggMaker {
         KVValue kvValue = field.getParams().get(0);
         if (kvValue.key != null && kvValue.key.equals("script")) {
             if (kvValue.value instanceof MethodField) {
-                return builder.script(new Script(((MethodField) kvValue.value).getParams().get(1).toString()));
+                return builder.script(script(field, ((MethodField) kvValue.value).getParams().get(1).toString()));
             } else {
-                return builder.script(new Script(kvValue.value.toString()));
+                return builder.script(script(field, kvValue.value.toString()));
             }
 
         } else if (kvValue.key != null && kvValue.value.toString().trim().startsWith("def")) {
-            return builder.script(new Script(kvValue.value.toString()));
+            return builder.script(script(field, kvValue.value.toString()));
         } else if (kvValue.key != null && (kvValue.key.equals("nested") || kvValue.key.equals("reverse_nested"))) {
             NestedType nestedType = (NestedType) kvValue.value;
 
@@ -283,7 +283,7 @@ public class AggMaker {
         for (KVValue kv : field.getParams()) {
             if(kv.value.toString().contains("doc[")) {
                 String script = kv.value +  "; return " + kv.key;
-                terms.script(new Script(script));
+                terms.script(script(field, script));
             } else {
                 value = kv.value.toString();
                 switch (kv.key.toLowerCase()) {
@@ -507,7 +507,7 @@ public class AggMaker {
         for (KVValue kv : field.getParams()) {
             if(kv.value.toString().contains("doc[")) {
                 String script = kv.value +  "; return " + kv.key;
-                dateHistogram.script(new Script(script));
+                dateHistogram.script(script(field, script));
             } else {
                 value = kv.value.toString();
                 switch (kv.key.toLowerCase()) {
@@ -565,7 +565,7 @@ public class AggMaker {
         for (KVValue kv : field.getParams()) {
             if(kv.value.toString().contains("doc[")) {
                 String script = kv.value +  "; return " + kv.key;
-                histogram.script(new Script(script));
+                histogram.script(script(field, script));
             } else {
                 value = kv.value.toString();
                 switch (kv.key.toLowerCase()) {
@@ -714,6 +714,11 @@ public class AggMaker {
         return topHits;
     }
 
+    /** Inline painless script with literals of the field passed in as params */
+    private Script script(MethodField field, String code) {
+        return new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, code, field.getScriptParams());
+    }
+
     public Map<String, KVValue> getGroupMap() {
         return this.groupMap;
     }
@@ -0,0 +1,118 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query.maker;
+
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.GeoBoundingBoxQueryBuilder;
+import org.elasticsearch.index.query.GeoDistanceQueryBuilder;
+import org.elasticsearch.index.query.GeoPolygonQueryBuilder;
+import org.elasticsearch.index.query.GeoShapeQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchNoneQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.ScriptQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.join.query.HasChildQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewriter that places conditions not contributing to relevance score into filter context, so that
+ * ES skips scoring them and is able to cache them as bitsets in node query cache.
+ * <p>
+ * Non-scoring condition, ex. range, terms, exists and geo, always returns a constant score. In a clause
+ * required by all hits, dropping the constant doesn't change the order of hits, so it's moved from must
+ * to filter. In an optional (should) clause, it's wrapped by constant_score instead which keeps
+ * the same score. Scoring condition, ex. match and query_string, is left as it is.
+ */
+public class FilterContextRewriter {
+
+    /**
+     * Rewrite bool query built from WHERE in place.
+     *
+     * @param boolQuery root bool query
+     * @return          the same bool query
+     */
+    public BoolQueryBuilder rewrite(BoolQueryBuilder boolQuery) {
+        rewrite(boolQuery, true);
+        return boolQuery;
+    }
+
+    private void rewrite(BoolQueryBuilder boolQuery, boolean isRequired) {
+        List<QueryBuilder> must = new ArrayList<>(boolQuery.must());
+        boolQuery.must().clear();
+        for (QueryBuilder query : must) {
+            if (!isNonScoring(query)) {
+                rewriteIfBool(query, isRequired);
+                boolQuery.must(query);
+            } else if (isRequired) {
+                boolQuery.filter(query);
+            } else {
+                boolQuery.must(QueryBuilders.constantScoreQuery(query));
+            }
+        }
+
+        List<QueryBuilder> should = boolQuery.should();
+        for (int i = 0; i < should.size(); i++) {
+            QueryBuilder query = should.get(i);
+            if (isNonScoring(query)) {
+                should.set(i, QueryBuilders.constantScoreQuery(query));
+            } else {
+                rewriteIfBool(query, false);
+            }
+        }
+    }
+
+    private void rewriteIfBool(QueryBuilder query, boolean isRequired) {
+        if (query instanceof BoolQueryBuilder) {
+            rewrite((BoolQueryBuilder) query, isRequired);
+        }
+    }
+
+    /** Bool query is non-scoring if all its must and should clauses are non-scoring */
+    private boolean isNonScoring(QueryBuilder query) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder boolQuery = (BoolQueryBuilder) query;
+            return boolQuery.must().stream().allMatch(this::isNonScoring)
+                && boolQuery.should().stream().allMatch(this::isNonScoring);
+        }
+        if (query instanceof NestedQueryBuilder) {
+            return ((NestedQueryBuilder) query).scoreMode() == ScoreMode.None;
+        }
+        if (query instanceof HasChildQueryBuilder) {
+            return ((HasChildQueryBuilder) query).scoreMode() == ScoreMode.None;
+        }
+        return query instanceof RangeQueryBuilder
+            || query instanceof TermsQueryBuilder
+            || query instanceof ExistsQueryBuilder
+            || query instanceof IdsQueryBuilder
+            || query instanceof ScriptQueryBuilder
+            || query instanceof GeoBoundingBoxQueryBuilder
+            || query instanceof GeoDistanceQueryBuilder
+            || query instanceof GeoPolygonQueryBuilder
+            || query instanceof GeoShapeQueryBuilder
+            || query instanceof MatchAllQueryBuilder
+            || query instanceof MatchNoneQueryBuilder;
+    }
+
+}
@@ -99,7 +99,7 @@ public abstract class Maker {
             toXContent = make(cond, name, (SQLMethodInvokeExpr) value);
         }
         else if (value instanceof SubQueryExpression){
-            toXContent = make(cond,name,((SubQueryExpression)value).getValues());
+            toXContent = make(cond, name, (SubQueryExpression) value);
         } else {
             if (cond.getValue() == NONE) {
                 toXContent = new MatchNoneQueryBuilder();
@@ -111,6 +111,20 @@ public abstract class Maker {
         return toXContent;
     }
 
+    /**
+     * IN (SELECT ...) is translated to a single terms query rather than bool query of term queries
+     * which is limited by max clause count. See {@link com.amazon.opendistroforelasticsearch.sql.executor.SubQueryExecutor}
+     * for why neither terms lookup nor semi-join is used for large sub-query.
+     */
+    private ToXContent make(Condition cond, String name, SubQueryExpression subQuery) throws SqlParseException {
+        Condition.OPEAR opear = cond.getOpear();
+        if (opear != Condition.OPEAR.IN && opear != Condition.OPEAR.NIN) {
+            return make(cond, name, subQuery.getValues());
+        }
+
+        return applyNot(opear, QueryBuilders.termsQuery(name, subQuery.getValues()));
+    }
+
     private ToXContent make(Condition cond, String name, SQLMethodInvokeExpr value) throws SqlParseException {
         ToXContent bqb = null;
         Paramer paramer = null;
@@ -331,13 +345,16 @@ public abstract class Maker {
             if (nameExpr instanceof SQLMethodInvokeExpr &&
                     ((SQLMethodInvokeExpr) nameExpr).getMethodName().equalsIgnoreCase("date_format"))
                 toXContent = makeForDateFormat((SQLMethodInvokeExpr) nameExpr, (SQLCharExpr) valueExpr);
-            else
-                toXContent = QueryBuilders.scriptQuery(
-                        new Script(
-                                scriptFilter.getScriptType(),
-                                Script.DEFAULT_SCRIPT_LANG,
-                                scriptFilter.getScript(),
-                                params));
+            else {
+                toXContent = makeScriptFree(nameExpr, valueExpr);
+                if (toXContent == null)
+                    toXContent = QueryBuilders.scriptQuery(
+                            new Script(
+                                    scriptFilter.getScriptType(),
+                                    Script.DEFAULT_SCRIPT_LANG,
+                                    scriptFilter.getScript(),
+                                    params));
+            }
         break;
             default:
             throw new SqlParseException("not define type " + cond.getName());
@@ -417,6 +434,28 @@ public abstract class Maker {
         return toXContent;
     }
 
+    /**
+     * Rewrite comparison between function of field and constant into range query without script if possible.
+     *
+     * Example: WHERE floor(price) = 10
+     *          Expected range query:
+     *          "range": {
+     *              "price": {
+     *                  "from": 10,
+     *                  "to": 11,
+     *                  "include_lower": true,
+     *                  "include_upper": false
+     *              }
+     *          }
+     */
+    private ToXContent makeScriptFree(SQLExpr nameExpr, SQLExpr valueExpr) {
+        if (!(nameExpr instanceof SQLMethodInvokeExpr) || !(nameExpr.getParent() instanceof SQLBinaryOpExpr)) {
+            return null;
+        }
+        String oper = ((SQLBinaryOpExpr) nameExpr.getParent()).getOperator().name;
+        return new ScriptFreePredicateRewriter().rewrite((SQLMethodInvokeExpr) nameExpr, oper, valueExpr);
+    }
+
     private String removeSingleQuote(String param) {
         return param.replaceAll("\'", "");
     }
@@ -489,7 +528,7 @@ public abstract class Maker {
             }
         } else if (termValue instanceof SQLBooleanExpr) {
             termValue = ((SQLBooleanExpr) termValue).getValue();
-        } else {
+        } else if (!(termValue instanceof Number) && !(termValue instanceof Boolean)) {
             termValue = termValue.toString();
         }
 
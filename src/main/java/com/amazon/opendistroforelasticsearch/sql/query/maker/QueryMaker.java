@@ -35,17 +35,23 @@ public class QueryMaker extends Maker {
 	 * @throws SqlParseException
 	 */
 	public static BoolQueryBuilder explain(Where where) throws SqlParseException {
-		return explain(where,true);
-	}
-
-    public static BoolQueryBuilder explain(Where where, boolean isQuery) throws SqlParseException {
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
+        where = new WhereSimplifier().simplify(where);
         while (where.getWheres().size() == 1) {
             where = where.getWheres().getFirst();
         }
         new QueryMaker().explanWhere(boolQuery, where);
+        return boolQuery;
+	}
+
+    /**
+     * Build query for WHERE of a search. If score is observed (isQuery), conditions not contributing to
+     * relevance score are still placed into filter context. Otherwise the entire query is a filter.
+     */
+    public static BoolQueryBuilder explain(Where where, boolean isQuery) throws SqlParseException {
+        BoolQueryBuilder boolQuery = explain(where);
         if(isQuery){
-            return boolQuery;
+            return new FilterContextRewriter().rewrite(boolQuery);
         }
         return QueryBuilders.boolQuery().filter(boolQuery);
     }
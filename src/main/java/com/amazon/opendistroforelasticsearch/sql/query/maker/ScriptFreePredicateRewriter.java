@@ -0,0 +1,288 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query.maker;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLMethodInvokeExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
+import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+import org.elasticsearch.index.query.MatchNoneQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Rewriter that translates comparison between function of a single field and a numeric constant,
+ * ex. year(birthday) = 2019 or floor(price) > 10, into range query on the field itself. This is possible
+ * because the functions supported are monotonic and thus inverse image of a range is still a range.
+ * Range query can make use of index while script query has to evaluate on each document.
+ * <p>
+ * Functions supported: year, floor, ceil, add, subtract and multiply by constant and composition of them.
+ * Non-monotonic functions such as month_of_year or hour_of_day are left to script.
+ */
+public class ScriptFreePredicateRewriter {
+
+    /** Date function is evaluated in UTC by painless script */
+    private static final String EPOCH_MILLIS_FORMAT = "epoch_millis";
+
+    /**
+     * Try to rewrite comparison to range query.
+     * @param function  function on left side
+     * @param operator  comparison operator
+     * @param value     value on right side
+     * @return          query without script or null if not applicable
+     */
+    public QueryBuilder rewrite(SQLMethodInvokeExpr function, String operator, SQLExpr value) {
+        if (!(value instanceof SQLNumericLiteralExpr)) {
+            return null;
+        }
+
+        BigDecimal number = toBigDecimal(((SQLNumericLiteralExpr) value).getNumber());
+        boolean isNegated = false;
+        Range range;
+        switch (operator) {
+            case "=":
+                range = new Range(number, true, number, true);
+                break;
+            case "<>":
+            case "!=":
+                range = new Range(number, true, number, true);
+                isNegated = true;
+                break;
+            case ">":
+                range = new Range(number, false, null, false);
+                break;
+            case ">=":
+                range = new Range(number, true, null, false);
+                break;
+            case "<":
+                range = new Range(null, false, number, false);
+                break;
+            case "<=":
+                range = new Range(null, false, number, true);
+                break;
+            default:
+                return null;
+        }
+
+        QueryBuilder query = rewrite(function, range);
+        if (query != null && isNegated) {
+            query = QueryBuilders.boolQuery().mustNot(query);
+        }
+        return query;
+    }
+
+    /** Resolve inverse image of range through function recursively until reaching field */
+    private QueryBuilder rewrite(SQLExpr expr, Range range) {
+        if (isField(expr)) {
+            return range.toQuery(expr.toString());
+        }
+        if (!(expr instanceof SQLMethodInvokeExpr)) {
+            return null;
+        }
+
+        SQLMethodInvokeExpr function = (SQLMethodInvokeExpr) expr;
+        List<SQLExpr> params = function.getParameters();
+        switch (function.getMethodName().toLowerCase()) {
+            case "floor":
+                return params.size() == 1 ? rewrite(params.get(0), range.floorInverse()) : null;
+            case "ceil":
+                return params.size() == 1 ? rewrite(params.get(0), range.ceilInverse()) : null;
+            case "year":
+                return params.size() == 1 && isField(params.get(0)) ? range.yearInverse(params.get(0).toString()) : null;
+            case "add":
+                return rewriteBinary(params, true, range::subtract);
+            case "subtract":
+                return rewriteBinary(params, false, range::add);
+            case "multiply":
+                return rewriteBinary(params, true, range::divide);
+            default:
+                return null;
+        }
+    }
+
+    private QueryBuilder rewriteBinary(List<SQLExpr> params, boolean isCommutative,
+                                       Function<BigDecimal, Range> inverse) {
+        if (params.size() != 2) {
+            return null;
+        }
+
+        SQLExpr operand = params.get(0);
+        SQLExpr constant = params.get(1);
+        if (isCommutative && operand instanceof SQLNumericLiteralExpr) {
+            operand = params.get(1);
+            constant = params.get(0);
+        }
+        if (!(constant instanceof SQLNumericLiteralExpr)) {
+            return null;
+        }
+
+        Range operandRange = inverse.apply(toBigDecimal(((SQLNumericLiteralExpr) constant).getNumber()));
+        return operandRange == null ? null : rewrite(operand, operandRange);
+    }
+
+    private boolean isField(SQLExpr expr) {
+        return expr instanceof SQLIdentifierExpr || expr instanceof SQLPropertyExpr;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+
+    /**
+     * Range of values with optional bounds. Null bound means unbounded.
+     */
+    private static class Range {
+        private final BigDecimal lower;
+        private final boolean includeLower;
+        private final BigDecimal upper;
+        private final boolean includeUpper;
+
+        Range(BigDecimal lower, boolean includeLower, BigDecimal upper, boolean includeUpper) {
+            this.lower = lower;
+            this.includeLower = includeLower;
+            this.upper = upper;
+            this.includeUpper = includeUpper;
+        }
+
+        Range add(BigDecimal delta) {
+            return new Range(lower == null ? null : lower.add(delta), includeLower,
+                             upper == null ? null : upper.add(delta), includeUpper);
+        }
+
+        Range subtract(BigDecimal delta) {
+            return add(delta.negate());
+        }
+
+        /** Inverse of multiply, bounds swapped if factor is negative. Factor zero is not invertible. */
+        Range divide(BigDecimal factor) {
+            int sign = factor.signum();
+            if (sign == 0) {
+                return null;
+            }
+
+            BigDecimal newLower = lower == null ? null : lower.divide(factor, MathContext.DECIMAL128);
+            BigDecimal newUpper = upper == null ? null : upper.divide(factor, MathContext.DECIMAL128);
+            if (sign > 0) {
+                return new Range(newLower, includeLower, newUpper, includeUpper);
+            }
+            return new Range(newUpper, includeUpper, newLower, includeLower);
+        }
+
+        /** floor(x) in [lo, hi] => x in [ceil(lo), floor(hi) + 1) */
+        Range floorInverse() {
+            BigDecimal first = firstInteger();
+            BigDecimal last = lastInteger();
+            return new Range(first, true, last == null ? null : last.add(BigDecimal.ONE), false);
+        }
+
+        /** ceil(x) in [lo, hi] => x in (ceil(lo) - 1, floor(hi)] */
+        Range ceilInverse() {
+            BigDecimal first = firstInteger();
+            BigDecimal last = lastInteger();
+            return new Range(first == null ? null : first.subtract(BigDecimal.ONE), false, last, true);
+        }
+
+        /** year(x) in [lo, hi] => x in [first day of year ceil(lo), first day of year floor(hi) + 1) */
+        QueryBuilder yearInverse(String field) {
+            BigDecimal first = firstInteger();
+            BigDecimal last = lastInteger();
+            if (first != null && last != null && first.compareTo(last) > 0) {
+                return new MatchNoneQueryBuilder();
+            }
+
+            try {
+                RangeQueryBuilder query = QueryBuilders.rangeQuery(field).format(EPOCH_MILLIS_FORMAT);
+                if (first != null) {
+                    query.gte(startOfYear(first.intValueExact()));
+                }
+                if (last != null) {
+                    query.lt(startOfYear(last.intValueExact() + 1));
+                }
+                return query;
+            } catch (ArithmeticException | DateTimeException e) {
+                return null; // Year out of range which is very unlikely to be intended
+            }
+        }
+
+        private BigDecimal firstInteger() {
+            if (lower == null) {
+                return null;
+            }
+            return includeLower ? lower.setScale(0, RoundingMode.CEILING) :
+                                  lower.setScale(0, RoundingMode.FLOOR).add(BigDecimal.ONE);
+        }
+
+        private BigDecimal lastInteger() {
+            if (upper == null) {
+                return null;
+            }
+            return includeUpper ? upper.setScale(0, RoundingMode.FLOOR) :
+                                  upper.setScale(0, RoundingMode.CEILING).subtract(BigDecimal.ONE);
+        }
+
+        private static long startOfYear(int year) {
+            return LocalDate.of(year, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+
+        QueryBuilder toQuery(String field) {
+            if (isEmpty()) {
+                return new MatchNoneQueryBuilder();
+            }
+
+            RangeQueryBuilder query = QueryBuilders.rangeQuery(field);
+            if (lower != null) {
+                query.from(toNumber(lower), includeLower);
+            }
+            if (upper != null) {
+                query.to(toNumber(upper), includeUpper);
+            }
+            return query;
+        }
+
+        private boolean isEmpty() {
+            if (lower == null || upper == null) {
+                return false;
+            }
+            int cmp = lower.compareTo(upper);
+            return cmp > 0 || (cmp == 0 && !(includeLower && includeUpper));
+        }
+
+        /** Keep integral value as long so range on integer field is not affected by precision of double */
+        private static Number toNumber(BigDecimal value) {
+            BigDecimal stripped = value.stripTrailingZeros();
+            if (stripped.scale() <= 0) {
+                try {
+                    return stripped.longValueExact();
+                } catch (ArithmeticException e) {
+                    return value.doubleValue();
+                }
+            }
+            return value.doubleValue();
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query.maker;
+
+import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
+import com.amazon.opendistroforelasticsearch.sql.domain.Condition.OPEAR;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where.CONN;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.google.common.collect.ImmutableSet;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Normalization of WHERE before query generation to produce smaller query tree:
+ * <ol>
+ *   <li>Single child group is replaced by the child and group of same connective is spliced into its parent.</li>
+ *   <li>Duplicate conditions are removed.</li>
+ *   <li>Equalities on the same field in OR are folded into a single terms condition.</li>
+ *   <li>Lower (or upper) bounds on the same field in AND are reduced to the tightest one.</li>
+ *   <li>Condition AND its negation, ex. a = 1 AND a &lt;&gt; 1, is replaced by a condition matching nothing.</li>
+ * </ol>
+ * Lower and upper bound are not intersected into a single range because a multi-valued field may satisfy
+ * each of them by different values. For the same reason, a = 1 AND a = 2 is not a contradiction.
+ * <p>
+ * Where tree is traversed by an explicit stack so that very deep tree doesn't overflow call stack.
+ * Original tree is not modified because it may be shared by cached query plan.
+ */
+public class WhereSimplifier {
+
+    /** Operators negated by must_not and thus a condition with the negative operator is exactly its complement */
+    private static final Set<OPEAR> COMPLEMENT_OPEARS = ImmutableSet.of(
+        OPEAR.EQ, OPEAR.N, OPEAR.LIKE, OPEAR.NLIKE, OPEAR.IN, OPEAR.NIN, OPEAR.BETWEEN, OPEAR.NBETWEEN,
+        OPEAR.IN_TERMS, OPEAR.NIN_TERMS, OPEAR.TERM, OPEAR.NTERM
+    );
+
+    private static final Set<OPEAR> LOWER_BOUND_OPEARS = ImmutableSet.of(OPEAR.GT, OPEAR.GTE);
+    private static final Set<OPEAR> UPPER_BOUND_OPEARS = ImmutableSet.of(OPEAR.LT, OPEAR.LTE);
+
+    /**
+     * Simplify WHERE.
+     *
+     * @param where root of where tree
+     * @return      new where tree simplified
+     */
+    public Where simplify(Where where) throws SqlParseException {
+        if (where instanceof Condition) {
+            return where;
+        }
+
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(where));
+        Where result = null;
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.remaining.hasNext()) {
+                Where child = frame.remaining.next();
+                if (child instanceof Condition) {
+                    frame.children.add(child);
+                } else {
+                    stack.push(new Frame(child));
+                }
+            } else {
+                stack.pop();
+                Where simplified = simplifyGroup(frame.where.getConn(), frame.children);
+                if (stack.isEmpty()) {
+                    result = simplified;
+                } else {
+                    stack.peek().children.add(simplified);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Group with children already simplified */
+    private Where simplifyGroup(CONN groupConn, List<Where> children) throws SqlParseException {
+        children = flatten(children);
+
+        CONN conn = connOf(children);
+        if (conn == CONN.AND) {
+            children = simplifyConjunction(children);
+        } else if (conn == CONN.OR) {
+            children = simplifyDisjunction(children);
+        }
+
+        if (children.size() == 1) {
+            return withConn(children.get(0), groupConn);
+        }
+
+        Where group = new Where(groupConn);
+        children.forEach(group::addWhere);
+        return group;
+    }
+
+    private List<Where> flatten(List<Where> children) throws SqlParseException {
+        List<Where> collapsed = new ArrayList<>(children.size());
+        for (Where child : children) {
+            if (!(child instanceof Condition) && child.getWheres().size() == 1) {
+                child = withConn(child.getWheres().getFirst(), child.getConn());
+            }
+            collapsed.add(child);
+        }
+
+        CONN conn = connOf(collapsed);
+        if (conn == null) {
+            return collapsed;
+        }
+
+        List<Where> flattened = new ArrayList<>(collapsed.size());
+        for (Where child : collapsed) {
+            if (!(child instanceof Condition) && child.getConn() == conn && connOf(child.getWheres()) == conn) {
+                flattened.addAll(child.getWheres());
+            } else {
+                flattened.add(child);
+            }
+        }
+        return flattened;
+    }
+
+    private List<Where> simplifyConjunction(List<Where> children) throws SqlParseException {
+        children = removeDuplicates(children);
+
+        Map<String, Condition> lowerBounds = new HashMap<>();
+        Map<String, Condition> upperBounds = new HashMap<>();
+        Set<List<Object>> keys = new HashSet<>();
+        for (Where child : children) {
+            if (isNone(child)) {
+                return matchNothing((Condition) child);
+            }
+            if (!isSimple(child)) {
+                continue;
+            }
+
+            Condition cond = (Condition) child;
+            keys.add(keyOf(cond, cond.getOpear()));
+            if (isBound(cond, LOWER_BOUND_OPEARS)) {
+                lowerBounds.merge(cond.getName(), cond, (cur, next) -> tighter(cur, next, 1));
+            } else if (isBound(cond, UPPER_BOUND_OPEARS)) {
+                upperBounds.merge(cond.getName(), cond, (cur, next) -> tighter(cur, next, -1));
+            }
+        }
+
+        for (Where child : children) {
+            if (isSimple(child) && COMPLEMENT_OPEARS.contains(((Condition) child).getOpear())) {
+                Condition cond = (Condition) child;
+                if (keys.contains(keyOf(cond, cond.getOpear().negative()))) {
+                    return matchNothing(cond);
+                }
+            }
+        }
+
+        List<Where> result = new ArrayList<>(children.size());
+        for (Where child : children) {
+            if (isSimple(child)) {
+                Condition cond = (Condition) child;
+                if ((isBound(cond, LOWER_BOUND_OPEARS) && lowerBounds.get(cond.getName()) != cond)
+                    || (isBound(cond, UPPER_BOUND_OPEARS) && upperBounds.get(cond.getName()) != cond)) {
+                    continue;
+                }
+            }
+            result.add(child);
+        }
+        return result;
+    }
+
+    private List<Where> simplifyDisjunction(List<Where> children) throws SqlParseException {
+        children = removeDuplicates(children);
+
+        List<Where> candidates = new ArrayList<>(children);
+        candidates.removeIf(this::isNone);
+        if (candidates.isEmpty()) {
+            return children; // All match nothing
+        }
+
+        Map<String, Set<Object>> valuesByField = new LinkedHashMap<>();
+        for (Where child : candidates) {
+            if (isFoldableEquality(child)) {
+                Condition cond = (Condition) child;
+                valuesByField.computeIfAbsent(cond.getName(), name -> new LinkedHashSet<>()).add(cond.getValue());
+            }
+        }
+
+        List<Where> result = new ArrayList<>(candidates.size());
+        Set<String> folded = new HashSet<>();
+        for (Where child : candidates) {
+            if (isFoldableEquality(child)) {
+                Condition cond = (Condition) child;
+                Set<Object> values = valuesByField.get(cond.getName());
+                if (values.size() > 1) {
+                    if (folded.add(cond.getName())) {
+                        result.add(new Condition(cond.getConn(), cond.getName(), cond.getNameExpr(),
+                            OPEAR.IN_TERMS, values.toArray(), null));
+                    }
+                    continue;
+                }
+            }
+            result.add(child);
+        }
+        return result;
+    }
+
+    private List<Where> removeDuplicates(List<Where> children) {
+        Set<List<Object>> keys = new HashSet<>();
+        List<Where> result = new ArrayList<>(children.size());
+        for (Where child : children) {
+            if (isSimple(child) && !keys.add(keyOf((Condition) child, ((Condition) child).getOpear()))) {
+                continue;
+            }
+            result.add(child);
+        }
+        return result;
+    }
+
+    /** Pick tighter bound. Sign is 1 for lower bound and -1 for upper bound. Exclusive bound wins on tie */
+    private Condition tighter(Condition cur, Condition next, int sign) {
+        int cmp = toDecimal(next.getValue()).compareTo(toDecimal(cur.getValue())) * sign;
+        if (cmp > 0 || (cmp == 0 && (next.getOpear() == OPEAR.GT || next.getOpear() == OPEAR.LT))) {
+            return next;
+        }
+        return cur;
+    }
+
+    private boolean isBound(Condition cond, Set<OPEAR> opears) {
+        return opears.contains(cond.getOpear()) && cond.getValue() instanceof Number
+            && Double.isFinite(((Number) cond.getValue()).doubleValue());
+    }
+
+    private boolean isFoldableEquality(Where where) {
+        if (!isSimple(where)) {
+            return false;
+        }
+        Object value = ((Condition) where).getValue();
+        return ((Condition) where).getOpear() == OPEAR.EQ && value != null && !(value instanceof Object[]);
+    }
+
+    private boolean isNone(Where where) {
+        return where instanceof Condition && ((Condition) where).getValue() == Maker.NONE;
+    }
+
+    /** Condition on a field of root document with literal value(s) whose equality is reliable */
+    private boolean isSimple(Where where) {
+        if (!(where instanceof Condition)) {
+            return false;
+        }
+        Condition cond = (Condition) where;
+        if (cond.isNested() || cond.isChildren() || cond.getName() == null) {
+            return false;
+        }
+
+        Object value = cond.getValue();
+        if (value instanceof Object[]) {
+            return Arrays.stream((Object[]) value).allMatch(this::isLiteral);
+        }
+        return value == null || isLiteral(value);
+    }
+
+    private boolean isLiteral(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    private List<Object> keyOf(Condition cond, OPEAR opear) {
+        Object value = cond.getValue();
+        Object valueKey = (value instanceof Object[]) ? Arrays.asList((Object[]) value) : value;
+        return Arrays.asList(cond.getName(), opear, valueKey);
+    }
+
+    private BigDecimal toDecimal(Object number) {
+        return new BigDecimal(number.toString());
+    }
+
+    private List<Where> matchNothing(Condition cond) throws SqlParseException {
+        List<Where> none = new ArrayList<>(1);
+        none.add(new Condition(cond.getConn(), cond.getName(), null, OPEAR.EQ, Maker.NONE, null));
+        return none;
+    }
+
+    /** Conditions are shared with original tree and thus copied. Groups are created by simplifier */
+    private Where withConn(Where where, CONN conn) throws SqlParseException {
+        if (where.getConn() == conn) {
+            return where;
+        }
+        if (where instanceof Condition) {
+            Condition cond = (Condition) where;
+            return new Condition(conn, cond.getName(), cond.getNameExpr(), cond.getOpear(), cond.getValue(),
+                cond.getValueExpr(), cond.getRelationshipType());
+        }
+        where.setConn(conn);
+        return where;
+    }
+
+    /** Connective shared by all where in the list, or null if mixed or empty */
+    private CONN connOf(List<Where> wheres) {
+        CONN conn = null;
+        for (Where where : wheres) {
+            if (conn == null) {
+                conn = where.getConn();
+            } else if (conn != where.getConn()) {
+                return null;
+            }
+        }
+        return conn;
+    }
+
+    /** Group being simplified with iterator over its original children */
+    private static class Frame {
+        private final Where where;
+        private final Iterator<Where> remaining;
+        private final List<Where> children = new ArrayList<>();
+
+        Frame(Where where) {
+            this.where = where;
+            this.remaining = where.getWheres().iterator();
+        }
+    }
+
+}
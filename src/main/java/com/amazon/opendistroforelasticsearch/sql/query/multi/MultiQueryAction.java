@@ -38,6 +38,10 @@ public class MultiQueryAction extends QueryAction {
         this.multiQuerySelect = multiSelect;
     }
 
+    public MultiQuerySelect getMultiQuerySelect() {
+        return multiQuerySelect;
+    }
+
     @Override
     public SqlElasticRequestBuilder explain() throws SqlParseException {
         if(!isValidMultiSelectReturnFields()){
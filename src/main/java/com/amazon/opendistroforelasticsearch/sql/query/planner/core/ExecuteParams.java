@@ -35,7 +35,7 @@ public class ExecuteParams {
     }
 
     public enum ExecuteParamType {
-        CLIENT, RESOURCE_MANAGER, EXTRA_QUERY_FILTER, TIMEOUT
+        CLIENT, RESOURCE_MANAGER, EXTRA_QUERY_FILTER, TIMEOUT, PROFILE
     }
 
 }
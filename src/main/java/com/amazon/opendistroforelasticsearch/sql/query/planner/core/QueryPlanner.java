@@ -28,6 +28,7 @@ import com.amazon.opendistroforelasticsearch.sql.query.planner.resource.Stats;
 import java.util.List;
 
 import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.CLIENT;
+import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.PROFILE;
 import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.RESOURCE_MANAGER;
 import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.TIMEOUT;
 
@@ -73,11 +74,7 @@ public class QueryPlanner {
      * @return  response of the execution
      */
     public List<SearchHit> execute() {
-        ExecuteParams params = new ExecuteParams();
-        params.add(CLIENT, client);
-        params.add(TIMEOUT, config.timeout());
-        params.add(RESOURCE_MANAGER, resourceMgr);
-        return physicalPlan.execute(params);
+        return physicalPlan.execute(executeParams());
     }
 
     /**
@@ -91,10 +88,31 @@ public class QueryPlanner {
         ).toString();
     }
 
+    /**
+     * Execute query plan in profile mode and explain with runtime statistics of each physical operator,
+     * ex. rows in and out, batches, wall time, scroll round trips and hash table size.
+     * @param isSearchProfileEnabled    include ES search profile of each search request or not
+     * @return  explanation string of the plan with runtime statistics
+     */
+    public String analyze(boolean isSearchProfileEnabled) {
+        ExecuteParams params = executeParams();
+        params.add(PROFILE, isSearchProfileEnabled);
+        physicalPlan.execute(params);
+        return explain();
+    }
+
     public MetaSearchResult getMetaResult() {
         return resourceMgr.getMetaResult();
     }
 
+    private ExecuteParams executeParams() {
+        ExecuteParams params = new ExecuteParams();
+        params.add(CLIENT, client);
+        params.add(TIMEOUT, config.timeout());
+        params.add(RESOURCE_MANAGER, resourceMgr);
+        return params;
+    }
+
     /** Setter for unit test */
     public void setStats(Stats stats) {
         this.stats = stats;
@@ -37,6 +37,18 @@ public interface Row<T> {
     RowKey key(String[] colNames);
 
 
+    /**
+     * Get value of single column without wrapping it in row key.
+     *
+     * @param colName   column name
+     * @return          column value or null if absent
+     */
+    default Object value(String colName) {
+        RowKey key = key(new String[]{ colName });
+        return key == RowKey.NULL ? null : key.keys()[0];
+    }
+
+
     /**
      * Combine current row and another row together to generate a new combined row.
      *
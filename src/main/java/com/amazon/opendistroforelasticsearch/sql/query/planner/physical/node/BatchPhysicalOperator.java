@@ -15,17 +15,22 @@
 
 package com.amazon.opendistroforelasticsearch.sql.query.planner.physical.node;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams;
+import com.amazon.opendistroforelasticsearch.sql.query.planner.core.PlanNode;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.PhysicalOperator;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.Row;
+import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.profile.OperatorProfile;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.resource.ResourceManager;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 
+import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.PROFILE;
 import static com.amazon.opendistroforelasticsearch.sql.query.planner.core.ExecuteParams.ExecuteParamType.RESOURCE_MANAGER;
 
 /**
@@ -42,17 +47,30 @@ public abstract class BatchPhysicalOperator<T> implements PhysicalOperator<T> {
     /** Current batch of data */
     private Iterator<Row<T>> curBatch;
 
+    /** Runtime statistics which is only collected in profile mode */
+    protected OperatorProfile profile;
+
     @Override
     public void open(ExecuteParams params) throws Exception {
         //PhysicalOperator.super.open(params); // Child needs to call this super.open() and open its next node too
         resourceMgr = params.get(RESOURCE_MANAGER);
+
+        Boolean isSearchProfileEnabled = params.get(PROFILE);
+        if (isSearchProfileEnabled != null && profile == null) { // Keep profile if operator is re-opened
+            profile = new OperatorProfile(isSearchProfileEnabled);
+        }
     }
 
     @Override
     public boolean hasNext() {
+        QueryCancellation.checkCancelled(toString());
         if (isNoMoreDataInCurrentBatch()) {
             LOG.debug("{} No more data in current batch, pre-fetching next batch", this);
+            long startTime = System.nanoTime();
             Collection<Row<T>> nextBatch = prefetchSafely();
+            if (isProfiling()) {
+                profile.addBatch(nextBatch.size(), System.nanoTime() - startTime);
+            }
 
             LOG.debug("{} Pre-fetched {} rows", this, nextBatch.size());
             if (LOG.isTraceEnabled()) {
@@ -72,7 +90,6 @@ public abstract class BatchPhysicalOperator<T> implements PhysicalOperator<T> {
     /** Prefetch next batch safely by checking resource monitor */
     private Collection<Row<T>> prefetchSafely() {
         Objects.requireNonNull(resourceMgr, "ResourceManager is not set so unable to do sanity check");
-
         boolean isHealthy = resourceMgr.isHealthy();
         boolean isTimeout = resourceMgr.isTimeout();
         if (isHealthy && !isTimeout) {
@@ -96,4 +113,35 @@ public abstract class BatchPhysicalOperator<T> implements PhysicalOperator<T> {
         return curBatch == null || !curBatch.hasNext();
     }
 
+    protected boolean isProfiling() {
+        return profile != null;
+    }
+
+    /*********************************************
+     *          Getters for Explain
+     *********************************************/
+
+    /**
+     * Runtime statistics for EXPLAIN ANALYZE. Null is returned and thus skipped in explanation if not profiled.
+     * Rows in is the total rows out of child operators.
+     */
+    public Map<String, Object> getProfile() {
+        if (!isProfiling()) {
+            return null;
+        }
+
+        PlanNode[] children = children();
+        if (children.length == 0) {
+            return profile.toMap(null);
+        }
+
+        long rowsIn = 0;
+        for (PlanNode child : children) {
+            if (child instanceof BatchPhysicalOperator && ((BatchPhysicalOperator) child).isProfiling()) {
+                rowsIn += ((BatchPhysicalOperator) child).profile.getRowsOut();
+            }
+        }
+        return profile.toMap(rowsIn);
+    }
+
 }
@@ -15,25 +15,31 @@
 
 package com.amazon.opendistroforelasticsearch.sql.query.planner.physical.node.join;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.Row;
-import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.Row.RowKey;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
 import static java.util.Collections.emptyList;
 
 /**
- * Hash table implementation.
- * In the case of no join condition, hash table degrades to linked list with all rows in block paired to RowKey.NULL
+ * Hash table implementation by open addressing (linear probing) on precomputed 64-bit hash of join key.
+ * Rows are stored in insertion order in a single array and rows of the same key are linked by row index,
+ * so neither key object nor list per key is allocated for duplicate key. Value of single integral join
+ * column is stored as primitive long. Arrays are reused after clear() for next block and matched rows
+ * of each key are returned by a view cached in its slot, so probing doesn't allocate in steady state.
+ * <p>
+ * Note that integral values of different type, ex. Integer and Long, are considered equal.
  *
  * @param <T>   Row data type
  */
@@ -41,8 +47,13 @@ public class DefaultHashTable<T> implements HashTable<T> {
 
     private static final Logger LOG = LogManager.getLogger();
 
-    /** Hash table implementation */
-    private final Multimap<RowKey, Row<T>> table = ArrayListMultimap.create();
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Keep load factor low because clustering of linear probing grows quickly beyond that */
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    /** Head of empty slot or tail of row chain */
+    private static final int NONE = -1;
 
     /** Left join conditions to generate key to build hash table by left rows from block */
     private final String[] leftJoinFields;
@@ -50,36 +61,110 @@ public class DefaultHashTable<T> implements HashTable<T> {
     /** Right join conditions to generate key to probe hash table by right rows */
     private final String[] rightJoinFields;
 
+    /** Reusable buffers for values of multiple join columns of the row being added or probed */
+    private final Object[] buildValues;
+    private final Object[] probeValues;
+
+    /*
+     * Slots indexed by hash. Key is either primitive in longKeys (if objectKeys is null),
+     * single value in objectKeys or value array in objectKeys for multiple join columns.
+     */
+    private long[] hashes;
+    private long[] longKeys;
+    private Object[] objectKeys;
+    private int[] heads;
+    private int[] tails;
+    private int[] counts;
+    private Object[] chains;
+
+    /** Number of occupied slots */
+    private int numOfKeys;
+
+    /** Rows in insertion order and index of next row of the same key */
+    private Object[] rows;
+    private int[] nextIndexes;
+
+    private int numOfRows;
+
 
     public DefaultHashTable(String[] leftJoinFields, String[] rightJoinFields) {
         this.leftJoinFields = leftJoinFields;
         this.rightJoinFields = rightJoinFields;
+        this.probeValues = new Object[rightJoinFields.length];
+        allocateSlots(INITIAL_CAPACITY);
+        this.buildValues = new Object[leftJoinFields.length];
+        this.rows = new Object[INITIAL_CAPACITY];
+        this.nextIndexes = new int[INITIAL_CAPACITY];
     }
 
     /**
      * Add row in block to hash table by left conditions in ON.
-     * For the duplicate key, append them to the list in value (MultiMap)
+     * For the duplicate key, append it to the end of row chain of the key.
      */
     @Override
     public void add(Row<T> row) {
-        RowKey key = row.key(leftJoinFields);
-        if (key == RowKey.NULL) {
-            LOG.debug("Skip rows with NULL column value during build: row={}, conditions={}", row, leftJoinFields);
+        Object value;
+        long hash;
+        if (isSingleKey()) {
+            value = row.value(leftJoinFields[0]);
+            if (value == null) {
+                LOG.debug("Skip rows with NULL column value during build: row={}, conditions={}", row, leftJoinFields);
+                return;
+            }
+            hash = hash(value);
+        } else {
+            if (!readValues(row, leftJoinFields, buildValues)) {
+                LOG.debug("Skip rows with NULL column value during build: row={}, conditions={}", row, leftJoinFields);
+                return;
+            }
+            value = buildValues;
+            hash = hash(buildValues);
         }
-        else {
-            table.put(key, row);
+
+        int slot = find(hash, value);
+        if (heads[slot] == NONE) {
+            if (numOfKeys + 1 > heads.length * MAX_LOAD_FACTOR) {
+                rehash(heads.length * 2);
+                slot = find(hash, value);
+            }
+            occupy(slot, hash, value);
         }
+        append(slot, row);
     }
 
-    /** Probe hash table to match right rows by values of right conditions */
+    /**
+     * Probe hash table to match right rows by values of right conditions.
+     * Returned collection is backed by the hash table and thus only valid until it's cleared.
+     */
+    @SuppressWarnings("unchecked")
     @Override
     public Collection<Row<T>> match(Row<T> row) {
-        RowKey key = row.key(rightJoinFields);
-        if (key == RowKey.NULL) {
-            LOG.debug("Skip rows with NULL column value during probing: row={}, conditions={}", row, rightJoinFields);
+        Object value;
+        long hash;
+        if (isSingleKey()) {
+            value = row.value(rightJoinFields[0]);
+            if (value == null) {
+                LOG.debug("Skip rows with NULL column value during probing: row={}, conditions={}", row, rightJoinFields);
+                return emptyList();
+            }
+            hash = hash(value);
+        } else {
+            if (!readValues(row, rightJoinFields, probeValues)) {
+                LOG.debug("Skip rows with NULL column value during probing: row={}, conditions={}", row, rightJoinFields);
+                return emptyList();
+            }
+            value = probeValues;
+            hash = hash(probeValues);
+        }
+
+        int slot = find(hash, value);
+        if (heads[slot] == NONE) {
             return emptyList();
         }
-        return table.get(key); // Multimap returns empty list rather null.
+        if (chains[slot] == null) {
+            chains[slot] = new RowChain(heads[slot], counts[slot]);
+        }
+        return (RowChain) chains[slot];
     }
 
     /** Right joined field name with according column value list to push down */
@@ -87,15 +172,25 @@ public class DefaultHashTable<T> implements HashTable<T> {
     @Override
     public Map<String, Collection<Object>>[] rightFieldWithLeftValues() {
         Map<String, Collection<Object>> result = new HashMap<>(); // Eliminate potential duplicate in values
-        for (RowKey key : table.keySet()) {
-            Object[] keys = key.keys();
-            for (int i = 0; i < keys.length; i++) {
-                result.computeIfAbsent(rightJoinFields[i], (k -> new HashSet<>())).
-                       add(lowercaseIfStr(keys[i])); // Terms stored in lower case in ES
+        for (int slot = 0; slot < heads.length; slot++) {
+            if (heads[slot] == NONE) {
+                continue;
+            }
+
+            if (isSingleKey()) {
+                Object key = (objectKeys[slot] == null) ? (Object) longKeys[slot] : objectKeys[slot];
+                result.computeIfAbsent(rightJoinFields[0], (k -> new HashSet<>())).
+                       add(lowercaseIfStr(key)); // Terms stored in lower case in ES
+            } else {
+                Object[] keys = (Object[]) objectKeys[slot];
+                for (int i = 0; i < keys.length; i++) {
+                    result.computeIfAbsent(rightJoinFields[i], (k -> new HashSet<>())).
+                           add(lowercaseIfStr(keys[i]));
+                }
             }
         }
 
-        // Convert value of Map from Guava's Set to JDK list which is expected by ES writer
+        // Convert value of Map from Set to JDK list which is expected by ES writer
         for (Entry<String, Collection<Object>> entry : result.entrySet()) {
             entry.setValue(new ArrayList<>(entry.getValue()));
         }
@@ -104,21 +199,230 @@ public class DefaultHashTable<T> implements HashTable<T> {
 
     @Override
     public int size() {
-        return table.size();
+        return numOfRows;
     }
 
     @Override
     public boolean isEmpty() {
-        return table.isEmpty();
+        return numOfRows == 0;
     }
 
+    /** Release rows and keys but keep arrays allocated for next block */
     @Override
     public void clear() {
-        table.clear();
+        Arrays.fill(heads, NONE);
+        Arrays.fill(objectKeys, null);
+        Arrays.fill(chains, null);
+        Arrays.fill(rows, 0, numOfRows, null);
+        numOfKeys = 0;
+        numOfRows = 0;
+    }
+
+    private boolean isSingleKey() {
+        return leftJoinFields.length == 1;
+    }
+
+    /** Read values of all columns into the buffer. Return false if any value is NULL. */
+    private boolean readValues(Row<T> row, String[] colNames, Object[] values) {
+        for (int i = 0; i < colNames.length; i++) {
+            values[i] = row.value(colNames[i]);
+            if (values[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Find slot of the key, or the empty slot where it should be placed if absent */
+    private int find(long hash, Object value) {
+        int mask = heads.length - 1;
+        int slot = (int) hash & mask;
+        while (heads[slot] != NONE && !(hashes[slot] == hash && isKeyEqual(slot, value))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean isKeyEqual(int slot, Object value) {
+        if (isSingleKey()) {
+            if (isIntegral(value)) {
+                return objectKeys[slot] == null && longKeys[slot] == ((Number) value).longValue();
+            }
+            return value.equals(objectKeys[slot]);
+        }
+
+        Object[] keys = (Object[]) objectKeys[slot];
+        Object[] values = (Object[]) value;
+        for (int i = 0; i < keys.length; i++) {
+            if (!isValueEqual(keys[i], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Key object is only allocated here for each distinct key of multiple join columns */
+    private void occupy(int slot, long hash, Object value) {
+        hashes[slot] = hash;
+        if (!isSingleKey()) {
+            objectKeys[slot] = ((Object[]) value).clone();
+        } else if (isIntegral(value)) {
+            longKeys[slot] = ((Number) value).longValue();
+            objectKeys[slot] = null;
+        } else {
+            objectKeys[slot] = value;
+        }
+        counts[slot] = 0;
+        numOfKeys++;
+    }
+
+    private void append(int slot, Row<T> row) {
+        if (numOfRows == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+            nextIndexes = Arrays.copyOf(nextIndexes, nextIndexes.length * 2);
+        }
+
+        int index = numOfRows++;
+        rows[index] = row;
+        nextIndexes[index] = NONE;
+        if (heads[slot] == NONE) {
+            heads[slot] = index;
+        } else {
+            nextIndexes[tails[slot]] = index;
+        }
+        tails[slot] = index;
+        counts[slot]++;
+        chains[slot] = null; // Cached view is snapshot of previous chain
+    }
+
+    private void allocateSlots(int capacity) {
+        hashes = new long[capacity];
+        longKeys = new long[capacity];
+        objectKeys = new Object[capacity];
+        heads = new int[capacity];
+        tails = new int[capacity];
+        counts = new int[capacity];
+        chains = new Object[capacity];
+        Arrays.fill(heads, NONE);
+    }
+
+    /** Move occupied slots to larger arrays by hash precomputed without touching the rows */
+    private void rehash(int capacity) {
+        long[] oldHashes = hashes;
+        long[] oldLongKeys = longKeys;
+        Object[] oldObjectKeys = objectKeys;
+        int[] oldHeads = heads;
+        int[] oldTails = tails;
+        int[] oldCounts = counts;
+
+        allocateSlots(capacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldHeads.length; oldSlot++) {
+            if (oldHeads[oldSlot] == NONE) {
+                continue;
+            }
+
+            int slot = (int) oldHashes[oldSlot] & mask;
+            while (heads[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[oldSlot];
+            longKeys[slot] = oldLongKeys[oldSlot];
+            objectKeys[slot] = oldObjectKeys[oldSlot];
+            heads[slot] = oldHeads[oldSlot];
+            tails[slot] = oldTails[oldSlot];
+            counts[slot] = oldCounts[oldSlot];
+        }
+    }
+
+    private static long hash(Object[] values) {
+        long hash = 1;
+        for (Object value : values) {
+            hash = 31 * hash + hash(value);
+        }
+        return mix(hash);
+    }
+
+    private static long hash(Object value) {
+        if (isIntegral(value)) {
+            return mix(((Number) value).longValue());
+        }
+        if (value instanceof String) {
+            String str = (String) value;
+            long hash = 0;
+            for (int i = 0; i < str.length(); i++) {
+                hash = 31 * hash + str.charAt(i);
+            }
+            return mix(hash);
+        }
+        return mix(value.hashCode());
+    }
+
+    /** Finalization mix of MurmurHash3 to spread bits of hash to the low bits used as slot index */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static boolean isValueEqual(Object key, Object value) {
+        if (isIntegral(key) && isIntegral(value)) {
+            return ((Number) key).longValue() == ((Number) value).longValue();
+        }
+        return key.equals(value);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
     }
 
     private Object lowercaseIfStr(Object key) {
         return key instanceof String ? ((String) key).toLowerCase() : key;
     }
 
+    /**
+     * Read-only view of rows of the same key in insertion order.
+     */
+    private class RowChain extends AbstractCollection<Row<T>> {
+
+        private final int head;
+        private final int size;
+
+        RowChain(int head, int size) {
+            this.head = head;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<Row<T>> iterator() {
+            return new Iterator<Row<T>>() {
+                private int index = head;
+
+                @Override
+                public boolean hasNext() {
+                    return index != NONE;
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public Row<T> next() {
+                    if (index == NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    Row<T> row = (Row<T>) rows[index];
+                    index = nextIndexes[index];
+                    return row;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
 }
@@ -61,8 +61,16 @@ public class HashTableGroup<T> implements HashTable<T> {
         numOfRows++;
     }
 
+    /**
+     * Rows matched by single hash table are returned directly. Identity set is only required to eliminate
+     * rows matched by more than one OR condition.
+     */
     @Override
     public Collection<Row<T>> match(Row<T> row) {
+        if (hashTables.length == 1) {
+            return hashTables[0].match(row);
+        }
+
         Set<Row<T>> allMatched = Sets.newIdentityHashSet();
         for (HashTable<T> hashTable : hashTables) {
             allMatched.addAll(hashTable.match(row));
@@ -222,6 +222,12 @@ public abstract class JoinAlgorithm<T> extends BatchPhysicalOperator<T> {
             hashTable.add(data);
         }
 
+        if (isProfiling()) {
+            profile.increment("hash_table_builds", 1);
+            profile.increment("hash_table_rows_total", block.size());
+            profile.max("hash_table_max_size", hashTable.size());
+        }
+
         if (type == JoinType.LEFT_OUTER_JOIN) {
             leftMismatch.addAll(block);
         }
@@ -31,10 +31,12 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.profile.SearchProfileShardResults;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.core.PlanNode;
 import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.Row;
+import org.json.JSONObject;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -124,9 +126,14 @@ public class Scroll extends BatchPhysicalOperator<SearchHit> {
         if (scrollResponse == null) {
             loadFirstBatch();
             updateMetaResult();
+            profileSearch();
         } else {
             loadNextBatchByScrollId();
         }
+
+        if (isProfiling()) {
+            profile.increment("scroll_round_trips", 1);
+        }
         return wrapRowForCurrentBatch();
     }
 
@@ -147,6 +154,10 @@ public class Scroll extends BatchPhysicalOperator<SearchHit> {
     }
 
     private void loadFirstBatch() {
+        if (isProfiling() && profile.isSearchProfileEnabled()) {
+            request.getRequestBuilder().setProfile(true);
+        }
+
         scrollResponse = request.getRequestBuilder().
                                  addSort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC).
                                  setSize(pageSize).
@@ -154,6 +165,14 @@ public class Scroll extends BatchPhysicalOperator<SearchHit> {
                                  get();
     }
 
+    /** ES search profile is only available in response of the initial search request rather than scroll */
+    private void profileSearch() {
+        if (isProfiling() && profile.isSearchProfileEnabled() && scrollResponse.getProfileResults() != null) {
+            String searchProfile = Strings.toString(new SearchProfileShardResults(scrollResponse.getProfileResults()));
+            profile.append("search_profiles", new JSONObject(searchProfile));
+        }
+    }
+
     private void updateMetaResult() {
         resourceMgr.getMetaResult().addTotalNumOfShards(scrollResponse.getTotalShards());
         resourceMgr.getMetaResult().addSuccessfulShards(scrollResponse.getSuccessfulShards());
@@ -76,6 +76,11 @@ class SearchHitRow implements Row<SearchHit> {
         return new RowKey(keys);
     }
 
+    @Override
+    public Object value(String colName) {
+        return getValueOfPath(colName);
+    }
+
     /**
      * Replace column name by full name to avoid naming conflicts.
      * For efficiency, this only happens here when matched rows found.
@@ -0,0 +1,118 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.query.planner.physical.profile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime statistics of a physical operator collected in EXPLAIN ANALYZE (profile) mode.
+ * Physical operator is always pulled by one thread so no synchronization is required here.
+ */
+public class OperatorProfile {
+
+    /** Include ES search profile of each request sent by operator or not */
+    private final boolean isSearchProfileEnabled;
+
+    /** Number of batches returned */
+    private long batches;
+
+    /** Number of rows returned */
+    private long rowsOut;
+
+    /** Wall time spent on prefetching including time spent in child operators */
+    private long wallTimeNanos;
+
+    /** Peak JVM heap used sampled after each batch */
+    private long peakHeapUsedBytes;
+
+    /** Operator specific counters, ex. scroll round trips, hash table size */
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    /** Operator specific details, ex. ES search profile */
+    private final Map<String, Object> details = new LinkedHashMap<>();
+
+    public OperatorProfile(boolean isSearchProfileEnabled) {
+        this.isSearchProfileEnabled = isSearchProfileEnabled;
+    }
+
+    public boolean isSearchProfileEnabled() {
+        return isSearchProfileEnabled;
+    }
+
+    /**
+     * Record a batch prefetched.
+     * @param rows          number of rows in the batch
+     * @param tookNanos     time spent on prefetch
+     */
+    public void addBatch(int rows, long tookNanos) {
+        batches++;
+        rowsOut += rows;
+        wallTimeNanos += tookNanos;
+
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapUsedBytes = Math.max(peakHeapUsedBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    public void increment(String name, long delta) {
+        counters.merge(name, delta, Long::sum);
+    }
+
+    public void max(String name, long value) {
+        counters.merge(name, value, Math::max);
+    }
+
+    /** Append value to detail list, ex. search profile of each request */
+    @SuppressWarnings("unchecked")
+    public void append(String name, Object value) {
+        ((List<Object>) details.computeIfAbsent(name, key -> new ArrayList<>())).add(value);
+    }
+
+    public long getRowsOut() {
+        return rowsOut;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Convert to map for explanation.
+     * @param rowsIn    rows received from child operators or null for leaf operator
+     * @return          profile in map
+     */
+    public Map<String, Object> toMap(Long rowsIn) {
+        Map<String, Object> profile = new LinkedHashMap<>();
+        if (rowsIn != null) {
+            profile.put("rows_in", rowsIn);
+        }
+        profile.put("rows_out", rowsOut);
+        profile.put("batches", batches);
+        profile.put("wall_time_millis", TimeUnit.NANOSECONDS.toMillis(wallTimeNanos));
+        profile.put("peak_heap_used_bytes", peakHeapUsedBytes);
+        profile.putAll(counters);
+        profile.putAll(details);
+        return profile;
+    }
+
+}
@@ -17,6 +17,7 @@ package com.amazon.opendistroforelasticsearch.sql.request;
 
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class PreparedStatementRequest extends SqlRequest {
@@ -35,6 +36,14 @@ public class PreparedStatementRequest extends SqlRequest {
         return this.parameters;
     }
 
+    public List<Object> getParameterValues() {
+        List<Object> values = new ArrayList<>(this.parameters.size());
+        for (PreparedStatementParameter parameter : this.parameters) {
+            values.add(parameter.getValue());
+        }
+        return values;
+    }
+
     @Override
     public String getSql() {
         return this.sql;
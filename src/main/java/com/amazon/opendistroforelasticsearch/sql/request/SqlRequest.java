@@ -32,6 +32,9 @@ import java.util.Collections;
 
 public class SqlRequest {
 
+    public static final String FETCH_SIZE_FIELD_NAME = "fetch_size";
+    public static final String CURSOR_FIELD_NAME = "cursor";
+
     String sql;
     JSONObject jsonContent;
 
@@ -54,6 +57,26 @@ public class SqlRequest {
         return this.jsonContent;
     }
 
+    /**
+     * Page size requested by client for scroll-backed cursor pagination, 0 if cursor is not requested.
+     */
+    public int fetchSize() {
+        if (jsonContent != null && jsonContent.has(FETCH_SIZE_FIELD_NAME)) {
+            return jsonContent.getInt(FETCH_SIZE_FIELD_NAME);
+        }
+        return 0;
+    }
+
+    /**
+     * Cursor from previous page if it's a request for next page, otherwise null.
+     */
+    public String cursor() {
+        if (jsonContent != null && jsonContent.has(CURSOR_FIELD_NAME)) {
+            return jsonContent.getString(CURSOR_FIELD_NAME);
+        }
+        return null;
+    }
+
     /**
      * JSONObject's getJSONObject method will return just the value, this helper method is to extract the key and
      * value of 'filter' and return the JSON as a string.
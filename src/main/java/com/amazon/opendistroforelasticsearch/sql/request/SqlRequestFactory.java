@@ -15,6 +15,7 @@
 
 package com.amazon.opendistroforelasticsearch.sql.request;
 
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
 import org.elasticsearch.rest.RestRequest;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -62,6 +63,11 @@ public class SqlRequestFactory {
         } catch (JSONException e) {
             throw new IllegalArgumentException("Failed to parse request payload", e);
         }
+        if (jsonContent.has(SqlRequest.CURSOR_FIELD_NAME)) { // is a request for next page
+            String cursor = jsonContent.getString(SqlRequest.CURSOR_FIELD_NAME);
+            return new SqlRequest(Cursor.decode(cursor).getSql(), jsonContent);
+        }
+
         String sql = jsonContent.getString(SQL_FIELD_NAME);
         if(jsonContent.has(PARAM_FIELD_NAME)) { // is a PreparedStatement
             JSONArray paramArray = jsonContent.getJSONArray(PARAM_FIELD_NAME);
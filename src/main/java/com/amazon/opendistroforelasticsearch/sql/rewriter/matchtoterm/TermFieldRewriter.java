@@ -112,9 +112,8 @@ public class TermFieldRewriter extends MySqlASTVisitorAdapter {
         if (isValidIdentifierForTerm(expr)) {
             Map<String, Object> source = null;
             if (this.filterType == TermRewriterFilter.COMMA || this.filterType == TermRewriterFilter.MULTI_QUERY) {
-                if (curScope().getFinalMapping().has(expr.getName())) {
-                    source = curScope().getFinalMapping().mapping(expr.getName());
-                } else {
+                source = curScope().getFinalMapping().mapping(expr.getName());
+                if (source == null) {
                     return true;
                 }
 
@@ -126,9 +125,8 @@ public class TermFieldRewriter extends MySqlASTVisitorAdapter {
 
                 String index = curScope().getAliases().get(alias);
                 FieldMappings fieldMappings = curScope().getMapper().mapping(index).firstMapping();
-                if (fieldMappings.has(fullFieldName)) {
-                    source = fieldMappings.mapping(fullFieldName);
-                } else {
+                source = fieldMappings.mapping(fullFieldName);
+                if (source == null) {
                     return true;
                 }
             }
@@ -24,10 +24,15 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.elasticsearch.common.collect.Tuple;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,6 +66,18 @@ public class SQLFunctions {
     );
 
     private final static Set<String> utilityFunctions = Sets.newHashSet("field");
+
+    /**
+     * Per-thread sequence for generated variable names in painless script
+     */
+    private final static ThreadLocal<AtomicInteger> NAME_SEQUENCE = ThreadLocal.withInitial(AtomicInteger::new);
+
+    /**
+     * Per-thread literals taken out of generated painless script and passed in as script params
+     */
+    private final static ThreadLocal<Map<String, Object>> SCRIPT_PARAMS = ThreadLocal.withInitial(LinkedHashMap::new);
+
+    private final static String LITERAL_PARAM_PREFIX = "literal_";
     
     public final static Set<String> builtInFunctions = Stream.of(
             numberOperators,
@@ -169,7 +186,7 @@ public class SQLFunctions {
                 break;
 
             case "pow":
-                functionStr = mathDoubleValueTemplate("Math." + methodName, methodName, (SQLExpr) paramers.get(0).value, Util.expr2Object((SQLExpr) paramers.get(1).value).toString(), name);
+                functionStr = mathDoubleValueTemplate("Math." + methodName, methodName, (SQLExpr) paramers.get(0).value, getPropertyOrValue((SQLExpr) paramers.get(1).value), name);
                 break;
 
             case "substring":
@@ -242,12 +259,54 @@ public class SQLFunctions {
         return functionStr;
     }
 
-    private static String random() {
-        return Math.abs(new Random().nextInt()) + "";
+    /**
+     * Reset sequence of generated variable names and script params collected for current thread. This is
+     * supposed to be called before parsing each query so that same query shape always produces identical
+     * painless source which can hit compiled script cache in Elasticsearch rather than being compiled again.
+     */
+    public static void resetScriptContext() {
+        NAME_SEQUENCE.get().set(0);
+        SCRIPT_PARAMS.get().clear();
     }
 
-    public static String randomize(String methodName) {
-        return methodName + "_" + random();
+    /**
+     * Pass literal in as script param rather than inlining it in painless source, so that queries only
+     * different in literal values share the same compiled script.
+     *
+     * @param value literal value
+     * @return      reference to the param in painless script
+     */
+    public static String literal(Object value) {
+        Map<String, Object> params = SCRIPT_PARAMS.get();
+        String name = LITERAL_PARAM_PREFIX + params.size();
+        params.put(name, toParamValue(value));
+        return "params." + name;
+    }
+
+    /**
+     * Script params collected so far for the query being parsed by current thread. Painless ignores params
+     * not referenced, so the same snapshot is passed to all scripts of the query.
+     */
+    public static Map<String, Object> scriptParams() {
+        return new HashMap<>(SCRIPT_PARAMS.get());
+    }
+
+    /** Number types which are not able to be serialized in script params */
+    private static Object toParamValue(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).doubleValue();
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValue();
+        }
+        return value;
+    }
+
+    /**
+     * Generate variable name unique within the query being parsed by current thread.
+     */
+    public static String generateName(String methodName) {
+        return methodName + "_" + NAME_SEQUENCE.get().getAndIncrement();
     }
 
     private static String def(String name, String value) { return "def " + name + " = " + value; }
@@ -271,7 +330,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> concat_ws(String split, List<SQLExpr> columns) {
-        String name = randomize("concat_ws");
+        String name = generateName("concat_ws");
         List<String> result = Lists.newArrayList();
 
         for (SQLExpr column : columns) {
@@ -291,7 +350,7 @@ public class SQLFunctions {
 
     //split(Column expr, java.lang.String pattern)
     public static Tuple<String, String> split(SQLExpr field, String pattern, int index, String valueName) {
-        String name = randomize("split");
+        String name = generateName("split");
         String script = "";
         if (valueName == null) {
             script = def(name,
@@ -306,7 +365,7 @@ public class SQLFunctions {
 
     //split(Column expr, java.lang.String pattern)
     public static Tuple<String, String> split(SQLExpr field, String pattern, String valueName) {
-        String name = randomize("split");
+        String name = generateName("split");
         if (valueName == null) {
             return new Tuple<>(name,
                     def(name, getPropertyOrValue(field) + "." +
@@ -319,7 +378,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> date_format(SQLExpr field, String pattern, String zoneId, String valueName) {
-        String name = randomize("date_format");
+        String name = generateName("date_format");
         if (valueName == null) {
             return new Tuple<>(name, "def " + name + " = DateTimeFormatter.ofPattern('" + pattern + "').withZone(" +
                     (zoneId != null ? "ZoneId.of('" + zoneId + "')" : "ZoneId.systemDefault()") +
@@ -333,7 +392,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> dateFunctionTemplate(String methodName, SQLExpr field) {
-        String name = randomize(methodName);
+        String name = generateName(methodName);
         return new Tuple<>(name, def(name, doc(field) + ".date." + methodName));
     }
 
@@ -346,7 +405,7 @@ public class SQLFunctions {
     }
 
     public static Tuple<String, String> field(String a) {
-        String name = randomize("field");
+        String name = generateName("field");
         return new Tuple<>(name, def(name, doc(a) + ".value"));
     }
 
@@ -363,7 +422,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> binaryOpertator(String methodName, String operator, SQLExpr a, SQLExpr b) {
-        String name = randomize(methodName);
+        String name = generateName(methodName);
         return new Tuple<>(name,
                 scriptDeclare(a) + scriptDeclare(b) +
                         convertType(a) + convertType(b) +
@@ -377,6 +436,8 @@ public class SQLFunctions {
     private static String getPropertyOrValue(SQLExpr expr) {
         if (isProperty(expr))
             return doc(expr) + ".value";
+        else if (expr instanceof SQLNumericLiteralExpr)
+            return literal(((SQLNumericLiteralExpr) expr).getNumber());
         else
             return exprString(expr);
     }
@@ -391,6 +452,7 @@ public class SQLFunctions {
 
     private static String extractName(SQLExpr script) {
         if (isProperty(script)) return doc(script) + ".value";
+        if (script instanceof SQLNumericLiteralExpr) return literal(((SQLNumericLiteralExpr) script).getNumber());
         String scriptStr = exprString(script);
         String[] variance = scriptStr.split(";");
         String newScript = variance[variance.length - 1];
@@ -420,7 +482,7 @@ public class SQLFunctions {
      * incorrectly in getPropertyOrValue(), returning it as a doc value instead of the literal string
      */
     public static Tuple<String, String> log(SQLExpr base, SQLExpr field, String valueName) {
-        String name = randomize("log");
+        String name = generateName("log");
         String result;
         if (valueName == null) {
             result = def(name, func("Math.log", false, getPropertyOrValue(field)) +
@@ -448,7 +510,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> mathDoubleValueTemplate(String methodName, String fieldName, SQLExpr val1, String val2, String valueName) {
-        String name = randomize(fieldName);
+        String name = generateName(fieldName);
         if (valueName == null) {
             return new Tuple<>(name, def(name, func(methodName, false, getPropertyOrValue(val1), val2)));
         } else {
@@ -458,7 +520,7 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> mathSingleValueTemplate(String methodName, String fieldName, SQLExpr field, String valueName) {
-        String name = randomize(fieldName);
+        String name = generateName(fieldName);
         if (valueName == null) {
             return new Tuple<>(name, def(name, func(methodName, false, getPropertyOrValue(field))));
         } else {
@@ -469,12 +531,12 @@ public class SQLFunctions {
     }
 
     private static Tuple<String, String> mathConstantTemplate(String methodName, String fieldName) {
-        String name = randomize(fieldName);
+        String name = generateName(fieldName);
         return new Tuple<>(name, def(name, methodName));
     }
 
     private static Tuple<String, String> strSingleValueTemplate(String methodName, SQLExpr field, String valueName) {
-        String name = randomize(methodName);
+        String name = generateName(methodName);
         if (valueName == null) {
             return new Tuple<>(name, def(name, getPropertyOrValue(field) + "." + func(methodName, false)));
         } else {
@@ -486,14 +548,14 @@ public class SQLFunctions {
 
     //substring(Column expr, int pos, int len)
     public static Tuple<String, String> substring(SQLExpr field, int pos, int len, String valueName) {
-        String name = randomize("substring");
+        String name = generateName("substring");
         if (valueName == null) {
             return new Tuple<>(name, def(name, getPropertyOrValue(field) + "." +
-                    func("substring", false, Integer.toString(pos), Integer.toString(len))));
+                    func("substring", false, literal(pos), literal(len))));
         } else {
             return new Tuple<>(name, getPropertyOrValue(field) + "; " +
                     def(name, valueName + "." +
-                            func("substring", false, Integer.toString(pos), Integer.toString(len))));
+                            func("substring", false, literal(pos), literal(len))));
         }
 
     }
@@ -0,0 +1,205 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.AdmissionController;
+import com.amazon.opendistroforelasticsearch.sql.executor.AdmissionController.QueryClass;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.query.ESActionFactory;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
+import com.amazon.opendistroforelasticsearch.sql.query.join.ESHashJoinQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.multi.MultiQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControllerTest {
+
+    private static final String USER_TRANSIENT = "_opendistro_security_user";
+
+    private static final String SQL = "SELECT firstname FROM " + TestsConstants.TEST_INDEX_BANK + "/account";
+
+    /** Single processor so that each class has one worker */
+    private final AdmissionController controller = new AdmissionController(1);
+
+    /** Tasks dispatched to thread pool but not run yet */
+    private final List<Runnable> dispatched = new ArrayList<>();
+
+    /** Queries run so far in order */
+    private final List<String> executed = new ArrayList<>();
+
+    /** Failures reported for queries waiting in queue */
+    private final List<Exception> failures = new ArrayList<>();
+
+    private ThreadPool threadPool;
+
+    private ThreadContext threadContext;
+
+    private ExecutorService executor;
+
+    private Client client;
+
+    @Before
+    public void init() {
+        QueryPlanCache.cache(new QueryPlanCache(10));
+        client = mock(Client.class);
+        CheckScriptContents.stubMockClient(client);
+
+        executor = mock(ExecutorService.class);
+        doAnswer(invocation -> dispatched.add((Runnable) invocation.getArguments()[0])).when(executor).execute(any(Runnable.class));
+        threadContext = new ThreadContext(Settings.EMPTY);
+        threadPool = mock(ThreadPool.class);
+        when(threadPool.executor(anyString())).thenReturn(executor);
+        when(threadPool.getThreadContext()).thenReturn(threadContext);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryPlanCache.cache(null);
+    }
+
+    @Test
+    public void joinAndUnionShouldBeHeavy() {
+        assertThat(AdmissionController.classify(mock(ESHashJoinQueryAction.class)), is(QueryClass.HEAVY));
+        assertThat(AdmissionController.classify(mock(MultiQueryAction.class)), is(QueryClass.HEAVY));
+    }
+
+    @Test
+    public void singleIndexQueryShouldBeLight() throws Exception {
+        assertThat(AdmissionController.classify(ESActionFactory.create(client, SQL)), is(QueryClass.LIGHT));
+        assertThat(AdmissionController.classify(ESActionFactory.create(client, SQL + " LIMIT 100")), is(QueryClass.LIGHT));
+    }
+
+    @Test
+    public void largeScrollQueryShouldBeHeavy() throws Exception {
+        assertThat(AdmissionController.classify(ESActionFactory.create(client, SQL + " LIMIT 50000")), is(QueryClass.HEAVY));
+        assertThat(
+            AdmissionController.classify(ESActionFactory.create(client,
+                "SELECT /*! USE_SCROLL(10,5000) */ firstname FROM " + TestsConstants.TEST_INDEX_BANK)),
+            is(QueryClass.HEAVY));
+    }
+
+    @Test
+    public void waitingQueriesShouldBeDispatchedRoundRobinByUser() {
+        submit(QueryClass.LIGHT, "alice", "a1");
+        submit(QueryClass.LIGHT, "alice", "a2");
+        submit(QueryClass.LIGHT, "alice", "a3");
+        submit(QueryClass.LIGHT, "bob", "b1");
+        assertThat(controller.running(QueryClass.LIGHT), is(1));
+        assertThat(controller.waiting(QueryClass.LIGHT), is(3));
+
+        runAllDispatched();
+        assertThat(executed, contains("a1", "a2", "b1", "a3"));
+        assertThat(controller.running(QueryClass.LIGHT), is(0));
+        assertThat(controller.waiting(QueryClass.LIGHT), is(0));
+    }
+
+    @Test
+    public void heavyQueriesShouldNotBlockLightQueries() {
+        submit(QueryClass.HEAVY, "alice", "join1");
+        submit(QueryClass.HEAVY, "alice", "join2");
+        submit(QueryClass.LIGHT, "bob", "search");
+
+        assertThat(controller.running(QueryClass.HEAVY), is(1));
+        assertThat(controller.running(QueryClass.LIGHT), is(1));
+        assertThat(dispatched.size(), is(2));
+    }
+
+    @Test
+    public void userExceedingItsShareOfQueueShouldBeRejected() {
+        int maxWaitingPerUser = QueryClass.HEAVY.queueSize() * AdmissionController.MAX_USER_QUEUE_PERCENT / 100;
+        for (int i = 0; i <= maxWaitingPerUser; i++) { // First one is running and others are waiting
+            submit(QueryClass.HEAVY, "alice", "join" + i);
+        }
+
+        try {
+            submit(QueryClass.HEAVY, "alice", "rejected");
+            throw new AssertionError("Query should be rejected");
+        } catch (EsRejectedExecutionException e) {
+            assertThat(controller.waiting(QueryClass.HEAVY), is(maxWaitingPerUser));
+        }
+
+        submit(QueryClass.HEAVY, "bob", "join");
+        assertThat(controller.waiting(QueryClass.HEAVY), is(maxWaitingPerUser + 1));
+    }
+
+    @Test
+    public void waitingQueryShouldRunInThreadContextOfItsOwnRequest() {
+        submitAs("alice", "a1");
+        submitAs("bob", "b1");
+
+        // Run in context of current thread which is neither of the users
+        runAllDispatched();
+        assertThat(executed, contains("a1 by alice", "b1 by bob"));
+    }
+
+    @Test
+    public void waitingQueryFailedToDispatchShouldBeReportedAndNextOneDispatched() {
+        submit(QueryClass.LIGHT, "alice", "a1");
+        submit(QueryClass.LIGHT, "alice", "a2");
+        submit(QueryClass.LIGHT, "bob", "b1");
+
+        EsRejectedExecutionException rejected = new EsRejectedExecutionException("pool is shut down");
+        doThrow(rejected).doAnswer(invocation -> dispatched.add((Runnable) invocation.getArguments()[0]))
+            .when(executor).execute(any(Runnable.class));
+
+        runAllDispatched();
+        assertThat(failures, contains((Exception) rejected));
+        assertThat(executed, contains("a1", "b1"));
+        assertThat(controller.running(QueryClass.LIGHT), is(0));
+        assertThat(controller.waiting(QueryClass.LIGHT), is(0));
+    }
+
+    private void submit(QueryClass queryClass, String user, String query) {
+        controller.submit(threadPool, queryClass, user, () -> executed.add(query), failures::add);
+    }
+
+    /** Submit in a separate thread context with the user put in transient header like security plugin */
+    private void submitAs(String user, String query) {
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            threadContext.putTransient(USER_TRANSIENT, user);
+            controller.submit(threadPool, QueryClass.LIGHT, user,
+                () -> executed.add(query + " by " + threadContext.getTransient(USER_TRANSIENT)), failures::add);
+        }
+    }
+
+    private void runAllDispatched() {
+        while (!dispatched.isEmpty()) {
+            dispatched.remove(0).run();
+        }
+    }
+
+}
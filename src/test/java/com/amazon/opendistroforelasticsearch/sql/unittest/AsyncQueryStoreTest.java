@@ -0,0 +1,128 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.async.AsyncQuery;
+import com.amazon.opendistroforelasticsearch.sql.executor.async.AsyncQueryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AsyncQueryStoreTest {
+
+    private static final String ALICE = "User [name=alice, roles=[], requestedTenant=null]";
+
+    private static final String BOB = "User [name=bob, roles=[], requestedTenant=null]";
+
+    private AsyncQueryStore store;
+
+    @Before
+    public void setUp() {
+        store = new AsyncQueryStore(1000, 1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void queryShouldSucceedWithResult() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        assertThat(query.getStatus(), is(AsyncQuery.Status.RUNNING));
+
+        query.onResponse("{}");
+        assertThat(store.get(query.getId(), ALICE), sameInstance(query));
+        assertThat(query.getStatus(), is(AsyncQuery.Status.SUCCEEDED));
+        assertThat(query.getResult(), is("{}"));
+    }
+
+    @Test
+    public void queryShouldFailWithErrorMessage() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        query.onFailure(new IllegalStateException("Index not found"));
+
+        assertThat(query.getStatus(), is(AsyncQuery.Status.FAILED));
+        assertThat(query.getError(), is("Index not found"));
+    }
+
+    @Test
+    public void removeShouldCancelRunningQueryAndDiscardLateResult() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        Future<?> future = mock(Future.class);
+        query.setFuture(future);
+
+        assertThat(store.remove(query.getId(), ALICE), sameInstance(query));
+        assertThat(store.get(query.getId(), ALICE), nullValue());
+        assertThat(query.isCancelled(), is(true));
+        verify(future).cancel(false);
+
+        query.onResponse("{}");
+        assertThat(query.getStatus(), is(AsyncQuery.Status.CANCELLED));
+        assertThat(query.getResult(), nullValue());
+    }
+
+    @Test
+    public void evictionShouldCancelRunningQuery() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        for (int i = 0; i < 100; i++) {
+            store.create("SELECT * FROM test" + i, "jdbc", ALICE).onResponse(new String(new char[50]));
+        }
+
+        assertThat(store.get(query.getId(), ALICE), nullValue());
+        assertThat(query.isCancelled(), is(true));
+    }
+
+    @Test
+    public void removeUnknownQueryShouldReturnNull() {
+        assertThat(store.remove("unknown", ALICE), nullValue());
+    }
+
+    @Test
+    public void fetchByAnotherUserShouldNotFindQuery() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        query.onResponse("{}");
+
+        assertThat(store.get(query.getId(), BOB), nullValue());
+        assertThat(store.get(query.getId(), null), nullValue());
+        assertThat(store.get(query.getId(), ALICE), sameInstance(query));
+    }
+
+    @Test
+    public void cancelByAnotherUserShouldNotFindNorCancelQuery() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", ALICE);
+        Future<?> future = mock(Future.class);
+        query.setFuture(future);
+
+        assertThat(store.remove(query.getId(), BOB), nullValue());
+        assertThat(query.isCancelled(), is(false));
+        verify(future, never()).cancel(false);
+        assertThat(store.get(query.getId(), ALICE), sameInstance(query));
+    }
+
+    @Test
+    public void queryShouldBeSharedIfSecurityNotEnabled() {
+        AsyncQuery query = store.create("SELECT * FROM test", "jdbc", null);
+        assertThat(store.get(query.getId(), null), sameInstance(query));
+        assertThat(store.get(query.getId(), ALICE), nullValue());
+    }
+
+}
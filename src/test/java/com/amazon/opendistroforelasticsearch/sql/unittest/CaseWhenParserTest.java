@@ -0,0 +1,51 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import org.junit.Test;
+
+import static org.elasticsearch.search.builder.SearchSourceBuilder.ScriptField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaseWhenParserTest {
+
+    @Test
+    public void caseWhenLiteralsArePassedAsParams() {
+        ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(
+            "SELECT CASE WHEN age > 30 THEN 'old' ELSE 'young' END AS level FROM bank");
+
+        assertTrue(CheckScriptContents.scriptHasParam(scriptField, 30));
+        assertTrue(CheckScriptContents.scriptHasParam(scriptField, "old"));
+        assertTrue(CheckScriptContents.scriptHasParam(scriptField, "young"));
+        assertFalse(CheckScriptContents.scriptContainsString(scriptField, "'old'"));
+    }
+
+    @Test
+    public void caseWhenOnlyDifferentInLiteralsGeneratesIdenticalScript() {
+        ScriptField first = CheckScriptContents.getScriptFieldFromQuery(
+            "SELECT CASE WHEN age > 30 THEN 'old' ELSE 'young' END AS level FROM bank");
+        ScriptField second = CheckScriptContents.getScriptFieldFromQuery(
+            "SELECT CASE WHEN age > 40 THEN 'senior' ELSE 'junior' END AS level FROM bank");
+
+        assertEquals(first.script().getIdOrCode(), second.script().getIdOrCode());
+        assertTrue(CheckScriptContents.scriptHasParam(second, 40));
+        assertTrue(CheckScriptContents.scriptHasParam(second, "senior"));
+    }
+
+}
@@ -0,0 +1,360 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.RestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.csv.CSVResult;
+import com.amazon.opendistroforelasticsearch.sql.executor.csv.CSVResultRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.csv.CSVResultsExtractor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CompositeAggregationExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
+import com.amazon.opendistroforelasticsearch.sql.executor.format.PrettyFormatRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.format.Schema;
+import com.amazon.opendistroforelasticsearch.sql.executor.format.SelectResultSet;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.metrics.valuecount.InternalValueCount;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.mockLocalClusterState;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CompositeAggregationTest {
+
+    private static final String SQL = "SELECT gender, COUNT(*) FROM accounts GROUP BY gender";
+
+    private static final String HINT_SQL =
+        "SELECT /*! COMPOSITE_AGGREGATION(2) */ gender, COUNT(*) FROM accounts GROUP BY gender";
+
+    /** Composite sources are sorted by ORDER BY first, which is the opposite of columns in SELECT */
+    private static final String ORDER_BY_SQL =
+        "SELECT /*! COMPOSITE_AGGREGATION */ state, gender, COUNT(*) FROM " + TestsConstants.TEST_INDEX_BANK +
+        "/account GROUP BY gender, state ORDER BY gender";
+
+    /** Result spans several composite pages and its response is larger than a single page of channel bytes output */
+    private static final String STREAMING_SQL =
+        "SELECT /*! COMPOSITE_AGGREGATION(1000) */ state, gender, COUNT(*) FROM " + TestsConstants.TEST_INDEX_BANK +
+        "/account GROUP BY gender, state LIMIT 3000";
+
+    private static final String MAPPING = "{\n" +
+        "  \"" + TestsConstants.TEST_INDEX_BANK + "\": {\n" +
+        "    \"mappings\": {\n" +
+        "      \"account\": {\n" +
+        "        \"properties\": {\n" +
+        "          \"gender\": { \"type\": \"keyword\" },\n" +
+        "          \"state\": { \"type\": \"keyword\" }\n" +
+        "        }\n" +
+        "      }\n" +
+        "    },\n" +
+        // ==== All required by IndexMetaData.fromXContent() ====
+        "    \"settings\": {\n" +
+        "      \"index\": {\n" +
+        "        \"number_of_shards\": 5,\n" +
+        "        \"number_of_replicas\": 0,\n" +
+        "        \"version\": {\n" +
+        "          \"created\": \"6050399\"\n" +
+        "        }\n" +
+        "      }\n" +
+        "    },\n" +
+        "    \"mapping_version\": \"1\",\n" +
+        "    \"settings_version\": \"1\"\n" +
+        //=======================================================
+        "  }\n" +
+        "}";
+
+    private final Client client = mock(Client.class);
+
+    @Test
+    public void hintShouldTurnGroupByIntoCompositeAggregation() throws SqlParseException {
+        AggregationQueryAction queryAction = queryAction(HINT_SQL);
+        String dsl = explain(queryAction);
+
+        assertThat(queryAction.isCompositeQuery(), is(true));
+        assertThat(dsl, containsString("\"composite\":{\"size\":2,\"sources\":[{\"gender\":{\"terms\":{\"field\":\"gender\""));
+        assertThat(dsl, containsString("\"value_count\""));
+        assertThat(dsl, not(containsString("shard_size")));
+    }
+
+    @Test
+    public void groupByWithoutHintOrCursorShouldStayTermsAggregation() throws SqlParseException {
+        AggregationQueryAction queryAction = queryAction(SQL);
+
+        assertThat(queryAction.isCompositeQuery(), is(false));
+        assertThat(explain(queryAction), not(containsString("composite")));
+    }
+
+    @Test
+    public void fetchSizeShouldTurnGroupByIntoCompositeAggregation() throws SqlParseException {
+        AggregationQueryAction queryAction = queryAction(SQL);
+        queryAction.setSqlRequest(new SqlRequest(SQL, new JSONObject().put("query", SQL).put("fetch_size", 5)));
+
+        assertThat(queryAction.isCursorQuery(), is(true));
+        assertThat(explain(queryAction), containsString("\"composite\":{\"size\":5"));
+    }
+
+    @Test
+    public void orderByGroupKeyShouldBeFirstSource() throws SqlParseException {
+        String dsl = explain(queryAction(
+            "SELECT /*! COMPOSITE_AGGREGATION */ gender, state, COUNT(*) FROM accounts " +
+            "GROUP BY gender, state ORDER BY state DESC"));
+
+        assertThat(dsl, containsString("\"sources\":[{\"state\":{\"terms\":{\"field\":\"state\""));
+        assertThat(dsl.indexOf("\"gender\":{\"terms\""), greaterThan(dsl.indexOf("\"order\":\"desc\"")));
+    }
+
+    @Test
+    public void orderByAggregationShouldFallBackToTermsAggregation() throws SqlParseException {
+        AggregationQueryAction queryAction = queryAction(
+            "SELECT /*! COMPOSITE_AGGREGATION */ gender, COUNT(*) AS cnt FROM accounts GROUP BY gender ORDER BY cnt");
+
+        assertThat(queryAction.isCompositeQuery(), is(false));
+    }
+
+    @Test
+    public void nextPageShouldStartAfterKeyInCursor() throws SqlParseException {
+        String cursor = new Cursor(SQL, ImmutableMap.of("gender", "f"), 5, Cursor.NO_LIMIT).encode();
+        AggregationQueryAction queryAction = queryAction(SQL);
+        queryAction.setSqlRequest(new SqlRequest(SQL, new JSONObject().put("cursor", cursor)));
+
+        assertThat(explain(queryAction), containsString("\"after\":{\"gender\":\"f\"}"));
+    }
+
+    @Test
+    public void cursorWithAfterKeyShouldBeEncodedAndDecoded() {
+        Cursor decoded = Cursor.decode(new Cursor(SQL, ImmutableMap.of("gender", "f", "age", 30), 5, 8).encode());
+
+        assertThat(decoded.isCompositeAggregation(), is(true));
+        assertThat(decoded.getAfterKey(), is(ImmutableMap.of("gender", "f", "age", 30)));
+        assertThat(decoded.getScrollId(), nullValue());
+        assertThat(decoded.getFetchSize(), is(5));
+        assertThat(decoded.getRemaining(), is(8));
+    }
+
+    @Test
+    public void allPagesShouldBeFetchedUntilLimit() throws SqlParseException {
+        mockResponses(
+            page(ImmutableMap.of("gender", "b"), bucket("a"), bucket("b")),
+            page(ImmutableMap.of("gender", "c"), bucket("c"))
+        );
+
+        CompositeAggregationExecutor executor = new CompositeAggregationExecutor(queryAction(HINT_SQL + " LIMIT 3"));
+        executor.run();
+
+        assertThat(executor.getAggregations().asList().size(), is(2));
+        assertThat(executor.getCursor(), nullValue());
+        verify(client, times(2)).execute(any(), any());
+    }
+
+    @Test
+    public void cursorShouldBeReturnedIfMorePages() throws SqlParseException {
+        mockResponses(page(ImmutableMap.of("gender", "b"), bucket("a"), bucket("b")));
+
+        AggregationQueryAction queryAction = queryAction(SQL);
+        queryAction.setSqlRequest(new SqlRequest(SQL, new JSONObject().put("query", SQL).put("fetch_size", 2)));
+        CompositeAggregationExecutor executor = new CompositeAggregationExecutor(queryAction);
+        executor.run();
+
+        assertThat(executor.getCursor(), notNullValue());
+        assertThat(Cursor.decode(executor.getCursor()).getAfterKey(), is(ImmutableMap.of("gender", "b")));
+        verify(client, times(1)).execute(any(), any());
+    }
+
+    @Test
+    public void csvColumnsShouldFollowSelectOrderRatherThanSourceOrder() throws Exception {
+        AggregationQueryAction queryAction = queryAction(ORDER_BY_SQL);
+        CompositeAggregation page = page(null, bucket(ImmutableMap.of("gender", "f", "state", "WA")));
+
+        CSVResult result = new CSVResultsExtractor(false, false, false, queryAction.compositeKeyColumns()).
+            extractResults(new Aggregations(Collections.singletonList(page)), false, ",");
+
+        assertThat(queryAction.compositeKeyColumns(), contains("state", "gender"));
+        assertThat(result.getHeaders(), contains("state", "gender"));
+        assertThat(result.getLines(), contains("WA,f"));
+    }
+
+    @Test
+    public void jdbcColumnsShouldFollowSelectOrderRatherThanSourceOrder() throws Exception {
+        mockLocalClusterState(MAPPING);
+        try {
+            CompositeAggregation page = page(null, bucket(ImmutableMap.of("gender", "f", "state", "WA")));
+            SelectResultSet resultSet = new SelectResultSet(client, (Select) queryAction(ORDER_BY_SQL).getQueryStatement(),
+                                                            new Aggregations(Collections.singletonList(page)));
+
+            List<String> columns = new ArrayList<>();
+            for (Schema.Column column : resultSet.getSchema()) {
+                columns.add(column.getName());
+            }
+            assertThat(columns, contains("state", "gender", "COUNT(*)"));
+        } finally {
+            LocalClusterState.state(null);
+        }
+    }
+
+    @Test
+    public void streamedCsvResponseShouldEqualBufferedResponse() throws Exception {
+        assertStreamedResponseEqualsBuffered(new CSVResultRestExecutor());
+    }
+
+    @Test
+    public void streamedJdbcResponseShouldEqualBufferedResponse() throws Exception {
+        mockLocalClusterState(MAPPING);
+        try {
+            assertStreamedResponseEqualsBuffered(new PrettyFormatRestExecutor("jdbc"));
+        } finally {
+            LocalClusterState.state(null);
+        }
+    }
+
+    @Test
+    public void streamedRawResponseShouldEqualBufferedResponse() throws Exception {
+        mockLocalClusterState(MAPPING);
+        try {
+            assertStreamedResponseEqualsBuffered(new PrettyFormatRestExecutor("raw"));
+        } finally {
+            LocalClusterState.state(null);
+        }
+    }
+
+    private void assertStreamedResponseEqualsBuffered(RestExecutor executor) throws Exception {
+        Map<String, String> params = new HashMap<>();
+
+        mockResponses(pageOfStates(0), pageOfStates(1000), pageOfStates(2000));
+        String buffered = executor.execute(client, params, queryAction(STREAMING_SQL));
+
+        mockResponses(pageOfStates(0), pageOfStates(1000), pageOfStates(2000));
+        RestChannel channel = mock(RestChannel.class);
+        BytesStreamOutput output = new BytesStreamOutput();
+        when(channel.bytesOutput()).thenReturn(output);
+        executor.execute(client, params, queryAction(STREAMING_SQL), channel);
+
+        ArgumentCaptor<BytesRestResponse> response = ArgumentCaptor.forClass(BytesRestResponse.class);
+        verify(channel).sendResponse(response.capture());
+        assertThat(response.getValue().content().length(), greaterThan(PageCacheRecycler.BYTE_PAGE_SIZE));
+        assertThat(response.getValue().content().utf8ToString(), is(buffered));
+    }
+
+    private CompositeAggregation pageOfStates(int from) {
+        CompositeAggregation.Bucket[] buckets = new CompositeAggregation.Bucket[1000];
+        for (int i = 0; i < buckets.length; i++) {
+            String state = String.format("S%04d", from + i);
+            buckets[i] = bucket(ImmutableMap.of("gender", (i % 2 == 0) ? "f" : "m", "state", state), from + i);
+        }
+        return page(ImmutableMap.of("gender", "m", "state", String.format("S%04d", from + 999)), buckets);
+    }
+
+    private AggregationQueryAction queryAction(String sql) throws SqlParseException {
+        SQLQueryExpr sqlExpr = (SQLQueryExpr) new ElasticSqlExprParser(sql).expr();
+        return new AggregationQueryAction(client, new SqlParser().parseSelect(sqlExpr));
+    }
+
+    private String explain(AggregationQueryAction queryAction) throws SqlParseException {
+        return ((SearchRequestBuilder) queryAction.explain().getBuilder()).request().source().toString().
+            replaceAll("\\s+", "");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockResponses(CompositeAggregation firstPage, CompositeAggregation... nextPages) {
+        ActionFuture<SearchResponse> firstFuture = future(firstPage);
+        List<ActionFuture<SearchResponse>> futures = new ArrayList<>();
+        for (CompositeAggregation page : nextPages) {
+            futures.add(future(page));
+        }
+        when(client.execute(any(SearchAction.class), any(SearchRequest.class))).thenReturn(firstFuture, futures.toArray(new ActionFuture[0]));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ActionFuture<SearchResponse> future(CompositeAggregation page) {
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getAggregations()).thenReturn(new Aggregations(Collections.singletonList(page)));
+        when(response.getTook()).thenReturn(TimeValue.timeValueMillis(1));
+
+        ActionFuture<SearchResponse> future = mock(ActionFuture.class);
+        when(future.actionGet()).thenReturn(response);
+        return future;
+    }
+
+    private CompositeAggregation page(Map<String, Object> afterKey, CompositeAggregation.Bucket... buckets) {
+        CompositeAggregation page = mock(CompositeAggregation.class);
+        when(page.getName()).thenReturn(AggregationQueryAction.COMPOSITE_AGG_NAME);
+        when(page.afterKey()).thenReturn(afterKey);
+        doReturn(Arrays.asList(buckets)).when(page).getBuckets();
+        return page;
+    }
+
+    private CompositeAggregation.Bucket bucket(String gender) {
+        return bucket(ImmutableMap.of("gender", gender));
+    }
+
+    private CompositeAggregation.Bucket bucket(Map<String, Object> key) {
+        CompositeAggregation.Bucket bucket = mock(CompositeAggregation.Bucket.class);
+        when(bucket.getKey()).thenReturn(key);
+        when(bucket.getAggregations()).thenReturn(new Aggregations(Collections.<Aggregation>emptyList()));
+        return bucket;
+    }
+
+    private CompositeAggregation.Bucket bucket(Map<String, Object> key, long count) {
+        Aggregation countAgg = new InternalValueCount("COUNT(*)", count, Collections.emptyList(), null);
+        CompositeAggregation.Bucket bucket = mock(CompositeAggregation.Bucket.class);
+        when(bucket.getKey()).thenReturn(key);
+        when(bucket.getAggregations()).thenReturn(new Aggregations(Collections.singletonList(countAgg)));
+        return bucket;
+    }
+
+}
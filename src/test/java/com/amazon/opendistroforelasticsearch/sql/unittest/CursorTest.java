@@ -0,0 +1,159 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.Cursor;
+import com.amazon.opendistroforelasticsearch.sql.executor.cursor.CursorQueryExecutor;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.ESActionFactory;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class CursorTest {
+
+    private static final String SQL = "SELECT firstname FROM " + TestsConstants.TEST_INDEX_BANK + "/account";
+
+    private Client client;
+
+    @Before
+    public void init() {
+        QueryPlanCache.cache(new QueryPlanCache(10));
+        client = Mockito.mock(Client.class);
+        CheckScriptContents.stubMockClient(client);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryPlanCache.cache(null);
+    }
+
+    @Test
+    public void encodeAndDecode() {
+        Cursor cursor = new Cursor(SQL, "scroll-id", TimeValue.timeValueSeconds(30), 10, Cursor.NO_LIMIT);
+        Cursor decoded = Cursor.decode(cursor.encode());
+
+        Assert.assertEquals(SQL, decoded.getSql());
+        Assert.assertEquals("scroll-id", decoded.getScrollId());
+        Assert.assertEquals(TimeValue.timeValueSeconds(30), decoded.getKeepAlive());
+        Assert.assertEquals(10, decoded.getFetchSize());
+        Assert.assertFalse(decoded.hasLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeInvalidCursor() {
+        Cursor.decode("not-a-cursor");
+    }
+
+    @Test
+    public void firstPageUsesScrollWithFetchSize() throws SqlParseException, SQLFeatureNotSupportedException {
+        SearchRequest request = explain(SQL, new JSONObject().put("query", SQL).put("fetch_size", 5));
+
+        Assert.assertNotNull(request.scroll());
+        Assert.assertEquals(5, request.source().size());
+    }
+
+    @Test
+    public void firstPageSizeIsCappedByLimit() throws SqlParseException, SQLFeatureNotSupportedException {
+        String sql = SQL + " LIMIT 3";
+        SearchRequest request = explain(sql, new JSONObject().put("query", sql).put("fetch_size", 5));
+
+        Assert.assertEquals(3, request.source().size());
+    }
+
+    @Test
+    public void noScrollWithoutFetchSize() throws SqlParseException, SQLFeatureNotSupportedException {
+        SearchRequest request = explain(SQL, new JSONObject().put("query", SQL));
+
+        Assert.assertNull(request.scroll());
+    }
+
+    @Test
+    public void nextPageIsScrollRequest() throws SqlParseException, SQLFeatureNotSupportedException {
+        String cursor = new Cursor(SQL, "scroll-id", Cursor.DEFAULT_KEEP_ALIVE, 5, Cursor.NO_LIMIT).encode();
+        QueryAction queryAction = ESActionFactory.create(client, SQL);
+        queryAction.setSqlRequest(new SqlRequest(SQL, new JSONObject().put("cursor", cursor)));
+
+        Assert.assertTrue(((DefaultQueryAction) queryAction).isCursorQuery());
+        Assert.assertTrue(queryAction.explain().getBuilder() instanceof SearchScrollRequestBuilder);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closeAggregationCursorIsNoOp() {
+        Cursor cursor = Cursor.decode(new Cursor(SQL, Collections.singletonMap("gender", "m"), 5, Cursor.NO_LIMIT).encode());
+        Client client = Mockito.mock(Client.class);
+        ActionListener<ClearScrollResponse> listener = Mockito.mock(ActionListener.class);
+
+        CursorQueryExecutor.close(client, cursor, listener);
+
+        ArgumentCaptor<ClearScrollResponse> response = ArgumentCaptor.forClass(ClearScrollResponse.class);
+        verify(listener).onResponse(response.capture());
+        Assert.assertEquals("{\"succeeded\":true,\"num_freed\":0}", Strings.toString(response.getValue()));
+        verifyZeroInteractions(client);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closeScrollCursorClearsScroll() {
+        Cursor cursor = new Cursor(SQL, "scroll-id", Cursor.DEFAULT_KEEP_ALIVE, 5, Cursor.NO_LIMIT);
+        Client client = Mockito.mock(Client.class);
+        ClearScrollRequestBuilder builder = Mockito.mock(ClearScrollRequestBuilder.class);
+        when(client.prepareClearScroll()).thenReturn(builder);
+        when(builder.addScrollId("scroll-id")).thenReturn(builder);
+        ActionListener<ClearScrollResponse> listener = Mockito.mock(ActionListener.class);
+
+        CursorQueryExecutor.close(client, cursor, listener);
+
+        verify(builder).addScrollId("scroll-id");
+        verify(builder).execute(any(ActionListener.class));
+    }
+
+    private SearchRequest explain(String sql, JSONObject payload)
+            throws SqlParseException, SQLFeatureNotSupportedException {
+        QueryAction queryAction = ESActionFactory.create(client, sql);
+        queryAction.setSqlRequest(new SqlRequest(sql, payload));
+        return ((SearchRequestBuilder) queryAction.explain().getBuilder()).request();
+    }
+
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.getScriptFieldFromQuery;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.getScriptFilterFromQuery;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.scriptContainsString;
+import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.scriptHasParam;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.scriptHasPattern;
 
 public class DateFunctionsTest {
@@ -64,7 +65,11 @@ public class DateFunctionsTest {
         assertTrue(
                 scriptHasPattern(
                         scriptFilter,
-                        "year_\\d+ > 2012"));
+                        "year_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                scriptHasParam(
+                        scriptFilter,
+                        2012));
     }
 
     @Test
@@ -91,7 +96,11 @@ public class DateFunctionsTest {
         assertTrue(
                 scriptHasPattern(
                         scriptFilter,
-                        "weekOfWeekyear_\\d+ > 15"));
+                        "weekOfWeekyear_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                scriptHasParam(
+                        scriptFilter,
+                        15));
     }
 
     @Test
@@ -0,0 +1,305 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.ElasticResultHandler;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.mockLocalClusterState;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test projection of selected fields by docvalue_fields instead of source filtering.
+ */
+public class DocValueProjectionTest {
+
+    private static final String MAPPING = "{\n" +
+        "  \"elasticsearch-sql_test_index_bank\": {\n" +
+        "    \"mappings\": {\n" +
+        "      \"account\": {\n" +
+        "        \"properties\": {\n" +
+        "          \"address\": {\n" +
+        "            \"type\": \"text\"\n" +
+        "          },\n" +
+        "          \"age\": {\n" +
+        "            \"type\": \"integer\"\n" +
+        "          },\n" +
+        "          \"balance\": {\n" +
+        "            \"type\": \"long\",\n" +
+        "            \"doc_values\": false\n" +
+        "          },\n" +
+        "          \"birthdate\": {\n" +
+        "            \"type\": \"date\"\n" +
+        "          },\n" +
+        "          \"city\": {\n" +
+        "            \"type\": \"keyword\"\n" +
+        "          },\n" +
+        "          \"email\": {\n" +
+        "            \"type\": \"keyword\",\n" +
+        "            \"ignore_above\": 20\n" +
+        "          },\n" +
+        "          \"gender\": {\n" +
+        "            \"type\": \"keyword\",\n" +
+        "            \"normalizer\": \"lowercase\"\n" +
+        "          },\n" +
+        "          \"rating\": {\n" +
+        "            \"type\": \"float\"\n" +
+        "          },\n" +
+        "          \"score\": {\n" +
+        "            \"type\": \"double\"\n" +
+        "          },\n" +
+        "          \"manager\": {\n" +
+        "            \"properties\": {\n" +
+        "              \"address\": {\n" +
+        "                \"type\": \"keyword\"\n" +
+        "              }\n" +
+        "            }\n" +
+        "          },\n" +
+        "          \"comments\": {\n" +
+        "            \"type\": \"nested\",\n" +
+        "            \"properties\": {\n" +
+        "              \"likes\": {\n" +
+        "                \"type\": \"long\"\n" +
+        "              }\n" +
+        "            }\n" +
+        "          }\n" +
+        "        }\n" +
+        "      }\n" +
+        "    },\n" +
+        // ==== All required by IndexMetaData.fromXContent() ====
+        "    \"settings\": {\n" +
+        "      \"index\": {\n" +
+        "        \"number_of_shards\": 5,\n" +
+        "        \"number_of_replicas\": 0,\n" +
+        "        \"version\": {\n" +
+        "          \"created\": \"6050399\"\n" +
+        "        }\n" +
+        "      }\n" +
+        "    },\n" +
+        "    \"mapping_version\": \"1\",\n" +
+        "    \"settings_version\": \"1\"\n" +
+        //=======================================================
+        "  }\n" +
+        "}";
+
+    @Before
+    public void init() {
+        mockLocalClusterState(MAPPING);
+    }
+
+    @After
+    public void cleanUp() {
+        LocalClusterState.state(null);
+    }
+
+    @Test
+    public void fieldsWithDocValuesShouldBeProjectedByDocValues() throws SqlParseException {
+        SearchSourceBuilder source = explain("SELECT age, city, manager.address FROM %s", true);
+
+        assertThat(source.fetchSource().fetchSource(), is(false));
+        assertThat(docValueFields(source), contains("age", "city", "manager.address"));
+    }
+
+    @Test
+    public void sourceFilteringShouldBeUsedIfNotAllowed() throws SqlParseException {
+        SearchSourceBuilder source = explain("SELECT age, city FROM %s", false);
+
+        assertThat(source.fetchSource().includes(), arrayContaining("age", "city"));
+        assertThat(source.docValueFields(), nullValue());
+    }
+
+    @Test
+    public void fieldWithoutDocValuesShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, address FROM %s");
+    }
+
+    @Test
+    public void fieldWithDocValuesDisabledShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, balance FROM %s");
+    }
+
+    @Test
+    public void dateFieldShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, birthdate FROM %s");
+    }
+
+    @Test
+    public void normalizedKeywordFieldShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, gender FROM %s");
+    }
+
+    @Test
+    public void floatFieldShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, rating FROM %s");
+    }
+
+    @Test
+    public void keywordWithIgnoreAboveShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, email FROM %s");
+    }
+
+    @Test
+    public void fieldInNestedFieldShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, comments.likes FROM %s");
+    }
+
+    @Test
+    public void unknownFieldShouldFallBackToSource() throws SqlParseException {
+        assertSourceFiltering("SELECT age, unknown FROM %s");
+    }
+
+    @Test
+    public void functionShouldFallBackToSource() throws SqlParseException {
+        SearchSourceBuilder source = explain("SELECT age, ABS(age) FROM %s", true);
+        assertThat(source.docValueFields(), nullValue());
+    }
+
+    @Test
+    public void hitFieldsShouldBeReadAsSourceIfSourceNotFetched() {
+        SearchHit hit = new SearchHit(1, "1", new Text("account"), ImmutableMap.of(
+            "city", new DocumentField("city", Collections.singletonList("Seattle")),
+            "manager.address", new DocumentField("manager.address", Collections.singletonList("Main St")),
+            "age", new DocumentField("age", Arrays.asList(20, 30))
+        ));
+
+        Map<String, Object> doc = ElasticResultHandler.getSourceOrFieldsAsMap(hit);
+        assertThat(doc.get("city"), is("Seattle"));
+        assertThat(doc.get("manager"), is(ImmutableMap.of("address", "Main St")));
+        assertThat(doc.get("age"), is(Arrays.asList(20, 30)));
+    }
+
+    @Test
+    public void docValuesShouldBeRenderedSameAsSource() {
+        SearchHit sourceHit = sourceHit("{\"age\":30,\"city\":\"Seattle\",\"score\":1.5,\"manager\":{\"address\":\"Main St\"}}");
+        // Integer doc value is returned as long
+        SearchHit docValueHit = docValueHit(ImmutableMap.of(
+            "age", Collections.singletonList(30L),
+            "city", Collections.singletonList("Seattle"),
+            "score", Collections.singletonList(1.5),
+            "manager.address", Collections.singletonList("Main St")
+        ));
+
+        assertThat(render(docValueHit), is(render(sourceHit)));
+    }
+
+    @Test
+    public void floatDocValueShouldNotBeRenderedSameAsSource() {
+        // Float doc value is widened to double, which is why float field is fetched from source
+        SearchHit sourceHit = sourceHit("{\"rating\":0.1}");
+        SearchHit docValueHit = docValueHit(ImmutableMap.of("rating", Collections.singletonList((double) 0.1f)));
+
+        assertThat(render(docValueHit), not(render(sourceHit)));
+    }
+
+    @Test
+    public void keywordAboveIgnoreAboveShouldBeMissingInDocValues() {
+        // Value longer than ignore_above is kept in source but not indexed, which is why such field is fetched from source
+        SearchHit sourceHit = sourceHit("{\"age\":30,\"email\":\"a.very.long.name@example.com\"}");
+        SearchHit docValueHit = docValueHit(ImmutableMap.of("age", Collections.singletonList(30L)));
+
+        assertThat(render(docValueHit), not(render(sourceHit)));
+        assertThat(render(docValueHit).containsKey("email"), is(false));
+    }
+
+    @Test
+    public void multiValuedDocValuesShouldBeSortedAndDeduplicated() {
+        // Documented limitation: array is returned in doc values order rather than as in source
+        SearchHit sourceHit = sourceHit("{\"city\":[\"Seattle\",\"Austin\",\"Seattle\"]}");
+        SearchHit docValueHit = docValueHit(ImmutableMap.of("city", Arrays.asList("Austin", "Seattle")));
+
+        assertThat(render(sourceHit).get("city"), is("[Seattle, Austin, Seattle]"));
+        assertThat(render(docValueHit).get("city"), is("[Austin, Seattle]"));
+    }
+
+    private void assertSourceFiltering(String sql) throws SqlParseException {
+        SearchSourceBuilder source = explain(sql, true);
+        assertThat(source.fetchSource().fetchSource(), is(true));
+        assertThat(source.docValueFields(), nullValue());
+    }
+
+    private SearchSourceBuilder explain(String sql, boolean isDocValueProjectionAllowed) throws SqlParseException {
+        SQLQueryExpr expr = (SQLQueryExpr) new ElasticSqlExprParser(
+            String.format(sql, TestsConstants.TEST_INDEX_BANK)).expr();
+        DefaultQueryAction queryAction = new DefaultQueryAction(mock(Client.class), new SqlParser().parseSelect(expr));
+        queryAction.setDocValueProjectionAllowed(isDocValueProjectionAllowed);
+        queryAction.explain();
+        return queryAction.getRequestBuilder().request().source();
+    }
+
+    private SearchHit sourceHit(String source) {
+        SearchHit hit = new SearchHit(1, "1", new Text("account"), Collections.emptyMap());
+        hit.sourceRef(new BytesArray(source));
+        return hit;
+    }
+
+    private SearchHit docValueHit(Map<String, List<Object>> docValues) {
+        Map<String, DocumentField> fields = new HashMap<>();
+        docValues.forEach((name, values) -> fields.put(name, new DocumentField(name, values)));
+        return new SearchHit(1, "1", new Text("account"), fields);
+    }
+
+    /** Render each leaf value in hit as string by its full path, as the response formatters do */
+    private Map<String, String> render(SearchHit hit) {
+        Map<String, String> rendered = new TreeMap<>();
+        render("", ElasticResultHandler.getSourceOrFieldsAsMap(hit), rendered);
+        return rendered;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void render(String prefix, Map<String, Object> doc, Map<String, String> rendered) {
+        doc.forEach((name, value) -> {
+            if (value instanceof Map) {
+                render(prefix + name + ".", (Map<String, Object>) value, rendered);
+            } else {
+                rendered.put(prefix + name, String.valueOf(value));
+            }
+        });
+    }
+
+    private List<String> docValueFields(SearchSourceBuilder source) {
+        return source.docValueFields().stream().map(field -> field.field).collect(Collectors.toList());
+    }
+}
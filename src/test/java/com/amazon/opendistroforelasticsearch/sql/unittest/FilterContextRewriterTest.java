@@ -0,0 +1,90 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.query.maker.FilterContextRewriter;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.Test;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class FilterContextRewriterTest {
+
+    private static final QueryBuilder MATCH = matchQuery("address", "Lane");
+    private static final QueryBuilder RANGE = rangeQuery("age").gt(20);
+    private static final QueryBuilder TERMS = termsQuery("state", "WA", "CA");
+    private static final QueryBuilder EXISTS = existsQuery("email");
+
+    @Test
+    public void nonScoringConditionsInRequiredClauseShouldBeMovedToFilter() {
+        BoolQueryBuilder query = rewrite(boolQuery().must(MATCH).must(RANGE).must(TERMS));
+
+        assertThat(query.must(), contains(MATCH));
+        assertThat(query.filter(), contains(RANGE, TERMS));
+    }
+
+    @Test
+    public void nonScoringConditionsInNestedRequiredClauseShouldBeMovedToFilter() {
+        BoolQueryBuilder inner = boolQuery().must(MATCH).must(EXISTS);
+        BoolQueryBuilder query = rewrite(boolQuery().must(inner));
+
+        assertThat(query.must(), contains(inner));
+        assertThat(inner.must(), contains(MATCH));
+        assertThat(inner.filter(), contains(EXISTS));
+    }
+
+    @Test
+    public void boolWithOnlyNonScoringConditionsShouldBeMovedToFilter() {
+        BoolQueryBuilder inner = boolQuery().should(RANGE).should(TERMS);
+        BoolQueryBuilder query = rewrite(boolQuery().must(MATCH).must(inner));
+
+        assertThat(query.must(), contains(MATCH));
+        assertThat(query.filter(), contains(inner));
+    }
+
+    @Test
+    public void nonScoringConditionsInOptionalClauseShouldKeepConstantScore() {
+        BoolQueryBuilder inner = boolQuery().must(MATCH).must(RANGE);
+        BoolQueryBuilder query = rewrite(boolQuery().should(inner).should(TERMS));
+
+        assertThat(query.filter(), empty());
+        assertThat(query.should(), contains(inner, constantScoreQuery(TERMS)));
+        assertThat(inner.must(), contains(MATCH, constantScoreQuery(RANGE)));
+        assertThat(inner.filter(), empty());
+    }
+
+    @Test
+    public void scoringConditionsShouldBeLeftAsTheyAre() {
+        BoolQueryBuilder query = rewrite(boolQuery().must(MATCH).should(matchQuery("city", "Seattle")));
+
+        assertThat(query.must(), contains(MATCH));
+        assertThat(query.should(), contains(matchQuery("city", "Seattle")));
+        assertThat(query.filter(), empty());
+    }
+
+    private BoolQueryBuilder rewrite(BoolQueryBuilder query) {
+        return new FilterContextRewriter().rewrite(query);
+    }
+}
@@ -24,6 +24,7 @@ import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
 import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
 import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
 import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
@@ -34,6 +35,7 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import static java.util.stream.Collectors.toMap;
@@ -63,7 +65,7 @@ public class HavingTest {
             contains(
                 bucketSelector(
                     hasBucketPath("c: c", "a: a"),
-                    hasScript("params.a > 30")
+                    hasScript("params.a > params.having_value_0", 30)
                 )
             ));
     }
@@ -96,7 +98,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a <> 30"),
             contains(
                 bucketSelector(
-                    hasScript("params.a != 30")
+                    hasScript("params.a != params.having_value_0", 30)
                 )
             ));
     }
@@ -107,7 +109,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING NOT (a > 30)"),
             contains(
                 bucketSelector(
-                    hasScript("params.a <= 30")
+                    hasScript("params.a <= params.having_value_0", 30)
                 )
             ));
     }
@@ -118,7 +120,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a > 30 AND c <= 10"),
             contains(
                 bucketSelector(
-                    hasScript("params.a > 30 && params.c <= 10")
+                    hasScript("params.a > params.having_value_0 && params.c <= params.having_value_1", 30, 10)
                 )
             ));
     }
@@ -129,7 +131,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a > 30 OR c <= 10"),
             contains(
                 bucketSelector(
-                    hasScript("params.a > 30 || params.c <= 10")
+                    hasScript("params.a > params.having_value_0 || params.c <= params.having_value_1", 30, 10)
                 )
             ));
     }
@@ -140,7 +142,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a BETWEEN 30 AND 50"),
             contains(
                 bucketSelector(
-                    hasScript("params.a >= 30 && params.a <= 50")
+                    hasScript("params.a >= params.having_value_0 && params.a <= params.having_value_1", 30, 50)
                 )
             ));
     }
@@ -151,7 +153,7 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a NOT BETWEEN 30 AND 50"),
             contains(
                 bucketSelector(
-                    hasScript("params.a < 30 || params.a > 50")
+                    hasScript("params.a < params.having_value_0 || params.a > params.having_value_1", 30, 50)
                 )
             ));
     }
@@ -162,7 +164,9 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a IN (30, 40, 50)"),
             contains(
                 bucketSelector(
-                    hasScript("params.a == 30 || params.a == 40 || params.a == 50")
+                    hasScript("params.a == params.having_value_0 || " +
+                              "params.a == params.having_value_1 || params.a == params.having_value_2",
+                              30, 40, 50)
                 )
             ));
     }
@@ -173,7 +177,9 @@ public class HavingTest {
             query(SELECT_CNT_AVG_FROM_BANK_GROUP_BY_AGE + "HAVING a NOT IN (30, 40, 50)"),
             contains(
                 bucketSelector(
-                    hasScript("params.a != 30 && params.a != 40 && params.a != 50")
+                    hasScript("params.a != params.having_value_0 && " +
+                              "params.a != params.having_value_1 && params.a != params.having_value_2",
+                              30, 40, 50)
                 )
             ));
     }
@@ -184,7 +190,11 @@ public class HavingTest {
             query(SELECT_CNT_AVG_SUM_FROM_BANK_GROUP_BY_AGE + "HAVING i <= 10000 OR NOT (a < 10 OR a > 30) AND c <= 10"),
             contains(
                 bucketSelector(
-                    hasScript("params.i <= 10000 || ((params.a >= 10 && params.a <= 30) && params.c <= 10)")
+                    hasScript("params.i <= params.having_value_0 || " +
+                              "((params.a >= params.having_value_1 && " +
+                              "params.a <= params.having_value_2) && " +
+                              "params.c <= params.having_value_3)",
+                              10000, 10, 30, 10)
                 )
             ));
     }
@@ -238,8 +248,13 @@ public class HavingTest {
         return hasFieldWithValue("bucketsPathsMap", "has bucket path", is(expectedMap));
     }
 
-    private Matcher<PipelineAggregationBuilder> hasScript(String expectedCode) {
-        return hasFieldWithValue("script", "has script", is(new Script(expectedCode)));
+    private Matcher<PipelineAggregationBuilder> hasScript(String expectedCode, Object... expectedValues) {
+        Map<String, Object> expectedParams = new HashMap<>();
+        for (int i = 0; i < expectedValues.length; i++) {
+            expectedParams.put("having_value_" + i, expectedValues[i]);
+        }
+        return hasFieldWithValue("script", "has script",
+                                 is(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, expectedCode, expectedParams)));
     }
 }
 
@@ -21,14 +21,21 @@ import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.Fiel
 import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.IndexMappings;
 import com.amazon.opendistroforelasticsearch.sql.esdomain.LocalClusterState.TypeMappings;
 import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.mockClusterService;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.mockLocalClusterState;
@@ -157,6 +164,25 @@ public class LocalClusterStateTest {
         Assert.assertNull(fieldMappings.mapping("manager.name.first.uppercase"));
     }
 
+    @Test
+    public void getFlatFieldTypesIncludingMultiFieldsAndObjectProperties() {
+        IndexMappings indexMappings = LocalClusterState.state().getFieldMappings(new String[]{INDEX_NAME});
+        FieldMappings fieldMappings = indexMappings.mapping(INDEX_NAME).mapping(TYPE_NAME);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("address", "text");
+        expected.put("age", "integer");
+        expected.put("city", "keyword");
+        expected.put("employer", "text");
+        expected.put("employer.keyword", "keyword");
+        expected.put("state", "text");
+        expected.put("state.raw", "keyword");
+        expected.put("manager.name", "text");
+        expected.put("manager.name.keyword", "keyword");
+        expected.put("manager.address", "keyword");
+        Assert.assertEquals(expected, fieldMappings.fieldTypes());
+    }
+
     @Test
     public void getMappingFromCache() throws IOException {
         // Mock here again for verification below and mock addListener()
@@ -174,11 +200,9 @@ public class LocalClusterStateTest {
         }
         verify(mockService.state().metaData(), times(1)).findMappings(eq(new String[]{INDEX_NAME}), any(), any());
 
-        // 2.Fire cluster state change event
+        // 2.Fire cluster state change event for mapping change on the index
         Assert.assertNotNull(listener[0]);
-        ClusterChangedEvent mockEvent = mock(ClusterChangedEvent.class);
-        when(mockEvent.metaDataChanged()).thenReturn(true);
-        listener[0].clusterChanged(mockEvent);
+        listener[0].clusterChanged(mockMappingChangedEvent(INDEX_NAME));
 
         // 3.Cache should be invalidated and call findMapping another time only
         for (int i = 0; i < 5; i++) {
@@ -187,4 +211,83 @@ public class LocalClusterStateTest {
         verify(mockService.state().metaData(), times(2)).findMappings(eq(new String[]{INDEX_NAME}), any(), any());
     }
 
+    @Test
+    public void mappingCacheShouldNotBeInvalidatedByChangeOnOtherIndex() throws IOException {
+        ClusterService mockService = mockClusterService(MAPPING);
+        ClusterStateListener[] listener = new ClusterStateListener[1];
+        doAnswer(invocation -> {
+            listener[0] = (ClusterStateListener) invocation.getArguments()[0];
+            return null;
+        }).when(mockService).addListener(any());
+        LocalClusterState.state().setClusterService(mockService);
+
+        LocalClusterState.state().getFieldMappings(new String[]{INDEX_NAME});
+        listener[0].clusterChanged(mockMappingChangedEvent("logs-2019.01.01"));
+        LocalClusterState.state().getFieldMappings(new String[]{INDEX_NAME});
+
+        verify(mockService.state().metaData(), times(1)).findMappings(eq(new String[]{INDEX_NAME}), any(), any());
+    }
+
+    @Test
+    public void identicalMappingsShouldBeSharedAcrossIndices() throws IOException {
+        // Parse same mapping twice to simulate indices created from same template
+        ClusterService mockService = mockClusterService(MAPPING);
+        ImmutableOpenMap<String, MappingMetaData> mappings1 = typeMappingsOf(mockService);
+        ImmutableOpenMap<String, MappingMetaData> mappings2 = typeMappingsOf(mockClusterService(MAPPING));
+        Assert.assertNotSame(mappings1.get(TYPE_NAME), mappings2.get(TYPE_NAME));
+
+        ImmutableOpenMap.Builder<String, ImmutableOpenMap<String, MappingMetaData>> builder = ImmutableOpenMap.builder();
+        builder.put("logs-2019.01.01", mappings1);
+        builder.put("logs-2019.01.02", mappings2);
+        when(mockService.state().metaData().findMappings(any(), any(), any())).thenReturn(builder.build());
+        LocalClusterState.state().setClusterService(mockService);
+
+        IndexMappings indexMappings = LocalClusterState.state().getFieldMappings(new String[]{"logs-*"});
+        FieldMappings fieldMappings1 = indexMappings.mapping("logs-2019.01.01").mapping(TYPE_NAME);
+        FieldMappings fieldMappings2 = indexMappings.mapping("logs-2019.01.02").mapping(TYPE_NAME);
+        Assert.assertSame(fieldMappings1, fieldMappings2);
+    }
+
+    @Test
+    public void fingerprintShouldBeSameForIdenticalMappings() throws IOException {
+        FieldMappings fieldMappings1 = new FieldMappings(typeMappingsOf(mockClusterService(MAPPING)).get(TYPE_NAME));
+        FieldMappings fieldMappings2 = new FieldMappings(typeMappingsOf(mockClusterService(MAPPING)).get(TYPE_NAME));
+        Assert.assertEquals(fieldMappings1.fingerprint(), fieldMappings2.fingerprint());
+        Assert.assertEquals(fieldMappings1, fieldMappings2);
+    }
+
+    /** Mock event that mapping of the index changed from empty to the test mapping */
+    private ClusterChangedEvent mockMappingChangedEvent(String indexName) throws IOException {
+        IndexMetaData previousIndex = mock(IndexMetaData.class);
+        when(previousIndex.getMappings()).thenReturn(ImmutableOpenMap.of());
+        ImmutableOpenMap<String, MappingMetaData> currentMappings = typeMappingsOf(mockClusterService(MAPPING));
+        IndexMetaData currentIndex = mock(IndexMetaData.class);
+        when(currentIndex.getMappings()).thenReturn(currentMappings);
+
+        ImmutableOpenMap.Builder<String, IndexMetaData> previousIndices = ImmutableOpenMap.builder();
+        previousIndices.put(indexName, previousIndex);
+        MetaData previousMetaData = mock(MetaData.class);
+        when(previousMetaData.indices()).thenReturn(previousIndices.build());
+        MetaData currentMetaData = mock(MetaData.class);
+        when(currentMetaData.index(indexName)).thenReturn(currentIndex);
+
+        ClusterState previousState = mockClusterState(previousMetaData);
+        ClusterState currentState = mockClusterState(currentMetaData);
+        ClusterChangedEvent mockEvent = mock(ClusterChangedEvent.class);
+        when(mockEvent.metaDataChanged()).thenReturn(true);
+        when(mockEvent.previousState()).thenReturn(previousState);
+        when(mockEvent.state()).thenReturn(currentState);
+        return mockEvent;
+    }
+
+    private ClusterState mockClusterState(MetaData metaData) {
+        ClusterState mockState = mock(ClusterState.class);
+        when(mockState.metaData()).thenReturn(metaData);
+        return mockState;
+    }
+
+    private ImmutableOpenMap<String, MappingMetaData> typeMappingsOf(ClusterService mockService) throws IOException {
+        return mockService.state().metaData().findMappings(new String[]{INDEX_NAME}, new String[0], null).get(INDEX_NAME);
+    }
+
 }
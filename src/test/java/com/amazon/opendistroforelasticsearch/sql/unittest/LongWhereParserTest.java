@@ -0,0 +1,181 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOpExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
+import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.WhereParser;
+import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
+import com.amazon.opendistroforelasticsearch.sql.rewriter.nestedfield.NestedFieldRewriter;
+import org.junit.Test;
+
+import java.util.function.IntFunction;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Parse WHERE with very long AND/OR chain and IN list, ex. 10k and 100k operands generated by tool.
+ */
+public class LongWhereParserTest {
+
+    private static final String SELECT_FROM_ACCOUNTS = "SELECT * FROM accounts WHERE ";
+
+    @Test
+    public void shortChainShouldBeParsedIntoLeftDeepTree() {
+        SQLExpr where = whereExpr("age = 1 OR age = 2 OR age = 3");
+        SQLBinaryOpExpr root = (SQLBinaryOpExpr) where;
+        assertThat(root.getOperator(), is(SQLBinaryOperator.BooleanOr));
+        assertThat(((SQLBinaryOpExpr) root.getLeft()).getOperator(), is(SQLBinaryOperator.BooleanOr));
+        assertThat(((SQLBinaryOpExpr) root.getRight()).getOperator(), is(SQLBinaryOperator.Equality));
+    }
+
+    @Test
+    public void longOrChainShouldBeParsedIntoFlatWhere() throws SqlParseException {
+        assertFlatWhere(chain(100000, " OR ", i -> "age = " + i), Where.CONN.OR, 100000);
+    }
+
+    @Test
+    public void longAndChainShouldBeParsedIntoFlatWhere() throws SqlParseException {
+        assertFlatWhere(chain(10000, " AND ", i -> "age <> " + i), Where.CONN.AND, 10000);
+    }
+
+    @Test
+    public void longOrChainShouldBeRewrittenWithoutStackOverflow() {
+        SQLQueryExpr sqlExpr = queryExpr(chain(100000, " OR ", i -> "age = " + i));
+        sqlExpr.accept(new NestedFieldRewriter());
+    }
+
+    @Test
+    public void precedenceOfAndOverOrShouldBeKeptInLongChain() throws SqlParseException {
+        Where where = parse(chain(10000, " OR ", i -> "age = " + i + " AND city = 'Seattle'")).getWhere();
+        assertThat(where.getWheres().size(), is(10000));
+        for (Where group : where.getWheres()) {
+            assertThat(group, not(instanceOf(Condition.class)));
+            assertThat(group.getConn(), is(Where.CONN.OR));
+            assertThat(group.getWheres().size(), is(2));
+            assertThat(group.getWheres().get(0).getConn(), is(Where.CONN.AND));
+        }
+    }
+
+    @Test
+    public void operandsShouldKeepOrderInLongChain() throws SqlParseException {
+        Where where = parse(chain(10000, " OR ", i -> "age = " + i)).getWhere();
+        int i = 0;
+        for (Where cond : where.getWheres()) {
+            assertThat(((Condition) cond).getValue(), is((Object) i++));
+        }
+    }
+
+    @Test
+    public void xorShouldApplyToAllPrecedingOperands() {
+        SQLBinaryOpExpr root = (SQLBinaryOpExpr) whereExpr(chain(2000, " OR ", i -> "age = " + i) + " XOR age = 0");
+        assertThat(root.getOperator(), is(SQLBinaryOperator.BooleanXor));
+        assertThat(((SQLBinaryOpExpr) root.getLeft()).getOperator(), is(SQLBinaryOperator.BooleanOr));
+    }
+
+    @Test
+    public void smallInListShouldBeParsedIntoIn() throws SqlParseException {
+        Condition condition = singleCondition("age IN (1, 2, 2, 3)");
+        assertThat(condition.getOpear(), is(Condition.OPEAR.IN));
+        assertThat(((Object[]) condition.getValue()).length, is(4));
+    }
+
+    @Test
+    public void largeInListShouldBeParsedIntoDistinctTerms() throws SqlParseException {
+        Condition condition = singleCondition("age IN (" + chain(100000, ", ", i -> String.valueOf(i % 50000)) + ")");
+        assertThat(condition.getOpear(), is(Condition.OPEAR.IN_TERMS));
+
+        Object[] values = (Object[]) condition.getValue();
+        assertThat(values.length, is(50000));
+        assertThat(values[0], is((Object) 0));
+        assertThat(values[49999], is((Object) 49999));
+    }
+
+    @Test
+    public void largeNotInListShouldBeParsedIntoNotTerms() throws SqlParseException {
+        Condition condition = singleCondition(
+            "city NOT IN (" + chain(WhereParser.IN_TERMS_THRESHOLD, ", ", i -> "'city" + (i % 2) + "'") + ")");
+        assertThat(condition.getOpear(), is(Condition.OPEAR.NIN_TERMS));
+        assertThat((Object[]) condition.getValue(), arrayContaining((Object) "city0", "city1"));
+    }
+
+    @Test
+    public void largeInListWithNonLiteralShouldBeParsedIntoIn() throws SqlParseException {
+        Condition condition = singleCondition(
+            "age IN (" + chain(WhereParser.IN_TERMS_THRESHOLD, ", ", String::valueOf) + ", balance)");
+        assertThat(condition.getOpear(), is(Condition.OPEAR.IN));
+    }
+
+    @Test
+    public void largeInListShouldBeTranslatedIntoSingleTermsQuery() throws SqlParseException {
+        Select select = parse("age NOT IN (" + chain(10000, ", ", String::valueOf) + ")");
+        String query = QueryMaker.explain(select.getWhere(), select.isQuery).toString().replaceAll("\\s+", "");
+        assertThat(query, containsString("\"must_not\":[{\"terms\":{\"age\":[0,1,2,"));
+        assertThat(query, not(containsString("\"term\":")));
+    }
+
+    private void assertFlatWhere(String condition, Where.CONN conn, int size) throws SqlParseException {
+        Where where = parse(condition).getWhere();
+        assertThat(where.getWheres().size(), is(size));
+        for (Where cond : where.getWheres()) {
+            assertThat(cond, instanceOf(Condition.class));
+            assertThat(cond.getConn(), is(conn));
+        }
+    }
+
+    private Condition singleCondition(String condition) throws SqlParseException {
+        Where where = parse(condition).getWhere();
+        assertThat(where.getWheres().size(), is(1));
+        return (Condition) where.getWheres().get(0);
+    }
+
+    private String chain(int size, String delimiter, IntFunction<String> operand) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sql.append(delimiter);
+            }
+            sql.append(operand.apply(i));
+        }
+        return sql.toString();
+    }
+
+    private SQLExpr whereExpr(String condition) {
+        return ((MySqlSelectQueryBlock) queryExpr(condition).getSubQuery().getQuery()).getWhere();
+    }
+
+    private SQLQueryExpr queryExpr(String condition) {
+        return (SQLQueryExpr) new ElasticSqlExprParser(SELECT_FROM_ACCOUNTS + condition).expr();
+    }
+
+    private Select parse(String condition) throws SqlParseException {
+        return new SqlParser().parseSelect(queryExpr(condition));
+    }
+
+}
@@ -17,11 +17,15 @@ package com.amazon.opendistroforelasticsearch.sql.unittest;
 
 import com.amazon.opendistroforelasticsearch.sql.parser.ScriptFilter;
 import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
 import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import com.amazon.opendistroforelasticsearch.sql.utils.SQLFunctions;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import static org.elasticsearch.search.builder.SearchSourceBuilder.ScriptField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.scriptContainsString;
 import static com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents.scriptHasPattern;
@@ -69,7 +73,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "sqrt_\\d+ > 5"));
+                        "sqrt_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        5));
     }
 
     @Test
@@ -85,7 +93,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "sqrt_\\d+ > 5"));
+                        "sqrt_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        5));
     }
 
     /** Tests for constant functions */
@@ -113,7 +125,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "E_\\d+ > 2"));
+                        "E_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        2));
     }
 
     @Test
@@ -140,7 +156,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "PI_\\d+ < 4"));
+                        "PI_\\d+ < params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        4));
     }
 
     /** Tests for general math functions */
@@ -157,7 +177,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "expm1_\\d+ > 10"));
+                        "expm1_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        10));
     }
 
     @Test
@@ -167,13 +191,21 @@ public class MathFunctionsTest {
                        "WHERE expm1(5) > 10";
         ScriptFilter scriptFilter = CheckScriptContents.getScriptFilterFromQuery(query, parser);
         assertTrue(
-                CheckScriptContents.scriptContainsString(
+                CheckScriptContents.scriptHasPattern(
+                        scriptFilter,
+                        "Math.expm1\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
                         scriptFilter,
-                        "Math.expm1(5)"));
+                        5));
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptFilter,
-                        "expm1_\\d+ > 10"));
+                        "expm1_\\d+ > params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptFilter,
+                        10));
     }
 
 
@@ -195,9 +227,13 @@ public class MathFunctionsTest {
                        "FROM bank";
         ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
         assertTrue(
-                CheckScriptContents.scriptContainsString(
+                CheckScriptContents.scriptHasPattern(
                         scriptField,
-                        "Math.toDegrees(10)"));
+                        "Math.toDegrees\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptField,
+                        10));
     }
 
     @Test
@@ -217,9 +253,13 @@ public class MathFunctionsTest {
                        "FROM bank";
         ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
         assertTrue(
-                CheckScriptContents.scriptContainsString(
+                CheckScriptContents.scriptHasPattern(
+                        scriptField,
+                        "Math.toRadians\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
                         scriptField,
-                        "Math.toRadians(180)"));
+                        180));
     }
 
     @Test
@@ -243,9 +283,13 @@ public class MathFunctionsTest {
                        "FROM bank";
         ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
         assertTrue(
-                CheckScriptContents.scriptContainsString(
+                CheckScriptContents.scriptHasPattern(
+                        scriptField,
+                        "Math.toRadians\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
                         scriptField,
-                        "Math.toRadians(180)"));
+                        180));
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptField,
@@ -269,9 +313,13 @@ public class MathFunctionsTest {
                        "FROM bank";
         ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
         assertTrue(
-                CheckScriptContents.scriptContainsString(
+                CheckScriptContents.scriptHasPattern(
                         scriptField,
-                        "Math.atan(1)"));
+                        "Math.atan\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptField,
+                        1));
     }
 
     @Test
@@ -286,7 +334,11 @@ public class MathFunctionsTest {
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptField,
-                        "PI_\\d+ / 2"));
+                        "PI_\\d+ / params\\.literal_\\d+"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptField,
+                        2));
         assertTrue(
                 CheckScriptContents.scriptHasPattern(
                         scriptField,
@@ -309,10 +361,53 @@ public class MathFunctionsTest {
         String query = "SELECT cosh(0) " +
                        "FROM bank";
         ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
+        assertTrue(
+                CheckScriptContents.scriptHasPattern(
+                        scriptField,
+                        "Math.cosh\\(params\\.literal_\\d+\\)"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptField,
+                        0));
+    }
+
+    @Test
+    public void sameQueryGeneratesIdenticalScript() {
+        String query = "SELECT sqrt(abs(age)) " +
+                       "FROM bank";
+        ScriptField first = CheckScriptContents.getScriptFieldFromQuery(query);
+        QueryPlanCache.cache().invalidateAll();
+        ScriptField second = CheckScriptContents.getScriptFieldFromQuery(query);
+        assertEquals(first.script(), second.script());
+    }
+
+    @Test
+    public void literalInBinaryOperatorIsPassedAsParam() {
+        String query = "SELECT balance + 5 " +
+                       "FROM bank";
+        ScriptField scriptField = CheckScriptContents.getScriptFieldFromQuery(query);
         assertTrue(
                 CheckScriptContents.scriptContainsString(
                         scriptField,
-                        "Math.cosh(0)"));
+                        "doc['balance'].value + params.literal_0"));
+        assertTrue(
+                CheckScriptContents.scriptHasParam(
+                        scriptField,
+                        5));
+    }
+
+    @Test
+    public void sameWhereShapeWithDifferentLiteralsGeneratesIdenticalScript() {
+        SQLFunctions.resetScriptContext();
+        ScriptFilter first = CheckScriptContents.getScriptFilterFromQuery(
+                "SELECT * FROM bank WHERE abs(age) = 10", parser);
+        SQLFunctions.resetScriptContext();
+        ScriptFilter second = CheckScriptContents.getScriptFilterFromQuery(
+                "SELECT * FROM bank WHERE abs(age) = 20", parser);
+
+        assertEquals(first.getScript(), second.getScript());
+        assertNotEquals(first.getArgs(), second.getArgs());
+        assertTrue(CheckScriptContents.scriptHasParam(second, 20));
     }
 
 }
@@ -0,0 +1,70 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.MemoryGuardedOutputStream;
+import com.amazon.opendistroforelasticsearch.sql.query.join.BackOffRetryStrategy;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class MemoryGuardedOutputStreamTest {
+
+    private final Object executor = new Object();
+
+    @After
+    public void cleanUp() {
+        BackOffRetryStrategy.releaseMem(executor);
+    }
+
+    @Test
+    public void memoryShouldBeReservedPageByPageBeforeWriting() throws IOException {
+        long reservedBefore = BackOffRetryStrategy.getReservedMemory();
+        BytesStreamOutput bytes = new BytesStreamOutput();
+        MemoryGuardedOutputStream output = new MemoryGuardedOutputStream(bytes, executor);
+
+        output.write('a');
+        assertThat(reservedSince(reservedBefore), is((long) MemoryGuardedOutputStream.PAGE_SIZE));
+
+        output.write(new byte[MemoryGuardedOutputStream.PAGE_SIZE - 1], 0, MemoryGuardedOutputStream.PAGE_SIZE - 1);
+        assertThat(reservedSince(reservedBefore), is((long) MemoryGuardedOutputStream.PAGE_SIZE));
+
+        output.write(new byte[MemoryGuardedOutputStream.PAGE_SIZE + 1], 0, MemoryGuardedOutputStream.PAGE_SIZE + 1);
+        assertThat(reservedSince(reservedBefore), is(3L * MemoryGuardedOutputStream.PAGE_SIZE));
+        assertThat(output.size(), is(2L * MemoryGuardedOutputStream.PAGE_SIZE + 1));
+        assertThat(bytes.size(), is(2 * MemoryGuardedOutputStream.PAGE_SIZE + 1));
+    }
+
+    @Test
+    public void reservedMemoryShouldBeReleasedByExecutorKey() throws IOException {
+        long reservedBefore = BackOffRetryStrategy.getReservedMemory();
+        MemoryGuardedOutputStream output = new MemoryGuardedOutputStream(new BytesStreamOutput(), executor);
+        output.write(new byte[10], 0, 10);
+
+        BackOffRetryStrategy.releaseMem(executor);
+        assertThat(BackOffRetryStrategy.getReservedMemory(), is(reservedBefore));
+    }
+
+    private long reservedSince(long reservedBefore) {
+        return BackOffRetryStrategy.getReservedMemory() - reservedBefore;
+    }
+
+}
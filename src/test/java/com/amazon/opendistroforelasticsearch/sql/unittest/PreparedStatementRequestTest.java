@@ -15,16 +15,49 @@
 
 package com.amazon.opendistroforelasticsearch.sql.unittest;
 
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.query.ESActionFactory;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
 import com.amazon.opendistroforelasticsearch.sql.request.PreparedStatementRequest;
+import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import org.elasticsearch.client.Client;
 import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
+import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
 public class PreparedStatementRequestTest {
 
+    private static final String TEMPLATE = "SELECT * FROM " + TestsConstants.TEST_INDEX_BANK + "/account " +
+                                           "WHERE age > ? AND lastname IN (?, ?)";
+
+    private Client client;
+
+    @Before
+    public void init() {
+        QueryPlanCache.cache(new QueryPlanCache(10));
+        client = Mockito.mock(Client.class);
+        CheckScriptContents.stubMockClient(client);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryPlanCache.cache(null);
+    }
+
     @Test
     public void testSubstitute() {
         String sqlTemplate = "select * from table_name where number_param > ? and string_param = 'Amazon.com' " +
@@ -85,4 +118,44 @@ public class PreparedStatementRequestTest {
 
         Assert.assertNull(psr.getSql());
     }
+
+    @Test
+    public void testBindParametersToParsedTemplate() throws SQLFeatureNotSupportedException, SqlParseException {
+        QueryAction first = prepare(TEMPLATE,
+            new PreparedStatementRequest.PreparedStatementParameter<>(30L),
+            new PreparedStatementRequest.StringParameter("Duke"),
+            new PreparedStatementRequest.StringParameter("Bond"));
+        String firstDsl = first.explain().explain();
+        assertThat(firstDsl, containsString("\"from\":30"));
+        assertThat(firstDsl, containsString("\"Duke\""));
+        assertThat(firstDsl, containsString("\"Bond\""));
+
+        QueryAction second = prepare(TEMPLATE,
+            new PreparedStatementRequest.PreparedStatementParameter<>(40L),
+            new PreparedStatementRequest.StringParameter("Ratliff"),
+            new PreparedStatementRequest.StringParameter("Mcpherson"));
+        String secondDsl = second.explain().explain();
+        assertThat(secondDsl, containsString("\"from\":40"));
+        assertThat(secondDsl, containsString("\"Ratliff\""));
+        assertThat(secondDsl, not(containsString("\"Duke\"")));
+
+        // Template parsed only once and the shared where is not changed by binding
+        Assert.assertSame(first.getQueryStatement(), second.getQueryStatement());
+        Assert.assertEquals(firstDsl, first.explain().explain());
+    }
+
+    @Test
+    public void testFallbackToSubstitutionIfPlaceholderNotInWhere() throws SQLFeatureNotSupportedException, SqlParseException {
+        QueryAction action = prepare("SELECT * FROM " + TestsConstants.TEST_INDEX_BANK + "/account LIMIT ?",
+            new PreparedStatementRequest.PreparedStatementParameter<>(5L));
+        assertThat(action.explain().explain(), containsString("\"size\":5"));
+    }
+
+    private QueryAction prepare(String template, PreparedStatementRequest.PreparedStatementParameter... params)
+        throws SQLFeatureNotSupportedException, SqlParseException {
+        PreparedStatementRequest request = new PreparedStatementRequest(template, new JSONObject(), Arrays.asList(params));
+        QueryAction queryAction = ESActionFactory.create(client, request);
+        queryAction.setSqlRequest(request);
+        return queryAction;
+    }
 }
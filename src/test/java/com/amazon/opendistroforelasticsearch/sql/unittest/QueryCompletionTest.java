@@ -0,0 +1,134 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.ElasticDefaultRestExecutor;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCompletion;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.SqlElasticRequestBuilder;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryCompletionTest {
+
+    private static final long SEARCH_MILLIS = 50;
+
+    private final Client client = mock(Client.class);
+
+    private final QueryProfile profile = new QueryProfile("SELECT * FROM accounts");
+
+    private final List<Exception> failures = new ArrayList<>();
+
+    private long tookMillis = -1;
+
+    private QueryCompletion completion;
+
+    @Before
+    public void setUp() {
+        completion = new QueryCompletion(profile, failure -> {
+            tookMillis = profile.getTookMillis();
+            failures.add(failure);
+        });
+        QueryProfile.bind(profile);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryCompletion.unbind();
+        QueryProfile.unbind();
+    }
+
+    @Test
+    public void completionShouldBeRecordedAfterSlowSearchResponded() throws Exception {
+        ActionListener<SearchResponse> listener = executeSearch();
+        assertThat(completion.isDeferred(), is(true));
+        assertThat(failures, empty());
+
+        Thread.sleep(SEARCH_MILLIS);
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getTook()).thenReturn(TimeValue.timeValueMillis(SEARCH_MILLIS));
+        listener.onResponse(response);
+
+        assertThat(failures, contains(nullValue()));
+        assertThat(tookMillis, greaterThanOrEqualTo(SEARCH_MILLIS));
+        assertThat(profile.getPhaseMillis(QueryProfile.Phase.EXECUTE), greaterThanOrEqualTo(SEARCH_MILLIS));
+    }
+
+    @Test
+    public void searchFailureShouldBeRecordedOnlyOnce() throws Exception {
+        ActionListener<SearchResponse> listener = executeSearch();
+
+        Thread.sleep(SEARCH_MILLIS);
+        IllegalStateException failure = new IllegalStateException("Search failed");
+        listener.onFailure(failure);
+        completion.complete(null);
+
+        assertThat(failures.size(), is(1));
+        assertThat(failures.get(0), sameInstance(failure));
+        assertThat(tookMillis, greaterThanOrEqualTo(SEARCH_MILLIS));
+    }
+
+    @Test
+    public void listenerShouldNotBeWrappedIfNoQueryRunning() {
+        QueryCompletion.unbind();
+        @SuppressWarnings("unchecked")
+        ActionListener<SearchResponse> listener = mock(ActionListener.class);
+        assertThat(QueryCompletion.defer(listener), sameInstance(listener));
+    }
+
+    /** Execute search by default format executor and return the listener which is not notified yet */
+    @SuppressWarnings("unchecked")
+    private ActionListener<SearchResponse> executeSearch() throws Exception {
+        SqlElasticRequestBuilder requestBuilder = mock(SqlElasticRequestBuilder.class);
+        when(requestBuilder.request()).thenReturn(new SearchRequest("accounts"));
+        QueryAction queryAction = mock(QueryAction.class);
+        when(queryAction.explain()).thenReturn(requestBuilder);
+
+        QueryCompletion.bind(completion);
+        new ElasticDefaultRestExecutor(queryAction).execute(
+            client, Collections.emptyMap(), queryAction, mock(RestChannel.class));
+
+        ArgumentCaptor<ActionListener> listener = ArgumentCaptor.forClass(ActionListener.class);
+        verify(client).search(any(SearchRequest.class), listener.capture());
+        return (ActionListener<SearchResponse>) listener.getValue();
+    }
+
+}
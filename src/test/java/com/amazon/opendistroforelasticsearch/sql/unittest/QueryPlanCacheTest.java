@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile.Phase;
+import com.amazon.opendistroforelasticsearch.sql.intgtest.TestsConstants;
+import com.amazon.opendistroforelasticsearch.sql.query.ESActionFactory;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.QueryPlanCache;
+import com.amazon.opendistroforelasticsearch.sql.request.PreparedStatementRequest;
+import com.amazon.opendistroforelasticsearch.sql.utils.SQLFunctions;
+import com.amazon.opendistroforelasticsearch.sql.util.CheckScriptContents;
+import org.elasticsearch.client.Client;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class QueryPlanCacheTest {
+
+    private static final String FROM_BANK = " FROM " + TestsConstants.TEST_INDEX_BANK + "/account";
+
+    private Client client;
+
+    @Before
+    public void init() {
+        QueryPlanCache.cache(new QueryPlanCache(10));
+        client = Mockito.mock(Client.class);
+        CheckScriptContents.stubMockClient(client);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryPlanCache.cache(null);
+    }
+
+    @Test
+    public void normalizeShouldCollapseWhitespacesOutsideQuotes() {
+        Assert.assertEquals(
+            "SELECT a FROM b WHERE c = '  x  ' AND `d  e` = 1",
+            QueryPlanCache.normalize("  SELECT  a\tFROM b\n WHERE c = '  x  '   AND `d  e` = 1 ")
+        );
+    }
+
+    @Test
+    public void normalizeShouldKeepEscapedQuoteInString() {
+        Assert.assertEquals(
+            "SELECT a FROM b WHERE c = 'it\\'s  ok'",
+            QueryPlanCache.normalize("SELECT a FROM b WHERE c =  'it\\'s  ok'")
+        );
+    }
+
+    @Test
+    public void sameQueryShouldReuseParsedSelect() throws SQLFeatureNotSupportedException, SqlParseException {
+        QueryAction first = ESActionFactory.create(client, "SELECT age" + FROM_BANK + " WHERE age > 30");
+        QueryAction second = ESActionFactory.create(client, "SELECT  age" + FROM_BANK + "  WHERE age > 30");
+
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.getQueryStatement(), second.getQueryStatement());
+        Assert.assertEquals(1, QueryPlanCache.cache().size());
+    }
+
+    @Test
+    public void differentLiteralShouldNotReuseParsedSelect() throws SQLFeatureNotSupportedException, SqlParseException {
+        QueryAction first = ESActionFactory.create(client, "SELECT age" + FROM_BANK + " WHERE age > 30");
+        QueryAction second = ESActionFactory.create(client, "SELECT age" + FROM_BANK + " WHERE age > 40");
+
+        Assert.assertNotSame(first.getQueryStatement(), second.getQueryStatement());
+    }
+
+    @Test
+    public void invalidateAllShouldClearParsedSelect() throws SQLFeatureNotSupportedException, SqlParseException {
+        ESActionFactory.create(client, "SELECT age" + FROM_BANK);
+        Assert.assertEquals(1, QueryPlanCache.cache().size());
+
+        QueryPlanCache.cache().invalidateAll();
+        Assert.assertEquals(0, QueryPlanCache.cache().size());
+    }
+
+    @Test
+    public void cacheHitShouldBeRecordedInProfileInsteadOfParsing() throws SQLFeatureNotSupportedException, SqlParseException {
+        String sql = "SELECT age" + FROM_BANK + " WHERE age > 30";
+        ESActionFactory.create(client, sql);
+
+        QueryProfile profile = spy(new QueryProfile(sql));
+        QueryProfile.bind(profile);
+        try {
+            ESActionFactory.create(client, sql);
+        } finally {
+            QueryProfile.unbind();
+        }
+        verify(profile).lap(eq(Phase.PLAN_CACHE_HIT), anyLong());
+        verify(profile, never()).lap(eq(Phase.PARSE), anyLong());
+    }
+
+    @Test
+    public void cacheHitShouldResetScriptContext() throws SQLFeatureNotSupportedException, SqlParseException {
+        String sql = "SELECT age" + FROM_BANK;
+        ESActionFactory.create(client, sql);
+        SQLFunctions.literal(10);
+
+        ESActionFactory.create(client, sql);
+        Assert.assertTrue(SQLFunctions.scriptParams().isEmpty());
+    }
+
+    @Test
+    public void templateShouldNotShareCacheWithPlainSql() throws SQLFeatureNotSupportedException, SqlParseException {
+        String sql = "SELECT age" + FROM_BANK + " WHERE age > ?";
+        QueryAction plain = ESActionFactory.create(client, sql);
+        QueryAction prepared = ESActionFactory.create(client, new PreparedStatementRequest(
+            sql, new JSONObject(), Collections.singletonList(new PreparedStatementRequest.PreparedStatementParameter<>(30))));
+
+        Assert.assertNull(QueryPlanCache.cache().get(sql + " AND age < 40"));
+        Assert.assertNotSame(plain.getQueryStatement(), prepared.getQueryStatement());
+        Assert.assertSame(prepared.getQueryStatement(), QueryPlanCache.cache().getTemplate(sql));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.ResultCache;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.request.SqlRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ResultCacheTest {
+
+    private static final String SQL = "SELECT COUNT(*) FROM accounts GROUP BY age";
+
+    private static final String STATEMENT = SQL + "|jdbc|{}";
+
+    private final ResultCache cache = new ResultCache(1024, 1, TimeUnit.MINUTES);
+
+    @Before
+    public void setUp() {
+        cache.setEnabled(true);
+    }
+
+    @Test
+    public void resultShouldBeReturnedForSameGeneration() {
+        cache.updateGeneration("accounts", "accounts:1/100/0;");
+        cache.put(new ResultCache.Key(STATEMENT, "accounts"), new BytesArray("result"));
+
+        BytesReference result = cache.get(new ResultCache.Key(STATEMENT, "accounts"));
+        assertThat(result.utf8ToString(), is("result"));
+        assertThat(cache.stats().get("hit_count"), is(1L));
+    }
+
+    @Test
+    public void resultShouldBeInvalidatedOnceIndexChanged() {
+        cache.updateGeneration("accounts", "accounts:1/100/0;");
+        cache.put(new ResultCache.Key(STATEMENT, "accounts"), new BytesArray("result"));
+        cache.updateGeneration("accounts", "accounts:2/101/0;");
+
+        assertThat(cache.get(new ResultCache.Key(STATEMENT, "accounts")), nullValue());
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.stats().get("hit_count"), is(0L));
+        assertThat(cache.stats().get("miss_count"), is(1L));
+        assertThat(cache.stats().get("stale_count"), is(1L));
+    }
+
+    @Test
+    public void resultCachedBeforeFirstPollShouldBeInvalidatedByPoll() {
+        cache.put(new ResultCache.Key(STATEMENT, "accounts"), new BytesArray("result"));
+        assertThat(cache.get(new ResultCache.Key(STATEMENT, "accounts")), notNullValue());
+
+        cache.updateGeneration("accounts", "accounts:1/100/0;");
+        assertThat(cache.get(new ResultCache.Key(STATEMENT, "accounts")), nullValue());
+    }
+
+    @Test
+    public void largeResultShouldEvictOldEntries() {
+        cache.put(new ResultCache.Key(STATEMENT + 1, "accounts"), new BytesArray(new byte[500]));
+        cache.put(new ResultCache.Key(STATEMENT + 2, "accounts"), new BytesArray(new byte[500]));
+        cache.put(new ResultCache.Key(STATEMENT + 3, "accounts"), new BytesArray(new byte[500]));
+
+        assertThat(cache.get(new ResultCache.Key(STATEMENT + 1, "accounts")), nullValue());
+        assertThat(cache.stats().get("eviction_count") > 0, is(true));
+    }
+
+    @Test
+    public void disabledCacheShouldNotLookUpIndexStats() {
+        Client client = mock(Client.class);
+        cache.put(new ResultCache.Key(STATEMENT, "accounts"), new BytesArray("result"));
+        cache.setEnabled(false);
+
+        assertThat(cache.keyOf(client, mock(AggregationQueryAction.class), "jdbc", Collections.emptyMap()), nullValue());
+        assertThat(cache.size(), is(0L));
+        verifyZeroInteractions(client);
+    }
+
+    @Test
+    public void keyOfShouldNotLookUpIndexStats() throws SqlParseException {
+        Client client = mockClient(new ThreadContext(Settings.EMPTY));
+        assertThat(cache.keyOf(client, queryAction(), "jdbc", Collections.emptyMap()), notNullValue());
+        verify(client, never()).admin();
+    }
+
+    @Test
+    public void resultShouldNotBeSharedByDifferentUsers() throws SqlParseException {
+        cache.setSecurityEnabled(true);
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        Client client = mockClient(threadContext);
+
+        ResultCache.Key key;
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            threadContext.putTransient(ResultCache.SECURITY_USER_TRANSIENT, "User [name=alice, roles=[hr]]");
+            key = cache.keyOf(client, queryAction(), "jdbc", Collections.emptyMap());
+            cache.put(key, new BytesArray("result of alice"));
+        }
+
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            threadContext.putTransient(ResultCache.SECURITY_USER_TRANSIENT, "User [name=bob, roles=[sales]]");
+            key = cache.keyOf(client, queryAction(), "jdbc", Collections.emptyMap());
+            assertThat(cache.get(key), nullValue());
+        }
+    }
+
+    @Test
+    public void resultShouldNotBeCachedIfUserUnknownWithSecurityEnabled() throws SqlParseException {
+        cache.setSecurityEnabled(true);
+        Client client = mockClient(new ThreadContext(Settings.EMPTY));
+        assertThat(cache.keyOf(client, queryAction(), "jdbc", Collections.emptyMap()), nullValue());
+    }
+
+    @Test
+    public void securityShouldBeEnabledIfConfigured() {
+        assertThat(ResultCache.isSecurityEnabled(Settings.EMPTY), is(false));
+        assertThat(ResultCache.isSecurityEnabled(
+            Settings.builder().put("opendistro_security.ssl.transport.enabled", true).build()), is(true));
+        assertThat(ResultCache.isSecurityEnabled(
+            Settings.builder().put("opendistro_security.disabled", true).build()), is(false));
+    }
+
+    private Client mockClient(ThreadContext threadContext) {
+        Client client = mock(Client.class, RETURNS_DEEP_STUBS);
+        ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.getThreadContext()).thenReturn(threadContext);
+        when(client.threadPool()).thenReturn(threadPool);
+        return client;
+    }
+
+    private AggregationQueryAction queryAction() throws SqlParseException {
+        Select select = new SqlParser().parseSelect((SQLQueryExpr) new ElasticSqlExprParser(SQL).expr());
+        AggregationQueryAction queryAction = new AggregationQueryAction(mock(Client.class), select);
+        queryAction.setSqlRequest(new SqlRequest(SQL, null));
+        return queryAction;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+public class ScriptFreePredicateRewriterTest {
+
+    private static final String SELECT_FROM_ACCOUNTS = "SELECT * FROM accounts ";
+
+    @Test
+    public void floorEqualShouldBeRewrittenToHalfOpenRange() {
+        assertThat(where("floor(balance) = 10"), allOf(
+            not(containsString("script")),
+            containsString("\"balance\":{\"from\":10,\"to\":11,\"include_lower\":true,\"include_upper\":false")
+        ));
+    }
+
+    @Test
+    public void floorGreaterThanFractionShouldBeRewrittenToNextInteger() {
+        assertThat(where("floor(balance) > 10.5"),
+            containsString("\"balance\":{\"from\":11,\"to\":null,\"include_lower\":true"));
+    }
+
+    @Test
+    public void ceilLessThanOrEqualShouldBeRewrittenToRange() {
+        assertThat(where("ceil(balance) <= 10"),
+            containsString("\"balance\":{\"from\":null,\"to\":10,\"include_lower\":true,\"include_upper\":true"));
+    }
+
+    @Test
+    public void floorEqualToFractionShouldMatchNothing() {
+        assertThat(where("floor(balance) = 10.5"), allOf(
+            not(containsString("script")),
+            containsString("match_none")
+        ));
+    }
+
+    @Test
+    public void arithmeticShouldBeInverted() {
+        assertThat(where("add(age, 5) > 30"),
+            containsString("\"age\":{\"from\":25,\"to\":null,\"include_lower\":false"));
+        assertThat(where("subtract(age, 5) < 30"),
+            containsString("\"age\":{\"from\":null,\"to\":35,\"include_lower\":true,\"include_upper\":false"));
+        assertThat(where("multiply(age, -2) >= 30"),
+            containsString("\"age\":{\"from\":null,\"to\":-15,\"include_lower\":true,\"include_upper\":true"));
+    }
+
+    @Test
+    public void nestedFunctionsShouldBeInverted() {
+        assertThat(where("floor(add(balance, 0.5)) = 10"),
+            containsString("\"balance\":{\"from\":9.5,\"to\":10.5,\"include_lower\":true,\"include_upper\":false"));
+    }
+
+    @Test
+    public void yearShouldBeRewrittenToRangeOfEpochMillis() {
+        assertThat(where("year(birthdate) = 2019"), allOf(
+            not(containsString("script")),
+            containsString("\"birthdate\":{\"from\":1546300800000,\"to\":1577836800000,"
+                + "\"include_lower\":true,\"include_upper\":false"),
+            containsString("\"format\":\"epoch_millis\"")
+        ));
+    }
+
+    @Test
+    public void notEqualShouldBeRewrittenToMustNotRange() {
+        assertThat(where("floor(balance) <> 10"), allOf(
+            not(containsString("script")),
+            containsString("\"must_not\":[{\"range\":{\"balance\":{\"from\":10,\"to\":11")
+        ));
+    }
+
+    @Test
+    public void nonMonotonicFunctionShouldStayAsScript() {
+        assertThat(where("month_of_year(birthdate) = 3"), containsString("script"));
+        assertThat(where("abs(balance) > 10"), containsString("script"));
+    }
+
+    private String where(String condition) {
+        try {
+            SQLQueryExpr sqlExpr = (SQLQueryExpr) new ElasticSqlExprParser(
+                SELECT_FROM_ACCOUNTS + "WHERE " + condition).expr();
+            Select select = new SqlParser().parseSelect(sqlExpr);
+            return QueryMaker.explain(select.getWhere(), select.isQuery).toString().replaceAll("\\s+", "");
+        } catch (SqlParseException e) {
+            throw new IllegalStateException("Failed to translate condition: " + condition, e);
+        }
+    }
+
+}
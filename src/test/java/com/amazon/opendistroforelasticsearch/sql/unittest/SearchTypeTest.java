@@ -0,0 +1,71 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test choice of search type between QUERY_THEN_FETCH and DFS_QUERY_THEN_FETCH.
+ */
+public class SearchTypeTest {
+
+    @Test
+    public void queryWithoutWhereShouldNotUseDfs() throws SqlParseException {
+        assertSearchType("SELECT * FROM accounts", SearchType.QUERY_THEN_FETCH);
+    }
+
+    @Test
+    public void filterOnlyQueryShouldNotUseDfs() throws SqlParseException {
+        assertSearchType("SELECT * FROM accounts WHERE age > 30 AND MATCH_QUERY(address, 'Lane')",
+            SearchType.QUERY_THEN_FETCH);
+    }
+
+    @Test
+    public void queryOrderedByFieldShouldNotUseDfs() throws SqlParseException {
+        assertSearchType("SELECT * FROM accounts WHERE MATCH_QUERY(address, 'Lane') ORDER BY age",
+            SearchType.QUERY_THEN_FETCH);
+    }
+
+    @Test
+    public void relevanceQueryOrderedByScoreShouldUseDfs() throws SqlParseException {
+        assertSearchType("SELECT * FROM accounts WHERE MATCH_QUERY(address, 'Lane') ORDER BY _score DESC",
+            SearchType.DFS_QUERY_THEN_FETCH);
+    }
+
+    @Test
+    public void dfsHintShouldForceDfs() throws SqlParseException {
+        assertSearchType("SELECT /*! USE_DFS*/ * FROM accounts WHERE age > 30",
+            SearchType.DFS_QUERY_THEN_FETCH);
+    }
+
+    private void assertSearchType(String sql, SearchType expected) throws SqlParseException {
+        SQLQueryExpr expr = (SQLQueryExpr) new ElasticSqlExprParser(sql).expr();
+        DefaultQueryAction queryAction = new DefaultQueryAction(mock(Client.class), new SqlParser().parseSelect(expr));
+        queryAction.explain();
+        assertThat(queryAction.getRequestBuilder().request().searchType(), is(expected));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile;
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryProfile.Phase;
+import com.amazon.opendistroforelasticsearch.sql.executor.SlowQueryLog;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+public class SlowQueryLogTest {
+
+    @After
+    public void cleanUp() {
+        QueryProfile.unbind();
+    }
+
+    @Test
+    public void fingerprintShouldStripLiterals() {
+        assertThat(
+            SlowQueryLog.fingerprint("SELECT name FROM accounts WHERE age > 30 AND city = 'Seattle' LIMIT 10"),
+            is("SELECT name FROM accounts WHERE age > ? AND city = ? LIMIT ?")
+        );
+    }
+
+    @Test
+    public void similarQueriesShouldHaveSameFingerprint() {
+        assertThat(
+            SlowQueryLog.fingerprint("SELECT  *  FROM logs-2019 WHERE\n status IN (200, 404,500) AND msg = 'it''s'"),
+            is(SlowQueryLog.fingerprint("SELECT * FROM logs-2019 WHERE status IN (301) AND msg = \"error\""))
+        );
+    }
+
+    @Test
+    public void fingerprintShouldPreserveIdentifiersWithDigits() {
+        assertThat(
+            SlowQueryLog.fingerprint("SELECT `field-1`, address2 FROM logs-2019 WHERE balance > 1.5e3"),
+            is("SELECT `field-1`, address2 FROM logs-2019 WHERE balance > ?")
+        );
+    }
+
+    @Test
+    public void phaseTimeShouldBeAccumulated() {
+        QueryProfile profile = QueryProfile.start("SELECT * FROM accounts");
+        assertThat(QueryProfile.current(), is(profile));
+
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        start = profile.lap(Phase.PARSE, start);
+        profile.lap(Phase.PARSE, start - TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertThat(profile.getPhaseMillis(Phase.PARSE), greaterThanOrEqualTo(10L));
+        assertThat(profile.getPhaseMillis(Phase.EXECUTE), is(0L));
+    }
+
+    @Test
+    public void noOpProfileShouldBeReturnedIfNoneBound() {
+        QueryProfile profile = QueryProfile.current();
+        profile.lap(Phase.PARSE, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(profile.getPhaseMillis(Phase.PARSE), is(0L));
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats;
+import com.amazon.opendistroforelasticsearch.sql.executor.SqlStats.FailureCause;
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.SqlStatsNodeResponse;
+import com.amazon.opendistroforelasticsearch.sql.plugin.stats.SqlStatsResponse;
+import com.amazon.opendistroforelasticsearch.sql.query.AggregationQueryAction;
+import com.amazon.opendistroforelasticsearch.sql.query.DefaultQueryAction;
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+public class SqlStatsTest {
+
+    @Test
+    public void latencyShouldBeRecordedInHistogramBucket() {
+        SqlStats stats = new SqlStats();
+        DefaultQueryAction search = mock(DefaultQueryAction.class);
+        stats.recordRequest(search, 5, null);
+        stats.recordRequest(search, 10, null);
+        stats.recordRequest(search, 700, null);
+        stats.recordRequest(search, 120000, new IllegalStateException("Memory circuit is broken"));
+
+        Map<String, Object> latency = latencyOf(stats, "search");
+        assertThat(latency.get("count"), is(4L));
+        assertThat(latency.get("failed"), is(1L));
+        assertThat(latency.get("latency_sum_millis"), is(120715L));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> histogram = (Map<String, Long>) latency.get("latency_histogram_millis");
+        assertThat(histogram.get("le_10"), is(2L));
+        assertThat(histogram.get("le_1000"), is(1L));
+        assertThat(histogram.get("le_inf"), is(1L));
+        assertThat(stats.failures().get("resource"), is(1L));
+    }
+
+    @Test
+    public void requestsShouldBeCountedByQueryType() {
+        SqlStats stats = new SqlStats();
+        stats.recordRequest(mock(AggregationQueryAction.class), 1, null);
+
+        assertThat(latencyOf(stats, "aggregation").get("count"), is(1L));
+        assertThat(latencyOf(stats, "search").get("count"), is(0L));
+    }
+
+    @Test
+    public void failureShouldBeClassifiedByCause() {
+        assertThat(SqlStats.causeOf(new EsRejectedExecutionException("full")), is(FailureCause.REJECTED));
+        assertThat(SqlStats.causeOf(new TaskCancelledException("cancelled")), is(FailureCause.CANCELLED));
+        assertThat(SqlStats.causeOf(new IllegalArgumentException("bad")), is(FailureCause.CLIENT_ERROR));
+        assertThat(SqlStats.causeOf(new RuntimeException("boom")), is(FailureCause.INTERNAL));
+    }
+
+    @Test
+    public void statsOfAllNodesShouldBeSummedUp() {
+        SqlStatsResponse response = new SqlStatsResponse(
+            new ClusterName("test"),
+            Arrays.asList(nodeResponse("node-1", 3L, 1, 100L), nodeResponse("node-2", 5L, 2, 200L)),
+            Collections.emptyList()
+        );
+
+        Map<String, Object> total = response.total();
+        assertThat(total.get("failures"), is(ImmutableMap.of("internal", 8L)));
+        assertThat(total.get("thread_pools"), is(ImmutableMap.of("sql-worker", ImmutableMap.of("active", 3L))));
+        assertThat(total.get("reserved_memory_bytes"), is(300L));
+    }
+
+    @Test
+    public void nodeStatsShouldBeSerializedAcrossNodes() throws IOException {
+        SqlStatsNodeResponse response = nodeResponse("node-1", 3L, 1, 100L);
+        BytesStreamOutput out = new BytesStreamOutput();
+        response.writeTo(out);
+
+        SqlStatsNodeResponse received = SqlStatsNodeResponse.readNodeResponse(out.bytes().streamInput());
+        assertThat(received.getNode().getId(), is("node-1"));
+        assertThat(received.getStats(), is(response.getStats()));
+    }
+
+    private SqlStatsNodeResponse nodeResponse(String nodeId, long failures, int active, long memory) {
+        DiscoveryNode node = new DiscoveryNode(nodeId, new TransportAddress(InetAddress.getLoopbackAddress(), 9300),
+                                               Version.CURRENT);
+        return new SqlStatsNodeResponse(node, ImmutableMap.of(
+            "failures", ImmutableMap.of("internal", failures),
+            "thread_pools", ImmutableMap.of("sql-worker", ImmutableMap.of("active", active)),
+            "reserved_memory_bytes", memory
+        ));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> latencyOf(SqlStats stats, String type) {
+        return (Map<String, Object>) stats.requests().get(type);
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.amazon.opendistroforelasticsearch.sql.executor.QueryCancellation;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTask;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTaskClient;
+import com.amazon.opendistroforelasticsearch.sql.executor.task.SqlTaskManager;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.tasks.TaskAwareRequest;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.tasks.TaskManager;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SqlTaskManagerTest {
+
+    private final SqlTaskManager manager = new SqlTaskManager();
+
+    private final TaskManager taskManager = mock(TaskManager.class);
+
+    private final SqlTask task = spy(new SqlTask(1L, SqlTaskManager.TASK_TYPE, SqlTaskManager.ACTION_NAME,
+                                                 "sql=SELECT * FROM test", TaskId.EMPTY_TASK_ID, Collections.emptyMap()));
+
+    @Before
+    public void setUp() {
+        when(taskManager.register(eq(SqlTaskManager.TASK_TYPE), eq(SqlTaskManager.ACTION_NAME),
+                                  any(TaskAwareRequest.class))).thenReturn(task);
+        manager.setTaskManager(taskManager);
+    }
+
+    @After
+    public void cleanUp() {
+        QueryCancellation.unregister();
+        SqlTaskManager.manager(null);
+    }
+
+    @Test
+    public void executionShouldBeRegisteredAsTask() throws Exception {
+        String result = manager.execute("sql=SELECT * FROM test", () -> {
+            QueryCancellation.checkCancelled("test");
+            return "done";
+        });
+
+        assertThat(result, is("done"));
+        verify(taskManager).unregister(task);
+        assertThat(QueryCancellation.isCancelled(), is(false));
+    }
+
+    @Test(expected = TaskCancelledException.class)
+    public void executionShouldExitIfTaskCancelled() throws Exception {
+        when(task.isCancelled()).thenReturn(true);
+        try {
+            manager.execute("sql=SELECT * FROM test", () -> {
+                QueryCancellation.checkCancelled("test");
+                return "done";
+            });
+        } finally {
+            verify(taskManager).unregister(task);
+        }
+    }
+
+    @Test(expected = TaskCancelledException.class)
+    public void executionShouldExitIfCancelledByGivenFlag() throws Exception {
+        manager.execute("sql=SELECT * FROM test", () -> true, () -> {
+            QueryCancellation.checkCancelled("test");
+            return "done";
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherFailureShouldBeThrownAsIs() throws Exception {
+        manager.execute("sql=SELECT * FROM test", () -> {
+            throw new IllegalArgumentException("Field not found");
+        });
+    }
+
+    @Test
+    public void executionShouldRunWithoutTaskManager() throws Exception {
+        SqlTaskManager noTaskManager = new SqlTaskManager();
+        assertThat(noTaskManager.execute("sql=SELECT * FROM test", () -> "done"), is("done"));
+    }
+
+    @Test
+    public void requestIssuedDuringExecutionShouldBeChildOfTask() throws Exception {
+        SqlTaskManager.manager(manager);
+        manager.setLocalNodeId(() -> "node-1");
+        Client client = mockClient();
+
+        manager.execute("sql=SELECT * FROM test", () -> {
+            new SqlTaskClient(client).search(new SearchRequest("test"), mock(ActionListener.class));
+            return "done";
+        });
+
+        assertThat(searchRequestOf(client).getParentTask(), is(new TaskId("node-1", 1L)));
+    }
+
+    @Test
+    public void requestIssuedOutsideExecutionShouldHaveNoParent() {
+        SqlTaskManager.manager(manager);
+        manager.setLocalNodeId(() -> "node-1");
+        Client client = mockClient();
+
+        new SqlTaskClient(client).search(new SearchRequest("test"), mock(ActionListener.class));
+
+        assertThat(searchRequestOf(client).getParentTask().isSet(), is(false));
+    }
+
+    private Client mockClient() {
+        Client client = mock(Client.class);
+        when(client.settings()).thenReturn(Settings.EMPTY);
+        when(client.threadPool()).thenReturn(mock(ThreadPool.class));
+        return client;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SearchRequest searchRequestOf(Client client) {
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(client).execute(eq(SearchAction.INSTANCE), request.capture(), any(ActionListener.class));
+        return request.getValue();
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.executor.SubQueryExecutor;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SubQueryExpression;
+import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SubQueryExecutorTest {
+
+    private static final String SCROLL_ID = "scroll1";
+
+    private final Client client = mock(Client.class);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        SubQueryExecutor.executor(new SubQueryExecutor());
+
+        ClearScrollRequestBuilder clearScroll = mock(ClearScrollRequestBuilder.class);
+        when(client.prepareClearScroll()).thenReturn(clearScroll);
+        when(clearScroll.addScrollId(any())).thenReturn(clearScroll);
+    }
+
+    @After
+    public void cleanUp() {
+        SubQueryExecutor.executor(null);
+    }
+
+    @Test
+    public void allPagesShouldBeFetched() throws SqlParseException {
+        mockResponses(page(hit("1"), hit("2")), page(hit("3")), page());
+
+        SubQueryExpression subQuery = subQuery("SELECT id FROM accounts");
+        SubQueryExecutor.executor().execute(client, Collections.singletonList(subQuery));
+
+        assertThat(subQuery.getValues(), arrayContaining("1", "2", "3"));
+        verify(client.prepareClearScroll()).addScrollId(SCROLL_ID);
+    }
+
+    @Test
+    public void resultsShouldBeLimitedByLimitInSubQuery() throws SqlParseException {
+        mockResponses(page(hit("1"), hit("2"), hit("3")), page());
+
+        SubQueryExpression subQuery = subQuery("SELECT id FROM accounts LIMIT 2");
+        SubQueryExecutor.executor().execute(client, Collections.singletonList(subQuery));
+
+        assertThat(subQuery.getValues(), arrayContaining("1", "2"));
+    }
+
+    @Test
+    public void exceedingMaxResultsShouldFailRatherThanTruncate() throws SqlParseException {
+        SubQueryExecutor.executor().setMaxResults(2);
+        mockResponses(page(hit("1"), hit("2"), hit("3")), page());
+
+        try {
+            SubQueryExecutor.executor().execute(client, Collections.singletonList(subQuery("SELECT id FROM accounts")));
+            fail("Expect exception due to too many results");
+        } catch (SqlParseException e) {
+            assertThat(e.getMessage(), containsString("more than 2 results"));
+        }
+    }
+
+    @Test
+    public void duplicateValuesShouldBeRemoved() throws SqlParseException {
+        mockResponses(page(hit("1"), hit("1"), hit("2")), page());
+
+        SubQueryExpression subQuery = subQuery("SELECT id FROM accounts");
+        SubQueryExecutor.executor().execute(client, Collections.singletonList(subQuery));
+
+        assertThat(subQuery.getValues(), arrayContaining("1", "2"));
+    }
+
+    @Test
+    public void inSubQueryShouldBeInlinedIntoSingleTermsQuery() throws SqlParseException {
+        mockResponses(page(hit("1"), hit("2")), page());
+
+        Select select = new SqlParser().parseSelect((SQLQueryExpr) new ElasticSqlExprParser(
+            "SELECT name FROM accounts WHERE id IN (SELECT id FROM accounts)").expr());
+        SubQueryExecutor.executor().execute(client, select.getSubQueries());
+
+        String dsl = QueryMaker.explain(select.getWhere()).toString().replaceAll("\\s+", "");
+        assertThat(dsl, containsString("\"terms\":{\"id\":[\"1\",\"2\"]"));
+        assertThat(dsl, not(containsString("\"term\"")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockResponses(SearchHit[] firstPage, SearchHit[]... nextPages) {
+        ActionFuture<SearchResponse> first = future(firstPage);
+        when(client.execute(any(SearchAction.class), any(SearchRequest.class))).thenReturn(first);
+
+        SearchScrollRequestBuilder scroll = mock(SearchScrollRequestBuilder.class);
+        when(client.prepareSearchScroll(SCROLL_ID)).thenReturn(scroll);
+        when(scroll.setScroll(any(TimeValue.class))).thenReturn(scroll);
+
+        ActionFuture<SearchResponse>[] futures = new ActionFuture[nextPages.length];
+        for (int i = 0; i < nextPages.length; i++) {
+            futures[i] = future(nextPages[i]);
+        }
+        when(scroll.execute()).thenReturn(futures[0], Arrays.copyOfRange(futures, 1, futures.length));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ActionFuture<SearchResponse> future(SearchHit[] hits) {
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getScrollId()).thenReturn(SCROLL_ID);
+        when(response.getHits()).thenReturn(new SearchHits(hits, hits.length, 0));
+
+        ActionFuture<SearchResponse> future = mock(ActionFuture.class);
+        when(future.actionGet()).thenReturn(response);
+        return future;
+    }
+
+    private SearchHit[] page(SearchHit... hits) {
+        return hits;
+    }
+
+    private SearchHit hit(String id) {
+        SearchHit hit = new SearchHit(Integer.parseInt(id));
+        hit.sourceRef(new BytesArray("{\"id\":\"" + id + "\"}"));
+        return hit;
+    }
+
+    private SubQueryExpression subQuery(String sql) throws SqlParseException {
+        List<SubQueryExpression> subQueries = new SqlParser().parseSelect((SQLQueryExpr) new ElasticSqlExprParser(
+            "SELECT name FROM accounts WHERE id IN (" + sql + ")").expr()).getSubQueries();
+        return subQueries.get(0);
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.sql.unittest;
+
+import com.alibaba.druid.sql.ast.expr.SQLQueryExpr;
+import com.amazon.opendistroforelasticsearch.sql.domain.Condition;
+import com.amazon.opendistroforelasticsearch.sql.domain.Select;
+import com.amazon.opendistroforelasticsearch.sql.domain.Where;
+import com.amazon.opendistroforelasticsearch.sql.exception.SqlParseException;
+import com.amazon.opendistroforelasticsearch.sql.parser.ElasticSqlExprParser;
+import com.amazon.opendistroforelasticsearch.sql.parser.SqlParser;
+import com.amazon.opendistroforelasticsearch.sql.query.maker.QueryMaker;
+import com.amazon.opendistroforelasticsearch.sql.query.maker.WhereSimplifier;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class WhereSimplifierTest {
+
+    private static final String SELECT_FROM_ACCOUNTS = "SELECT * FROM accounts ";
+
+    @Test
+    public void equalitiesOnSameFieldInOrShouldBeFoldedIntoTerms() {
+        assertThat(where("age = 1 OR age = 2 OR age = 3 OR city = 'Seattle'"), allOf(
+            containsString("\"terms\":{\"age\":[1,2,3]"),
+            containsString("\"term\":{\"city\":{\"value\":\"Seattle\""),
+            not(containsString("\"term\":{\"age\""))
+        ));
+    }
+
+    @Test
+    public void singleEqualityShouldNotBeFolded() {
+        assertThat(where("age = 1 OR city = 'Seattle'"), allOf(
+            containsString("\"term\":{\"age\""),
+            not(containsString("terms"))
+        ));
+    }
+
+    @Test
+    public void boundsOnSameSideShouldBeReducedToTightestOne() {
+        assertThat(where("age > 5 AND age < 10 AND age >= 6 AND age <= 10"), allOf(
+            containsString("\"age\":{\"from\":6,\"to\":null,\"include_lower\":true"),
+            containsString("\"age\":{\"from\":null,\"to\":10,\"include_lower\":true,\"include_upper\":false"),
+            not(containsString("\"from\":5")),
+            not(containsString("\"to\":10,\"include_lower\":true,\"include_upper\":true"))
+        ));
+    }
+
+    @Test
+    public void exclusiveBoundShouldWinOnTie() {
+        String query = where("age >= 5 AND age > 5");
+        assertThat(query, containsString("\"age\":{\"from\":5,\"to\":null,\"include_lower\":false"));
+        assertThat(query, not(containsString("\"include_lower\":true")));
+    }
+
+    @Test
+    public void duplicateConditionsShouldBeRemoved() {
+        String query = where("city = 'Seattle' AND city = 'Seattle' AND age > 30");
+        assertThat(query.indexOf("Seattle"), is(query.lastIndexOf("Seattle")));
+    }
+
+    @Test
+    public void conditionAndItsNegationShouldMatchNothing() {
+        assertThat(where("age > 30 AND city = 'Seattle' AND city <> 'Seattle'"), containsString("match_none"));
+        assertThat(where("age > 30 AND (age < 20 AND city = 'Seattle' AND city <> 'Seattle')"),
+            containsString("match_none"));
+    }
+
+    @Test
+    public void differentEqualitiesInAndShouldNotMatchNothing() {
+        // Multi-valued field may match both
+        assertThat(where("city = 'Seattle' AND city = 'Portland'"), not(containsString("match_none")));
+    }
+
+    @Test
+    public void matchNothingInOrShouldBeRemoved() {
+        String query = where("age > 30 OR (city = 'Seattle' AND city <> 'Seattle')");
+        assertThat(query, not(containsString("match_none")));
+        assertThat(query, containsString("range"));
+    }
+
+    @Test
+    public void veryDeepTreeShouldBeSimplifiedWithoutStackOverflow() throws SqlParseException {
+        Where where = Where.newInstance();
+        Where group = where;
+        for (int i = 0; i < 100000; i++) {
+            Where child = Where.newInstance();
+            group.addWhere(child);
+            group = child;
+        }
+        group.addWhere(new Condition(Where.CONN.AND, "age", null, "=", 30, null));
+
+        Where simplified = new WhereSimplifier().simplify(where);
+        assertThat(simplified, instanceOf(Condition.class));
+    }
+
+    @Test
+    public void originalWhereShouldNotBeModified() throws SqlParseException {
+        Select select = parse("age = 1 OR age = 2 OR NOT (city = 'Seattle')");
+        String original = select.getWhere().toString();
+
+        new WhereSimplifier().simplify(select.getWhere());
+        assertThat(select.getWhere().toString(), is(original));
+    }
+
+    private String where(String condition) {
+        try {
+            Select select = parse(condition);
+            return QueryMaker.explain(select.getWhere(), select.isQuery).toString().replaceAll("\\s+", "");
+        } catch (SqlParseException e) {
+            throw new IllegalStateException("Failed to translate condition: " + condition, e);
+        }
+    }
+
+    private Select parse(String condition) throws SqlParseException {
+        SQLQueryExpr sqlExpr = (SQLQueryExpr) new ElasticSqlExprParser(
+            SELECT_FROM_ACCOUNTS + "WHERE " + condition).expr();
+        return new SqlParser().parseSelect(sqlExpr);
+    }
+
+}
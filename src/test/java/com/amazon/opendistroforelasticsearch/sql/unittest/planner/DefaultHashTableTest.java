@@ -0,0 +1,203 @@
+/*
+ *   Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.sql.unittest.planner;
+
+import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.Row;
+import com.amazon.opendistroforelasticsearch.sql.query.planner.physical.node.join.DefaultHashTable;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Build and probe test for hash table of block hash join
+ */
+public class DefaultHashTableTest {
+
+    @Test
+    public void rowsOfSameKeyShouldBeMatchedInInsertionOrder() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        Row<Map<String, Object>> row1 = row("id", 1);
+        Row<Map<String, Object>> row2 = row("id", 2);
+        Row<Map<String, Object>> row3 = row("id", 1);
+        hashTable.add(row1);
+        hashTable.add(row2);
+        hashTable.add(row3);
+
+        assertThat(hashTable.size(), is(3));
+        assertThat(hashTable.match(row("parentId", 1)), contains(row1, row3));
+        assertThat(hashTable.match(row("parentId", 2)), contains(row2));
+        assertThat(hashTable.match(row("parentId", 3)), empty());
+    }
+
+    @Test
+    public void integralValuesOfDifferentTypeShouldBeMatched() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        Row<Map<String, Object>> row = row("id", 5000000000L);
+        hashTable.add(row);
+        hashTable.add(row("id", 5));
+
+        assertThat(hashTable.match(row("parentId", 5000000000L)), contains(row));
+        assertThat(hashTable.match(row("parentId", 5L)).size(), is(1));
+        assertThat(hashTable.match(row("parentId", 5.0)), empty());
+        assertThat(hashTable.match(row("parentId", "5")), empty());
+    }
+
+    @Test
+    public void rowsWithNullValueShouldBeSkipped() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        hashTable.add(row("name", "a"));
+
+        assertThat(hashTable.size(), is(0));
+        assertThat(hashTable.isEmpty(), is(true));
+        assertThat(hashTable.match(row("name", "a")), empty());
+    }
+
+    @Test
+    public void manyKeysShouldBeMatchedAfterRehash() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        List<Row<Map<String, Object>>> rows = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            Row<Map<String, Object>> row = row("id", "key" + (i % 50000));
+            rows.add(row);
+            hashTable.add(row);
+        }
+
+        assertThat(hashTable.size(), is(100000));
+        for (int i = 0; i < 50000; i++) {
+            assertThat(hashTable.match(row("parentId", "key" + i)), contains(rows.get(i), rows.get(i + 50000)));
+        }
+    }
+
+    @Test
+    public void multipleJoinColumnsShouldBeMatchedAll() {
+        DefaultHashTable<Map<String, Object>> hashTable = new DefaultHashTable<>(
+            new String[]{ "id", "name" }, new String[]{ "parentId", "parentName" });
+        Row<Map<String, Object>> row1 = row("id", 1, "name", "Hank");
+        Row<Map<String, Object>> row2 = row("id", 1, "name", "Allen");
+        hashTable.add(row1);
+        hashTable.add(row2);
+        hashTable.add(row("id", 2, "name", "Hank"));
+
+        assertThat(hashTable.match(row("parentId", 1L, "parentName", "Hank")), contains(row1));
+        assertThat(hashTable.match(row("parentId", 1, "parentName", "Allen")), contains(row2));
+        assertThat(hashTable.match(row("parentId", 3, "parentName", "Hank")), empty());
+        assertThat(hashTable.match(row("parentId", 1)), empty());
+    }
+
+    @Test
+    public void probeShouldReuseMatchedRowsOfSameKey() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        hashTable.add(row("id", "a"));
+
+        Collection<Row<Map<String, Object>>> matched = hashTable.match(row("parentId", "a"));
+        assertThat(hashTable.match(row("parentId", "a")), sameInstance(matched));
+    }
+
+    @Test
+    public void rightFieldShouldBeMappedToDistinctLeftValues() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        hashTable.add(row("id", "Hank"));
+        hashTable.add(row("id", "Hank"));
+        hashTable.add(row("id", 30));
+
+        Map<String, Collection<Object>> rightFieldWithLeftValues = hashTable.rightFieldWithLeftValues()[0];
+        assertThat(rightFieldWithLeftValues.get("parentId"), containsInAnyOrder((Object) "hank", 30L));
+    }
+
+    @Test
+    public void clearedHashTableShouldBeReusable() {
+        DefaultHashTable<Map<String, Object>> hashTable = singleKeyTable();
+        for (int i = 0; i < 1000; i++) {
+            hashTable.add(row("id", i));
+        }
+        hashTable.clear();
+
+        assertThat(hashTable.isEmpty(), is(true));
+        assertThat(hashTable.match(row("parentId", 1)), empty());
+
+        Row<Map<String, Object>> row = row("id", 1);
+        hashTable.add(row);
+        assertThat(hashTable.match(row("parentId", 1)), contains(row));
+    }
+
+    private DefaultHashTable<Map<String, Object>> singleKeyTable() {
+        return new DefaultHashTable<>(new String[]{ "id" }, new String[]{ "parentId" });
+    }
+
+    private Row<Map<String, Object>> row(String colName, Object value) {
+        return new MapRow(ImmutableMap.of(colName, value));
+    }
+
+    private Row<Map<String, Object>> row(String colName1, Object value1, String colName2, Object value2) {
+        return new MapRow(ImmutableMap.of(colName1, value1, colName2, value2));
+    }
+
+    /**
+     * Row on flat map which only supports key access required by hash table.
+     */
+    private static class MapRow implements Row<Map<String, Object>> {
+
+        private final Map<String, Object> source;
+
+        MapRow(Map<String, Object> source) {
+            this.source = new HashMap<>(source);
+        }
+
+        @Override
+        public RowKey key(String[] colNames) {
+            Object[] keys = new Object[colNames.length];
+            for (int i = 0; i < colNames.length; i++) {
+                keys[i] = source.get(colNames[i]);
+                if (keys[i] == null) {
+                    return RowKey.NULL;
+                }
+            }
+            return new RowKey(keys);
+        }
+
+        @Override
+        public Row<Map<String, Object>> combine(Row<Map<String, Object>> otherRow) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void retain(Map<String, String> colNameAlias) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, Object> data() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return "MapRow" + source;
+        }
+    }
+
+}
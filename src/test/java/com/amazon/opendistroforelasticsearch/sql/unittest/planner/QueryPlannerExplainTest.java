@@ -16,8 +16,14 @@
 package com.amazon.opendistroforelasticsearch.sql.unittest.planner;
 
 import com.amazon.opendistroforelasticsearch.sql.query.planner.core.QueryPlanner;
+import org.json.JSONObject;
 import org.junit.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
 /**
  * Query planner explanation unit test
  */
@@ -53,4 +59,61 @@ public class QueryPlannerExplainTest extends QueryPlannerTest {
         planner.explain();
     }
 
+    @Test
+    public void explainWithoutAnalyzeShouldNotIncludeProfile() {
+        QueryPlanner planner = plan(
+            "SELECT d.name, e.lastname FROM employee e " +
+            "  JOIN department d ON d.id = e.departmentId"
+        );
+        JSONObject join = findNode(new JSONObject(planner.explain()), "BlockHashJoin");
+        assertThat(join, notNullValue());
+        assertThat(join.opt("profile"), nullValue());
+    }
+
+    @Test
+    public void analyzeShouldIncludeProfileOfEachOperator() {
+        String explanation = analyze(
+            "SELECT d.name, e.lastname FROM employee e " +
+            "  JOIN department d ON d.id = e.departmentId",
+            employees(
+                employee(1, "Alice", "1"),
+                employee(2, "Hank", "1"),
+                employee(3, "Allen", "2")
+            ),
+            departments(
+                department(1, "1", "AWS")
+            )
+        );
+
+        JSONObject physicalPlan = new JSONObject(explanation).getJSONObject("Physical Plan");
+        JSONObject join = findNode(physicalPlan, "BlockHashJoin").getJSONObject("profile");
+        assertThat(join.getLong("rows_in"), is(4L));
+        assertThat(join.getLong("rows_out"), is(2L));
+        assertThat(join.getLong("hash_table_builds"), is(1L));
+        assertThat(join.getLong("hash_table_rows_total"), is(3L));
+
+        JSONObject employees = findNode(physicalPlan, "Scroll [ employee").getJSONObject("profile");
+        assertThat(employees.getLong("rows_out"), is(3L));
+        assertThat(employees.has("rows_in"), is(false));
+        assertThat(employees.getLong("scroll_round_trips") >= 1, is(true));
+    }
+
+    /** Find physical operator node whose name starts with the prefix */
+    private JSONObject findNode(JSONObject json, String prefix) {
+        for (String key : json.keySet()) {
+            Object value = json.get(key);
+            if (!(value instanceof JSONObject)) {
+                continue;
+            }
+            if (key.startsWith(prefix)) {
+                return (JSONObject) value;
+            }
+            JSONObject node = findNode((JSONObject) value, prefix);
+            if (node != null) {
+                return node;
+            }
+        }
+        return null;
+    }
+
 }
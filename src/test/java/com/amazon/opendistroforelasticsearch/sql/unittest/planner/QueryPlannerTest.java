@@ -147,6 +147,17 @@ public abstract class QueryPlannerTest {
     }
 
     protected SearchHits query(String sql, MockSearchHits mockHits1, MockSearchHits mockHits2) {
+        mockSearchHits(mockHits1, mockHits2);
+        List<SearchHit> hits = plan(sql).execute();
+        return new SearchHits(hits.toArray(new SearchHit[0]), hits.size(), 0);
+    }
+
+    protected String analyze(String sql, MockSearchHits mockHits1, MockSearchHits mockHits2) {
+        mockSearchHits(mockHits1, mockHits2);
+        return plan(sql).analyze(false);
+    }
+
+    private void mockSearchHits(MockSearchHits mockHits1, MockSearchHits mockHits2) {
         doAnswer(mockHits1).when(response1).getHits();
         doAnswer(mockHits2).when(response2).getHits();
 
@@ -160,9 +171,6 @@ public abstract class QueryPlannerTest {
                 return new ClearScrollResponse(true, 0);
             }
         });
-
-        List<SearchHit> hits = plan(sql).execute();
-        return new SearchHits(hits.toArray(new SearchHit[0]), hits.size(), 0);
     }
 
     protected QueryPlanner plan(String sql) {
@@ -122,6 +122,14 @@ public class CheckScriptContents {
         return matcher.find();
     }
 
+    public static boolean scriptHasParam(ScriptField scriptField, Object value) {
+        return scriptField.script().getParams().containsValue(value);
+    }
+
+    public static boolean scriptHasParam(ScriptFilter scriptFilter, Object value) {
+        return scriptFilter.containsParameters() && scriptFilter.getArgs().containsValue(value);
+    }
+
     public static void stubMockClient(Client mockClient) {
         try {
             String mappings = "{\n" +